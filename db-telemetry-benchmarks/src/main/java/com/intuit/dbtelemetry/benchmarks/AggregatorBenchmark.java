@@ -0,0 +1,116 @@
+package com.intuit.dbtelemetry.benchmarks;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.aggregator.Aggregator;
+import com.intuit.dbtelemetry.sql.aggregator.DictionaryAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.MapBasedAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.OffHeapAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.TelemetryAggregatorException;
+import com.intuit.dbtelemetry.sql.aggregator.ThreadLocalAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.TopKAggregator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregation of a call by the aggregator strategies, from 1 to N threads running statements concurrently.
+ * Stack traces are disabled, they are measured by StackTraceExtractorBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregatorBenchmark {
+
+    @Param({"MAP", "THREAD_LOCAL", "DICTIONARY", "OFF_HEAP", "TOP_K"})
+    public String strategy;
+
+    @Param({"1000"})
+    public int distinctStatements;
+
+    private Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator;
+    private String[] statements;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        aggregator = aggregatorOf(strategy);
+        statements = Statements.distinct(distinctStatements);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        aggregator.getAndResetDBTelemetryData(0);
+    }
+
+    /**
+     * Index of the next statement of a thread, so that threads don't contend on it.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next(int bound) {
+            int index = next;
+            next = index + 1 == bound ? 0 : index + 1;
+            return index;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void aggregate1Thread(Cursor cursor) throws TelemetryAggregatorException {
+        aggregate(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void aggregate4Threads(Cursor cursor) throws TelemetryAggregatorException {
+        aggregate(cursor);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void aggregateMaxThreads(Cursor cursor) throws TelemetryAggregatorException {
+        aggregate(cursor);
+    }
+
+    private void aggregate(Cursor cursor) throws TelemetryAggregatorException {
+        int index = cursor.next(statements.length);
+        aggregator.aggregate("benchmark", statements[index], index & 1023);
+    }
+
+    static Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregatorOf(String strategy) {
+        switch (strategy) {
+            case "MAP":
+                return new MapBasedAggregator(Collections.emptyList(), null);
+            case "THREAD_LOCAL":
+                return new ThreadLocalAggregator(Collections.emptyList(), null);
+            case "DICTIONARY":
+                return new DictionaryAggregator(Collections.emptyList(), null);
+            case "OFF_HEAP":
+                return new OffHeapAggregator(Collections.emptyList(), null, OffHeapAggregator.DEFAULT_MAX_MEMORY_BYTES);
+            case "TOP_K":
+                return new TopKAggregator(Collections.emptyList(), null, TopKAggregator.DEFAULT_CAPACITY,
+                        TopKAggregator.Ranking.CALL_TIME);
+            default:
+                throw new IllegalArgumentException("Unknown aggregator strategy " + strategy);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.intuit.dbtelemetry.benchmarks;
+
+import com.intuit.dbtelemetry.sql.TelemetryRegistry;
+import com.intuit.dbtelemetry.sql.TelemetryRegistryBuilder;
+import com.intuit.dbtelemetry.sql.aggregator.MapBasedAggregator;
+import com.intuit.dbtelemetry.sql.aspect.aspectj.PostgresAspect;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.DepthFilterStackTraceExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end cost added by PostgresAspect to a JDBC call: SQL extraction, timing, normalization, stack trace and
+ * aggregation, against a join point that proceeds without running a statement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AspectBenchmark {
+
+    @Param({"true", "false"})
+    public boolean enabled;
+
+    @Param({"false", "true"})
+    public boolean stackTraces;
+
+    @Param({"MEDIUM"})
+    public String size;
+
+    private PostgresAspect aspect;
+    private StubJoinPoint joinPoint;
+
+    @Setup
+    public void setUp() {
+        MapBasedAggregator aggregator = new MapBasedAggregator(Collections.emptyList(),
+                stackTraces ? new DepthFilterStackTraceExtractor(-1, "") : null);
+        TelemetryRegistry.setTelemetryRegistry(TelemetryRegistryBuilder.builder().withAggregator(aggregator).build());
+        TelemetryRegistry.getTelemetryRegistry().setAspectEnabled(PostgresAspect.class.getSimpleName(), enabled);
+        aspect = new PostgresAspect();
+        joinPoint = new StubJoinPoint(Statements.of(size));
+    }
+
+    @TearDown(Level.Iteration)
+    public void flush() {
+        TelemetryRegistry.getTelemetryRegistry().getAggregator().getAndResetDBTelemetryData(0);
+    }
+
+    @Benchmark
+    public Object extractAndAggregate() throws Throwable {
+        return aspect.extractAndAggregate(joinPoint);
+    }
+}
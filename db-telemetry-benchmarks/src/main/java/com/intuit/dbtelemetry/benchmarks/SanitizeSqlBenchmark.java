@@ -0,0 +1,43 @@
+package com.intuit.dbtelemetry.benchmarks;
+
+import com.intuit.dbtelemetry.sql.utils.SqlHelperUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalization of a statement, run for every intercepted call missing the normalization cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SanitizeSqlBenchmark {
+
+    @Param({"SHORT", "MEDIUM", "LONG"})
+    public String size;
+
+    private String sql;
+
+    @Setup
+    public void setUp() {
+        sql = Statements.of(size);
+    }
+
+    @Benchmark
+    public String sanitizeSQL() {
+        return SqlHelperUtils.sanitizeSQL(sql);
+    }
+}
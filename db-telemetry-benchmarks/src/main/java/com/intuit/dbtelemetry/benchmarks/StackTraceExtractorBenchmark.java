@@ -0,0 +1,54 @@
+package com.intuit.dbtelemetry.benchmarks;
+
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.DepthFilterStackTraceExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Capture and formatting of the calling stack trace, at the stack depths of typical web and batch applications.
+ * The throwable is created at the bottom of the stack, so its capture is part of the measured cost as in the aspects.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StackTraceExtractorBenchmark {
+
+    @Param({"20", "100", "300"})
+    public int stackDepth;
+
+    @Param({"-1", "10"})
+    public int extractorDepth;
+
+    private DepthFilterStackTraceExtractor extractor;
+
+    @Setup
+    public void setUp() {
+        extractor = new DepthFilterStackTraceExtractor(extractorDepth, "com.intuit");
+    }
+
+    @Benchmark
+    public String extractStackTrace() {
+        return extractAt(stackDepth);
+    }
+
+    private String extractAt(int depth) {
+        if (depth <= 0) {
+            return extractor.extractStackTrace(new Throwable());
+        }
+        return extractAt(depth - 1);
+    }
+}
@@ -0,0 +1,60 @@
+package com.intuit.dbtelemetry.benchmarks;
+
+/**
+ * SQL statements of realistic sizes, as issued by ORM and hand written data access code.
+ */
+final class Statements {
+
+    static final String SHORT = "DELETE FROM PSP_VMP_EMPLOYEE_INFO WHERE EMPLOYEE_SEQ = 42";
+
+    static final String MEDIUM = "/* criteria query */ select this_.SYSTEM_PARAMETER_SEQ as SYSTEM1_248_0_, "
+            + "this_.VERSION as VERSION248_0_, this_.CREATOR_ID as CREATOR3_248_0_, this_.CREATED_DATE as CREATED4_248_0_, "
+            + "this_.MODIFIER_ID as MODIFIER5_248_0_, this_.MODIFIED_DATE as MODIFIED6_248_0_, this_.REALM_ID as REALM7_248_0_, "
+            + "this_.SYSTEM_PARAMETER_CD as SYSTEM8_248_0_, this_.SYSTEM_PARAMETER_VALUE as SYSTEM11_248_0_ "
+            + "from PSP_SYSTEM_PARAMETER this_ where this_.SYSTEM_PARAMETER_CD = 'PROCESS_CACHE_REFRESH_TOKEN' "
+            + "and this_.REALM_ID = 123145678 and this_.CREATED_DATE > '2024-01-01'";
+
+    static final String LONG = longStatement();
+
+    private Statements() {
+    }
+
+    static String of(String size) {
+        switch (size) {
+            case "SHORT":
+                return SHORT;
+            case "MEDIUM":
+                return MEDIUM;
+            case "LONG":
+                return LONG;
+            default:
+                throw new IllegalArgumentException("Unknown statement size " + size);
+        }
+    }
+
+    /**
+     * Returns distinct statements, e.g. to aggregate a realistic number of different statements.
+     */
+    static String[] distinct(int count) {
+        String[] statements = new String[count];
+        for (int i = 0; i < count; i++) {
+            statements[i] = "select * from PSP_TABLE_" + i + " where ID = " + i + " and STATUS_CD = 'Active'";
+        }
+        return statements;
+    }
+
+    private static String longStatement() {
+        // An insert of a batch of rows with literals, about 20 KB
+        StringBuilder sql = new StringBuilder("/* insert com.intuit.sbd.payroll.psp.domain.FinancialTransactionState */ "
+                + "insert into PSP_FINANCIAL_TRANS_STATE (VERSION, CREATOR_ID, CREATED_DATE, REALM_ID, COMPANY_FK, "
+                + "FINANCIAL_TRANSACTION_FK, TRANSACTION_STATE_FK, FINANCIAL_TRANS_STATE_SEQ) values ");
+        for (int i = 0; i < 200; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(1, 'System', '2024-01-01 10:00:00', ").append(123145678 + i).append(", ").append(i * 31)
+                    .append(", ").append(i * 17).append(", 'SETTLED', ").append(i).append(')');
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,90 @@
+package com.intuit.dbtelemetry.benchmarks;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.reflect.SourceLocation;
+import org.aspectj.runtime.internal.AroundClosure;
+
+/**
+ * Join point of a PgStatement execution, proceeding without running a statement.
+ */
+final class StubJoinPoint implements ProceedingJoinPoint {
+
+    private static final Object RESULT = Boolean.TRUE;
+
+    /**
+     * Stands for the CachedQuery argument of PgStatement.execute, holding the statement in its query field.
+     */
+    static final class CachedQuery {
+        private final String query;
+
+        CachedQuery(String query) {
+            this.query = query;
+        }
+    }
+
+    private final Object[] args;
+
+    StubJoinPoint(String sql) {
+        this.args = new Object[]{new CachedQuery(sql), null};
+    }
+
+    @Override
+    public Object proceed() {
+        return RESULT;
+    }
+
+    @Override
+    public Object proceed(Object[] args) {
+        return RESULT;
+    }
+
+    @Override
+    public void set$AroundClosure(AroundClosure arc) {
+    }
+
+    @Override
+    public String toShortString() {
+        return "execution(PgStatement.execute(..))";
+    }
+
+    @Override
+    public String toLongString() {
+        return toShortString();
+    }
+
+    @Override
+    public Object getThis() {
+        return null;
+    }
+
+    @Override
+    public Object getTarget() {
+        return null;
+    }
+
+    @Override
+    public Object[] getArgs() {
+        return args;
+    }
+
+    @Override
+    public Signature getSignature() {
+        return null;
+    }
+
+    @Override
+    public SourceLocation getSourceLocation() {
+        return null;
+    }
+
+    @Override
+    public String getKind() {
+        return METHOD_EXECUTION;
+    }
+
+    @Override
+    public StaticPart getStaticPart() {
+        return null;
+    }
+}
@@ -0,0 +1,11 @@
+package com.intuit.dbtelemetry.sql;
+
+public interface AspectStateListener {
+    /**
+     * Called when a telemetry aspect is enabled or disabled through the TelemetryRegistry.
+     *
+     * @param aspectName the simple class name of the aspect
+     * @param enabled    the new state of the aspect
+     */
+    void onAspectStateChange(String aspectName, boolean enabled);
+}
@@ -0,0 +1,40 @@
+package com.intuit.dbtelemetry.sql;
+
+/**
+ * Enablement of a telemetry aspect, owned by the TelemetryRegistry and read by the aspect on every statement.
+ * Reading it is a single volatile read, and a change is seen by the next statement.
+ */
+public final class AspectSwitch {
+
+    private final String aspectName;
+    private volatile boolean enabled;
+
+    AspectSwitch(String aspectName, boolean enabled) {
+        this.aspectName = aspectName;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the simple class name of the aspect.
+     *
+     * @return the name of the aspect
+     */
+    public String getAspectName() {
+        return aspectName;
+    }
+
+    /**
+     * Checks if the aspect is enabled.
+     *
+     * @return true if enabled, false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    synchronized boolean set(boolean enabled) {
+        boolean changed = this.enabled != enabled;
+        this.enabled = enabled;
+        return changed;
+    }
+}
@@ -1,23 +1,42 @@
 package com.intuit.dbtelemetry.sql;
 
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.histogram.LatencyHistogram;
 import lombok.Getter;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
 
 @Getter
 public class SqlTelemetry {
+    private static final AtomicLongFieldUpdater<SqlTelemetry> MIN_UPDATER = AtomicLongFieldUpdater.newUpdater(SqlTelemetry.class, "min");
+    private static final AtomicLongFieldUpdater<SqlTelemetry> MAX_UPDATER = AtomicLongFieldUpdater.newUpdater(SqlTelemetry.class, "max");
+    private static final AtomicReferenceFieldUpdater<SqlTelemetry, LatencyHistogram> HISTOGRAM_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(SqlTelemetry.class, LatencyHistogram.class, "latencyHistogram");
+
     private final String type;
     private final String sql;
-    private int count = 0;
-    private long min = 0;
-    private long max = 0;
-    private long callTime = 0;
+    // Striped, so that threads running the same statement don't contend on a single counter
+    private final LongAdder count = new LongAdder();
+    private final LongAdder callTime = new LongAdder();
+    // Only written when a new minimum or maximum is observed
+    private volatile long min = Long.MAX_VALUE;
+    private volatile long max = 0;
+    // Created on the first recorded call, instances only used as lookup keys never allocate it
+    private volatile LatencyHistogram latencyHistogram;
     private final String stackTrace;
+    private final long stackTraceFingerprint;
     private final int hashCode;
     private String workflow = StringUtils.EMPTY;
     private final String sqlWithParameters;
+    // Upper bound of the calls missed before the statement was tracked, only set by bounded aggregators
+    private long rankError;
 
     /**
      * Constructor for creating a SqlTelemetry object.
@@ -28,13 +47,33 @@ public class SqlTelemetry {
      * @param sqlWithParameters The SQL query with parameters.
      */
     public SqlTelemetry(String type, String sql, String stackTrace, String sqlWithParameters) {
+        this(type, sql, CallSite.of(stackTrace), sqlWithParameters);
+    }
+
+    private SqlTelemetry(String type, String sql, CallSite callSite, String sqlWithParameters) {
         this.type = StringUtils.defaultString(type, StringUtils.EMPTY);
         this.sql = StringUtils.defaultString(sql, StringUtils.EMPTY);
-        this.stackTrace = StringUtils.defaultString(stackTrace, StringUtils.EMPTY);
-        this.hashCode = Objects.hash(type, sql, stackTrace);
+        this.stackTrace = callSite.getStackTrace();
+        this.stackTraceFingerprint = callSite.getFingerprint();
+        // Same value as Objects.hash(type, sql, stackTrace) for statements without stack trace
+        this.hashCode = 31 * (31 * (31 + this.type.hashCode()) + this.sql.hashCode()) + Long.hashCode(stackTraceFingerprint);
         this.sqlWithParameters = sqlWithParameters;
     }
 
+    /**
+     * Creates a SqlTelemetry object from a fingerprinted call site.
+     * A factory rather than a constructor, so that new SqlTelemetry(type, sql, null, null) stays unambiguous.
+     *
+     * @param type The type of the SQL telemetry.
+     * @param sql The SQL query string.
+     * @param callSite The call site of the SQL query, identified by its fingerprint, or null for none.
+     * @param sqlWithParameters The SQL query with parameters.
+     * @return the new SqlTelemetry object
+     */
+    public static SqlTelemetry of(String type, String sql, CallSite callSite, String sqlWithParameters) {
+        return new SqlTelemetry(type, sql, Objects.isNull(callSite) ? CallSite.NONE : callSite, sqlWithParameters);
+    }
+
     /**
      * Increases the count of this telemetry instance and
      * updates the max, min, and call time based on the given time.
@@ -42,10 +81,162 @@ public class SqlTelemetry {
      * @param time The call time for a SQL query.
      */
     public void setInstanceValue(long time) {
-        max = Math.max(max, time);
-        min = Math.min(min, time);
-        callTime += time;
-        count++;
+        setInstanceValue(time, 1L);
+    }
+
+    /**
+     * Increases the count of this telemetry instance by the number of calls a sampled call stands for and
+     * updates the max, min, and call time based on the given time.
+     *
+     * @param time The call time for a SQL query.
+     * @param weight The number of calls the sampled call stands for.
+     */
+    public void setInstanceValue(long time, long weight) {
+        updateMax(time);
+        updateMin(time);
+        callTime.add(time * weight);
+        count.add(weight);
+        getOrCreateLatencyHistogram().recordValue(time, weight);
+    }
+
+    /**
+     * Adds the calls recorded by another telemetry instance of the same SQL query.
+     *
+     * @param other The telemetry instance whose calls are added.
+     */
+    public void add(SqlTelemetry other) {
+        add(other.getCount(), other.getCallTime(), other.min, other.max, other.latencyHistogram);
+    }
+
+    /**
+     * Adds calls of the same SQL query aggregated elsewhere, e.g. in a table of primitive counters.
+     *
+     * @param otherCount The number of calls.
+     * @param otherCallTime The total call time of the calls.
+     * @param otherMin The minimum call time of the calls.
+     * @param otherMax The maximum call time of the calls.
+     * @param otherHistogram The latency histogram of the calls, may be null.
+     */
+    public void add(long otherCount, long otherCallTime, long otherMin, long otherMax, LatencyHistogram otherHistogram) {
+        if (otherCount == 0) {
+            return;
+        }
+        updateMax(otherMax);
+        updateMin(otherMin);
+        callTime.add(otherCallTime);
+        count.add(otherCount);
+        if (Objects.nonNull(otherHistogram)) {
+            getOrCreateLatencyHistogram().add(otherHistogram);
+        }
+    }
+
+    /**
+     * Clears the recorded calls, keeping the allocated counters for reuse.
+     * Only safe when no other thread records calls on this instance at the same time.
+     */
+    public void reset() {
+        count.reset();
+        callTime.reset();
+        min = Long.MAX_VALUE;
+        max = 0;
+        LatencyHistogram histogram = latencyHistogram;
+        if (Objects.nonNull(histogram)) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Returns the call time at the given percentile, within the precision of the latency histogram.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the call time at the percentile, or 0 if the SQL query was never called
+     */
+    public long getCallTimeAtPercentile(double percentile) {
+        LatencyHistogram histogram = latencyHistogram;
+        return Objects.isNull(histogram) ? 0 : Math.min(histogram.getValueAtPercentile(percentile), getMax());
+    }
+
+    /**
+     * Returns the call times at several percentiles in a single pass over the latency histogram, without allocating.
+     *
+     * @param percentiles the percentiles in ascending order, between 0 and 100
+     * @param callTimes   receives the call time at each percentile, 0 if the SQL query was never called
+     */
+    public void getCallTimesAtPercentiles(double[] percentiles, long[] callTimes) {
+        LatencyHistogram histogram = latencyHistogram;
+        if (Objects.isNull(histogram)) {
+            Arrays.fill(callTimes, 0, percentiles.length, 0L);
+            return;
+        }
+        histogram.getValuesAtPercentiles(percentiles, callTimes);
+        long currentMax = getMax();
+        for (int i = 0; i < percentiles.length; i++) {
+            callTimes[i] = Math.min(callTimes[i], currentMax);
+        }
+    }
+
+    private LatencyHistogram getOrCreateLatencyHistogram() {
+        LatencyHistogram histogram = latencyHistogram;
+        if (Objects.nonNull(histogram)) {
+            return histogram;
+        }
+        HISTOGRAM_UPDATER.compareAndSet(this, null, new LatencyHistogram());
+        return latencyHistogram;
+    }
+
+    /**
+     * Returns the number of times the SQL query was called.
+     *
+     * @return the call count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the total call time of the SQL query.
+     *
+     * @return the total call time
+     */
+    public long getCallTime() {
+        return callTime.sum();
+    }
+
+    /**
+     * Returns the minimum call time of the SQL query, or 0 if it was never called.
+     *
+     * @return the minimum call time
+     */
+    public long getMin() {
+        long current = min;
+        return current == Long.MAX_VALUE ? 0 : current;
+    }
+
+    /**
+     * Returns the maximum call time of the SQL query.
+     *
+     * @return the maximum call time
+     */
+    public long getMax() {
+        return max;
+    }
+
+    private void updateMin(long time) {
+        long current;
+        while (time < (current = min)) {
+            if (MIN_UPDATER.compareAndSet(this, current, time)) {
+                return;
+            }
+        }
+    }
+
+    private void updateMax(long time) {
+        long current;
+        while (time > (current = max)) {
+            if (MAX_UPDATER.compareAndSet(this, current, time)) {
+                return;
+            }
+        }
     }
 
     /**
@@ -60,14 +251,21 @@ public class SqlTelemetry {
         result.append("DbTelemetry { ");
         result.append(" telemetryHash=\"").append(hashCode).append("\",");
         result.append(" type=").append(type).append("\",");
-        result.append(" count=").append(count).append("\",");
-        result.append(" min=").append(min).append("\",");
-        result.append(" max=").append(max).append("\",");
-        result.append(" callTime=").append(callTime).append("\",");
+        result.append(" count=").append(getCount()).append("\",");
+        result.append(" min=").append(getMin()).append("\",");
+        result.append(" max=").append(getMax()).append("\",");
+        result.append(" callTime=").append(getCallTime()).append("\",");
         result.append(" avg=").append(getAverageCallTime()).append("\",");
+        result.append(" p50=").append(getCallTimeAtPercentile(50)).append("\",");
+        result.append(" p90=").append(getCallTimeAtPercentile(90)).append("\",");
+        result.append(" p99=").append(getCallTimeAtPercentile(99)).append("\",");
+        result.append(" p999=").append(getCallTimeAtPercentile(99.9)).append("\",");
         result.append(" sql=\"").append(sql).append("\",");
         result.append(" sqlHash='").append(sql.hashCode()).append("\",");
         result.append(" stacktraceHash=").append(stackTrace.hashCode()).append("\",");
+        if (rankError > 0) {
+            result.append(" rankError=").append(rankError).append("\",");
+        }
         result.append(" workflow=\"").append(workflow).append("\"");
         if (!ObjectUtils.isEmpty(sqlWithParameters)) {
             result.append(" sqlWithParameter=\"").append(sqlWithParameters).append("\"");
@@ -78,7 +276,8 @@ public class SqlTelemetry {
     }
 
     /**
-     * Overrides default equals method - checks equality based on the type, SQL, and stack trace.
+     * Overrides default equals method - checks equality based on the type, SQL, and stack trace, compared by
+     * fingerprint first. Stack traces are interned, so equal ones are usually the same instance.
      *
      * @param o Object to be compared for equality
      * @return true if equal, false otherwise
@@ -88,7 +287,8 @@ public class SqlTelemetry {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         SqlTelemetry that = (SqlTelemetry) o;
-        return type.equals(that.type) &&
+        return stackTraceFingerprint == that.stackTraceFingerprint &&
+                type.equals(that.type) &&
                 sql.equals(that.sql) &&
                 stackTrace.equals(that.stackTrace);
     }
@@ -109,7 +309,9 @@ public class SqlTelemetry {
      * @return average call time as a double
      */
     protected double getAverageCallTime() {
-        return (callTime == 0 || count == 0) ? 0D : (double) callTime / count;
+        long totalCallTime = getCallTime();
+        long totalCount = getCount();
+        return (totalCallTime == 0 || totalCount == 0) ? 0D : (double) totalCallTime / totalCount;
     }
 
     /**
@@ -121,4 +323,13 @@ public class SqlTelemetry {
         this.workflow = workflow;
     }
 
+    /**
+     * Sets the upper bound of the count or call time missed before this SQL query was tracked by a bounded aggregator.
+     *
+     * @param rankError The maximum count or call time not included in this instance.
+     */
+    public void setRankError(long rankError) {
+        this.rankError = rankError;
+    }
+
 }
@@ -0,0 +1,226 @@
+package com.intuit.dbtelemetry.sql;
+
+import com.intuit.dbtelemetry.sql.histogram.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time the telemetry itself adds to the intercepted statements and to the flushes, shared by all the registries.
+ * The shared instance lives here rather than in the TelemetryRegistry, so that the aspects and aggregators reading it
+ * while the TelemetryRegistry class is initialized don't get a null.
+ * The stages of every call are timed in nanoseconds only when enabled, disabled it costs one volatile read per stage.
+ * Aggregation failures, window sizes and flush durations are always counted, they are rare or once per flush.
+ * Stages run by an AsyncAggregator are timed on its workers, off the threads running the statements.
+ */
+public final class TelemetryOverhead {
+
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+    private static final TelemetryOverhead SHARED = new TelemetryOverhead();
+
+    /**
+     * Stage of the telemetry of a statement.
+     */
+    public enum Stage {
+        /** Extraction of the statement from the join point by the SqlExtractor */
+        SQL_EXTRACTION,
+        /** Normalization of the statement, through the normalization cache if any */
+        NORMALIZATION,
+        /** Matching of the excluded tables */
+        EXCLUSION,
+        /** Capture of the call site or stack trace */
+        CALL_SITE,
+        /** Update of the aggregated telemetry data */
+        RECORD,
+        /** Flush of a window of telemetry data */
+        FLUSH
+    }
+
+    private final StageMetrics[] stages = new StageMetrics[Stage.values().length];
+    private final LongAdder aggregationFailures = new LongAdder();
+    private final AtomicLong lastWindowSize = new AtomicLong();
+    private final AtomicLong maxWindowSize = new AtomicLong();
+    private volatile boolean enabled;
+
+    TelemetryOverhead() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new StageMetrics();
+        }
+    }
+
+    /**
+     * Returns the overhead metrics shared by the aspects, aggregators and log flushes of all the registries.
+     *
+     * @return the shared overhead metrics
+     */
+    public static TelemetryOverhead shared() {
+        return SHARED;
+    }
+
+    /**
+     * Checks if the stages of every call are timed.
+     *
+     * @return true if enabled, false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the timing of the stages of every call.
+     *
+     * @param enabled true to time the stages, false otherwise
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts timing a stage.
+     *
+     * @return the start time to pass to {@link #stop(Stage, long)}, not a time when the timing is disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * Stops timing a stage and records its duration, if it was started while the timing was enabled.
+     *
+     * @param stage the timed stage
+     * @param start the value returned by {@link #start()}
+     */
+    public void stop(Stage stage, long start) {
+        if (start != NOT_TIMED) {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the duration of a stage.
+     *
+     * @param stage the stage
+     * @param nanos the duration of the stage in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * Counts a failure swallowed while aggregating a statement, the statement being run without telemetry.
+     */
+    public void recordAggregationFailure() {
+        aggregationFailures.increment();
+    }
+
+    /**
+     * Records the flush of a window of telemetry data.
+     *
+     * @param windowSize  the number of entries of the window
+     * @param flushNanos  the duration of the flush in nanoseconds
+     */
+    public void recordFlush(int windowSize, long flushNanos) {
+        lastWindowSize.set(windowSize);
+        maxWindowSize.accumulateAndGet(windowSize, Math::max);
+        record(Stage.FLUSH, flushNanos);
+    }
+
+    /**
+     * Returns the number of timed executions of a stage.
+     *
+     * @param stage the stage
+     * @return the number of timed executions
+     */
+    public long getCount(Stage stage) {
+        return stages[stage.ordinal()].count.sum();
+    }
+
+    /**
+     * Returns the total time spent in a stage.
+     *
+     * @param stage the stage
+     * @return the total time of the timed executions in nanoseconds
+     */
+    public long getTotalNanos(Stage stage) {
+        return stages[stage.ordinal()].totalNanos.sum();
+    }
+
+    /**
+     * Returns the duration of a stage at a percentile.
+     *
+     * @param stage      the stage
+     * @param percentile the percentile, between 0 and 100
+     * @return the duration at the percentile in nanoseconds, within 12.5%, 0 when the stage was not timed
+     */
+    public long getNanosAtPercentile(Stage stage, double percentile) {
+        return stages[stage.ordinal()].histogram.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Returns the number of failures swallowed while aggregating statements.
+     *
+     * @return the number of aggregation failures
+     */
+    public long getAggregationFailures() {
+        return aggregationFailures.sum();
+    }
+
+    /**
+     * Returns the number of entries of the last flushed window.
+     *
+     * @return the size of the last window
+     */
+    public long getLastWindowSize() {
+        return lastWindowSize.get();
+    }
+
+    /**
+     * Returns the largest number of entries of a flushed window.
+     *
+     * @return the size of the largest window
+     */
+    public long getMaxWindowSize() {
+        return maxWindowSize.get();
+    }
+
+    /**
+     * Clears the recorded metrics. Metrics recorded concurrently may or may not be kept.
+     */
+    public void reset() {
+        for (StageMetrics stage : stages) {
+            stage.count.reset();
+            stage.totalNanos.reset();
+            stage.histogram.reset();
+        }
+        aggregationFailures.reset();
+        lastWindowSize.set(0);
+        maxWindowSize.set(0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("TelemetryOverhead{enabled=").append(enabled);
+        for (Stage stage : Stage.values()) {
+            long count = getCount(stage);
+            result.append(", ").append(stage).append("={count=").append(count)
+                    .append(", avgNanos=").append(count == 0 ? 0 : getTotalNanos(stage) / count)
+                    .append(", p99Nanos=").append(getNanosAtPercentile(stage, 99)).append('}');
+        }
+        return result.append(", aggregationFailures=").append(getAggregationFailures())
+                .append(", lastWindowSize=").append(getLastWindowSize())
+                .append(", maxWindowSize=").append(getMaxWindowSize())
+                .append('}').toString();
+    }
+
+    private static final class StageMetrics {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            histogram.recordValue(nanos);
+        }
+    }
+}
@@ -4,18 +4,33 @@ import com.intuit.dbtelemetry.sql.aggregator.Aggregator;
 import com.intuit.dbtelemetry.sql.aggregator.MapBasedAggregator;
 import com.intuit.dbtelemetry.sql.logs.LogFlush;
 import com.intuit.dbtelemetry.sql.logs.DefaultLogFlush;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Singleton class for managing and configuring the telemetry data of SQL queries.
  * This class provides access to the aggregator and log flusher functions, allowing for the customization of these behaviors.
+ * Closing the registry releases the resources of its aggregator, such as the workers of an AsyncAggregator.
  */
-public class TelemetryRegistry {
+@Slf4j
+public class TelemetryRegistry implements AutoCloseable {
+    // Shared by all registries, the aspects keep the switch they got when they were created
+    private static final ConcurrentMap<String, AspectSwitch> ASPECT_SWITCHES = new ConcurrentHashMap<>();
+    private static final List<AspectStateListener> ASPECT_STATE_LISTENERS = new CopyOnWriteArrayList<>();
     private static TelemetryRegistry INSTANCE = new TelemetryRegistry();
 
     private Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator = new MapBasedAggregator();
     private LogFlush logFlush = new DefaultLogFlush(aggregator, null, true);
+    private volatile SlowStatementCapture slowStatementCapture;
 
     private TelemetryRegistry() {
     }
@@ -25,6 +40,11 @@ public class TelemetryRegistry {
         this.logFlush = logFlush;
     }
 
+    TelemetryRegistry(Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator, LogFlush logFlush, SlowStatementCapture slowStatementCapture) {
+        this(aggregator, logFlush);
+        this.slowStatementCapture = slowStatementCapture;
+    }
+
     /**
      * Returns the current TelemetryRegistry instance.
      *
@@ -79,6 +99,24 @@ public class TelemetryRegistry {
         this.logFlush = logFlush;
     }
 
+    /**
+     * Returns the SlowStatementCapture of the TelemetryRegistry, null when slow statements are not captured.
+     *
+     * @return the current SlowStatementCapture instance, or null
+     */
+    public SlowStatementCapture getSlowStatementCapture() {
+        return slowStatementCapture;
+    }
+
+    /**
+     * Sets a new SlowStatementCapture for the TelemetryRegistry, null to stop capturing slow statements.
+     *
+     * @param slowStatementCapture the new SlowStatementCapture instance.
+     */
+    public void setSlowStatementCapture(SlowStatementCapture slowStatementCapture) {
+        this.slowStatementCapture = slowStatementCapture;
+    }
+
     /**
      * Sets the state of a specific aspect.
      *
@@ -86,7 +124,99 @@ public class TelemetryRegistry {
      * @param state the new state of the aspect
      */
     public void aspectState(String aspectClassName, String state) {
-        System.setProperty(aspectClassName, state);
+        setAspectEnabled(aspectClassName, Boolean.parseBoolean(state));
+    }
+
+    /**
+     * Enables or disables a specific aspect. The change is seen by the next statement the aspect intercepts,
+     * and the listeners are notified when the state actually changes, in the order of the changes of an aspect.
+     *
+     * @param aspectClassName the simple class name of the aspect
+     * @param enabled true to enable the aspect, false to disable it
+     */
+    public void setAspectEnabled(String aspectClassName, boolean enabled) {
+        String aspectName = StringUtils.trim(aspectClassName);
+        AspectSwitch aspectSwitch = getAspectSwitch(aspectName);
+        // Under the lock of the switch, so that concurrent changes reach the listeners and the system properties in
+        // the order they were applied and the last notified state is the state of the switch
+        synchronized (aspectSwitch) {
+            // Kept for the code reading the state from the system properties
+            System.setProperty(aspectName, String.valueOf(enabled));
+            if (aspectSwitch.set(enabled)) {
+                for (AspectStateListener listener : ASPECT_STATE_LISTENERS) {
+                    try {
+                        listener.onAspectStateChange(aspectName, enabled);
+                    } catch (Exception e) {
+                        log.error("Error in AspectStateListener", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if a specific aspect is enabled.
+     *
+     * @param aspectClassName the simple class name of the aspect
+     * @return true if enabled, false otherwise
+     */
+    public boolean isAspectEnabled(String aspectClassName) {
+        return getAspectSwitch(StringUtils.trim(aspectClassName)).isEnabled();
+    }
+
+    /**
+     * Registers a listener notified when an aspect is enabled or disabled.
+     *
+     * @param listener the listener to register
+     */
+    public void addAspectStateListener(AspectStateListener listener) {
+        ASPECT_STATE_LISTENERS.add(Objects.requireNonNull(listener, "Listener cannot be null"));
+    }
+
+    /**
+     * Unregisters a listener notified when an aspect is enabled or disabled.
+     *
+     * @param listener the listener to unregister
+     */
+    public void removeAspectStateListener(AspectStateListener listener) {
+        ASPECT_STATE_LISTENERS.remove(listener);
+    }
+
+    /**
+     * Returns the switch of a specific aspect, created on first use with the state of the system property named
+     * after the aspect.
+     *
+     * @param aspectClassName the simple class name of the aspect
+     * @return the switch of the aspect
+     */
+    public static AspectSwitch getAspectSwitch(String aspectClassName) {
+        return ASPECT_SWITCHES.computeIfAbsent(aspectClassName, name -> new AspectSwitch(name,
+                Optional.ofNullable(System.getProperty(name)).map(Boolean::parseBoolean).orElse(false)));
+    }
+
+    /**
+     * Returns the overhead metrics of the telemetry: time spent per stage of the intercepted statements, aggregation
+     * failures, window sizes and flush durations.
+     *
+     * @return the overhead metrics, shared by all registries
+     */
+    public static TelemetryOverhead getOverhead() {
+        return TelemetryOverhead.shared();
+    }
+
+    /**
+     * Closes the aggregator of the registry when it can be closed, e.g. to stop the workers of an AsyncAggregator
+     * on shutdown or redeploy. The calls recorded afterwards are dropped by such an aggregator.
+     */
+    @Override
+    public void close() {
+        if (aggregator instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) aggregator).close();
+            } catch (Exception e) {
+                log.error("Error closing the Aggregator", e);
+            }
+        }
     }
 
 }
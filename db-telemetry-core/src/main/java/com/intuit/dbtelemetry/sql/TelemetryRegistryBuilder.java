@@ -1,15 +1,37 @@
 package com.intuit.dbtelemetry.sql;
 
+import com.intuit.dbtelemetry.sql.aggregator.AbstractAggregator;
 import com.intuit.dbtelemetry.sql.aggregator.Aggregator;
+import com.intuit.dbtelemetry.sql.aggregator.AsyncAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.DictionaryAggregator;
 import com.intuit.dbtelemetry.sql.aggregator.MapBasedAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.OffHeapAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.ThreadLocalAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.TopKAggregator;
 import com.intuit.dbtelemetry.sql.extractor.stacktrace.DepthFilterStackTraceExtractor;
 import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackTraceExtractor;
+import com.intuit.dbtelemetry.sql.finder.CachingWorkflowFinder;
 import com.intuit.dbtelemetry.sql.finder.WorkflowFinder;
 import com.intuit.dbtelemetry.sql.logs.LogFlush;
+import com.intuit.dbtelemetry.sql.logs.StackTraceDictionary;
 import com.intuit.dbtelemetry.sql.logs.DefaultLogFlush;
+import com.intuit.dbtelemetry.sql.logs.FileLogFlush;
+import com.intuit.dbtelemetry.sql.logs.FileRotationPolicy;
+import com.intuit.dbtelemetry.sql.logs.JsonLinesRecordEncoder;
+import com.intuit.dbtelemetry.sql.logs.StructuredLogFlush;
+import com.intuit.dbtelemetry.sql.logs.TelemetryRecordEncoder;
+import com.intuit.dbtelemetry.sql.prometheus.PrometheusCollector;
+import com.intuit.dbtelemetry.sql.sampler.Sampler;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
+import com.intuit.dbtelemetry.sql.utils.ExcludedTablesMatcher;
+import com.intuit.dbtelemetry.sql.utils.SqlNormalizationCache;
 
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -21,11 +43,34 @@ public class TelemetryRegistryBuilder {
     private Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator;
     private StackTraceExtractor stackTraceExtractor;
     private List<String> excludedTablesList;
+    private boolean excludedTablesWholeNames = false;
     private int stackTraceDepth = -1;
     private String stackTraceFilter = "";
     private LogFlush logFlush;
     private WorkflowFinder workflowFinder;
+    private boolean workflowCaching = false;
+    private boolean workflowResolutionAtAggregation = false;
+    private OutputStream structuredOutput;
+    private TelemetryRecordEncoder recordEncoder;
+    private Path fileOutputDirectory;
+    private FileRotationPolicy fileRotationPolicy;
     private boolean stackTrace = true;
+    private StackTraceDictionary stackTraceDictionary;
+    private SqlNormalizationCache sqlNormalizationCache;
+    private boolean threadLocalAggregation = false;
+    private boolean dictionaryAggregation = false;
+    private long offHeapMaxMemoryBytes = 0;
+    private Path offHeapMappedDirectory;
+    private int topK = 0;
+    private TopKAggregator.Ranking topKRanking = TopKAggregator.Ranking.CALL_TIME;
+    private Sampler sampler;
+    private boolean asyncAggregation = false;
+    private int asyncCapacity = AsyncAggregator.DEFAULT_CAPACITY;
+    private AsyncAggregator.OverflowPolicy asyncOverflowPolicy = AsyncAggregator.OverflowPolicy.DROP;
+    private int prometheusMaxSeries = 0;
+    private int prometheusSqlLabelLength = 0;
+    private Boolean overheadMetrics;
+    private SlowStatementCapture slowStatementCapture;
 
     private TelemetryRegistryBuilder() {
     }
@@ -60,6 +105,54 @@ public class TelemetryRegistryBuilder {
         this.logFlush = logFlush;
         return this;
     }
+    /**
+     * Configures the builder to write the telemetry data as structured records to a stream instead of log lines.
+     * If not provided the telemetry data is logged by DefaultLogFlush.
+     * Not used if the logFlush is configured in builder.
+     *
+     * @param structuredOutput: the stream the records are written to
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withStructuredOutput(OutputStream structuredOutput) {
+        this.structuredOutput = structuredOutput;
+        return this;
+    }
+    /**
+     * Configures the builder with the encoder of the structured records e.g. BinaryRecordEncoder.
+     * If not provided records are written as JSON lines.
+     * Not used if the structured output is not configured or the logFlush is configured in builder.
+     *
+     * @param recordEncoder: the encoder of the records
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withRecordEncoder(TelemetryRecordEncoder recordEncoder) {
+        this.recordEncoder = recordEncoder;
+        return this;
+    }
+    /**
+     * Configures the builder to write the telemetry data as structured records to rotating files in a directory,
+     * separated from the application log. Takes precedence over the structured output.
+     * Not used if the logFlush is configured in builder.
+     *
+     * @param fileOutputDirectory: the directory of the telemetry files
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withFileOutput(Path fileOutputDirectory) {
+        this.fileOutputDirectory = fileOutputDirectory;
+        return this;
+    }
+    /**
+     * Configures the builder with the rotation, compression and retention of the telemetry files.
+     * If not provided files are rotated every 64 MB or hour, not compressed, and kept up to 1 GB or 7 days.
+     * Not used if the file output is not configured or the logFlush is configured in builder.
+     *
+     * @param fileRotationPolicy: the rotation policy of the telemetry files
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withFileRotationPolicy(FileRotationPolicy fileRotationPolicy) {
+        this.fileRotationPolicy = fileRotationPolicy;
+        return this;
+    }
     /**
      * Configures the builder with a provided workflowFinder.
      * Will be used to extract the workflow name from the given stack trace string extracted by StackTraceExtractor.
@@ -72,6 +165,31 @@ public class TelemetryRegistryBuilder {
         this.workflowFinder = workflowFinder;
         return this;
     }
+    /**
+     * Configures the builder to remember the workflow names found by the workflowFinder by stack trace fingerprint,
+     * across flushes, so that a stack trace is only parsed by the workflowFinder the first time it is seen.
+     * Not used if the workflowFinder is not configured, or the logFlush is configured in builder.
+     *
+     * @param workflowCaching: If true, the workflowFinder is wrapped in a CachingWorkflowFinder.
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withWorkflowCaching(boolean workflowCaching) {
+        this.workflowCaching = workflowCaching;
+        return this;
+    }
+    /**
+     * Configures the builder to find the workflow of every new call site while aggregating, on the thread which
+     * aggregates the statement, instead of when flushing. Implies workflow caching, so that flushes look the
+     * workflow names up instead of parsing the stack traces again.
+     * Not used if the workflowFinder is not configured, or the aggregator or the logFlush is configured in builder.
+     *
+     * @param workflowResolutionAtAggregation: If true, workflows are found while aggregating.
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withWorkflowResolutionAtAggregation(boolean workflowResolutionAtAggregation) {
+        this.workflowResolutionAtAggregation = workflowResolutionAtAggregation;
+        return this;
+    }
     /**
      * Configures the builder to enable stacktrace logging
      * If true, stacktrace hash and stacktrace will be logged.
@@ -84,6 +202,19 @@ public class TelemetryRegistryBuilder {
         this.stackTrace = stackTrace;
         return this;
     }
+    /**
+     * Configures the builder with the dictionary of the stack traces already logged, kept across flushes so that a
+     * stack trace is logged once, then again only after its refresh interval.
+     * If not provided stack traces are logged again after an hour, and up to 10000 stack traces are kept.
+     * Not used if the logFlush is configured in builder.
+     *
+     * @param stackTraceDictionary: the dictionary of the stack traces already logged
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withStackTraceDictionary(StackTraceDictionary stackTraceDictionary) {
+        this.stackTraceDictionary = stackTraceDictionary;
+        return this;
+    }
     /**
      * Configures the builder to enable stacktrace logging
      * Used to extract the stack trace as a string from the given Throwable object.
@@ -132,23 +263,315 @@ public class TelemetryRegistryBuilder {
         this.excludedTablesList = excludedTablesList;
         return this;
     }
+    /**
+     * Configures the builder to match the excluded tables as whole table names.
+     * If true, excluding AUDIT doesn't exclude the statements on AUDIT_LOG, otherwise table names match anywhere in the statements.
+     * Not used if the aggregator is configured in builder.
+     *
+     * @param excludedTablesWholeNames: true to match whole table names only
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withExcludedTablesWholeNames(boolean excludedTablesWholeNames) {
+        this.excludedTablesWholeNames = excludedTablesWholeNames;
+        return this;
+    }
+    /**
+     * Configures the builder with a provided cache of normalized SQL statements.
+     * If not provided Builder will create SqlNormalizationCache with the default entry and byte limits.
+     * Not used if the aggregator is configured in builder.
+     *
+     * @param sqlNormalizationCache: the cache used to normalize the SQL statements
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withSqlNormalizationCache(SqlNormalizationCache sqlNormalizationCache) {
+        this.sqlNormalizationCache = sqlNormalizationCache;
+        return this;
+    }
+    /**
+     * Configures the builder to aggregate in per thread buffers merged at flush time.
+     * If true, Builder will create ThreadLocalAggregator instead of MapBasedAggregator, it can't be combined with
+     * dictionary, off heap or top K aggregation.
+     * Not used if the aggregator is configured in builder.
+     *
+     * @param threadLocalAggregation: If true, every thread aggregates its calls in its own buffer.
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withThreadLocalAggregation(boolean threadLocalAggregation) {
+        this.threadLocalAggregation = threadLocalAggregation;
+        return this;
+    }
+    /**
+     * Configures the builder to aggregate in primitive counters keyed by dictionary ids, resolved at flush time.
+     * If true, Builder will create DictionaryAggregator instead of MapBasedAggregator, it can't be combined with another aggregation.
+     * Not used if the aggregator is configured in builder.
+     *
+     * @param dictionaryAggregation: If true, the calls are aggregated with much less heap per distinct statement.
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withDictionaryAggregation(boolean dictionaryAggregation) {
+        this.dictionaryAggregation = dictionaryAggregation;
+        return this;
+    }
+    /**
+     * Configures the builder to aggregate in off heap tables, for workloads with a high number of distinct statements.
+     * If greater than 0, Builder will create OffHeapAggregator instead of MapBasedAggregator, it can't be combined with another aggregation.
+     * Not used if the aggregator is configured in builder.
+     *
+     * @param offHeapMaxMemoryBytes: the maximum memory of the off heap tables, in bytes
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withOffHeapAggregation(long offHeapMaxMemoryBytes) {
+        this.offHeapMaxMemoryBytes = offHeapMaxMemoryBytes;
+        return this;
+    }
+    /**
+     * Configures the builder with a directory of memory mapped files backing the off heap tables.
+     * If not provided the off heap tables are direct buffers.
+     * Not used if the aggregator is configured in builder.
+     *
+     * @param offHeapMappedDirectory: the directory of the mapped files, deleted when the registry is closed
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withOffHeapMappedDirectory(Path offHeapMappedDirectory) {
+        this.offHeapMappedDirectory = offHeapMappedDirectory;
+        return this;
+    }
+    /**
+     * Configures the builder to only track the K heaviest statements of each flush interval, the others being reported together.
+     * If greater than 0, Builder will create TopKAggregator instead of MapBasedAggregator, it can't be combined with another aggregation.
+     * Not used if the aggregator is configured in builder.
+     *
+     * @param topK: the number of tracked statements
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withTopK(int topK) {
+        this.topK = topK;
+        return this;
+    }
+    /**
+     * Configures the builder with the metric ranking the statements tracked by the TopKAggregator.
+     * If not provided Builder will rank the statements by total call time.
+     * Not used if the aggregator is configured in builder.
+     *
+     * @param topKRanking: the metric ranking the statements
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withTopKRanking(TopKAggregator.Ranking topKRanking) {
+        this.topKRanking = topKRanking;
+        return this;
+    }
+    /**
+     * Configures the builder with a provided sampler.
+     * Used to aggregate only part of the calls, the aggregated calls standing for the skipped ones.
+     * If not provided every call is aggregated.
+     * Not used if the aggregator is configured in builder.
+     *
+     * @param sampler: any implementation of Sampler e.g. RateSampler
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withSampler(Sampler sampler) {
+        this.sampler = sampler;
+        return this;
+    }
+    /**
+     * Configures the builder to hand the calls over to a background aggregator.
+     * If true, the thread running the statement only captures the call site and queues the call, the normalization,
+     * exclusion checks and aggregation are done by a background worker.
+     * Not used if the aggregator is configured in builder.
+     *
+     * @param asyncAggregation: If true, calls are aggregated by a background worker.
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withAsyncAggregation(boolean asyncAggregation) {
+        this.asyncAggregation = asyncAggregation;
+        return this;
+    }
+    /**
+     * Configures the builder with the number of calls queued for the background aggregator.
+     * Not used if the async aggregation is not enabled or the aggregator is configured in builder.
+     *
+     * @param asyncCapacity: the number of calls the queue holds, rounded up to a power of two
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withAsyncCapacity(int asyncCapacity) {
+        this.asyncCapacity = asyncCapacity;
+        return this;
+    }
+    /**
+     * Configures the builder with what to do with a call when the queue of the background aggregator is full.
+     * If not provided calls are dropped and counted.
+     * Not used if the async aggregation is not enabled or the aggregator is configured in builder.
+     *
+     * @param asyncOverflowPolicy: DROP to drop the call, BLOCK to wait for a free slot
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withAsyncOverflowPolicy(AsyncAggregator.OverflowPolicy asyncOverflowPolicy) {
+        this.asyncOverflowPolicy = asyncOverflowPolicy;
+        return this;
+    }
+    /**
+     * Configures the builder to keep cumulative totals of the flushed telemetry data for Prometheus, in a
+     * PrometheusCollector wrapping the aggregator, served by a PrometheusEndpoint.
+     * If 0, the default, no totals are kept.
+     * Not used if the aggregator is configured in builder.
+     *
+     * @param prometheusMaxSeries: the maximum number of series, beyond which statements are collected as "other"
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withPrometheusMaxSeries(int prometheusMaxSeries) {
+        this.prometheusMaxSeries = prometheusMaxSeries;
+        return this;
+    }
+    /**
+     * Configures the builder to expose the normalized statement of every Prometheus series, truncated to a length.
+     * If 0, the default, statements are only identified by their fingerprint.
+     * Not used if the Prometheus totals are not enabled or the aggregator is configured in builder.
+     *
+     * @param prometheusSqlLabelLength: the maximum length of the statement in the sql label
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withPrometheusSqlLabelLength(int prometheusSqlLabelLength) {
+        this.prometheusSqlLabelLength = prometheusSqlLabelLength;
+        return this;
+    }
+    /**
+     * Configures the builder to time the stages the telemetry adds to every statement, reported by
+     * TelemetryRegistry.getOverhead() along the aggregation failures, window sizes and flush durations.
+     * The overhead metrics are shared by all registries, building the registry enables or disables their timing.
+     * If not provided the timing is left as is, off unless enabled before.
+     *
+     * @param overheadMetrics: If true, the stages of every statement are timed, if false they are not.
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withOverheadMetrics(boolean overheadMetrics) {
+        this.overheadMetrics = overheadMetrics;
+        return this;
+    }
+    /**
+     * Configures the builder with a provided slow statement capture.
+     * Used to keep the slowest executions of every statement above its threshold, with their bound parameters where
+     * the driver exposes them, thread, time and call site. The slow statements are flushed with the telemetry data by
+     * the logFlush built by the builder. A logFlush configured in builder must already flush this capture.
+     * If not provided slow statements are not captured.
+     *
+     * @param slowStatementCapture: the SlowStatementCapture, e.g. new SlowStatementCapture(1_000_000)
+     * @return the current instance of TelemetryRegistryBuilder for chain setting
+     */
+    public TelemetryRegistryBuilder withSlowStatementCapture(SlowStatementCapture slowStatementCapture) {
+        this.slowStatementCapture = slowStatementCapture;
+        return this;
+    }
     /**
      * Builds and returns a TelemetryRegistry using the properties set on the builder.
      *
      * @return a new TelemetryRegistry object
+     * @throws IllegalStateException if more than one of thread local, dictionary, off heap and top K aggregation is
+     *                               configured, or if the slow statement capture is not flushed by the logFlush
+     *                               configured in builder
      */
     public TelemetryRegistry build() {
 
         stackTraceExtractor = Optional.ofNullable(stackTraceExtractor)
                 .orElse(new DepthFilterStackTraceExtractor(stackTraceDepth, stackTraceFilter));
 
+        sqlNormalizationCache = Optional.ofNullable(sqlNormalizationCache)
+                .orElse(new SqlNormalizationCache());
+
+        if ((workflowCaching || workflowResolutionAtAggregation) && Objects.nonNull(workflowFinder)
+                && !(workflowFinder instanceof CachingWorkflowFinder)) {
+            workflowFinder = new CachingWorkflowFinder(workflowFinder);
+        }
+
         aggregator = Optional.ofNullable(aggregator)
-                .orElse(new MapBasedAggregator(excludedTablesList, stackTraceExtractor));
+                .orElseGet(this::buildAggregator);
+
+        if (Objects.nonNull(logFlush) && Objects.nonNull(slowStatementCapture)
+                && slowStatementCapture != getSlowStatementCapture(logFlush)) {
+            // Nothing would drain the capture, and the configured logFlush is not changed behind its owner's back
+            throw new IllegalStateException("Slow statement capture not flushed by the configured logFlush "
+                    + logFlush.getClass().getName() + ", set it on the logFlush or let the builder build the logFlush");
+        }
 
         logFlush = Optional.ofNullable(logFlush)
-                .orElse(new DefaultLogFlush(aggregator, workflowFinder, stackTrace));
+                .orElseGet(this::buildLogFlush);
+
+        if (Objects.nonNull(overheadMetrics)) {
+            TelemetryOverhead.shared().setEnabled(overheadMetrics);
+        }
+
+        return new TelemetryRegistry(aggregator, logFlush, slowStatementCapture);
+    }
+
+    private static SlowStatementCapture getSlowStatementCapture(LogFlush flush) {
+        if (flush instanceof DefaultLogFlush) {
+            return ((DefaultLogFlush) flush).getSlowStatementCapture();
+        }
+        if (flush instanceof StructuredLogFlush) {
+            return ((StructuredLogFlush) flush).getSlowStatementCapture();
+        }
+        return null;
+    }
+
+    private LogFlush buildLogFlush() {
+        TelemetryRecordEncoder encoder = Optional.ofNullable(recordEncoder).orElseGet(JsonLinesRecordEncoder::new);
+        StackTraceDictionary dictionary = Optional.ofNullable(stackTraceDictionary).orElseGet(StackTraceDictionary::new);
+        if (Objects.nonNull(fileOutputDirectory)) {
+            FileLogFlush fileLogFlush = new FileLogFlush(aggregator, workflowFinder, stackTrace, encoder,
+                    fileOutputDirectory, Optional.ofNullable(fileRotationPolicy).orElseGet(FileRotationPolicy::new),
+                    dictionary);
+            fileLogFlush.setSlowStatementCapture(slowStatementCapture);
+            return fileLogFlush;
+        }
+        if (Objects.nonNull(structuredOutput)) {
+            StructuredLogFlush structuredLogFlush = new StructuredLogFlush(aggregator, workflowFinder, stackTrace,
+                    encoder, structuredOutput, dictionary);
+            structuredLogFlush.setSlowStatementCapture(slowStatementCapture);
+            return structuredLogFlush;
+        }
+        DefaultLogFlush defaultLogFlush = new DefaultLogFlush(aggregator, workflowFinder, stackTrace, dictionary);
+        defaultLogFlush.setSlowStatementCapture(slowStatementCapture);
+        return defaultLogFlush;
+    }
 
-        return new TelemetryRegistry(aggregator, logFlush);
+    private Aggregator<Map<SqlTelemetry, SqlTelemetry>> buildAggregator() {
+        List<String> aggregations = new ArrayList<>();
+        if (threadLocalAggregation) {
+            aggregations.add("thread local");
+        }
+        if (dictionaryAggregation) {
+            aggregations.add("dictionary");
+        }
+        if (offHeapMaxMemoryBytes > 0) {
+            aggregations.add("off heap");
+        }
+        if (topK > 0) {
+            aggregations.add("top K");
+        }
+        if (aggregations.size() > 1) {
+            throw new IllegalStateException("Conflicting aggregations configured: " + String.join(", ", aggregations));
+        }
+        ExcludedTablesMatcher excludedTablesMatcher = new ExcludedTablesMatcher(excludedTablesList, excludedTablesWholeNames);
+        AbstractAggregator baseAggregator;
+        if (threadLocalAggregation) {
+            baseAggregator = new ThreadLocalAggregator(excludedTablesMatcher, stackTraceExtractor, sqlNormalizationCache, sampler);
+        } else if (dictionaryAggregation) {
+            baseAggregator = new DictionaryAggregator(excludedTablesMatcher, stackTraceExtractor, sqlNormalizationCache, sampler);
+        } else if (offHeapMaxMemoryBytes > 0) {
+            baseAggregator = new OffHeapAggregator(excludedTablesMatcher, stackTraceExtractor, sqlNormalizationCache, sampler,
+                    offHeapMaxMemoryBytes, offHeapMappedDirectory);
+        } else if (topK > 0) {
+            baseAggregator = new TopKAggregator(excludedTablesMatcher, stackTraceExtractor, sqlNormalizationCache, sampler,
+                    topK, topKRanking);
+        } else {
+            baseAggregator = new MapBasedAggregator(excludedTablesMatcher, stackTraceExtractor, sqlNormalizationCache, sampler);
+        }
+        if (workflowResolutionAtAggregation && Objects.isNull(logFlush) && Objects.nonNull(workflowFinder)) {
+            baseAggregator.setWorkflowFinder((CachingWorkflowFinder) workflowFinder);
+        }
+        Aggregator<Map<SqlTelemetry, SqlTelemetry>> builtAggregator = asyncAggregation
+                ? new AsyncAggregator(baseAggregator, asyncCapacity, asyncOverflowPolicy) : baseAggregator;
+        return prometheusMaxSeries > 0 ? new PrometheusCollector(builtAggregator, prometheusMaxSeries,
+                prometheusSqlLabelLength, PrometheusCollector.DEFAULT_BUCKET_BOUNDS) : builtAggregator;
     }
 
 }
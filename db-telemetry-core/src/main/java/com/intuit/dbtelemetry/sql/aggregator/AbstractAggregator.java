@@ -0,0 +1,337 @@
+package com.intuit.dbtelemetry.sql.aggregator;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.TelemetryOverhead;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSiteExtractor;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackTraceExtractor;
+import com.intuit.dbtelemetry.sql.finder.CachingWorkflowFinder;
+import com.intuit.dbtelemetry.sql.sampler.Sampler;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
+import com.intuit.dbtelemetry.sql.utils.ExcludedTablesMatcher;
+import com.intuit.dbtelemetry.sql.utils.SqlHelperUtils;
+import com.intuit.dbtelemetry.sql.utils.SqlNormalizationCache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Base class of the aggregators keyed by producer, normalized SQL and call site.
+ * Takes care of the excluded tables, the normalization of the statement, the sampling, the capture of the call
+ * site and of the slow statements, and leaves the storage of the call to the subclasses.
+ */
+public abstract class AbstractAggregator implements Aggregator<Map<SqlTelemetry, SqlTelemetry>> {
+
+    private final ExcludedTablesMatcher excludedTablesMatcher;
+    private final StackTraceExtractor stackTraceExtractor;
+    private final SqlNormalizationCache sqlNormalizationCache;
+    private final Sampler sampler;
+    private final TelemetryOverhead overhead = TelemetryOverhead.shared();
+    private volatile CachingWorkflowFinder workflowFinder;
+
+    /**
+     * Constructs an AbstractAggregator.
+     *
+     * @param excludedTablesList    tables for which no telemetry data is collected
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     */
+    protected AbstractAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor,
+                                 SqlNormalizationCache sqlNormalizationCache) {
+        this(excludedTablesList, stackTraceExtractor, sqlNormalizationCache, null);
+    }
+
+    /**
+     * Constructs an AbstractAggregator sampling the aggregated calls.
+     *
+     * @param excludedTablesList    tables for which no telemetry data is collected
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     * @param sampler               sampler of the aggregated calls, or null to aggregate every call
+     */
+    protected AbstractAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor,
+                                 SqlNormalizationCache sqlNormalizationCache, Sampler sampler) {
+        this(new ExcludedTablesMatcher(excludedTablesList), stackTraceExtractor, sqlNormalizationCache, sampler);
+    }
+
+    /**
+     * Constructs an AbstractAggregator with a configured matcher of the excluded tables.
+     *
+     * @param excludedTablesMatcher matcher of the tables for which no telemetry data is collected, or null for none
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     * @param sampler               sampler of the aggregated calls, or null to aggregate every call
+     */
+    protected AbstractAggregator(ExcludedTablesMatcher excludedTablesMatcher, StackTraceExtractor stackTraceExtractor,
+                                 SqlNormalizationCache sqlNormalizationCache, Sampler sampler) {
+        this.excludedTablesMatcher = Optional.ofNullable(excludedTablesMatcher)
+                .orElseGet(() -> new ExcludedTablesMatcher(null));
+        this.stackTraceExtractor = stackTraceExtractor;
+        this.sqlNormalizationCache = sqlNormalizationCache;
+        this.sampler = sampler;
+    }
+
+    /**
+     * Aggregates SQL telemetry data. This method accepts the producer details, SQL, and execution time
+     * for further use, whilst handling the SQL with missing parameters.
+     *
+     * @param producer      the producer of the SQL statement
+     * @param sql           the SQL statement itself
+     * @param executionTime the time taken by the SQL statement to execute
+     * @throws TelemetryAggregatorException if there's an error during the aggregation process
+     */
+    @Override
+    public void aggregate(String producer, String sql, long executionTime) throws TelemetryAggregatorException {
+        aggregate(producer, sql, executionTime, null);
+    }
+
+    /**
+     * Aggregates SQL telemetry data and also handles specific SQL statement with given parameters.
+     *
+     * @param producer      the producer of the SQL statement
+     * @param sql           the SQL statement itself
+     * @param executionTime the time taken by the SQL statement to execute
+     * @param sqlWithParameters SQL statement with parameters
+     * @throws TelemetryAggregatorException if there's an error during the aggregation process
+     */
+    public void aggregate(String producer, String sql, long executionTime, String sqlWithParameters) throws TelemetryAggregatorException {
+        aggregate(producer, sql, executionTime, sqlWithParameters, null);
+    }
+
+    /**
+     * Aggregates SQL telemetry data with a call site captured beforehand, e.g. on the thread which ran the statement.
+     *
+     * @param producer      the producer of the SQL statement
+     * @param sql           the SQL statement itself
+     * @param executionTime the time taken by the SQL statement to execute
+     * @param sqlWithParameters SQL statement with parameters
+     * @param callSite      the call site of the statement, or null to capture it from the current thread
+     * @throws TelemetryAggregatorException if there's an error during the aggregation process
+     */
+    @Override
+    public void aggregate(String producer, String sql, long executionTime, String sqlWithParameters, CallSite callSite)
+            throws TelemetryAggregatorException {
+        aggregate(producer, sql, executionTime, sqlWithParameters, callSite, null, null);
+    }
+
+    /**
+     * Aggregates SQL telemetry data and captures the slow statements which are not excluded, with the statement
+     * normalized once for both.
+     *
+     * @param producer             the producer of the SQL statement
+     * @param sql                  the SQL statement itself
+     * @param executionTime        the time taken by the SQL statement to execute
+     * @param slowStatementCapture the capture of the slow statements, or null
+     * @param parameters           the supplier of the bound parameters, only called for the captured statements
+     * @throws TelemetryAggregatorException if there's an error during the aggregation process
+     */
+    @Override
+    public void aggregate(String producer, String sql, long executionTime, SlowStatementCapture slowStatementCapture,
+                          Supplier<String> parameters) throws TelemetryAggregatorException {
+        aggregate(producer, sql, executionTime, null, null, slowStatementCapture, parameters);
+    }
+
+    /**
+     * Aggregates SQL telemetry data with a call site captured beforehand, and captures the slow statements which are
+     * not excluded. Slow statements are captured before the sampling, so that the sampler doesn't skip the slowest
+     * executions, and their bound parameters are only kept by the capture.
+     *
+     * @param producer             the producer of the SQL statement
+     * @param sql                  the SQL statement itself
+     * @param executionTime        the time taken by the SQL statement to execute
+     * @param sqlWithParameters    SQL statement with parameters
+     * @param callSite             the call site of the statement, or null to capture it from the current thread
+     * @param slowStatementCapture the capture of the slow statements, or null
+     * @param parameters           the supplier of the bound parameters, only called for the captured statements
+     * @throws TelemetryAggregatorException if there's an error during the aggregation process
+     */
+    public void aggregate(String producer, String sql, long executionTime, String sqlWithParameters, CallSite callSite,
+                          SlowStatementCapture slowStatementCapture, Supplier<String> parameters)
+            throws TelemetryAggregatorException {
+        if (Objects.isNull(sql)){
+            return;
+        }
+        try {
+            String normalizedSql = normalizeUnlessExcluded(sql);
+            if (Objects.isNull(normalizedSql)) {
+                return;
+            }
+
+            if (Objects.nonNull(slowStatementCapture) && slowStatementCapture.isSlow(executionTime)) {
+                if (Objects.isNull(callSite)) {
+                    callSite = timedCaptureCallSite();
+                }
+                String boundParameters = Objects.isNull(parameters) ? null : parameters.get();
+                slowStatementCapture.capture(producer, normalizedSql, boundParameters, executionTime, callSite);
+            }
+
+            // Sampled before the call site is captured, skipped calls below the slow threshold don't pay for the
+            // stack walk
+            long weight = sample(normalizedSql, executionTime);
+            if (weight <= 0) {
+                return;
+            }
+            recordSampled(producer, normalizedSql, executionTime, sqlWithParameters, callSite, weight);
+        } catch (Exception e) {
+            throw new TelemetryAggregatorException("Fail to aggregate SQL" +
+                    "producer=" + producer +
+                    " sql=" + sql +
+                    " calltime=" + executionTime, e);
+        }
+    }
+
+    /**
+     * Normalizes a statement unless it reads or writes an excluded table. Lets an aggregator handing the calls over
+     * to another thread drop the excluded ones before queueing them.
+     *
+     * @param sql the SQL statement itself
+     * @return the normalized SQL statement, or null when the statement is excluded
+     */
+    String normalizeUnlessExcluded(String sql) {
+        // Matched on the raw statement, as before the normalization replaced quoted names such as [table],
+        // and before it, so that excluded statements are not normalized
+        long start = overhead.start();
+        boolean excluded = excludedTablesMatcher.isExcluded(sql);
+        overhead.stop(TelemetryOverhead.Stage.EXCLUSION, start);
+        if (excluded) {
+            return null;
+        }
+        start = overhead.start();
+        String normalizedSql = normalize(sql);
+        overhead.stop(TelemetryOverhead.Stage.NORMALIZATION, start);
+        return normalizedSql;
+    }
+
+    /**
+     * Samples a call of a normalized statement. Lets an aggregator handing the calls over to another thread skip the
+     * sampled out ones before capturing their call site and queueing them.
+     *
+     * @param normalizedSql the normalized SQL statement
+     * @param executionTime the time taken by the SQL statement to execute
+     * @return the number of calls the call stands for, 0 when it is skipped
+     */
+    long sample(String normalizedSql, long executionTime) {
+        return Objects.isNull(sampler) ? 1L : sampler.sample(normalizedSql, executionTime);
+    }
+
+    /**
+     * Records a call already checked for exclusion and sampled, capturing its call site when not known yet.
+     *
+     * @param producer          the producer of the SQL statement
+     * @param normalizedSql     the normalized SQL statement
+     * @param executionTime     the time taken by the SQL statement to execute
+     * @param sqlWithParameters SQL statement with parameters
+     * @param callSite          the call site of the statement, or null to capture it from the current thread
+     * @param weight            the number of calls the recorded call stands for, as returned by the sampling
+     */
+    void recordSampled(String producer, String normalizedSql, long executionTime, String sqlWithParameters,
+                       CallSite callSite, long weight) {
+        if (Objects.isNull(callSite)) {
+            callSite = timedCaptureCallSite();
+        }
+        CachingWorkflowFinder finder = workflowFinder;
+        if (Objects.nonNull(finder) && !CallSite.NONE.equals(callSite)) {
+            finder.resolve(callSite);
+        }
+        long start = overhead.start();
+        record(producer, normalizedSql, callSite, sqlWithParameters, executionTime, weight);
+        overhead.stop(TelemetryOverhead.Stage.RECORD, start);
+    }
+
+    /**
+     * Records a call of a normalized statement.
+     *
+     * @param producer          the producer of the SQL statement
+     * @param normalizedSql     the normalized SQL statement
+     * @param callSite          the call site of the statement, {@link CallSite#NONE} when stack traces are disabled
+     * @param sqlWithParameters SQL statement with parameters
+     * @param executionTime     the time taken by the SQL statement to execute
+     * @param weight            the number of calls the recorded call stands for, greater than 1 for sampled calls
+     */
+    protected abstract void record(String producer, String normalizedSql, CallSite callSite, String sqlWithParameters,
+                                   long executionTime, long weight);
+
+    /**
+     * Returns the cache used to normalize statements, or null when statements are normalized on every call.
+     *
+     * @return the SqlNormalizationCache of this aggregator
+     */
+    public SqlNormalizationCache getSqlNormalizationCache() {
+        return sqlNormalizationCache;
+    }
+
+    /**
+     * Returns the matcher of the tables for which no telemetry data is collected.
+     *
+     * @return the ExcludedTablesMatcher of this aggregator
+     */
+    public ExcludedTablesMatcher getExcludedTablesMatcher() {
+        return excludedTablesMatcher;
+    }
+
+    /**
+     * Returns the sampler of the aggregated calls, or null when every call is aggregated.
+     *
+     * @return the Sampler of this aggregator
+     */
+    public Sampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * Returns the finder resolving the workflow of the new call sites while aggregating, or null when workflows are
+     * only found by the log flush.
+     *
+     * @return the CachingWorkflowFinder of this aggregator
+     */
+    public CachingWorkflowFinder getWorkflowFinder() {
+        return workflowFinder;
+    }
+
+    /**
+     * Resolves the workflow of every new call site while aggregating, so that the log flush sharing the finder only
+     * looks the workflow names up instead of parsing the stack traces of the flushed window.
+     *
+     * @param workflowFinder the finder shared with the log flush, or null to leave the workflows to the log flush
+     */
+    public void setWorkflowFinder(CachingWorkflowFinder workflowFinder) {
+        this.workflowFinder = workflowFinder;
+    }
+
+    /**
+     * Captures the call site of the current thread.
+     *
+     * @return the call site of the current thread, or {@link CallSite#NONE} when stack traces are disabled
+     */
+    @Override
+    public CallSite captureCallSite() {
+        return isStackTraceEnabled() ? extractCallSite() : CallSite.NONE;
+    }
+
+    private CallSite timedCaptureCallSite() {
+        long start = overhead.start();
+        CallSite callSite = captureCallSite();
+        overhead.stop(TelemetryOverhead.Stage.CALL_SITE, start);
+        return callSite;
+    }
+
+    private String normalize(String sql) {
+        return Objects.isNull(sqlNormalizationCache) ? SqlHelperUtils.sanitizeSQL(sql) : sqlNormalizationCache.normalize(sql);
+    }
+
+    private CallSite extractCallSite() {
+        // Call site extractors walk the current thread and fingerprint the frames, so no Throwable needs to be
+        // filled in and no stack trace String needs to be built or compared for known call sites
+        if (stackTraceExtractor instanceof CallSiteExtractor) {
+            return ((CallSiteExtractor) stackTraceExtractor).extractCallSite();
+        }
+        return CallSite.of(stackTraceExtractor.extractStackTrace(new Throwable()));
+    }
+
+    private boolean isStackTraceEnabled() {
+        return Objects.nonNull(stackTraceExtractor);
+    }
+}
@@ -1,5 +1,10 @@
 package com.intuit.dbtelemetry.sql.aggregator;
 
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
+
+import java.util.function.Supplier;
+
 public interface Aggregator<T> {
     /**
      * Aggregates the SQL telemetry data. This method is used to collect SQL execution data like execution time given by a certain producer.
@@ -11,10 +16,53 @@ public interface Aggregator<T> {
      */
     void aggregate(String producer, String sql, long executionTime) throws TelemetryAggregatorException;
 
+    /**
+     * Aggregates the SQL telemetry data with the statement with parameters and a call site captured beforehand, e.g.
+     * shared with a slow statement capture. Aggregators without call site ignore both.
+     *
+     * @param producer the source of the data
+     * @param sql the SQL statement that was executed
+     * @param executionTime the time it took to execute the SQL statement
+     * @param sqlWithParameters the SQL statement with parameters, or null
+     * @param callSite the call site of the statement, or null to capture it from the current thread
+     * @throws TelemetryAggregatorException if an error occurs during the aggregation process
+     */
+    default void aggregate(String producer, String sql, long executionTime, String sqlWithParameters, CallSite callSite)
+            throws TelemetryAggregatorException {
+        aggregate(producer, sql, executionTime);
+    }
+
+    /**
+     * Aggregates the SQL telemetry data and captures the call in a slow statement capture when it is above its
+     * threshold and not excluded, even if the sampler skips it, with the normalized statement and the call site of
+     * the aggregation. The bound parameters are only supplied for the captured calls. Aggregators without call site
+     * ignore the capture.
+     *
+     * @param producer the source of the data
+     * @param sql the SQL statement that was executed
+     * @param executionTime the time it took to execute the SQL statement
+     * @param slowStatementCapture the capture of the slow statements, or null
+     * @param parameters the supplier of the bound parameters of the statement, called on the current thread
+     * @throws TelemetryAggregatorException if an error occurs during the aggregation process
+     */
+    default void aggregate(String producer, String sql, long executionTime, SlowStatementCapture slowStatementCapture,
+                           Supplier<String> parameters) throws TelemetryAggregatorException {
+        aggregate(producer, sql, executionTime);
+    }
+
+    /**
+     * Captures the call site of the current thread the way the aggregator would.
+     *
+     * @return the call site of the current thread, or {@link CallSite#NONE} when the aggregator doesn't capture any
+     */
+    default CallSite captureCallSite() {
+        return CallSite.NONE;
+    }
+
     /**
      * Retrieves the accumulated telemetry data and resets the internal data store.
      *
-     * @param threadSleep the time to sleep in milliseconds before getting and resetting data
+     * @param threadSleep the maximum time in milliseconds to wait for aggregations still writing to the data
      * @return aggregated telemetry data of type T
      */
     T getAndResetDBTelemetryData(long threadSleep);
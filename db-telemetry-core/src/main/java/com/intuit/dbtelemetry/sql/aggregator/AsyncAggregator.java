@@ -0,0 +1,417 @@
+package com.intuit.dbtelemetry.sql.aggregator;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Aggregator handing the calls over to background workers, which run the aggregation of the delegate aggregator.
+ * The thread running the statement runs the exclusion check, normalization and sampling of the delegate, so that
+ * excluded and sampled out calls are neither queued nor pay for a stack walk. It then captures the call site of the
+ * other calls, when stack traces are enabled, and stores them in a preallocated slot of a bounded lock-free ring
+ * buffer. The stack walk capturing the call site runs on the thread running the statement, as the stack only exists
+ * there, so with stack traces enabled it remains the main cost paid by that thread.
+ * Calls above the threshold of a slow statement capture are rare and aggregated by the delegate on the thread running
+ * the statement, whose parameters, name and call site are captured with them.
+ * When the ring buffer is full the call is either dropped and counted, or the caller waits for a free slot.
+ * Idle workers park for longer and longer, up to {@link #MAX_IDLE_PARK_MILLIS} milliseconds, and are woken up by
+ * the flushes. The workers are daemon threads stopped by {@link #close()}, which the TelemetryRegistry owning the
+ * aggregator calls when it is closed.
+ */
+@Slf4j
+public class AsyncAggregator implements Aggregator<Map<SqlTelemetry, SqlTelemetry>>, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final long MAX_IDLE_PARK_MILLIS = 10L;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(MAX_IDLE_PARK_MILLIS);
+    private static final int SPINS_BEFORE_PARK = 64;
+
+    /**
+     * What to do with a call when the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** The call is not aggregated and counted as dropped */
+        DROP,
+        /** The thread running the statement waits for a free slot */
+        BLOCK
+    }
+
+    private final AbstractAggregator delegate;
+    private final OverflowPolicy overflowPolicy;
+    private final Event[] events;
+    // Vyukov bounded queue: a slot is free for position p when its sequence is p and filled when it is p + 1
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong processedCount = new AtomicLong();
+    private final LongAdder droppedCount = new LongAdder();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    /**
+     * Constructs an AsyncAggregator with one worker and the default capacity, dropping calls when full.
+     *
+     * @param delegate the aggregator run by the worker
+     */
+    public AsyncAggregator(AbstractAggregator delegate) {
+        this(delegate, DEFAULT_CAPACITY, OverflowPolicy.DROP);
+    }
+
+    /**
+     * Constructs an AsyncAggregator with one worker.
+     *
+     * @param delegate       the aggregator run by the worker
+     * @param capacity       the number of calls the ring buffer holds, rounded up to a power of two
+     * @param overflowPolicy what to do with a call when the ring buffer is full
+     */
+    public AsyncAggregator(AbstractAggregator delegate, int capacity, OverflowPolicy overflowPolicy) {
+        this(delegate, capacity, overflowPolicy, 1);
+    }
+
+    /**
+     * Constructs an AsyncAggregator.
+     *
+     * @param delegate       the aggregator run by the workers
+     * @param capacity       the number of calls the ring buffer holds, rounded up to a power of two
+     * @param overflowPolicy what to do with a call when the ring buffer is full
+     * @param workerCount    the number of background workers
+     */
+    public AsyncAggregator(AbstractAggregator delegate, int capacity, OverflowPolicy overflowPolicy, int workerCount) {
+        this.delegate = Objects.requireNonNull(delegate, "Delegate aggregator cannot be null");
+        this.overflowPolicy = Objects.isNull(overflowPolicy) ? OverflowPolicy.DROP : overflowPolicy;
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.events = new Event[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            events[i] = new Event();
+            sequences.set(i, i);
+        }
+        for (int i = 0; i < Math.max(workerCount, 1); i++) {
+            Thread worker = new Thread(this::work, "db-telemetry-async-aggregator-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Hands the call over to the background workers.
+     *
+     * @param producer      the producer of the SQL statement
+     * @param sql           the SQL statement itself
+     * @param executionTime the time taken by the SQL statement to execute
+     * @throws TelemetryAggregatorException if the call could not be checked or its call site captured
+     */
+    @Override
+    public void aggregate(String producer, String sql, long executionTime) throws TelemetryAggregatorException {
+        aggregate(producer, sql, executionTime, null);
+    }
+
+    /**
+     * Hands the call over to the background workers, with the SQL statement with parameters.
+     *
+     * @param producer      the producer of the SQL statement
+     * @param sql           the SQL statement itself
+     * @param executionTime the time taken by the SQL statement to execute
+     * @param sqlWithParameters SQL statement with parameters
+     * @throws TelemetryAggregatorException if the call could not be checked or its call site captured
+     */
+    public void aggregate(String producer, String sql, long executionTime, String sqlWithParameters) throws TelemetryAggregatorException {
+        aggregate(producer, sql, executionTime, sqlWithParameters, null);
+    }
+
+    /**
+     * Hands the call over to the background workers, with a call site captured beforehand, unless it is excluded or
+     * sampled out by the delegate.
+     *
+     * @param producer      the producer of the SQL statement
+     * @param sql           the SQL statement itself
+     * @param executionTime the time taken by the SQL statement to execute
+     * @param sqlWithParameters SQL statement with parameters
+     * @param callSite      the call site of the statement, or null to capture it from the current thread
+     * @throws TelemetryAggregatorException if the call could not be checked or its call site captured
+     */
+    @Override
+    public void aggregate(String producer, String sql, long executionTime, String sqlWithParameters, CallSite callSite)
+            throws TelemetryAggregatorException {
+        if (Objects.isNull(sql)) {
+            return;
+        }
+        if (!running) {
+            droppedCount.increment();
+            return;
+        }
+        String normalizedSql;
+        long weight;
+        try {
+            normalizedSql = delegate.normalizeUnlessExcluded(sql);
+            if (Objects.isNull(normalizedSql)) {
+                return;
+            }
+            weight = delegate.sample(normalizedSql, executionTime);
+            if (weight <= 0) {
+                return;
+            }
+            // The stack only exists on this thread
+            if (Objects.isNull(callSite)) {
+                callSite = delegate.captureCallSite();
+            }
+        } catch (Exception e) {
+            throw new TelemetryAggregatorException("Fail to hand over SQL" +
+                    "producer=" + producer +
+                    " sql=" + sql +
+                    " calltime=" + executionTime, e);
+        }
+        int spins = 0;
+        while (!offer(producer, normalizedSql, executionTime, sqlWithParameters, callSite, weight)) {
+            // No worker frees a slot once closed
+            if (overflowPolicy == OverflowPolicy.DROP || !running) {
+                droppedCount.increment();
+                return;
+            }
+            spins = backOff(spins);
+        }
+    }
+
+    /**
+     * Hands the call over to the background workers, unless it is above the threshold of the slow statement capture:
+     * such a call is aggregated and captured by the delegate on this thread, where its parameters can be extracted.
+     *
+     * @param producer             the producer of the SQL statement
+     * @param sql                  the SQL statement itself
+     * @param executionTime        the time taken by the SQL statement to execute
+     * @param slowStatementCapture the capture of the slow statements, or null
+     * @param parameters           the supplier of the bound parameters, only called for the captured statements
+     * @throws TelemetryAggregatorException if the call could not be aggregated
+     */
+    @Override
+    public void aggregate(String producer, String sql, long executionTime, SlowStatementCapture slowStatementCapture,
+                          Supplier<String> parameters) throws TelemetryAggregatorException {
+        if (Objects.isNull(slowStatementCapture) || !slowStatementCapture.isSlow(executionTime)) {
+            aggregate(producer, sql, executionTime);
+        } else if (!running) {
+            droppedCount.increment();
+        } else {
+            delegate.aggregate(producer, sql, executionTime, slowStatementCapture, parameters);
+        }
+    }
+
+    /**
+     * Extract and reset the telemetry data of the delegate, once the calls handed over before are aggregated.
+     *
+     * @param threadSleep maximum time in milliseconds to wait for the calls handed over and in-flight aggregations
+     * @return a map of the current telemetry data if available; null otherwise
+     */
+    @Override
+    public Map<SqlTelemetry, SqlTelemetry> getAndResetDBTelemetryData(long threadSleep) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(threadSleep, 0L));
+        long handedOver = tail.get();
+        // Idle workers may be parked for a while, the calls handed over are aggregated without waiting for them
+        workers.forEach(LockSupport::unpark);
+        int spins = 0;
+        while (processedCount.get() < handedOver && System.nanoTime() - deadline < 0 && running) {
+            spins = backOff(spins);
+        }
+        long remaining = Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+        return delegate.getAndResetDBTelemetryData(remaining);
+    }
+
+    /**
+     * Returns the number of calls dropped because the ring buffer was full or the aggregator closed.
+     *
+     * @return the number of dropped calls
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Returns the number of calls waiting in the ring buffer.
+     *
+     * @return the number of pending calls
+     */
+    public long getPendingCount() {
+        return Math.max(0L, tail.get() - head.get());
+    }
+
+    /**
+     * Returns the number of calls the ring buffer holds.
+     *
+     * @return the capacity of the ring buffer
+     */
+    public int getCapacity() {
+        return events.length;
+    }
+
+    /**
+     * Captures the call site of the current thread with the delegate, to be handed over with the call.
+     *
+     * @return the call site of the current thread, or {@link CallSite#NONE} when stack traces are disabled
+     */
+    @Override
+    public CallSite captureCallSite() {
+        return delegate.captureCallSite();
+    }
+
+    public AbstractAggregator getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Stops the workers once the calls already handed over are aggregated, then closes the delegate if it can be
+     * closed, e.g. an OffHeapAggregator. Calls handed over afterwards are dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                // The delegate waits for the writers still recording before releasing its memory
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (delegate instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) delegate).close();
+            } catch (Exception e) {
+                log.error("Error closing the delegate Aggregator", e);
+            }
+        }
+    }
+
+    private boolean offer(String producer, String normalizedSql, long executionTime, String sqlWithParameters,
+                          CallSite callSite, long weight) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    events[index].set(producer, normalizedSql, executionTime, sqlWithParameters, callSite, weight);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private void work() {
+        Event event = new Event();
+        int idle = 0;
+        while (true) {
+            if (poll(event)) {
+                idle = 0;
+                aggregate(event);
+            } else if (!running) {
+                return;
+            } else {
+                idle = idleBackOff(idle);
+            }
+        }
+    }
+
+    private boolean poll(Event target) {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    target.copyFrom(events[index]);
+                    events[index].clear();
+                    sequences.lazySet(index, position + events.length);
+                    return true;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    private void aggregate(Event event) {
+        try {
+            delegate.recordSampled(event.producer, event.normalizedSql, event.executionTime, event.sqlWithParameters,
+                    event.callSite, event.weight);
+        } catch (Exception e) {
+            log.error("Error in Aggregator", e);
+        } finally {
+            event.clear();
+            processedCount.incrementAndGet();
+        }
+    }
+
+    private static int backOff(int spins) {
+        if (spins < SPINS_BEFORE_PARK) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return spins + 1;
+    }
+
+    private static int idleBackOff(int spins) {
+        if (spins < SPINS_BEFORE_PARK) {
+            Thread.yield();
+        } else {
+            // Doubles from PARK_NANOS up to MAX_IDLE_PARK_NANOS, so that a worker without calls barely wakes up
+            int shift = Math.min(spins - SPINS_BEFORE_PARK, 7);
+            LockSupport.parkNanos(Math.min(PARK_NANOS << shift, MAX_IDLE_PARK_NANOS));
+        }
+        return spins + 1;
+    }
+
+    private static final class Event {
+        private String producer;
+        private String normalizedSql;
+        private long executionTime;
+        private String sqlWithParameters;
+        private CallSite callSite;
+        private long weight;
+
+        private void set(String producer, String normalizedSql, long executionTime, String sqlWithParameters,
+                         CallSite callSite, long weight) {
+            this.producer = producer;
+            this.normalizedSql = normalizedSql;
+            this.executionTime = executionTime;
+            this.sqlWithParameters = sqlWithParameters;
+            this.callSite = callSite;
+            this.weight = weight;
+        }
+
+        private void copyFrom(Event other) {
+            set(other.producer, other.normalizedSql, other.executionTime, other.sqlWithParameters, other.callSite,
+                    other.weight);
+        }
+
+        private void clear() {
+            set(null, null, 0L, null, null, 0L);
+        }
+    }
+}
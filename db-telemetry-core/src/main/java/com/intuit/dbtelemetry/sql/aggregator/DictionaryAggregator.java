@@ -0,0 +1,357 @@
+package com.intuit.dbtelemetry.sql.aggregator;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackTraceExtractor;
+import com.intuit.dbtelemetry.sql.histogram.LatencyHistogram;
+import com.intuit.dbtelemetry.sql.sampler.Sampler;
+import com.intuit.dbtelemetry.sql.utils.EpochBuffer;
+import com.intuit.dbtelemetry.sql.utils.ExcludedTablesMatcher;
+import com.intuit.dbtelemetry.sql.utils.IdDictionary;
+import com.intuit.dbtelemetry.sql.utils.SqlNormalizationCache;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregator storing the calls as primitive counters rather than as one SqlTelemetry per statement.
+ * The type, the normalized SQL and the call site get integer ids from concurrent dictionaries, and the counters of a
+ * statement live in the slot of an open addressing table keyed by its packed ids, the buckets of its latency histogram
+ * included. The SqlTelemetry instances are built at flush time, resolving the ids back to text.
+ * Every flush interval starts with empty dictionaries and a table sized from the previous interval. Calls which find
+ * the table or a dictionary full are dropped and counted, and the next table is twice as large, up to
+ * {@link #MAX_CAPACITY} slots. A slot takes about 2 KB, nearly all of it histogram buckets, so the smallest table takes
+ * 2 MB and the largest one 500 MB. A flushed table is cleared and reused when the next table has the same size, so
+ * that a steady workload doesn't allocate a table per flush.
+ */
+@Slf4j
+public class DictionaryAggregator extends AbstractAggregator {
+
+    public static final int DEFAULT_INITIAL_CAPACITY = 1024;
+    public static final int MAX_CAPACITY = 1 << 18;
+
+    private final EpochBuffer<Store> stores;
+    // Cleared table waiting to become the current one at a next flush
+    private final AtomicReference<Store> spareStore = new AtomicReference<>();
+    private final LongAdder droppedCount = new LongAdder();
+
+    public DictionaryAggregator() {
+        this(null);
+    }
+
+    public DictionaryAggregator(List<String> excludedTablesList) {
+        this(excludedTablesList, null);
+    }
+
+    public DictionaryAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor) {
+        this(excludedTablesList, stackTraceExtractor, new SqlNormalizationCache());
+    }
+
+    /**
+     * Constructs a DictionaryAggregator.
+     *
+     * @param excludedTablesList    tables for which no telemetry data is collected
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     */
+    public DictionaryAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor,
+                                SqlNormalizationCache sqlNormalizationCache) {
+        this(excludedTablesList, stackTraceExtractor, sqlNormalizationCache, null);
+    }
+
+    /**
+     * Constructs a DictionaryAggregator sampling the aggregated calls.
+     *
+     * @param excludedTablesList    tables for which no telemetry data is collected
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     * @param sampler               sampler of the aggregated calls, or null to aggregate every call
+     */
+    public DictionaryAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor,
+                                SqlNormalizationCache sqlNormalizationCache, Sampler sampler) {
+        super(excludedTablesList, stackTraceExtractor, sqlNormalizationCache, sampler);
+        this.stores = new EpochBuffer<>(this::newStore);
+    }
+
+    /**
+     * Constructs a DictionaryAggregator with a configured matcher of the excluded tables, e.g. matching whole table names.
+     *
+     * @param excludedTablesMatcher matcher of the tables for which no telemetry data is collected, or null for none
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     * @param sampler               sampler of the aggregated calls, or null to aggregate every call
+     */
+    public DictionaryAggregator(ExcludedTablesMatcher excludedTablesMatcher, StackTraceExtractor stackTraceExtractor,
+                                SqlNormalizationCache sqlNormalizationCache, Sampler sampler) {
+        super(excludedTablesMatcher, stackTraceExtractor, sqlNormalizationCache, sampler);
+        this.stores = new EpochBuffer<>(this::newStore);
+    }
+
+    @Override
+    protected void record(String producer, String normalizedSql, CallSite callSite, String sqlWithParameters,
+                          long executionTime, long weight) {
+        EpochBuffer.Epoch<Store> epoch = stores.enter();
+        try {
+            if (!epoch.get().record(producer, normalizedSql, callSite, sqlWithParameters, executionTime, weight)) {
+                droppedCount.add(weight);
+            }
+        } finally {
+            epoch.exit();
+        }
+    }
+
+    /**
+     * Extract and reset the current SQL telemetry data set.
+     * If there is no collected telemetry data, it returns null.
+     * The counters are resolved into SqlTelemetry instances once the aggregations still writing to them are done.
+     * A table still written to when the wait times out is not reused, but left to the garbage collector.
+     *
+     * @param threadSleep maximum time in milliseconds to wait for in-flight aggregations
+     * @return a map of the current telemetry data if available; null otherwise
+     */
+    @Override
+    public Map<SqlTelemetry, SqlTelemetry> getAndResetDBTelemetryData(long threadSleep) {
+        if (stores.peek().isEmpty()) {
+            return null;
+        }
+        EpochBuffer.Epoch<Store> epoch = stores.swapEpoch(threadSleep);
+        Store store = epoch.get();
+        if (store.isFull()) {
+            log.warn("DICTIONARY_AGGREGATOR table of {} slots was full, {} calls dropped so far",
+                    store.getCapacity(), droppedCount.sum());
+        }
+        Map<SqlTelemetry, SqlTelemetry> telemetryData = store.toTelemetryData();
+        // Late writers may still update or claim its slots, it is only cleared for reuse once they are done
+        if (epoch.isQuiescent()) {
+            store.clear();
+            spareStore.set(store);
+        }
+        return telemetryData.isEmpty() ? null : telemetryData;
+    }
+
+    /**
+     * Returns the number of calls dropped because the table or a dictionary was full.
+     *
+     * @return the number of dropped calls, scaled by their sampling weight
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Returns the number of slots of the table of the current flush interval.
+     *
+     * @return the capacity of the current table
+     */
+    public int getCapacity() {
+        return stores.peek().getCapacity();
+    }
+
+    private Store newStore() {
+        // Called by the swap while the previous store is still current, and once from the constructor
+        Store previous = Objects.isNull(stores) ? null : stores.peek();
+        int capacity = Objects.isNull(previous) ? DEFAULT_INITIAL_CAPACITY : previous.nextCapacity();
+        Store spare = spareStore.getAndSet(null);
+        return Objects.nonNull(spare) && spare.getCapacity() == capacity ? spare : new Store(capacity);
+    }
+
+    /**
+     * Dictionaries and counter table of one flush interval.
+     */
+    static final class Store {
+        private static final long NO_MIN = Long.MAX_VALUE;
+
+        // Replaced when the store is cleared, only while no thread records calls in it
+        private IdDictionary<String> types;
+        private IdDictionary<String> sqls;
+        private IdDictionary<CallSite> callSites;
+        private final int mask;
+        private final int maxEntries;
+        // Slot i is free while keys[i] is 0, the packed key is never 0 since the sql id is shifted by one
+        private final AtomicLongArray keys;
+        private final AtomicLongArray counts;
+        private final AtomicLongArray callTimes;
+        private final AtomicLongArray mins;
+        private final AtomicLongArray maxs;
+        // The histogram buckets of slot i start at i * LatencyHistogram.BUCKET_COUNT
+        private final AtomicLongArray histograms;
+        private final AtomicReferenceArray<String> sqlsWithParameters;
+        private final AtomicInteger size = new AtomicInteger();
+        private volatile boolean full;
+
+        Store(int capacity) {
+            this.mask = capacity - 1;
+            this.maxEntries = capacity - (capacity >>> 2);
+            this.keys = new AtomicLongArray(capacity);
+            this.counts = new AtomicLongArray(capacity);
+            this.callTimes = new AtomicLongArray(capacity);
+            long[] noMins = new long[capacity];
+            Arrays.fill(noMins, NO_MIN);
+            this.mins = new AtomicLongArray(noMins);
+            this.maxs = new AtomicLongArray(capacity);
+            this.histograms = new AtomicLongArray(capacity * LatencyHistogram.BUCKET_COUNT);
+            this.sqlsWithParameters = new AtomicReferenceArray<>(capacity);
+            newDictionaries();
+        }
+
+        boolean record(String producer, String normalizedSql, CallSite callSite, String sqlWithParameters,
+                       long executionTime, long weight) {
+            int typeId = types.idOf(Objects.isNull(producer) ? "" : producer);
+            int sqlId = sqls.idOf(normalizedSql);
+            int callSiteId = callSites.idOf(callSite);
+            if (typeId == IdDictionary.NO_ID || sqlId == IdDictionary.NO_ID || callSiteId == IdDictionary.NO_ID) {
+                return false;
+            }
+            int slot = slotOf(PackedKeys.pack(sqlId, typeId, callSiteId));
+            if (slot < 0) {
+                return false;
+            }
+            counts.addAndGet(slot, weight);
+            callTimes.addAndGet(slot, executionTime * weight);
+            updateMin(slot, executionTime);
+            updateMax(slot, executionTime);
+            int bucket = slot * LatencyHistogram.BUCKET_COUNT + LatencyHistogram.indexOf(executionTime);
+            histograms.addAndGet(bucket, weight);
+            if (Objects.nonNull(sqlWithParameters) && Objects.isNull(sqlsWithParameters.get(slot))) {
+                sqlsWithParameters.compareAndSet(slot, null, sqlWithParameters);
+            }
+            return true;
+        }
+
+        Map<SqlTelemetry, SqlTelemetry> toTelemetryData() {
+            Map<SqlTelemetry, SqlTelemetry> telemetryData = new HashMap<>(size.get() * 2);
+            for (int slot = 0; slot <= mask; slot++) {
+                long key = keys.get(slot);
+                long count = counts.get(slot);
+                if (key == 0L || count == 0L) {
+                    continue;
+                }
+                SqlTelemetry sqlTelemetry = SqlTelemetry.of(types.valueOf(PackedKeys.typeIdOf(key)),
+                        sqls.valueOf(PackedKeys.sqlIdOf(key)), callSites.valueOf(PackedKeys.callSiteIdOf(key)),
+                        sqlsWithParameters.get(slot));
+                sqlTelemetry.add(count, callTimes.get(slot), mins.get(slot), maxs.get(slot), histogramOf(slot));
+                telemetryData.put(sqlTelemetry, sqlTelemetry);
+            }
+            return telemetryData;
+        }
+
+        /**
+         * Empties the store for reuse, keeping its arrays.
+         * Only safe when no other thread records calls in it.
+         */
+        void clear() {
+            for (int slot = 0; slot <= mask; slot++) {
+                if (keys.get(slot) == 0L) {
+                    continue;
+                }
+                keys.set(slot, 0L);
+                counts.set(slot, 0L);
+                callTimes.set(slot, 0L);
+                mins.set(slot, NO_MIN);
+                maxs.set(slot, 0L);
+                sqlsWithParameters.set(slot, null);
+                int first = slot * LatencyHistogram.BUCKET_COUNT;
+                for (int bucket = first; bucket < first + LatencyHistogram.BUCKET_COUNT; bucket++) {
+                    histograms.set(bucket, 0L);
+                }
+            }
+            size.set(0);
+            full = false;
+            newDictionaries();
+        }
+
+        boolean isEmpty() {
+            return size.get() == 0;
+        }
+
+        boolean isFull() {
+            return full;
+        }
+
+        int getCapacity() {
+            return mask + 1;
+        }
+
+        int nextCapacity() {
+            if (full) {
+                return Math.min(MAX_CAPACITY, getCapacity() * 2);
+            }
+            // Half full with as many statements as in this interval
+            int wanted = Math.max(DEFAULT_INITIAL_CAPACITY, size.get() * 2);
+            return Math.min(MAX_CAPACITY, Integer.highestOneBit(wanted - 1) << 1);
+        }
+
+        private void newDictionaries() {
+            types = new IdDictionary<>(PackedKeys.MAX_TYPES);
+            sqls = new IdDictionary<>(PackedKeys.MAX_SQLS);
+            callSites = new IdDictionary<>(PackedKeys.MAX_CALL_SITES);
+        }
+
+        private int slotOf(long key) {
+            int slot = PackedKeys.hash(key) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long current = keys.get(slot);
+                if (current == key) {
+                    return slot;
+                }
+                if (current == 0L) {
+                    if (size.incrementAndGet() > maxEntries) {
+                        size.decrementAndGet();
+                        full = true;
+                        return -1;
+                    }
+                    if (keys.compareAndSet(slot, 0L, key)) {
+                        return slot;
+                    }
+                    // Taken by another statement, or by the same one on another thread
+                    size.decrementAndGet();
+                    if (keys.get(slot) == key) {
+                        return slot;
+                    }
+                }
+                slot = (slot + 1) & mask;
+            }
+            full = true;
+            return -1;
+        }
+
+        private LatencyHistogram histogramOf(int slot) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            int first = slot * LatencyHistogram.BUCKET_COUNT;
+            for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT; bucket++) {
+                long bucketCount = histograms.get(first + bucket);
+                if (bucketCount != 0L) {
+                    histogram.addBucketCount(bucket, bucketCount);
+                }
+            }
+            return histogram;
+        }
+
+        private void updateMin(int slot, long time) {
+            long current;
+            while (time < (current = mins.get(slot))) {
+                if (mins.compareAndSet(slot, current, time)) {
+                    return;
+                }
+            }
+        }
+
+        private void updateMax(int slot, long time) {
+            long current;
+            while (time > (current = maxs.get(slot))) {
+                if (maxs.compareAndSet(slot, current, time)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -1,24 +1,24 @@
 package com.intuit.dbtelemetry.sql.aggregator;
 
 import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
 import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackTraceExtractor;
-import com.intuit.dbtelemetry.sql.utils.SqlHelperUtils;
+import com.intuit.dbtelemetry.sql.sampler.Sampler;
+import com.intuit.dbtelemetry.sql.utils.EpochBuffer;
+import com.intuit.dbtelemetry.sql.utils.ExcludedTablesMatcher;
+import com.intuit.dbtelemetry.sql.utils.SqlNormalizationCache;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.util.CollectionUtils;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
-public class MapBasedAggregator implements Aggregator<Map<SqlTelemetry, SqlTelemetry>> {
+public class MapBasedAggregator extends AbstractAggregator {
 
-    private static Map<SqlTelemetry, SqlTelemetry> currentLogInfoMap = new ConcurrentHashMap<>();
-    private final List<String> excludedTablesList;
-    private final StackTraceExtractor stackTraceExtractor;
+    private static final EpochBuffer<Map<SqlTelemetry, SqlTelemetry>> currentLogInfoMap = new EpochBuffer<>(ConcurrentHashMap::new);
 
     public MapBasedAggregator() {
         this(null);
@@ -29,108 +29,85 @@ public class MapBasedAggregator implements Aggregator<Map<SqlTelemetry, SqlTelem
     }
 
     public MapBasedAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor) {
-        this.excludedTablesList = Objects.isNull(excludedTablesList) ? new ArrayList<>() : excludedTablesList;
-        this.stackTraceExtractor = stackTraceExtractor;
+        this(excludedTablesList, stackTraceExtractor, new SqlNormalizationCache());
     }
 
     /**
-     * Aggregates SQL telemetry data. This method accepts the producer details, SQL, and execution time
-     * for further use, whilst handling the SQL with missing parameters.
+     * Constructs a MapBasedAggregator.
      *
-     * @param producer      the producer of the SQL statement
-     * @param sql           the SQL statement itself
-     * @param executionTime the time taken by the SQL statement to execute
-     * @throws TelemetryAggregatorException if there's an error during the aggregation process
+     * @param excludedTablesList    tables for which no telemetry data is collected
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
      */
-    @Override
-    public void aggregate(String producer, String sql, long executionTime) throws TelemetryAggregatorException {
-        aggregate(producer, sql, executionTime, null);
+    public MapBasedAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor,
+                              SqlNormalizationCache sqlNormalizationCache) {
+        this(excludedTablesList, stackTraceExtractor, sqlNormalizationCache, null);
     }
 
     /**
-     * Aggregates SQL telemetry data and also handles specific SQL statement with given parameters.
+     * Constructs a MapBasedAggregator sampling the aggregated calls.
      *
-     * @param producer      the producer of the SQL statement
-     * @param sql           the SQL statement itself
-     * @param executionTime the time taken by the SQL statement to execute
-     * @param sqlWithParameters SQL statement with parameters
-     * @throws TelemetryAggregatorException if there's an error during the aggregation process
+     * @param excludedTablesList    tables for which no telemetry data is collected
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     * @param sampler               sampler of the aggregated calls, or null to aggregate every call
      */
-    public void aggregate(String producer, String sql, long executionTime, String sqlWithParameters) throws TelemetryAggregatorException {
-        if (Objects.isNull(sql)){
-            return;
-        }
-        try {
-
-            String finalSql = sql;
-            boolean excludedTablePresent = excludedTablesList.stream().anyMatch(excludedTable -> StringUtils.containsIgnoreCase(finalSql, excludedTable));
-            if (excludedTablePresent) {
-                return;
-            }
-
-            sql = SqlHelperUtils.sanitizeSQL(sql);
+    public MapBasedAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor,
+                              SqlNormalizationCache sqlNormalizationCache, Sampler sampler) {
+        super(excludedTablesList, stackTraceExtractor, sqlNormalizationCache, sampler);
+    }
 
-            SqlTelemetry logInfo = isStackTraceEnabled() ?
-                    getSqlTelemetry(producer,
-                            sql,
-                            stackTraceExtractor.extractStackTrace(new Throwable()), sqlWithParameters) :
-                    getSqlTelemetry(producer, sql, sqlWithParameters);
+    /**
+     * Constructs a MapBasedAggregator with a configured matcher of the excluded tables, e.g. matching whole table names.
+     *
+     * @param excludedTablesMatcher matcher of the tables for which no telemetry data is collected, or null for none
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     * @param sampler               sampler of the aggregated calls, or null to aggregate every call
+     */
+    public MapBasedAggregator(ExcludedTablesMatcher excludedTablesMatcher, StackTraceExtractor stackTraceExtractor,
+                              SqlNormalizationCache sqlNormalizationCache, Sampler sampler) {
+        super(excludedTablesMatcher, stackTraceExtractor, sqlNormalizationCache, sampler);
+    }
 
-            logInfo.setInstanceValue(executionTime);
-        } catch (Exception e) {
-            throw new TelemetryAggregatorException("Fail to aggregate SQL" +
-                    "producer=" + producer +
-                    " sql=" + sql +
-                    " calltime=" + executionTime, e);
+    @Override
+    protected void record(String producer, String normalizedSql, CallSite callSite, String sqlWithParameters,
+                          long executionTime, long weight) {
+        EpochBuffer.Epoch<Map<SqlTelemetry, SqlTelemetry>> epoch = currentLogInfoMap.enter();
+        try {
+            getSqlTelemetry(epoch.get(), producer, normalizedSql, callSite, sqlWithParameters).setInstanceValue(executionTime, weight);
+        } finally {
+            epoch.exit();
         }
     }
 
     /**
      * Extract and reset the current SQL telemetry data set.
      * If there is no collected telemetry data, it returns null.
+     * The returned map is handed over as soon as the aggregations still writing to it are done.
      *
-     * @param threadSleep delay time before resetting the telemetry data
+     * @param threadSleep maximum time in milliseconds to wait for in-flight aggregations
      * @return a map of the current telemetry data if available; null otherwise
      */
     @Override
     public Map<SqlTelemetry, SqlTelemetry> getAndResetDBTelemetryData(long threadSleep) {
-        if (CollectionUtils.isEmpty(currentLogInfoMap)) {
+        if (CollectionUtils.isEmpty(currentLogInfoMap.peek())) {
             return null;
         }
-        // Create a new map for log entries while we log the current map.  This doesn't need to be
-        // synchronized because the assignment operator is atomic. Other threads may still be updating
-        // previousMap, but since we wait X seconds before actually outputting it, we should get those.
-        Map<SqlTelemetry, SqlTelemetry> previousMap = currentLogInfoMap;
-        currentLogInfoMap = new ConcurrentHashMap<>();
-
-        waitFor(threadSleep);
-
-        return previousMap;
+        return currentLogInfoMap.swap(threadSleep);
     }
 
-    private void waitFor(long threadSleep) {
-        // Sleep for seconds duration provided in "db-telemetry.thread-sleep" property
-        // to allow those threads that were updating previousMap to finish.
-        try {
-            Thread.sleep(threadSleep);
-        } catch (InterruptedException ex) {
-            log.error("SLEEP_BEFORE_FLUSH Interrupted proceeding with flush");
+    protected SqlTelemetry getSqlTelemetry(Map<SqlTelemetry, SqlTelemetry> logInfoMap, String producer, String sanitizedSQL,
+                                           CallSite callSite, String sqlWithParameters) {
+        SqlTelemetry logInfo = SqlTelemetry.of(producer, sanitizedSQL, callSite, sqlWithParameters);
+        // Known statements are the common case, a plain get doesn't lock the bin like putIfAbsent does
+        SqlTelemetry existingLogInfo = logInfoMap.get(logInfo);
+        if (Objects.nonNull(existingLogInfo)) {
+            return existingLogInfo;
         }
-    }
-
-    protected SqlTelemetry getSqlTelemetry(String producer, String sanitizedSQL, String sqlWithParameters) {
-        return getSqlTelemetry(producer, sanitizedSQL, null, sqlWithParameters);
-    }
-
-    protected SqlTelemetry getSqlTelemetry(String producer, String sanitizedSQL, String stacktrace, String sqlWithParameters) {
-        SqlTelemetry logInfo = new SqlTelemetry(producer, sanitizedSQL, stacktrace, sqlWithParameters);
-        SqlTelemetry existingLogInfo = currentLogInfoMap.putIfAbsent(logInfo, logInfo);
+        existingLogInfo = logInfoMap.putIfAbsent(logInfo, logInfo);
 
         return Objects.isNull(existingLogInfo) ? logInfo : existingLogInfo;
     }
 
-    private boolean isStackTraceEnabled() {
-        return Objects.nonNull(stackTraceExtractor);
-    }
-
 }
@@ -0,0 +1,439 @@
+package com.intuit.dbtelemetry.sql.aggregator;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackTraceExtractor;
+import com.intuit.dbtelemetry.sql.histogram.LatencyHistogram;
+import com.intuit.dbtelemetry.sql.sampler.Sampler;
+import com.intuit.dbtelemetry.sql.utils.EpochBuffer;
+import com.intuit.dbtelemetry.sql.utils.ExcludedTablesMatcher;
+import com.intuit.dbtelemetry.sql.utils.IdDictionary;
+import com.intuit.dbtelemetry.sql.utils.SqlNormalizationCache;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregator keeping the counters and the latency histograms of the statements outside of the heap, in direct or
+ * memory mapped buffers of fixed size slots. Only the dictionaries giving ids to the type, the normalized SQL and the
+ * call site of the statements stay on the heap, so the number of distinct statements no longer drives GC pauses.
+ * Two tables are allocated up front within the memory cap and recycled: one is written while the other is flushed.
+ * Calls which find the table or a dictionary full are dropped and counted.
+ * Slots are updated under striped locks, the buffers not offering atomic operations on Java 8.
+ * Closing the aggregator releases the buffers and deletes the mapped files once they are unmapped, the calls recorded
+ * afterwards are dropped.
+ */
+@Slf4j
+public class OffHeapAggregator extends AbstractAggregator implements AutoCloseable {
+
+    public static final long DEFAULT_MAX_MEMORY_BYTES = 64L * 1024 * 1024;
+    private static final long CLOSE_WAIT_MILLIS = 5000L;
+
+    private final int tableCapacity;
+    private final Path mappedDirectory;
+    private final EpochBuffer<OffHeapTable> tables;
+    // Cleared table waiting to become the current one at the next flush
+    private final AtomicReference<OffHeapTable> spareTable = new AtomicReference<>();
+    private final LongAdder droppedCount = new LongAdder();
+    private volatile boolean closed;
+
+    public OffHeapAggregator() {
+        this(DEFAULT_MAX_MEMORY_BYTES);
+    }
+
+    public OffHeapAggregator(long maxMemoryBytes) {
+        this(null, null, maxMemoryBytes);
+    }
+
+    public OffHeapAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor, long maxMemoryBytes) {
+        this(new ExcludedTablesMatcher(excludedTablesList), stackTraceExtractor, new SqlNormalizationCache(), null,
+                maxMemoryBytes, null);
+    }
+
+    /**
+     * Constructs an OffHeapAggregator.
+     *
+     * @param excludedTablesMatcher matcher of the tables for which no telemetry data is collected, or null for none
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     * @param sampler               sampler of the aggregated calls, or null to aggregate every call
+     * @param maxMemoryBytes        the maximum size of the two tables together, in bytes
+     * @param mappedDirectory       directory of the files mapping the tables, or null for direct buffers
+     */
+    public OffHeapAggregator(ExcludedTablesMatcher excludedTablesMatcher, StackTraceExtractor stackTraceExtractor,
+                             SqlNormalizationCache sqlNormalizationCache, Sampler sampler, long maxMemoryBytes,
+                             Path mappedDirectory) {
+        super(excludedTablesMatcher, stackTraceExtractor, sqlNormalizationCache, sampler);
+        this.tableCapacity = capacityOf(maxMemoryBytes);
+        this.mappedDirectory = mappedDirectory;
+        this.tables = new EpochBuffer<>(this::nextTable);
+        this.spareTable.set(newTable());
+        log.info("OFF_HEAP_AGGREGATOR {} slots of {} bytes per table, {} bytes off heap", tableCapacity,
+                OffHeapTable.SLOT_SIZE, getOffHeapBytes());
+    }
+
+    @Override
+    protected void record(String producer, String normalizedSql, CallSite callSite, String sqlWithParameters,
+                          long executionTime, long weight) {
+        EpochBuffer.Epoch<OffHeapTable> epoch = tables.enter();
+        try {
+            // Read after entering the epoch, so that close() either sees this writer or this writer sees it closed
+            if (closed || !epoch.get().record(producer, normalizedSql, callSite, sqlWithParameters, executionTime, weight)) {
+                droppedCount.add(weight);
+            }
+        } finally {
+            epoch.exit();
+        }
+    }
+
+    /**
+     * Extract and reset the current SQL telemetry data set.
+     * If there is no collected telemetry data, it returns null.
+     * The slots are read once the aggregations still writing to them are done, then cleared for reuse. A table still
+     * written to when the wait times out is neither cleared nor reused, but released without unmapping it and left to
+     * the garbage collector, the next table being allocated.
+     *
+     * @param threadSleep maximum time in milliseconds to wait for in-flight aggregations
+     * @return a map of the current telemetry data if available; null otherwise
+     */
+    @Override
+    public synchronized Map<SqlTelemetry, SqlTelemetry> getAndResetDBTelemetryData(long threadSleep) {
+        if (closed || tables.peek().isEmpty()) {
+            return null;
+        }
+        EpochBuffer.Epoch<OffHeapTable> epoch = tables.swapEpoch(threadSleep);
+        OffHeapTable table = epoch.get();
+        if (table.isFull()) {
+            log.warn("OFF_HEAP_AGGREGATOR table of {} slots was full, {} calls dropped so far", tableCapacity,
+                    droppedCount.sum());
+        }
+        Map<SqlTelemetry, SqlTelemetry> telemetryData = table.toTelemetryData();
+        if (epoch.isQuiescent()) {
+            table.clear();
+            spareTable.set(table);
+        } else {
+            // Late writers may still update or claim its slots, it must not be cleared, reused or unmapped
+            table.release(false);
+        }
+        return telemetryData.isEmpty() ? null : telemetryData;
+    }
+
+    /**
+     * Returns the number of calls dropped because the table or a dictionary was full.
+     *
+     * @return the number of dropped calls, scaled by their sampling weight
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Returns the number of slots of each table, i.e. the maximum number of statements per flush interval.
+     *
+     * @return the capacity of a table
+     */
+    public int getCapacity() {
+        return tableCapacity;
+    }
+
+    /**
+     * Returns the number of slots used in the current flush interval.
+     *
+     * @return the number of statements of the current table
+     */
+    public int getUsedSlots() {
+        return tables.peek().size();
+    }
+
+    /**
+     * Returns the memory allocated outside of the heap by the two tables.
+     *
+     * @return the off heap footprint, in bytes
+     */
+    public long getOffHeapBytes() {
+        return 2L * tableCapacity * OffHeapTable.SLOT_SIZE;
+    }
+
+    /**
+     * Drops the calls recorded from now on, waits for the in-flight ones and releases the tables. The memory mapped
+     * files are deleted once unmapped. A table still written to when the wait times out is left to the garbage
+     * collector, its file being deleted anyway where the file system allows it.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean quiescent = tables.awaitQuiescence(CLOSE_WAIT_MILLIS);
+        if (!quiescent) {
+            log.warn("OFF_HEAP_AGGREGATOR writers still in flight after {} ms, table not unmapped", CLOSE_WAIT_MILLIS);
+        }
+        tables.peek().release(quiescent);
+        OffHeapTable spare = spareTable.getAndSet(null);
+        if (Objects.nonNull(spare)) {
+            spare.release(true);
+        }
+    }
+
+    private OffHeapTable nextTable() {
+        OffHeapTable table = spareTable.getAndSet(null);
+        return Objects.nonNull(table) ? table : newTable();
+    }
+
+    private OffHeapTable newTable() {
+        long bytes = (long) tableCapacity * OffHeapTable.SLOT_SIZE;
+        if (Objects.isNull(mappedDirectory)) {
+            return new OffHeapTable(ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder()), null,
+                    tableCapacity);
+        }
+        Path file = null;
+        try {
+            file = Files.createTempFile(mappedDirectory, "db-telemetry-", ".table");
+            // The mapping stays valid once the channel is closed, the file is deleted when the table is released
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes).order(ByteOrder.nativeOrder());
+                return new OffHeapTable(buffer, file, tableCapacity);
+            }
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw new UncheckedIOException("Fail to map off heap table in " + mappedDirectory, e);
+        }
+    }
+
+    private static void unmap(ByteBuffer buffer) {
+        try {
+            // Java 9 and above
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            try {
+                // Java 8
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            } catch (ReflectiveOperationException | RuntimeException e8) {
+                log.warn("OFF_HEAP_AGGREGATOR buffer could not be released, left to the garbage collector", e8);
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (Objects.isNull(file)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Still mapped on file systems refusing to delete mapped files
+            log.warn("OFF_HEAP_AGGREGATOR mapped file {} could not be deleted, deleted on exit", file, e);
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    private static int capacityOf(long maxMemoryBytes) {
+        // Power of two number of slots, each table within half of the cap and within a ByteBuffer
+        long slots = Math.min(maxMemoryBytes / 2, Integer.MAX_VALUE) / OffHeapTable.SLOT_SIZE;
+        if (slots < 2) {
+            throw new IllegalArgumentException("maxMemoryBytes " + maxMemoryBytes + " is below two slots per table");
+        }
+        return Integer.highestOneBit((int) slots);
+    }
+
+    /**
+     * Dictionaries and off heap slots of one flush interval.
+     * A slot holds the packed key, the count, the call time, the min, the max and the histogram buckets of a statement.
+     */
+    static final class OffHeapTable {
+        private static final int KEY = 0;
+        private static final int COUNT = 8;
+        private static final int CALL_TIME = 16;
+        private static final int MIN = 24;
+        private static final int MAX = 32;
+        private static final int HISTOGRAM = 40;
+        static final int SLOT_SIZE = HISTOGRAM + LatencyHistogram.BUCKET_COUNT * 8;
+        private static final int LOCK_STRIPES = 64;
+
+        private final ByteBuffer buffer;
+        private final Path file;
+        private final int mask;
+        private final int maxEntries;
+        private final Object[] locks = new Object[LOCK_STRIPES];
+        private IdDictionary<String> types;
+        private IdDictionary<String> sqls;
+        private IdDictionary<CallSite> callSites;
+        // Only for the rare callers passing the statement with its parameters, keyed by slot
+        private final Map<Integer, String> sqlsWithParameters = new ConcurrentHashMap<>();
+        // Reserved with a compare and set before a slot is taken, the slots being locked by different stripes
+        private final AtomicInteger size = new AtomicInteger();
+        private volatile boolean full;
+
+        OffHeapTable(ByteBuffer buffer, Path file, int capacity) {
+            this.buffer = buffer;
+            this.file = file;
+            this.mask = capacity - 1;
+            this.maxEntries = capacity - (capacity >>> 2);
+            for (int i = 0; i < LOCK_STRIPES; i++) {
+                locks[i] = new Object();
+            }
+            newDictionaries();
+        }
+
+        boolean record(String producer, String normalizedSql, CallSite callSite, String sqlWithParameters,
+                       long executionTime, long weight) {
+            int typeId = types.idOf(Objects.isNull(producer) ? "" : producer);
+            int sqlId = sqls.idOf(normalizedSql);
+            int callSiteId = callSites.idOf(callSite);
+            if (typeId == IdDictionary.NO_ID || sqlId == IdDictionary.NO_ID || callSiteId == IdDictionary.NO_ID) {
+                return false;
+            }
+            long key = PackedKeys.pack(sqlId, typeId, callSiteId);
+            int slot = PackedKeys.hash(key) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                synchronized (locks[slot & (LOCK_STRIPES - 1)]) {
+                    int offset = slot * SLOT_SIZE;
+                    long current = buffer.getLong(offset + KEY);
+                    if (current == 0L) {
+                        if (!reserveEntry()) {
+                            full = true;
+                            return false;
+                        }
+                        buffer.putLong(offset + KEY, key);
+                        buffer.putLong(offset + MIN, Long.MAX_VALUE);
+                        current = key;
+                    }
+                    if (current == key) {
+                        update(offset, executionTime, weight);
+                        if (Objects.nonNull(sqlWithParameters)) {
+                            sqlsWithParameters.putIfAbsent(slot, sqlWithParameters);
+                        }
+                        return true;
+                    }
+                }
+                slot = (slot + 1) & mask;
+            }
+            full = true;
+            return false;
+        }
+
+        Map<SqlTelemetry, SqlTelemetry> toTelemetryData() {
+            Map<SqlTelemetry, SqlTelemetry> telemetryData = new HashMap<>(size() * 2);
+            for (int slot = 0; slot <= mask; slot++) {
+                synchronized (locks[slot & (LOCK_STRIPES - 1)]) {
+                    int offset = slot * SLOT_SIZE;
+                    long key = buffer.getLong(offset + KEY);
+                    long count = buffer.getLong(offset + COUNT);
+                    if (key == 0L || count == 0L) {
+                        continue;
+                    }
+                    LatencyHistogram histogram = new LatencyHistogram();
+                    for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT; bucket++) {
+                        long bucketCount = buffer.getLong(offset + HISTOGRAM + bucket * 8);
+                        if (bucketCount != 0L) {
+                            histogram.addBucketCount(bucket, bucketCount);
+                        }
+                    }
+                    SqlTelemetry sqlTelemetry = SqlTelemetry.of(types.valueOf(PackedKeys.typeIdOf(key)),
+                            sqls.valueOf(PackedKeys.sqlIdOf(key)), callSites.valueOf(PackedKeys.callSiteIdOf(key)),
+                            sqlsWithParameters.get(slot));
+                    sqlTelemetry.add(count, buffer.getLong(offset + CALL_TIME), buffer.getLong(offset + MIN),
+                            buffer.getLong(offset + MAX), histogram);
+                    telemetryData.put(sqlTelemetry, sqlTelemetry);
+                }
+            }
+            return telemetryData;
+        }
+
+        void clear() {
+            for (int slot = 0; slot <= mask; slot++) {
+                synchronized (locks[slot & (LOCK_STRIPES - 1)]) {
+                    int offset = slot * SLOT_SIZE;
+                    if (buffer.getLong(offset + KEY) != 0L) {
+                        for (int position = 0; position < SLOT_SIZE; position += 8) {
+                            buffer.putLong(offset + position, 0L);
+                        }
+                    }
+                }
+            }
+            sqlsWithParameters.clear();
+            size.set(0);
+            full = false;
+            newDictionaries();
+        }
+
+        boolean isEmpty() {
+            return size.get() == 0;
+        }
+
+        boolean isFull() {
+            return full;
+        }
+
+        int size() {
+            return size.get();
+        }
+
+        /**
+         * Releases the buffer, then deletes its mapped file. The buffer must not be used afterwards.
+         *
+         * @param unmap false to leave the buffer to the garbage collector, when writers may still use it
+         */
+        void release(boolean unmap) {
+            if (unmap) {
+                unmap(buffer);
+            }
+            deleteQuietly(file);
+        }
+
+        private boolean reserveEntry() {
+            int current;
+            do {
+                current = size.get();
+                if (current >= maxEntries) {
+                    return false;
+                }
+            } while (!size.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        private void update(int offset, long executionTime, long weight) {
+            buffer.putLong(offset + COUNT, buffer.getLong(offset + COUNT) + weight);
+            buffer.putLong(offset + CALL_TIME, buffer.getLong(offset + CALL_TIME) + executionTime * weight);
+            if (executionTime < buffer.getLong(offset + MIN)) {
+                buffer.putLong(offset + MIN, executionTime);
+            }
+            if (executionTime > buffer.getLong(offset + MAX)) {
+                buffer.putLong(offset + MAX, executionTime);
+            }
+            int bucketOffset = offset + HISTOGRAM + LatencyHistogram.indexOf(executionTime) * 8;
+            buffer.putLong(bucketOffset, buffer.getLong(bucketOffset) + weight);
+        }
+
+        private void newDictionaries() {
+            // Replaced rather than cleared, the table is only cleared once no writer uses it
+            types = new IdDictionary<>(PackedKeys.MAX_TYPES);
+            sqls = new IdDictionary<>(PackedKeys.MAX_SQLS);
+            callSites = new IdDictionary<>(PackedKeys.MAX_CALL_SITES);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.intuit.dbtelemetry.sql.aggregator;
+
+/**
+ * Packing of the dictionary ids of a statement in a single non zero long, used as key of the primitive tables.
+ * The sql id + 1 takes the high 32 bits, the type id 8 bits and the call site id the low 24 bits.
+ */
+final class PackedKeys {
+
+    static final int MAX_TYPES = 1 << 8;
+    static final int MAX_CALL_SITES = 1 << 24;
+    static final int MAX_SQLS = Integer.MAX_VALUE - 1;
+
+    private PackedKeys() {
+    }
+
+    static long pack(int sqlId, int typeId, int callSiteId) {
+        return ((long) (sqlId + 1) << 32) | ((long) typeId << 24) | callSiteId;
+    }
+
+    static int sqlIdOf(long key) {
+        return (int) (key >>> 32) - 1;
+    }
+
+    static int typeIdOf(long key) {
+        return (int) (key >>> 24) & (MAX_TYPES - 1);
+    }
+
+    static int callSiteIdOf(long key) {
+        return (int) key & (MAX_CALL_SITES - 1);
+    }
+
+    static int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+}
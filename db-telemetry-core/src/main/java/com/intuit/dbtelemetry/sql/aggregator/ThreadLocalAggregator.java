@@ -0,0 +1,260 @@
+package com.intuit.dbtelemetry.sql.aggregator;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackTraceExtractor;
+import com.intuit.dbtelemetry.sql.sampler.Sampler;
+import com.intuit.dbtelemetry.sql.utils.EpochBuffer;
+import com.intuit.dbtelemetry.sql.utils.ExcludedTablesMatcher;
+import com.intuit.dbtelemetry.sql.utils.SqlNormalizationCache;
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Aggregator where every thread records its calls in its own buffer, merged when the telemetry data is flushed.
+ * Threads never share a map or a counter, and calls of a statement already seen by the thread allocate nothing.
+ * Each buffer is only locked by its own thread and by the flush, so the flush gets a consistent snapshot without
+ * waiting. Statements a thread didn't run during a whole flush interval are dropped from its buffer, and the buffers
+ * of threads that died are dropped once merged, so they are held until the next flush.
+ * Every entry carries its own latency histogram (about 2 KB once used), so a buffer holds at most
+ * maxEntriesPerThread statements, {@link #DEFAULT_MAX_ENTRIES_PER_THREAD} by default. The statements a full buffer
+ * doesn't know are recorded in a map shared by all threads, so memory is bounded by threads x maxEntriesPerThread
+ * plus the distinct statements of the interval, instead of threads x distinct statements.
+ */
+public class ThreadLocalAggregator extends AbstractAggregator {
+
+    public static final int DEFAULT_MAX_ENTRIES_PER_THREAD = 256;
+
+    private final Set<ThreadBuffer> threadBuffers = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<ThreadBuffer> currentThreadBuffer = ThreadLocal.withInitial(this::register);
+    private final EpochBuffer<Map<SqlTelemetry, SqlTelemetry>> sharedEntries = new EpochBuffer<>(ConcurrentHashMap::new);
+    private final int maxEntriesPerThread;
+
+    public ThreadLocalAggregator() {
+        this(null);
+    }
+
+    public ThreadLocalAggregator(List<String> excludedTablesList) {
+        this(excludedTablesList, null);
+    }
+
+    public ThreadLocalAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor) {
+        this(excludedTablesList, stackTraceExtractor, new SqlNormalizationCache());
+    }
+
+    /**
+     * Constructs a ThreadLocalAggregator.
+     *
+     * @param excludedTablesList    tables for which no telemetry data is collected
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     */
+    public ThreadLocalAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor,
+                                 SqlNormalizationCache sqlNormalizationCache) {
+        this(excludedTablesList, stackTraceExtractor, sqlNormalizationCache, null);
+    }
+
+    /**
+     * Constructs a ThreadLocalAggregator sampling the aggregated calls.
+     *
+     * @param excludedTablesList    tables for which no telemetry data is collected
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     * @param sampler               sampler of the aggregated calls, or null to aggregate every call
+     */
+    public ThreadLocalAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor,
+                                 SqlNormalizationCache sqlNormalizationCache, Sampler sampler) {
+        this(new ExcludedTablesMatcher(excludedTablesList), stackTraceExtractor, sqlNormalizationCache, sampler);
+    }
+
+    /**
+     * Constructs a ThreadLocalAggregator with a configured matcher of the excluded tables, e.g. matching whole table names.
+     *
+     * @param excludedTablesMatcher matcher of the tables for which no telemetry data is collected, or null for none
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     * @param sampler               sampler of the aggregated calls, or null to aggregate every call
+     */
+    public ThreadLocalAggregator(ExcludedTablesMatcher excludedTablesMatcher, StackTraceExtractor stackTraceExtractor,
+                                 SqlNormalizationCache sqlNormalizationCache, Sampler sampler) {
+        this(excludedTablesMatcher, stackTraceExtractor, sqlNormalizationCache, sampler, DEFAULT_MAX_ENTRIES_PER_THREAD);
+    }
+
+    /**
+     * Constructs a ThreadLocalAggregator with a bound on the statements of every thread buffer.
+     *
+     * @param excludedTablesMatcher matcher of the tables for which no telemetry data is collected, or null for none
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     * @param sampler               sampler of the aggregated calls, or null to aggregate every call
+     * @param maxEntriesPerThread   the maximum number of statements of a thread buffer, the others being recorded in
+     *                              a map shared by all threads
+     */
+    public ThreadLocalAggregator(ExcludedTablesMatcher excludedTablesMatcher, StackTraceExtractor stackTraceExtractor,
+                                 SqlNormalizationCache sqlNormalizationCache, Sampler sampler, int maxEntriesPerThread) {
+        super(excludedTablesMatcher, stackTraceExtractor, sqlNormalizationCache, sampler);
+        if (maxEntriesPerThread < 1) {
+            throw new IllegalArgumentException("maxEntriesPerThread " + maxEntriesPerThread + " is below 1");
+        }
+        this.maxEntriesPerThread = maxEntriesPerThread;
+    }
+
+    @Override
+    protected void record(String producer, String normalizedSql, CallSite callSite, String sqlWithParameters,
+                          long executionTime, long weight) {
+        if (!currentThreadBuffer.get().record(producer, normalizedSql, callSite, sqlWithParameters, executionTime, weight)) {
+            recordShared(producer, normalizedSql, callSite, sqlWithParameters, executionTime, weight);
+        }
+    }
+
+    private void recordShared(String producer, String normalizedSql, CallSite callSite, String sqlWithParameters,
+                              long executionTime, long weight) {
+        SqlTelemetry telemetry = SqlTelemetry.of(producer, normalizedSql, callSite, sqlWithParameters);
+        EpochBuffer.Epoch<Map<SqlTelemetry, SqlTelemetry>> epoch = sharedEntries.enter();
+        try {
+            SqlTelemetry existing = epoch.get().putIfAbsent(telemetry, telemetry);
+            (Objects.isNull(existing) ? telemetry : existing).setInstanceValue(executionTime, weight);
+        } finally {
+            epoch.exit();
+        }
+    }
+
+    /**
+     * Merges and resets the buffers of all threads.
+     * If there is no collected telemetry data, it returns null.
+     *
+     * @param threadSleep maximum time in milliseconds to wait for in-flight aggregations to the shared map, the
+     *                    thread buffers are locked while they are merged so there is nothing to wait for
+     * @return a map of the merged telemetry data if available; null otherwise
+     */
+    @Override
+    public synchronized Map<SqlTelemetry, SqlTelemetry> getAndResetDBTelemetryData(long threadSleep) {
+        Map<SqlTelemetry, SqlTelemetry> merged = new ConcurrentHashMap<>();
+        if (!sharedEntries.peek().isEmpty()) {
+            merged.putAll(sharedEntries.swap(threadSleep));
+        }
+        Iterator<ThreadBuffer> iterator = threadBuffers.iterator();
+        while (iterator.hasNext()) {
+            ThreadBuffer threadBuffer = iterator.next();
+            // Checked before merging, a thread found dead can't record anything after its buffer is merged
+            boolean ownerAlive = threadBuffer.isOwnerAlive();
+            threadBuffer.mergeAndReset(merged);
+            if (!ownerAlive) {
+                iterator.remove();
+            }
+        }
+        return merged.isEmpty() ? null : merged;
+    }
+
+    /**
+     * Returns the number of thread buffers currently held.
+     *
+     * @return the number of thread buffers
+     */
+    public int getThreadBufferCount() {
+        return threadBuffers.size();
+    }
+
+    private ThreadBuffer register() {
+        ThreadBuffer threadBuffer = new ThreadBuffer(Thread.currentThread(), maxEntriesPerThread);
+        threadBuffers.add(threadBuffer);
+        return threadBuffer;
+    }
+
+    private static final class ThreadBuffer {
+        private final WeakReference<Thread> owner;
+        private final int maxEntries;
+        private final Map<StatementKey, SqlTelemetry> entries = new HashMap<>();
+        // Reused to look statements up, a key is only allocated for statements new to the thread
+        private final StatementKey probe = new StatementKey();
+
+        private ThreadBuffer(Thread owner, int maxEntries) {
+            this.owner = new WeakReference<>(owner);
+            this.maxEntries = maxEntries;
+        }
+
+        /**
+         * Records a call in the buffer, unless the statement is new and the buffer full.
+         *
+         * @return true if the call was recorded, false if it has to be recorded elsewhere
+         */
+        private synchronized boolean record(String producer, String normalizedSql, CallSite callSite,
+                                            String sqlWithParameters, long executionTime, long weight) {
+            SqlTelemetry telemetry = entries.get(probe.set(producer, normalizedSql, callSite.getFingerprint()));
+            if (Objects.isNull(telemetry)) {
+                if (entries.size() >= maxEntries) {
+                    return false;
+                }
+                telemetry = SqlTelemetry.of(producer, normalizedSql, callSite, sqlWithParameters);
+                entries.put(probe.copy(), telemetry);
+            }
+            telemetry.setInstanceValue(executionTime, weight);
+            return true;
+        }
+
+        private synchronized void mergeAndReset(Map<SqlTelemetry, SqlTelemetry> merged) {
+            Iterator<SqlTelemetry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                SqlTelemetry local = iterator.next();
+                if (local.getCount() == 0) {
+                    // Not run by this thread during the whole interval
+                    iterator.remove();
+                    continue;
+                }
+                SqlTelemetry total = merged.get(local);
+                if (Objects.isNull(total)) {
+                    total = SqlTelemetry.of(local.getType(), local.getSql(),
+                            new CallSite(local.getStackTraceFingerprint(), local.getStackTrace()), local.getSqlWithParameters());
+                    merged.put(total, total);
+                }
+                total.add(local);
+                local.reset();
+            }
+        }
+
+        private boolean isOwnerAlive() {
+            Thread thread = owner.get();
+            return Objects.nonNull(thread) && thread.isAlive();
+        }
+    }
+
+    private static final class StatementKey {
+        private String type;
+        private String sql;
+        private long fingerprint;
+        private int hashCode;
+
+        private StatementKey set(String type, String sql, long fingerprint) {
+            this.type = StringUtils.defaultString(type, StringUtils.EMPTY);
+            this.sql = StringUtils.defaultString(sql, StringUtils.EMPTY);
+            this.fingerprint = fingerprint;
+            this.hashCode = 31 * (31 * (31 + this.type.hashCode()) + this.sql.hashCode()) + Long.hashCode(fingerprint);
+            return this;
+        }
+
+        private StatementKey copy() {
+            return new StatementKey().set(type, sql, fingerprint);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            StatementKey that = (StatementKey) o;
+            return fingerprint == that.fingerprint && type.equals(that.type) && sql.equals(that.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.intuit.dbtelemetry.sql.aggregator;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackTraceExtractor;
+import com.intuit.dbtelemetry.sql.sampler.Sampler;
+import com.intuit.dbtelemetry.sql.utils.ExcludedTablesMatcher;
+import com.intuit.dbtelemetry.sql.utils.SqlNormalizationCache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Aggregator tracking at most K statements per flush interval, the heaviest by count or by total call time, whatever
+ * the number of distinct statements (Space-Saving heavy hitters).
+ * When a new statement comes and K statements are tracked, the statement with the lowest rank is evicted into the
+ * "other" bucket and the new statement inherits its rank as error: its real count or call time is between the
+ * reported one and the reported one plus the rank error of its SqlTelemetry. A statement whose count or call time is
+ * above 1/K of the total is always reported. Calls of evicted statements are kept in the "other" bucket, so the totals
+ * of the interval are exact.
+ * Calls are recorded under a single lock, the aggregator can be wrapped in an AsyncAggregator to take it off the
+ * JDBC threads.
+ */
+public class TopKAggregator extends AbstractAggregator {
+
+    public static final int DEFAULT_CAPACITY = 1000;
+    public static final String OTHER_TYPE = "other";
+    public static final String OTHER_SQL = "OTHER STATEMENTS";
+
+    /**
+     * Metric ranking the statements.
+     */
+    public enum Ranking {
+        /**
+         * Ranks the statements by number of calls.
+         */
+        COUNT,
+        /**
+         * Ranks the statements by total call time.
+         */
+        CALL_TIME
+    }
+
+    private final int capacity;
+    private final Ranking ranking;
+    private final Object lock = new Object();
+    private final Map<SqlTelemetry, Entry> entries;
+    // Binary min-heap of the tracked entries on their rank
+    private final Entry[] heap;
+    private int size;
+    private SqlTelemetry other = newOther();
+
+    public TopKAggregator() {
+        this(DEFAULT_CAPACITY, Ranking.CALL_TIME);
+    }
+
+    public TopKAggregator(int capacity, Ranking ranking) {
+        this(null, null, capacity, ranking);
+    }
+
+    public TopKAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor, int capacity,
+                          Ranking ranking) {
+        this(new ExcludedTablesMatcher(excludedTablesList), stackTraceExtractor, new SqlNormalizationCache(), null,
+                capacity, ranking);
+    }
+
+    /**
+     * Constructs a TopKAggregator.
+     *
+     * @param excludedTablesMatcher matcher of the tables for which no telemetry data is collected, or null for none
+     * @param stackTraceExtractor   extractor of the calling stack trace, or null to disable stack traces
+     * @param sqlNormalizationCache cache of normalized statements, or null to normalize every statement
+     * @param sampler               sampler of the aggregated calls, or null to aggregate every call
+     * @param capacity              the number K of tracked statements
+     * @param ranking               the metric ranking the statements
+     */
+    public TopKAggregator(ExcludedTablesMatcher excludedTablesMatcher, StackTraceExtractor stackTraceExtractor,
+                          SqlNormalizationCache sqlNormalizationCache, Sampler sampler, int capacity, Ranking ranking) {
+        super(excludedTablesMatcher, stackTraceExtractor, sqlNormalizationCache, sampler);
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity " + capacity + " is below 1");
+        }
+        this.capacity = capacity;
+        this.ranking = Objects.requireNonNull(ranking, "ranking");
+        this.entries = new HashMap<>(capacity * 2);
+        this.heap = new Entry[capacity];
+    }
+
+    @Override
+    protected void record(String producer, String normalizedSql, CallSite callSite, String sqlWithParameters,
+                          long executionTime, long weight) {
+        SqlTelemetry key = SqlTelemetry.of(producer, normalizedSql, callSite, sqlWithParameters);
+        long rankIncrement = ranking == Ranking.COUNT ? weight : executionTime * weight;
+        synchronized (lock) {
+            Entry entry = entries.get(key);
+            if (Objects.isNull(entry)) {
+                entry = track(key);
+            }
+            entry.telemetry.setInstanceValue(executionTime, weight);
+            entry.rank += rankIncrement;
+            siftDown(entry.heapIndex);
+        }
+    }
+
+    /**
+     * Extract and reset the current SQL telemetry data set: the tracked statements, with their rank error, and the
+     * "other" bucket when statements were evicted.
+     * If there is no collected telemetry data, it returns null.
+     *
+     * @param threadSleep not used, calls are recorded under the lock taken by the flush
+     * @return a map of the current telemetry data if available; null otherwise
+     */
+    @Override
+    public Map<SqlTelemetry, SqlTelemetry> getAndResetDBTelemetryData(long threadSleep) {
+        synchronized (lock) {
+            if (size == 0) {
+                return null;
+            }
+            Map<SqlTelemetry, SqlTelemetry> telemetryData = new HashMap<>((size + 1) * 2);
+            for (int i = 0; i < size; i++) {
+                SqlTelemetry telemetry = heap[i].telemetry;
+                telemetry.setRankError(heap[i].error);
+                telemetryData.put(telemetry, telemetry);
+                heap[i] = null;
+            }
+            if (other.getCount() > 0) {
+                telemetryData.put(other, other);
+            }
+            entries.clear();
+            size = 0;
+            other = newOther();
+            return telemetryData;
+        }
+    }
+
+    /**
+     * Returns the number K of tracked statements.
+     *
+     * @return the capacity of this aggregator
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the metric ranking the statements.
+     *
+     * @return the ranking of this aggregator
+     */
+    public Ranking getRanking() {
+        return ranking;
+    }
+
+    private Entry track(SqlTelemetry key) {
+        if (size < capacity) {
+            Entry entry = new Entry(key, 0L, size);
+            heap[size++] = entry;
+            entries.put(key, entry);
+            siftUp(entry.heapIndex);
+            return entry;
+        }
+        // The lowest ranked statement makes room, the new one may have been called up to that rank before
+        Entry evicted = heap[0];
+        entries.remove(evicted.telemetry);
+        other.add(evicted.telemetry);
+        Entry entry = new Entry(key, evicted.rank, 0);
+        heap[0] = entry;
+        entries.put(key, entry);
+        return entry;
+    }
+
+    private void siftUp(int index) {
+        Entry entry = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].rank <= entry.rank) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(entry, index);
+    }
+
+    private void siftDown(int index) {
+        Entry entry = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && heap[right].rank < heap[child].rank) {
+                child = right;
+            }
+            if (entry.rank <= heap[child].rank) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(entry, index);
+    }
+
+    private void place(Entry entry, int index) {
+        heap[index] = entry;
+        entry.heapIndex = index;
+    }
+
+    private static SqlTelemetry newOther() {
+        return SqlTelemetry.of(OTHER_TYPE, OTHER_SQL, CallSite.NONE, null);
+    }
+
+    private static final class Entry {
+        private final SqlTelemetry telemetry;
+        private final long error;
+        private long rank;
+        private int heapIndex;
+
+        private Entry(SqlTelemetry telemetry, long error, int heapIndex) {
+            this.telemetry = telemetry;
+            this.error = error;
+            this.rank = error;
+            this.heapIndex = heapIndex;
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.intuit.dbtelemetry.sql.aspect.aspectj;
 
+import com.intuit.dbtelemetry.sql.AspectSwitch;
 import com.intuit.dbtelemetry.sql.TelemetryRegistry;
 import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.TelemetryOverhead;
 import com.intuit.dbtelemetry.sql.aggregator.Aggregator;
 import com.intuit.dbtelemetry.sql.aspect.TelemetryAspect;
 import com.intuit.dbtelemetry.sql.extractor.sql.SqlExtractor;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 
@@ -18,9 +21,12 @@ public abstract class AbstractAspectJTelemetryAspect implements TelemetryAspect<
 
     //Constructor to agg and sqlFinder
     private final SqlExtractor<ProceedingJoinPoint> sqlExtractor;
+    private final AspectSwitch aspectSwitch;
+    private final TelemetryOverhead overhead = TelemetryOverhead.shared();
 
     protected AbstractAspectJTelemetryAspect(SqlExtractor<ProceedingJoinPoint> sqlExtractor) {
         this.sqlExtractor = Objects.requireNonNull(sqlExtractor, "SQL Extractor cannot be null");
+        this.aspectSwitch = TelemetryRegistry.getAspectSwitch(this.getClass().getSimpleName());
     }
 
     /**
@@ -40,6 +46,7 @@ public abstract class AbstractAspectJTelemetryAspect implements TelemetryAspect<
             long callTime = (System.nanoTime() - beforeTime) / 1000;
             aggregate(proceedingJoinPoint, callTime);
         } catch (Exception e) {
+            overhead.recordAggregationFailure();
             log.error("Error in getSqlFinder", e);
         }
         return result;
@@ -63,22 +70,33 @@ public abstract class AbstractAspectJTelemetryAspect implements TelemetryAspect<
         Optional.ofNullable(getAggregator())
                 .ifPresent(agg -> {
                     try {
-                        getAggregator().aggregate(this.getClass().getName(), getSqlExtractor().extractSql(proceedingJoinPoint), callTime);
+                        long start = overhead.start();
+                        String sql = getSqlExtractor().extractSql(proceedingJoinPoint);
+                        overhead.stop(TelemetryOverhead.Stage.SQL_EXTRACTION, start);
+                        SlowStatementCapture capture = getSlowStatementCapture();
+                        if (Objects.nonNull(capture)) {
+                            // Captured by the aggregator once the statement is known not to be excluded, only the
+                            // captured statements pay for the parameters
+                            agg.aggregate(this.getClass().getName(), sql, callTime, capture,
+                                    () -> getSqlExtractor().extractParameters(proceedingJoinPoint));
+                        } else {
+                            agg.aggregate(this.getClass().getName(), sql, callTime);
+                        }
                     } catch (Exception e) {
+                        overhead.recordAggregationFailure();
                         log.error("Error in Aggregator", e);
                     }
                 });
     }
 
     /**
-     * Checks if this aspect is enabled based on the system property named after the class.
+     * Checks if this aspect is enabled, through its switch in the Telemetry Registry.
+     * The switch starts with the state of the system property named after the class.
      *
      * @return true if enabled, false otherwise
      */
     public boolean isEnabled() {
-        return Optional.ofNullable(System.getProperty(this.getClass().getSimpleName()))
-                .map(Boolean::parseBoolean)
-                .orElse(false);
+        return aspectSwitch.isEnabled();
     }
 
     /**
@@ -91,6 +109,15 @@ public abstract class AbstractAspectJTelemetryAspect implements TelemetryAspect<
         return TelemetryRegistry.getTelemetryRegistry().getAggregator();
     }
 
+    /**
+     * Retrieve the slow statement capture for this aspect from the Telemetry Registry.
+     *
+     * @return the slow statement capture, or null when slow statements are not captured
+     */
+    public SlowStatementCapture getSlowStatementCapture() {
+        return TelemetryRegistry.getTelemetryRegistry().getSlowStatementCapture();
+    }
+
     /**
      * Get the extractor that is responsible for processing SQL in join points.
      *
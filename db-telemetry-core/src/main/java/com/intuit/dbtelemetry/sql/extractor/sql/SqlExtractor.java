@@ -11,4 +11,15 @@ public interface SqlExtractor<T> {
      * @return the SQL statement, or null if the statement could not be extracted
      */
     String extractSql(T joinPoint);
+
+    /**
+     * Extracts the bound parameters of the SQL statement from the given join point, where the driver exposes them.
+     * Only called for the statements captured as slow.
+     *
+     * @param joinPoint the join point to extract the parameters from
+     * @return the parameters as rendered by the driver, or null if they could not be extracted
+     */
+    default String extractParameters(T joinPoint) {
+        return null;
+    }
 }
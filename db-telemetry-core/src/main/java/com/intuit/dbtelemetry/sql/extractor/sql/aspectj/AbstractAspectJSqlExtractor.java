@@ -6,13 +6,37 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.aspectj.lang.ProceedingJoinPoint;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 public abstract class AbstractAspectJSqlExtractor implements SqlExtractor<ProceedingJoinPoint> {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    // Read by classes without the field, so that they are only looked up once
+    private static final MethodHandle MISSING_FIELD =
+            MethodHandles.dropArguments(MethodHandles.constant(Object.class, null), 0, Object.class);
+
+    private final Map<List<String>, FieldChain> fieldChains = new ConcurrentHashMap<>();
+    private final ClassValue<FieldChain> targetFieldChains = new ClassValue<FieldChain>() {
+        @Override
+        protected FieldChain computeValue(Class<?> targetClass) {
+            return fieldChains.computeIfAbsent(Arrays.asList(getNestedFieldNames(targetClass.getName())), FieldChain::new);
+        }
+    };
+
     /**
      * Extracts the SQL statement from the given join point.
+     * The accessors of the nested fields are resolved once per class and cached, as well as their absence.
      *
      * @param joinPoint the join point to extract the SQL statement from
      * @return the SQL statement, or null if the statement could not be extracted
@@ -23,18 +47,39 @@ public abstract class AbstractAspectJSqlExtractor implements SqlExtractor<Procee
         try {
             Object target = getJoinPointTarget(joinPoint);
             if (Objects.nonNull(target)) {
-                String className = target.getClass().getName();
-                sql = extractSqlFromTarget(target, getNestedFieldNames(className));
+                sql = extractSqlFromTarget(target, targetFieldChains.get(target.getClass()));
             }
-        } catch (IllegalAccessException e) {
-            log.warn("Unable to extract sql", e);
         } catch (Exception e) {
             log.warn("Unexpected error", e);
         }
         return sql;
     }
+    /**
+     * Extracts the bound parameters from the argument of the join point at {@link #getParametersPosition()}, as
+     * rendered by its toString.
+     *
+     * @param joinPoint the join point to extract the parameters from
+     * @return the parameters, or null if the driver doesn't expose them
+     */
+    @Override
+    public String extractParameters(ProceedingJoinPoint joinPoint) {
+        int position = getParametersPosition();
+        if (position < 0) {
+            return null;
+        }
+        try {
+            Object[] args = joinPoint.getArgs();
+            if (Objects.nonNull(args) && args.length > position && Objects.nonNull(args[position])) {
+                return StringUtils.defaultIfEmpty(args[position].toString(), null);
+            }
+        } catch (Exception e) {
+            log.warn("Unexpected error", e);
+        }
+        return null;
+    }
     /**
      * Returns an array of nested field names to extract the SQL statement from the target object.
+     * Called once per class of target object.
      *
      * @param targetClassName the name of the class of the target object
      * @return an array of nested field names to extract the SQL statement from the target object
@@ -50,9 +95,18 @@ public abstract class AbstractAspectJSqlExtractor implements SqlExtractor<Procee
         return -1;
     }
 
+    /**
+     * Returns the position of the argument that contains the bound parameters.
+     *
+     * @return the position of the argument that contains the bound parameters, -1 if the driver doesn't expose them
+     */
+    protected int getParametersPosition() {
+        return -1;
+    }
+
     private Object getJoinPointTarget(ProceedingJoinPoint joinPoint) {
-        if (isArgBasedTarget()) {
-            return Optional.ofNullable(joinPoint.getTarget());
+        if (isJoinPointTarget()) {
+            return joinPoint.getTarget();
         }
 
         Object[] args = joinPoint.getArgs();
@@ -64,12 +118,12 @@ public abstract class AbstractAspectJSqlExtractor implements SqlExtractor<Procee
         return null;
     }
 
-    private boolean isArgBasedTarget() {
+    private boolean isJoinPointTarget() {
         return getArgsPosition() == -1;
     }
 
-    private String extractSqlFromTarget(Object target, String[] nestedFieldNames) throws IllegalAccessException {
-        Object resultObject = readField(target, nestedFieldNames);
+    private String extractSqlFromTarget(Object target, FieldChain fieldChain) {
+        Object resultObject = fieldChain.read(target);
         if (Objects.isNull(resultObject)){
             return null;
         }
@@ -77,15 +131,65 @@ public abstract class AbstractAspectJSqlExtractor implements SqlExtractor<Procee
         return StringUtils.isEmpty(resultString)?null:resultString;
     }
 
-    private Object readField(Object target, String[] fieldNames) throws IllegalAccessException {
-        Object fieldValue = null;
-        for (String fieldName : fieldNames) {
-            fieldValue = readField(target, fieldName);
+    private static MethodHandle resolveGetter(Class<?> type, String fieldName) {
+        try {
+            Field field = FieldUtils.getField(type, fieldName, true);
+            if (Objects.isNull(field)) {
+                log.debug("No field {} in {}", fieldName, type.getName());
+                return MISSING_FIELD;
+            }
+            MethodHandle getter = MethodHandles.lookup().unreflectGetter(field);
+            if (Modifier.isStatic(field.getModifiers())) {
+                getter = MethodHandles.dropArguments(getter, 0, Object.class);
+            }
+            return getter.asType(GETTER_TYPE);
+        } catch (Exception e) {
+            // e.g. fields of classes in modules not opened to this library
+            log.warn("Unable to access field {} in {}", fieldName, type.getName(), e);
+            return MISSING_FIELD;
         }
-        return fieldValue;
     }
 
-    private Object readField(Object target, String fieldName) throws IllegalAccessException {
-        return FieldUtils.readField(target, fieldName, true);
+    /**
+     * Path of fields leading to the SQL statement, each field being read with a getter cached per concrete class.
+     */
+    private static final class FieldChain {
+        private final List<ClassValue<MethodHandle>> getters = new ArrayList<>();
+
+        private FieldChain(List<String> fieldNames) {
+            for (String fieldName : fieldNames) {
+                getters.add(new ClassValue<MethodHandle>() {
+                    @Override
+                    protected MethodHandle computeValue(Class<?> type) {
+                        return resolveGetter(type, fieldName);
+                    }
+                });
+            }
+        }
+
+        private Object read(Object target) {
+            if (getters.isEmpty()) {
+                return null;
+            }
+            Object fieldValue = target;
+            for (ClassValue<MethodHandle> getter : getters) {
+                if (Objects.isNull(fieldValue)) {
+                    return null;
+                }
+                fieldValue = invoke(getter.get(fieldValue.getClass()), fieldValue);
+            }
+            return fieldValue;
+        }
+
+        private static Object invoke(MethodHandle getter, Object target) {
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                // Field getters don't throw checked exceptions
+                throw new IllegalStateException(t);
+            }
+        }
     }
 }
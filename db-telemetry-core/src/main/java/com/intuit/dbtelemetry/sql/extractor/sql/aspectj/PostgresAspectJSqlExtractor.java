@@ -22,4 +22,10 @@ public class PostgresAspectJSqlExtractor extends AbstractAspectJSqlExtractor {
     protected int getArgsPosition() {
         return 0;
     }
+
+    // The ParameterList following the CachedQuery, rendered by pgjdbc with the bound values
+    @Override
+    protected int getParametersPosition() {
+        return 1;
+    }
 }
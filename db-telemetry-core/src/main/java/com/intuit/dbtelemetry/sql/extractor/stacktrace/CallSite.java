@@ -0,0 +1,95 @@
+package com.intuit.dbtelemetry.sql.extractor.stacktrace;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Call site of a SQL statement: a 64-bit fingerprint of the stack frames together with the readable stack trace.
+ * Two call sites with the same fingerprint are treated as the same call site, the fingerprint 0 is reserved for
+ * statements aggregated without stack trace.
+ */
+public final class CallSite {
+
+    public static final CallSite NONE = new CallSite(0L, StringUtils.EMPTY);
+
+    private static final long SEED = 0xCBF29CE484222325L;
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private final long fingerprint;
+    private final String stackTrace;
+
+    /**
+     * Constructs a CallSite.
+     *
+     * @param fingerprint the fingerprint of the stack frames
+     * @param stackTrace  the readable stack trace
+     */
+    public CallSite(long fingerprint, String stackTrace) {
+        this.fingerprint = fingerprint;
+        this.stackTrace = StringUtils.defaultString(stackTrace, StringUtils.EMPTY);
+    }
+
+    /**
+     * Creates the CallSite of an already formatted stack trace, fingerprinting its text.
+     *
+     * @param stackTrace the stack trace, may be null or empty
+     * @return the CallSite of the stack trace, or {@link #NONE} when there is no stack trace
+     */
+    public static CallSite of(String stackTrace) {
+        return StringUtils.isEmpty(stackTrace) ? NONE : new CallSite(fingerprint(stackTrace), stackTrace);
+    }
+
+    /**
+     * Computes the fingerprint of a formatted stack trace.
+     *
+     * @param stackTrace the stack trace, may be null or empty
+     * @return the fingerprint of the stack trace, 0 when there is no stack trace
+     */
+    public static long fingerprint(String stackTrace) {
+        if (StringUtils.isEmpty(stackTrace)) {
+            return 0L;
+        }
+        long hash = SEED;
+        for (int i = 0; i < stackTrace.length(); i++) {
+            hash = mix(hash, stackTrace.charAt(i));
+        }
+        return finish(hash);
+    }
+
+    static long start() {
+        return SEED;
+    }
+
+    static long mix(long hash, int value) {
+        return Long.rotateLeft((hash ^ value) * MULTIPLIER, 29);
+    }
+
+    static long finish(long hash) {
+        // MurmurHash3 finalizer, so that the low bits can be used as a table index
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash == 0L ? 1L : hash;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public String getStackTrace() {
+        return stackTrace;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return fingerprint == ((CallSite) o).fingerprint;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(fingerprint);
+    }
+}
@@ -0,0 +1,11 @@
+package com.intuit.dbtelemetry.sql.extractor.stacktrace;
+
+public interface CallSiteExtractor extends StackTraceExtractor {
+    /**
+     * Extracts the call site of the current thread. The same call site is expected to return an equal CallSite,
+     * and implementations are free to return the same instance every time.
+     *
+     * @return the call site of the current thread
+     */
+    CallSite extractCallSite();
+}
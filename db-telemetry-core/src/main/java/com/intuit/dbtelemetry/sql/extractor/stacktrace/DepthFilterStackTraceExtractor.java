@@ -9,14 +9,15 @@ import java.util.Optional;
 public class DepthFilterStackTraceExtractor implements StackTraceExtractor {
 
     public static final String LINE_SEPARATOR = System.getProperty("line.separator");
-    public static final String DB_TELEMETRY_PACKAGE = "com.intuit.sbg.psp.dbtelemetry";
-    private int depth;
+    public static final String DB_TELEMETRY_PACKAGE = "com.intuit.dbtelemetry.";
+    private final int depth;
     private final Optional<String> filter;
 
     /**
      * Constructs a DepthFilterStackTraceExtractor object with the given depth and filter string.
      *
-     * @param depth the maximum depth of the stack trace to include, or -1 to include all levels
+     * @param depth the maximum number of matching frames to include, counted from the frame closest to the SQL
+     *              call, or -1 to include all levels
      * @param filter the filter string to exclude stack trace lines that doesn't contain this string
      */
     public DepthFilterStackTraceExtractor(int depth, String filter) {
@@ -26,7 +27,7 @@ public class DepthFilterStackTraceExtractor implements StackTraceExtractor {
 
     /**
      * Extracts the stack trace as a string from the given Throwable object, filtered by the depth and filter string
-     * provided in the constructor.
+     * provided in the constructor. The frames closest to the SQL call are kept, and printed outermost frame first.
      *
      * @param throwable the Throwable object to extract the stack trace from
      * @return the filtered stack trace as a string, or null if the stack trace could not be extracted
@@ -39,10 +40,11 @@ public class DepthFilterStackTraceExtractor implements StackTraceExtractor {
         StringBuilder result = new StringBuilder();
         result.append(LINE_SEPARATOR);
         String[] stackTraceElements = ExceptionUtils.getStackFrames(throwable);
-        for (int i = stackTraceElements.length - 1; i > 0 && (depth == -1 || depth > 0); i--) {
+        // The first line is the message, the frames follow innermost first
+        int outermost = depth == -1 ? stackTraceElements.length - 1 : outermostKept(stackTraceElements);
+        for (int i = outermost; i > 0; i--) {
             String stack = stackTraceElements[i];
             if (shouldInclude(stack)) {
-                if (depth != -1) depth--;
                 result.append(stack);
                 result.append(LINE_SEPARATOR);
             }
@@ -51,9 +53,33 @@ public class DepthFilterStackTraceExtractor implements StackTraceExtractor {
         return result.toString();
     }
 
+    private int outermostKept(String[] stackTraceElements) {
+        // Counted per call, the extractor is shared by all the threads running SQL
+        int remaining = depth;
+        int outermost = 0;
+        for (int i = 1; i < stackTraceElements.length && remaining > 0; i++) {
+            if (shouldInclude(stackTraceElements[i])) {
+                remaining--;
+                outermost = i;
+            }
+        }
+        return outermost;
+    }
+
     private boolean shouldInclude(String stack) {
         return filter
-                .map(f -> stack.contains(f) && !stack.contains(DB_TELEMETRY_PACKAGE))
+                .map(f -> stack.contains(f) && !isLibraryFrame(stack))
                 .orElse(true);
     }
+
+    private static boolean isLibraryFrame(String stack) {
+        int start = stack.indexOf(DB_TELEMETRY_PACKAGE);
+        if (start < 0) {
+            return false;
+        }
+        // "at package.Class.method(Class.java:1)", the class name ends at the last dot before the parenthesis
+        int parenthesis = stack.indexOf('(', start);
+        int end = stack.lastIndexOf('.', parenthesis < 0 ? stack.length() : parenthesis);
+        return end <= start || LibraryClasses.isLibraryClass(stack.substring(start, end));
+    }
 }
@@ -0,0 +1,53 @@
+package com.intuit.dbtelemetry.sql.extractor.stacktrace;
+
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.intuit.dbtelemetry.sql.extractor.stacktrace.DepthFilterStackTraceExtractor.DB_TELEMETRY_PACKAGE;
+
+/**
+ * Tells the classes of this library apart from the application classes, so that the extractors leave the frames of
+ * the aspects and aggregators out of the stack traces. A class belongs to the library when it is in the
+ * {@link DepthFilterStackTraceExtractor#DB_TELEMETRY_PACKAGE} package and loaded from the same jar or directory as
+ * this class, so that application or test classes sharing the package are kept.
+ */
+final class LibraryClasses {
+
+    private static final URL LIBRARY_LOCATION = location(LibraryClasses.class);
+    private static final ClassValue<Boolean> LIBRARY_CLASSES = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return Objects.isNull(LIBRARY_LOCATION) || LIBRARY_LOCATION.equals(location(type));
+        }
+    };
+    // Only holds the classes of the library package, resolved once by name
+    private static final Map<String, Boolean> LIBRARY_CLASS_NAMES = new ConcurrentHashMap<>();
+
+    private LibraryClasses() {
+    }
+
+    static boolean isLibraryClass(Class<?> type) {
+        return type.getName().startsWith(DB_TELEMETRY_PACKAGE) && LIBRARY_CLASSES.get(type);
+    }
+
+    static boolean isLibraryClass(String className) {
+        return className.startsWith(DB_TELEMETRY_PACKAGE)
+                && LIBRARY_CLASS_NAMES.computeIfAbsent(className, LibraryClasses::resolve);
+    }
+
+    private static boolean resolve(String className) {
+        try {
+            return LIBRARY_CLASSES.get(Class.forName(className, false, LibraryClasses.class.getClassLoader()));
+        } catch (ClassNotFoundException | LinkageError e) {
+            return true;
+        }
+    }
+
+    private static URL location(Class<?> type) {
+        CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+        return Objects.isNull(codeSource) ? null : codeSource.getLocation();
+    }
+}
@@ -0,0 +1,50 @@
+package com.intuit.dbtelemetry.sql.extractor.stacktrace;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates the stack trace extractors depending on the runtime. The library targets Java 8, where
+ * StackWalkerStackTraceExtractor can't be loaded, so it is only created reflectively on Java 9 or later.
+ */
+@Slf4j
+public final class StackTraceExtractors {
+
+    private static final String STACK_WALKER_EXTRACTOR = "com.intuit.dbtelemetry.sql.extractor.stacktrace.StackWalkerStackTraceExtractor";
+
+    private StackTraceExtractors() {
+    }
+
+    /**
+     * Checks if the runtime provides java.lang.StackWalker, i.e. is Java 9 or later.
+     *
+     * @return true if StackWalkerStackTraceExtractor can be used, false otherwise
+     */
+    public static boolean isStackWalkerAvailable() {
+        try {
+            Class.forName("java.lang.StackWalker");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a StackWalkerStackTraceExtractor on Java 9 or later, a DepthFilterStackTraceExtractor otherwise.
+     * Both count the depth from the frame closest to the SQL call, so they keep the same frames.
+     *
+     * @param depth  the maximum number of matching frames to include, or -1 to include all of them
+     * @param filter the filter string to exclude frames that don't contain this string
+     * @return the stack trace extractor
+     */
+    public static StackTraceExtractor stackWalkerOrDepthFilter(int depth, String filter) {
+        if (isStackWalkerAvailable()) {
+            try {
+                return (StackTraceExtractor) Class.forName(STACK_WALKER_EXTRACTOR)
+                        .getConstructor(int.class, String.class).newInstance(depth, filter);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                log.warn("Unable to create the StackWalker extractor, falling back to the depth filter one", e);
+            }
+        }
+        return new DepthFilterStackTraceExtractor(depth, filter);
+    }
+}
@@ -0,0 +1,149 @@
+package com.intuit.dbtelemetry.sql.extractor.stacktrace;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.intuit.dbtelemetry.sql.extractor.stacktrace.DepthFilterStackTraceExtractor.LINE_SEPARATOR;
+
+/**
+ * StackTraceExtractor walking the current thread with {@link StackWalker} instead of formatting a Throwable.
+ * Frames are filtered by class name while walking and the walk stops as soon as depth matching frames are found,
+ * so frames that are not kept are never materialized. As with DepthFilterStackTraceExtractor the depth counts from
+ * the frame closest to the SQL call, and the output format is the same, outermost frame first.
+ * Call sites are fingerprinted from the class, method and line of the kept frames and their readable stack trace
+ * is only built and interned the first time a fingerprint is seen.
+ * The frames of the library itself are left out.
+ * Instances can be shared across threads. Requires a Java 9 or later runtime: the library targets Java 8, so on
+ * Java 8 create the extractors through {@link StackTraceExtractors#stackWalkerOrDepthFilter(int, String)}.
+ */
+public class StackWalkerStackTraceExtractor implements CallSiteExtractor {
+
+    public static final int DEFAULT_MAX_CALL_SITES = 4096;
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+    private static final String FRAME_PREFIX = "\tat ";
+    private static final int MAX_PROBES = 16;
+
+    private final int depth;
+    private final String filter;
+    private final AtomicReferenceArray<CallSite> callSites;
+    private final Function<Stream<StackWalker.StackFrame>, List<StackWalker.StackFrame>> frameCollector;
+
+    /**
+     * Constructs a StackWalkerStackTraceExtractor object with the given depth and filter string.
+     *
+     * @param depth  the maximum number of matching frames to include, or -1 to include all of them
+     * @param filter the filter string to exclude frames whose class name doesn't contain this string
+     */
+    public StackWalkerStackTraceExtractor(int depth, String filter) {
+        this(depth, filter, DEFAULT_MAX_CALL_SITES);
+    }
+
+    /**
+     * Constructs a StackWalkerStackTraceExtractor object with the given depth, filter string and interning limit.
+     *
+     * @param depth        the maximum number of matching frames to include, or -1 to include all of them
+     * @param filter       the filter string to exclude frames whose class name doesn't contain this string
+     * @param maxCallSites the number of call sites whose stack trace is interned, others are formatted on every call
+     */
+    public StackWalkerStackTraceExtractor(int depth, String filter, int maxCallSites) {
+        this.depth = depth;
+        this.filter = StringUtils.defaultString(filter, StringUtils.EMPTY);
+        // Kept at most half full so that probing stays short
+        this.callSites = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(maxCallSites, 1)) << 2);
+        this.frameCollector = frames -> limit(frames.filter(this::shouldInclude))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Extracts the call site of the current thread.
+     *
+     * @return the interned call site of the current thread
+     */
+    @Override
+    public CallSite extractCallSite() {
+        List<StackWalker.StackFrame> frames = STACK_WALKER.walk(frameCollector);
+        long hash = CallSite.start();
+        for (StackWalker.StackFrame frame : frames) {
+            hash = CallSite.mix(hash, frame.getClassName().hashCode());
+            hash = CallSite.mix(hash, frame.getMethodName().hashCode());
+            hash = CallSite.mix(hash, frame.getLineNumber());
+        }
+        return intern(CallSite.finish(hash), frames);
+    }
+
+    /**
+     * Extracts the filtered stack trace of the current thread.
+     *
+     * @return the filtered stack trace as a string
+     */
+    public String extractStackTrace() {
+        return extractCallSite().getStackTrace();
+    }
+
+    /**
+     * Extracts the filtered stack trace from the frames already captured by the given Throwable object,
+     * without printing the Throwable.
+     *
+     * @param throwable the Throwable object to extract the stack trace from
+     * @return the filtered stack trace as a string, or null if the stack trace could not be extracted
+     */
+    @Override
+    public String extractStackTrace(Throwable throwable) {
+        if (Objects.isNull(throwable)) {
+            return null;
+        }
+        return format(limit(Stream.of(throwable.getStackTrace()).filter(element -> shouldInclude(element.getClassName())))
+                .collect(Collectors.toList()));
+    }
+
+    private CallSite intern(long fingerprint, List<StackWalker.StackFrame> frames) {
+        int mask = callSites.length() - 1;
+        int index = (int) fingerprint & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            CallSite existing = callSites.get(index);
+            if (Objects.isNull(existing)) {
+                CallSite callSite = new CallSite(fingerprint, formatFrames(frames));
+                if (callSites.compareAndSet(index, null, callSite)) {
+                    return callSite;
+                }
+                existing = callSites.get(index);
+            }
+            if (existing.getFingerprint() == fingerprint) {
+                return existing;
+            }
+            index = (index + 1) & mask;
+        }
+        return new CallSite(fingerprint, formatFrames(frames));
+    }
+
+    private <T> Stream<T> limit(Stream<T> frames) {
+        return depth == -1 ? frames : frames.limit(Math.max(depth, 0));
+    }
+
+    private boolean shouldInclude(StackWalker.StackFrame frame) {
+        return frame.getClassName().contains(filter) && !LibraryClasses.isLibraryClass(frame.getDeclaringClass());
+    }
+
+    private boolean shouldInclude(String className) {
+        return className.contains(filter) && !LibraryClasses.isLibraryClass(className);
+    }
+
+    private static String formatFrames(List<StackWalker.StackFrame> frames) {
+        return format(frames.stream().map(StackWalker.StackFrame::toStackTraceElement).collect(Collectors.toList()));
+    }
+
+    private static String format(List<StackTraceElement> frames) {
+        StringBuilder result = new StringBuilder();
+        result.append(LINE_SEPARATOR);
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            result.append(FRAME_PREFIX).append(frames.get(i)).append(LINE_SEPARATOR);
+        }
+        return result.toString();
+    }
+}
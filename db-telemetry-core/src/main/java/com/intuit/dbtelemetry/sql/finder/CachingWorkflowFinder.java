@@ -0,0 +1,157 @@
+package com.intuit.dbtelemetry.sql.finder;
+
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.utils.LeastRecentlyUsed;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WorkflowFinder remembering, by stack trace fingerprint and across flushes, the workflow names found by its delegate,
+ * so that a stack trace is parsed once instead of on every flush referencing it.
+ * Looking up a known stack trace doesn't lock. Once above its maximum number of entries, the least recently used
+ * entries are evicted.
+ */
+public class CachingWorkflowFinder implements WorkflowFinder {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    // Stack traces without workflow, the map can't hold null values
+    private static final String NO_WORKFLOW = new String();
+
+    private final WorkflowFinder delegate;
+    private final int maxEntries;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    // Clock ordering the uses of the entries
+    private final AtomicLong useCount = new AtomicLong();
+
+    /**
+     * Constructs a CachingWorkflowFinder with {@link #DEFAULT_MAX_ENTRIES} entries.
+     *
+     * @param delegate the WorkflowFinder parsing the stack traces
+     */
+    public CachingWorkflowFinder(WorkflowFinder delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructs a CachingWorkflowFinder.
+     *
+     * @param delegate   the WorkflowFinder parsing the stack traces
+     * @param maxEntries the maximum number of stack traces to remember
+     */
+    public CachingWorkflowFinder(WorkflowFinder delegate, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries " + maxEntries + " is below 1");
+        }
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the workflow name of a stack trace, fingerprinting its text to look it up.
+     *
+     * @param stackTraceString the stack trace string to extract the workflow name from
+     * @return the workflow name, or null if the workflow name could not be extracted
+     */
+    @Override
+    public String getWorkflowName(String stackTraceString) {
+        return getWorkflowName(CallSite.fingerprint(stackTraceString), stackTraceString);
+    }
+
+    /**
+     * Returns the workflow name of a stack trace, asking the delegate only the first time the fingerprint is seen.
+     *
+     * @param stackTraceFingerprint the fingerprint of the stack trace
+     * @param stackTraceString      the stack trace string to extract the workflow name from
+     * @return the workflow name, or null if the workflow name could not be extracted
+     */
+    @Override
+    public String getWorkflowName(long stackTraceFingerprint, String stackTraceString) {
+        Entry entry = entries.get(stackTraceFingerprint);
+        if (Objects.nonNull(entry)) {
+            hitCount.increment();
+            entry.lastUsed = useCount.incrementAndGet();
+        } else {
+            missCount.increment();
+            entry = register(stackTraceFingerprint, stackTraceString);
+        }
+        return entry.workflow == NO_WORKFLOW ? null : entry.workflow;
+    }
+
+    /**
+     * Finds the workflow name of a stack trace not remembered yet, e.g. on the thread which ran the statement, so
+     * that the flushes find it with a lookup. Remembered stack traces are neither counted as used nor as hits.
+     *
+     * @param callSite the call site whose stack trace is resolved
+     */
+    public void resolve(CallSite callSite) {
+        if (!entries.containsKey(callSite.getFingerprint())) {
+            missCount.increment();
+            register(callSite.getFingerprint(), callSite.getStackTrace());
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the number of stack traces remembered.
+     *
+     * @return the size of the cache
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the WorkflowFinder parsing the stack traces.
+     *
+     * @return the delegate WorkflowFinder
+     */
+    public WorkflowFinder getDelegate() {
+        return delegate;
+    }
+
+    private Entry register(long fingerprint, String stackTrace) {
+        // Parsed outside of any lock, two threads may parse the same new stack trace
+        String workflow = delegate.getWorkflowName(stackTrace);
+        Entry entry = new Entry(Objects.isNull(workflow) ? NO_WORKFLOW : workflow, useCount.incrementAndGet());
+        Entry previous = entries.putIfAbsent(fingerprint, entry);
+        if (Objects.nonNull(previous)) {
+            return previous;
+        }
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+        return entry;
+    }
+
+    private synchronized void evict() {
+        evictionCount.add(LeastRecentlyUsed.evict(entries, maxEntries, entry -> entry.lastUsed));
+    }
+
+    private static final class Entry {
+        private final String workflow;
+        private volatile long lastUsed;
+
+        private Entry(String workflow, long lastUsed) {
+            this.workflow = workflow;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -8,4 +8,17 @@ public interface WorkflowFinder {
      * @return the workflow name, or null if the workflow name could not be extracted
      */
     String getWorkflowName(String stackTraceString);
+
+    /**
+     * Extracts the workflow name from the given stack trace string, whose fingerprint is already known.
+     * Implementations remembering the workflow names can look them up by fingerprint, by default the stack trace
+     * string is parsed.
+     *
+     * @param stackTraceFingerprint the fingerprint of the stack trace
+     * @param stackTraceString      the stack trace string to extract the workflow name from
+     * @return the workflow name, or null if the workflow name could not be extracted
+     */
+    default String getWorkflowName(long stackTraceFingerprint, String stackTraceString) {
+        return getWorkflowName(stackTraceString);
+    }
 }
@@ -0,0 +1,249 @@
+package com.intuit.dbtelemetry.sql.histogram;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size log-linear latency histogram, safe for concurrent recording.
+ * Every power of two range is split in {@value #SUB_BUCKETS} linear sub-buckets, so a recorded value is reported with
+ * a relative error below 12.5%. Values up to 2^32 - 1 (about 71 minutes in microseconds) are tracked, larger values
+ * fall in the last bucket. A set of counters holds {@value #BUCKET_COUNT} counters, about 2 KB whatever is recorded.
+ * Threads recording the same histogram at the same time would contend on the same counters, so the counters are
+ * striped like a LongAdder: a histogram starts with one set of counters, and every failed update doubles the number
+ * of sets, up to {@link #MAX_STRIPES}. A thread updates the set picked by its id, and the sets are summed when read.
+ * Histograms recorded by a single thread at a time keep a single set.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 31;
+    public static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    public static final int MAX_STRIPES =
+            Math.min(8, Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors(), 1)));
+
+    // A power of two of counter sets, only replaced by a larger array holding the same sets
+    private volatile AtomicLongArray[] stripes = {new AtomicLongArray(BUCKET_COUNT)};
+
+    /**
+     * Records a value.
+     *
+     * @param value the value to record, negative values are recorded as 0
+     */
+    public void recordValue(long value) {
+        increment(indexOf(value), 1L);
+    }
+
+    /**
+     * Records a value that stands for several occurrences.
+     *
+     * @param value the value to record, negative values are recorded as 0
+     * @param count the number of occurrences of the value
+     */
+    public void recordValue(long value, long count) {
+        increment(indexOf(value), count);
+    }
+
+    /**
+     * Adds occurrences to a bucket, e.g. when rebuilding a histogram whose counters were kept elsewhere.
+     *
+     * @param index the index of the bucket, as returned by {@link #indexOf(long)}
+     * @param count the number of occurrences to add
+     */
+    public void addBucketCount(int index, long count) {
+        increment(index, count);
+    }
+
+    /**
+     * Adds the values recorded by another histogram.
+     *
+     * @param other the histogram whose values are added
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.countAt(i);
+            if (count != 0) {
+                increment(i, count);
+            }
+        }
+    }
+
+    /**
+     * Clears the recorded values. Values recorded concurrently may or may not be kept.
+     */
+    public void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                stripe.set(i, 0);
+            }
+        }
+    }
+
+    /**
+     * Returns the total number of recorded values.
+     *
+     * @return the number of recorded values
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += countAt(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the value at the given percentile, as the highest value equivalent to the bucket holding it.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the percentile, or 0 when nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = countAt(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = rankOf(percentile, total);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return highestEquivalentValue(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the values at several percentiles in a single pass, without allocating.
+     * Meant for histograms no longer recorded to, e.g. at flush time.
+     *
+     * @param percentiles the percentiles in ascending order, between 0 and 100
+     * @param values      receives the value at each percentile, 0 when nothing was recorded
+     */
+    public void getValuesAtPercentiles(double[] percentiles, long[] values) {
+        long total = getTotalCount();
+        if (total == 0) {
+            Arrays.fill(values, 0, percentiles.length, 0L);
+            return;
+        }
+        int next = 0;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT && next < percentiles.length; i++) {
+            seen += countAt(i);
+            while (next < percentiles.length && seen >= rankOf(percentiles[next], total)) {
+                values[next++] = highestEquivalentValue(i);
+            }
+        }
+        while (next < percentiles.length) {
+            values[next++] = highestEquivalentValue(BUCKET_COUNT - 1);
+        }
+    }
+
+    /**
+     * Returns the cumulative counts of recorded values at or below several bounds in a single pass, without
+     * allocating. A bucket is counted at a bound when its highest equivalent value is at or below the bound, so a
+     * value within the precision of the histogram below a bound may be counted at the next one.
+     *
+     * @param upperBounds the bounds in ascending order
+     * @param counts      receives the number of recorded values at or below each bound
+     */
+    public void getCumulativeCounts(long[] upperBounds, long[] counts) {
+        int next = 0;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT && next < upperBounds.length; i++) {
+            while (next < upperBounds.length && highestEquivalentValue(i) > upperBounds[next]) {
+                counts[next++] = seen;
+            }
+            seen += countAt(i);
+        }
+        while (next < upperBounds.length) {
+            counts[next++] = seen;
+        }
+    }
+
+    private void increment(int index, long count) {
+        AtomicLongArray[] current = stripes;
+        AtomicLongArray stripe = current[probe() & (current.length - 1)];
+        long expected = stripe.get(index);
+        if (!stripe.compareAndSet(index, expected, expected + count)) {
+            grow(current);
+            stripe.addAndGet(index, count);
+        }
+    }
+
+    private void grow(AtomicLongArray[] current) {
+        if (current.length >= MAX_STRIPES) {
+            return;
+        }
+        synchronized (this) {
+            if (stripes != current) {
+                return;
+            }
+            AtomicLongArray[] grown = Arrays.copyOf(current, current.length * 2);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new AtomicLongArray(BUCKET_COUNT);
+            }
+            stripes = grown;
+        }
+    }
+
+    private long countAt(int index) {
+        long count = 0;
+        for (AtomicLongArray stripe : stripes) {
+            count += stripe.get(index);
+        }
+        return count;
+    }
+
+    private static int probe() {
+        // Spreads the sequential thread ids over the stripes
+        int hash = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static long rankOf(double percentile, long total) {
+        double clamped = Math.min(Math.max(percentile, 0D), 100D);
+        return Math.max(1L, (long) Math.ceil(clamped / 100D * total));
+    }
+
+    /**
+     * Returns the index of the bucket of a value.
+     *
+     * @param value the value, negative values fall in the first bucket
+     * @return the index of the bucket, between 0 and {@value #BUCKET_COUNT} - 1
+     */
+    public static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(value, 0L);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << shift;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        return lowestEquivalentValue(index) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,79 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.slow.SlowStatement;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Encodes the records in a compact binary format.
+ * Every record starts with its tag, {@link #TELEMETRY_RECORD}, {@link #STACK_TRACE_RECORD} or
+ * {@link #SLOW_STATEMENT_RECORD}, followed by the flush time. Numbers are unsigned LEB128 variable length integers,
+ * fingerprints 8 big-endian bytes and strings the variable length of their UTF-8 bytes followed by the bytes.
+ * A statement record holds: tag, time, type, sql, stack trace fingerprint, count, call time, min, max, p50, p90, p99,
+ * p999, rank error, workflow and sql with parameters (empty when not collected).
+ * A stack trace record holds: tag, time, stack trace fingerprint and stack trace.
+ * A slow statement record holds: tag, time, type, sql, sql fingerprint, stack trace fingerprint, execution time,
+ * execution timestamp, thread name and parameters (empty when not exposed by the driver).
+ */
+public class BinaryRecordEncoder implements TelemetryRecordEncoder {
+
+    public static final int TELEMETRY_RECORD = 1;
+    public static final int STACK_TRACE_RECORD = 2;
+    public static final int SLOW_STATEMENT_RECORD = 3;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final long[] percentileValues = new long[PERCENTILES.length];
+
+    @Override
+    public void encodeTelemetry(SqlTelemetry telemetry, long timestampMillis, RecordBuffer buffer) {
+        telemetry.getCallTimesAtPercentiles(PERCENTILES, percentileValues);
+        buffer.writeByte(TELEMETRY_RECORD);
+        buffer.writeVarLong(timestampMillis);
+        writeString(telemetry.getType(), buffer);
+        writeString(telemetry.getSql(), buffer);
+        buffer.writeFixedLong(telemetry.getStackTraceFingerprint());
+        buffer.writeVarLong(telemetry.getCount());
+        buffer.writeVarLong(telemetry.getCallTime());
+        buffer.writeVarLong(telemetry.getMin());
+        buffer.writeVarLong(telemetry.getMax());
+        for (long percentileValue : percentileValues) {
+            buffer.writeVarLong(percentileValue);
+        }
+        buffer.writeVarLong(telemetry.getRankError());
+        writeString(telemetry.getWorkflow(), buffer);
+        writeString(telemetry.getSqlWithParameters(), buffer);
+    }
+
+    @Override
+    public void encodeStackTrace(long fingerprint, String stackTrace, long timestampMillis, RecordBuffer buffer) {
+        buffer.writeByte(STACK_TRACE_RECORD);
+        buffer.writeVarLong(timestampMillis);
+        buffer.writeFixedLong(fingerprint);
+        writeString(stackTrace, buffer);
+    }
+
+    @Override
+    public void encodeSlowStatement(SlowStatement slowStatement, long timestampMillis, RecordBuffer buffer) {
+        buffer.writeByte(SLOW_STATEMENT_RECORD);
+        buffer.writeVarLong(timestampMillis);
+        writeString(slowStatement.getType(), buffer);
+        writeString(slowStatement.getSql(), buffer);
+        buffer.writeFixedLong(slowStatement.getSqlFingerprint());
+        buffer.writeFixedLong(slowStatement.getStackTraceFingerprint());
+        buffer.writeVarLong(slowStatement.getExecutionTime());
+        buffer.writeVarLong(slowStatement.getTimestampMillis());
+        writeString(slowStatement.getThreadName(), buffer);
+        writeString(slowStatement.getParameters(), buffer);
+    }
+
+    @Override
+    public String fileExtension() {
+        return "bin";
+    }
+
+    private static void writeString(String value, RecordBuffer buffer) {
+        String content = StringUtils.defaultString(value);
+        buffer.writeVarLong(RecordBuffer.utf8Length(content));
+        buffer.writeUtf8(content);
+    }
+}
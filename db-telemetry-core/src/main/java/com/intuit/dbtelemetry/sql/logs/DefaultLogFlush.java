@@ -1,12 +1,17 @@
 package com.intuit.dbtelemetry.sql.logs;
 
 import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.TelemetryOverhead;
 import com.intuit.dbtelemetry.sql.aggregator.Aggregator;
 import com.intuit.dbtelemetry.sql.finder.WorkflowFinder;
+import com.intuit.dbtelemetry.sql.slow.SlowStatement;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
+import com.intuit.dbtelemetry.sql.utils.EpochBuffer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.util.CollectionUtils;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -16,8 +21,10 @@ import java.util.concurrent.ConcurrentHashMap;
 public class DefaultLogFlush implements LogFlush {
     private final Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator;
     private final WorkflowFinder workflowFinder;
-    private Map<String, String> stackTraceMap = new ConcurrentHashMap<>();
+    private final EpochBuffer<Map<String, String>> stackTraceMap = new EpochBuffer<>(ConcurrentHashMap::new);
     private final boolean stackTraceEnabled;
+    private final StackTraceDictionary stackTraceDictionary;
+    private volatile SlowStatementCapture slowStatementCapture;
 
     /**
      * Constructor for creating a DefaultLogFlush.
@@ -36,28 +43,58 @@ public class DefaultLogFlush implements LogFlush {
      * @param stackTraceEnabled If true, stacktrace hash and stacktrace will be logged.
      */
     public DefaultLogFlush(Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator, WorkflowFinder workflowFinder, boolean stackTraceEnabled) {
+        this(aggregator, workflowFinder, stackTraceEnabled, new StackTraceDictionary());
+    }
+    /**
+     * Constructor for creating a DefaultLogFlush.
+     *
+     * @param aggregator Responsible for aggregating telemetry data.
+     * @param workflowFinder Tool to find workflow from stacktrace.
+     * @param stackTraceEnabled If true, stacktrace hash and stacktrace will be logged.
+     * @param stackTraceDictionary The stack traces already logged, which are only logged again once refreshed.
+     */
+    public DefaultLogFlush(Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator, WorkflowFinder workflowFinder,
+                           boolean stackTraceEnabled, StackTraceDictionary stackTraceDictionary) {
         this.aggregator = aggregator;
         this.workflowFinder = workflowFinder;
         this.stackTraceEnabled = stackTraceEnabled;
+        this.stackTraceDictionary = Objects.requireNonNull(stackTraceDictionary, "stackTraceDictionary");
     }
 
+    /**
+     * Returns the SlowStatementCapture whose slow statements are logged with the telemetry data.
+     *
+     * @return the SlowStatementCapture, or null if slow statements are not logged
+     */
+    public SlowStatementCapture getSlowStatementCapture() {
+        return slowStatementCapture;
+    }
+
+    /**
+     * Sets the SlowStatementCapture whose slow statements are logged with the telemetry data.
+     *
+     * @param slowStatementCapture the SlowStatementCapture, null to not log slow statements
+     */
+    public void setSlowStatementCapture(SlowStatementCapture slowStatementCapture) {
+        this.slowStatementCapture = slowStatementCapture;
+    }
+
+    /**
+     * Extract and reset the stack traces collected while logging telemetry data.
+     *
+     * @param threadSleep maximum time in milliseconds to wait for a log flush still collecting stack traces
+     * @return the collected stack traces if available; null otherwise
+     */
     protected Map<String, String> getAndResetStackTraceData(long threadSleep) {
-        if (CollectionUtils.isEmpty(stackTraceMap)) {
+        if (CollectionUtils.isEmpty(stackTraceMap.peek())) {
             return null;
         }
-        Map<String, String> previousMap = stackTraceMap;
-        stackTraceMap = new ConcurrentHashMap<>();
-        try {
-            Thread.sleep(threadSleep);
-        } catch (InterruptedException ex) {
-            log.error("SLEEP_BEFORE_FLUSH Interrupted proceeding with flush");
-        }
-        return previousMap;
+        return stackTraceMap.swap(threadSleep);
     }
 
     /**
-     * Log the content of the previous map of SQL telemetry data and reset telemetry data.
-     *
+     * Log the content of the previous map of SQL telemetry data and reset telemetry data, then the slow statements
+     * captured since the previous flush.
      *
      * @param threadSleep Delay before logs and data are reset.
      * @throws TelemetryFlushException if the thread sleep is interrupted.
@@ -68,13 +105,20 @@ public class DefaultLogFlush implements LogFlush {
             Map<SqlTelemetry, SqlTelemetry> previousMap = aggregator.getAndResetDBTelemetryData(threadSleep);
             if(Objects.nonNull(previousMap))
                 logPreviousMap(previousMap);
+            SlowStatementCapture capture = slowStatementCapture;
+            if (Objects.nonNull(capture)) {
+                Map<Long, List<SlowStatement>> slowStatements = capture.getAndResetSlowStatements(threadSleep);
+                if (Objects.nonNull(slowStatements))
+                    logSlowStatements(slowStatements);
+            }
         } catch (Exception e) {
             throw new TelemetryFlushException("Exception in telemetry flush", e);
         }
 
     }
     /**
-     * Writes the current aggregated stack trace data to logs.
+     * Writes to logs the stack traces referenced since the previous stack trace flush and not logged yet, or logged
+     * before the refresh interval of the stack trace dictionary.
      *
      * @param threadSleep The amount of time in milliseconds for the log flush thread to wait before executing.
      */
@@ -85,8 +129,15 @@ public class DefaultLogFlush implements LogFlush {
                 return;
             }
             Map<String, String> previousMap = getAndResetStackTraceData(threadSleep);
-            if(Objects.nonNull(previousMap))
-                logStackTrace(previousMap);
+            if(Objects.nonNull(previousMap)) {
+                try {
+                    logStackTrace(previousMap);
+                } catch (RuntimeException e) {
+                    // Marked as logged by the dictionary, so kept for the next stack trace flush rather than lost
+                    requeue(previousMap);
+                    throw e;
+                }
+            }
         } catch (Exception e) {
             throw new TelemetryFlushException("Exception in StackTrace flush", e);
         }
@@ -98,22 +149,66 @@ public class DefaultLogFlush implements LogFlush {
      * @param previousMap the map containing the SQL telemetry data to log.
      */
     private void logPreviousMap(Map<SqlTelemetry, SqlTelemetry> previousMap) {
+        long beforeNanos = System.nanoTime();
         long beforeTime = System.currentTimeMillis();
         // Log the entire previous map.
-        previousMap.forEach((key, value) -> logEntries(key));
+        EpochBuffer.Epoch<Map<String, String>> epoch = stackTraceMap.enter();
+        try {
+            previousMap.forEach((key, value) -> logEntries(key, epoch.get()));
+        } finally {
+            epoch.exit();
+        }
         long callTime = System.currentTimeMillis() - beforeTime;
+        TelemetryOverhead.shared().recordFlush(previousMap.size(), System.nanoTime() - beforeNanos);
         log.info("MapConsolidatorLogFlush{LogFlushCount=" + previousMap.size() + ", timeTakenLogFlush=" + callTime + "}");
     }
     /**
-     * Log the content of the previous map of SQL telemetry data and collect stacktrace to log later
+     * Log the content of the previous map of SQL telemetry data and collect the stacktrace to log later, if not
+     * already logged.
      *
      * @param info SqlTelemetry object.
+     * @param stackTraces the stack traces to log later.
      */
-    private void logEntries(SqlTelemetry info) {
-        Optional.ofNullable(workflowFinder).ifPresent(wf -> info.setWorkflow(wf.getWorkflowName(info.getStackTrace())));
+    private void logEntries(SqlTelemetry info, Map<String, String> stackTraces) {
+        Optional.ofNullable(workflowFinder).ifPresent(wf -> info.setWorkflow(wf.getWorkflowName(info.getStackTraceFingerprint(), info.getStackTrace())));
         log.info(info.toString());
-        if (stackTraceEnabled && StringUtils.isNotEmpty(info.getStackTrace())) {
-            stackTraceMap.put(info.getStackTrace(), info.getStackTrace());
+        if (stackTraceEnabled && StringUtils.isNotEmpty(info.getStackTrace())
+                && stackTraceDictionary.markSeen(info.getStackTraceFingerprint())) {
+            stackTraces.put(info.getStackTrace(), info.getStackTrace());
+        }
+    }
+
+    /**
+     * Log the slowest executions of every statement and collect their stacktrace to log later, if not already logged.
+     *
+     * @param slowStatements the slowest executions by statement fingerprint.
+     */
+    private void logSlowStatements(Map<Long, List<SlowStatement>> slowStatements) {
+        int count = 0;
+        EpochBuffer.Epoch<Map<String, String>> epoch = stackTraceMap.enter();
+        try {
+            for (List<SlowStatement> executions : slowStatements.values()) {
+                for (SlowStatement slowStatement : executions) {
+                    log.info(slowStatement.toString());
+                    if (stackTraceEnabled && StringUtils.isNotEmpty(slowStatement.getStackTrace())
+                            && stackTraceDictionary.markSeen(slowStatement.getStackTraceFingerprint())) {
+                        epoch.get().put(slowStatement.getStackTrace(), slowStatement.getStackTrace());
+                    }
+                    count++;
+                }
+            }
+        } finally {
+            epoch.exit();
+        }
+        log.info("MapConsolidatorLogFlush{SlowStatementCount=" + count + "}");
+    }
+
+    private void requeue(Map<String, String> stackTraces) {
+        EpochBuffer.Epoch<Map<String, String>> epoch = stackTraceMap.enter();
+        try {
+            stackTraces.forEach(epoch.get()::putIfAbsent);
+        } finally {
+            epoch.exit();
         }
     }
 
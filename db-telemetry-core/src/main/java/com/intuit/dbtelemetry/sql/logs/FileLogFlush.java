@@ -0,0 +1,94 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.aggregator.Aggregator;
+import com.intuit.dbtelemetry.sql.finder.WorkflowFinder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * LogFlush writing the telemetry data to rotating local files instead of the application log.
+ * Every flush writes its records in 64 KB chunks to the current file through a FileChannel, the files are rotated,
+ * optionally gzip compressed and purged according to a FileRotationPolicy.
+ */
+public class FileLogFlush extends StructuredLogFlush implements Closeable {
+
+    public static final String DEFAULT_FILE_PREFIX = "db-telemetry";
+
+    private final RotatingFileOutputStream out;
+
+    /**
+     * Constructor for creating a FileLogFlush writing JSON lines with the default rotation policy.
+     *
+     * @param aggregator Responsible for aggregating telemetry data.
+     * @param stackTraceEnabled If true, stack trace records are written.
+     * @param directory The directory of the telemetry files.
+     */
+    public FileLogFlush(Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator, boolean stackTraceEnabled, Path directory) {
+        this(aggregator, null, stackTraceEnabled, new JsonLinesRecordEncoder(), directory, new FileRotationPolicy());
+    }
+
+    /**
+     * Constructor for creating a FileLogFlush.
+     *
+     * @param aggregator Responsible for aggregating telemetry data.
+     * @param workflowFinder Tool to find workflow from stacktrace.
+     * @param stackTraceEnabled If true, stack trace records are written.
+     * @param encoder Encoder of the records, also giving the extension of the files.
+     * @param directory The directory of the telemetry files.
+     * @param policy The rotation, compression and retention of the files.
+     */
+    public FileLogFlush(Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator, WorkflowFinder workflowFinder,
+                        boolean stackTraceEnabled, TelemetryRecordEncoder encoder, Path directory,
+                        FileRotationPolicy policy) {
+        this(aggregator, workflowFinder, stackTraceEnabled, encoder, directory, policy, new StackTraceDictionary());
+    }
+
+    /**
+     * Constructor for creating a FileLogFlush.
+     *
+     * @param aggregator Responsible for aggregating telemetry data.
+     * @param workflowFinder Tool to find workflow from stacktrace.
+     * @param stackTraceEnabled If true, stack trace records are written.
+     * @param encoder Encoder of the records, also giving the extension of the files.
+     * @param directory The directory of the telemetry files.
+     * @param policy The rotation, compression and retention of the files.
+     * @param stackTraceDictionary The stack traces already written, which are only written again once refreshed.
+     */
+    public FileLogFlush(Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator, WorkflowFinder workflowFinder,
+                        boolean stackTraceEnabled, TelemetryRecordEncoder encoder, Path directory,
+                        FileRotationPolicy policy, StackTraceDictionary stackTraceDictionary) {
+        this(aggregator, workflowFinder, stackTraceEnabled, encoder,
+                new RotatingFileOutputStream(directory, DEFAULT_FILE_PREFIX, encoder.fileExtension(), policy),
+                stackTraceDictionary);
+    }
+
+    private FileLogFlush(Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator, WorkflowFinder workflowFinder,
+                         boolean stackTraceEnabled, TelemetryRecordEncoder encoder, RotatingFileOutputStream out,
+                         StackTraceDictionary stackTraceDictionary) {
+        super(aggregator, workflowFinder, stackTraceEnabled, encoder, out, stackTraceDictionary);
+        this.out = out;
+    }
+
+    /**
+     * Returns the telemetry file currently written.
+     *
+     * @return the path of the current file, null before the first flush
+     */
+    public Path getCurrentFile() {
+        return out.getCurrentFile();
+    }
+
+    /**
+     * Closes the current telemetry file, completing its compressed stream if any.
+     *
+     * @throws IOException if the file can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,70 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rotation, compression and retention of the telemetry files written by FileLogFlush.
+ * A file is rotated when it reaches a size or an age, and the oldest files are deleted once the retained files are
+ * above a total size or older than a maximum age.
+ */
+@Getter
+public class FileRotationPolicy {
+
+    public static final long DEFAULT_MAX_FILE_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_MAX_FILE_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 1024L * 1024 * 1024;
+    public static final long DEFAULT_MAX_RETAINED_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * Size, in bytes before compression, above which the current file is rotated.
+     */
+    private final long maxFileBytes;
+    /**
+     * Age, in milliseconds, above which the current file is rotated.
+     */
+    private final long maxFileAgeMillis;
+    /**
+     * Total size, in bytes on disk, above which the oldest files are deleted.
+     */
+    private final long maxRetainedBytes;
+    /**
+     * Age, in milliseconds since their last modification, above which the files are deleted.
+     */
+    private final long maxRetainedAgeMillis;
+    /**
+     * If true, the files are gzip compressed.
+     */
+    private final boolean compressed;
+
+    public FileRotationPolicy() {
+        this(false);
+    }
+
+    public FileRotationPolicy(boolean compressed) {
+        this(DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_FILE_AGE_MILLIS, DEFAULT_MAX_RETAINED_BYTES,
+                DEFAULT_MAX_RETAINED_AGE_MILLIS, compressed);
+    }
+
+    /**
+     * Constructs a FileRotationPolicy.
+     *
+     * @param maxFileBytes         size, in bytes before compression, above which the current file is rotated
+     * @param maxFileAgeMillis     age, in milliseconds, above which the current file is rotated
+     * @param maxRetainedBytes     total size, in bytes on disk, above which the oldest files are deleted
+     * @param maxRetainedAgeMillis age, in milliseconds, above which the files are deleted
+     * @param compressed           if true, the files are gzip compressed
+     */
+    public FileRotationPolicy(long maxFileBytes, long maxFileAgeMillis, long maxRetainedBytes,
+                              long maxRetainedAgeMillis, boolean compressed) {
+        if (maxFileBytes < 1 || maxFileAgeMillis < 1 || maxRetainedBytes < 1 || maxRetainedAgeMillis < 1) {
+            throw new IllegalArgumentException("sizes and ages of a FileRotationPolicy must be positive");
+        }
+        this.maxFileBytes = maxFileBytes;
+        this.maxFileAgeMillis = maxFileAgeMillis;
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.maxRetainedAgeMillis = maxRetainedAgeMillis;
+        this.compressed = compressed;
+    }
+}
@@ -0,0 +1,187 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.slow.SlowStatement;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes every record as one JSON object followed by a new line.
+ * Statement records look like
+ * {"record":"sql","time":1700000000000,"type":"PostgresAspect","sql":"select * from T where id = ?",
+ * "stackTraceFingerprint":"5e2a14c0b3d3f1a7","count":3,"callTime":420,"min":90,"max":200,"avg":140,"p50":127,
+ * "p90":207,"p99":207,"p999":207,"rankError":0,"workflow":""}
+ * and stack trace records
+ * {"record":"stackTrace","time":1700000000000,"stackTraceFingerprint":"5e2a14c0b3d3f1a7","stackTrace":"..."}
+ * and slow statement records
+ * {"record":"slowStatement","time":1700000000000,"type":"PostgresAspect","sql":"select * from T where id = ?",
+ * "sqlFingerprint":"0c1f9a7e55d2b804","stackTraceFingerprint":"5e2a14c0b3d3f1a7","executionTime":1250000,
+ * "executedAt":1699999999000,"thread":"http-nio-8080-exec-1","parameters":"<1>"}, parameters being omitted when
+ * the driver doesn't expose them.
+ * Fingerprints are 16 hexadecimal digits, so that 64-bit values survive JSON parsers using doubles.
+ */
+public class JsonLinesRecordEncoder implements TelemetryRecordEncoder {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SQL_RECORD = ascii("{\"record\":\"sql\",\"time\":");
+    private static final byte[] STACK_TRACE_RECORD = ascii("{\"record\":\"stackTrace\",\"time\":");
+    private static final byte[] SLOW_STATEMENT_RECORD = ascii("{\"record\":\"slowStatement\",\"time\":");
+    private static final byte[] TYPE = ascii(",\"type\":");
+    private static final byte[] SQL = ascii(",\"sql\":");
+    private static final byte[] FINGERPRINT = ascii(",\"stackTraceFingerprint\":");
+    private static final byte[] COUNT = ascii(",\"count\":");
+    private static final byte[] CALL_TIME = ascii(",\"callTime\":");
+    private static final byte[] MIN = ascii(",\"min\":");
+    private static final byte[] MAX = ascii(",\"max\":");
+    private static final byte[] AVG = ascii(",\"avg\":");
+    private static final byte[] P50 = ascii(",\"p50\":");
+    private static final byte[] P90 = ascii(",\"p90\":");
+    private static final byte[] P99 = ascii(",\"p99\":");
+    private static final byte[] P999 = ascii(",\"p999\":");
+    private static final byte[] RANK_ERROR = ascii(",\"rankError\":");
+    private static final byte[] WORKFLOW = ascii(",\"workflow\":");
+    private static final byte[] SQL_WITH_PARAMETERS = ascii(",\"sqlWithParameters\":");
+    private static final byte[] STACK_TRACE = ascii(",\"stackTrace\":");
+    private static final byte[] SQL_FINGERPRINT = ascii(",\"sqlFingerprint\":");
+    private static final byte[] EXECUTION_TIME = ascii(",\"executionTime\":");
+    private static final byte[] EXECUTED_AT = ascii(",\"executedAt\":");
+    private static final byte[] THREAD = ascii(",\"thread\":");
+    private static final byte[] PARAMETERS = ascii(",\"parameters\":");
+    private static final byte[] END = ascii("}\n");
+
+    private final long[] percentileValues = new long[PERCENTILES.length];
+
+    @Override
+    public void encodeTelemetry(SqlTelemetry telemetry, long timestampMillis, RecordBuffer buffer) {
+        long count = telemetry.getCount();
+        long callTime = telemetry.getCallTime();
+        telemetry.getCallTimesAtPercentiles(PERCENTILES, percentileValues);
+        buffer.writeBytes(SQL_RECORD);
+        buffer.writeDecimal(timestampMillis);
+        buffer.writeBytes(TYPE);
+        writeString(telemetry.getType(), buffer);
+        buffer.writeBytes(SQL);
+        writeString(telemetry.getSql(), buffer);
+        buffer.writeBytes(FINGERPRINT);
+        writeHex(telemetry.getStackTraceFingerprint(), buffer);
+        buffer.writeBytes(COUNT);
+        buffer.writeDecimal(count);
+        buffer.writeBytes(CALL_TIME);
+        buffer.writeDecimal(callTime);
+        buffer.writeBytes(MIN);
+        buffer.writeDecimal(telemetry.getMin());
+        buffer.writeBytes(MAX);
+        buffer.writeDecimal(telemetry.getMax());
+        buffer.writeBytes(AVG);
+        buffer.writeDecimal(count == 0 ? 0 : Math.round((double) callTime / count));
+        buffer.writeBytes(P50);
+        buffer.writeDecimal(percentileValues[0]);
+        buffer.writeBytes(P90);
+        buffer.writeDecimal(percentileValues[1]);
+        buffer.writeBytes(P99);
+        buffer.writeDecimal(percentileValues[2]);
+        buffer.writeBytes(P999);
+        buffer.writeDecimal(percentileValues[3]);
+        buffer.writeBytes(RANK_ERROR);
+        buffer.writeDecimal(telemetry.getRankError());
+        buffer.writeBytes(WORKFLOW);
+        writeString(telemetry.getWorkflow(), buffer);
+        if (StringUtils.isNotEmpty(telemetry.getSqlWithParameters())) {
+            buffer.writeBytes(SQL_WITH_PARAMETERS);
+            writeString(telemetry.getSqlWithParameters(), buffer);
+        }
+        buffer.writeBytes(END);
+    }
+
+    @Override
+    public void encodeStackTrace(long fingerprint, String stackTrace, long timestampMillis, RecordBuffer buffer) {
+        buffer.writeBytes(STACK_TRACE_RECORD);
+        buffer.writeDecimal(timestampMillis);
+        buffer.writeBytes(FINGERPRINT);
+        writeHex(fingerprint, buffer);
+        buffer.writeBytes(STACK_TRACE);
+        writeString(stackTrace, buffer);
+        buffer.writeBytes(END);
+    }
+
+    @Override
+    public void encodeSlowStatement(SlowStatement slowStatement, long timestampMillis, RecordBuffer buffer) {
+        buffer.writeBytes(SLOW_STATEMENT_RECORD);
+        buffer.writeDecimal(timestampMillis);
+        buffer.writeBytes(TYPE);
+        writeString(slowStatement.getType(), buffer);
+        buffer.writeBytes(SQL);
+        writeString(slowStatement.getSql(), buffer);
+        buffer.writeBytes(SQL_FINGERPRINT);
+        writeHex(slowStatement.getSqlFingerprint(), buffer);
+        buffer.writeBytes(FINGERPRINT);
+        writeHex(slowStatement.getStackTraceFingerprint(), buffer);
+        buffer.writeBytes(EXECUTION_TIME);
+        buffer.writeDecimal(slowStatement.getExecutionTime());
+        buffer.writeBytes(EXECUTED_AT);
+        buffer.writeDecimal(slowStatement.getTimestampMillis());
+        buffer.writeBytes(THREAD);
+        writeString(slowStatement.getThreadName(), buffer);
+        if (StringUtils.isNotEmpty(slowStatement.getParameters())) {
+            buffer.writeBytes(PARAMETERS);
+            writeString(slowStatement.getParameters(), buffer);
+        }
+        buffer.writeBytes(END);
+    }
+
+    @Override
+    public String fileExtension() {
+        return "jsonl";
+    }
+
+    /**
+     * Writes a JSON string, escaping quotes, backslashes and control characters.
+     *
+     * @param value  the string, null being written as an empty string
+     * @param buffer the buffer to write to
+     */
+    static void writeString(String value, RecordBuffer buffer) {
+        buffer.writeByte('"');
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    buffer.writeByte('\\');
+                    buffer.writeByte(c);
+                } else if (c == '\n') {
+                    buffer.writeByte('\\');
+                    buffer.writeByte('n');
+                } else if (c == '\r') {
+                    buffer.writeByte('\\');
+                    buffer.writeByte('r');
+                } else if (c == '\t') {
+                    buffer.writeByte('\\');
+                    buffer.writeByte('t');
+                } else if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                    buffer.writeByte('\\');
+                    buffer.writeByte('u');
+                    for (int shift = 12; shift >= 0; shift -= 4) {
+                        buffer.writeByte(HEX_DIGITS[(c >> shift) & 0xF]);
+                    }
+                } else {
+                    i = buffer.writeUtf8Char(value, i);
+                }
+            }
+        }
+        buffer.writeByte('"');
+    }
+
+    private static void writeHex(long value, RecordBuffer buffer) {
+        buffer.writeByte('"');
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            buffer.writeByte(HEX_DIGITS[(int) (value >>> shift) & 0xF]);
+        }
+        buffer.writeByte('"');
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
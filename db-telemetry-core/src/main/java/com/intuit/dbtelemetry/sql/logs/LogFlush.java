@@ -3,15 +3,15 @@ package com.intuit.dbtelemetry.sql.logs;
 
 public interface LogFlush {
     /**
-     * Flushes logs after a specified thread sleep duration.
+     * Flushes logs once the aggregations in flight are done.
      *
-     * @param threadSleep The sleep duration in milliseconds.
+     * @param threadSleep The maximum duration in milliseconds to wait for aggregations in flight.
      * @throws TelemetryFlushException if an exception occurs during the log flush.
      */
     void flushLogs(long threadSleep) throws TelemetryFlushException;
 
     /**
-     * Flush logs with a default delay of 5000 milliseconds.
+     * Flush logs waiting at most 5000 milliseconds for aggregations in flight.
      *
      * @throws TelemetryFlushException if an exception occurs during the log flush.
      */
@@ -19,15 +19,15 @@ public interface LogFlush {
         this.flushLogs(5000L);
     }
     /**
-     * Flushes stack trace after a specified thread sleep duration.
+     * Flushes stack trace once the log flushes in flight are done.
      *
-     * @param threadSleep The sleep duration in milliseconds.
+     * @param threadSleep The maximum duration in milliseconds to wait for log flushes in flight.
      * @throws TelemetryFlushException if an exception occurs during the log flush.
      */
     void flushStackTrace(long threadSleep) throws TelemetryFlushException;
 
     /**
-     * Flush stack traces with a default delay of 5000 milliseconds.
+     * Flush stack traces waiting at most 5000 milliseconds for log flushes in flight.
      *
      * @throws TelemetryFlushException if an exception occurs during the stack trace flush.
      */
@@ -0,0 +1,226 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer the telemetry records are encoded into, reused from one record and one flush to the next.
+ * Numbers and strings are written without intermediate objects. Not thread safe.
+ */
+public class RecordBuffer {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 64 * 1024;
+    private static final byte[] MIN_LONG = "-9223372036854775808".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] bytes;
+    private int size;
+
+    public RecordBuffer() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a RecordBuffer.
+     *
+     * @param initialCapacity the initial capacity, in bytes
+     */
+    public RecordBuffer(int initialCapacity) {
+        this.bytes = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    /**
+     * Writes a byte.
+     *
+     * @param value the byte to write
+     */
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) value;
+    }
+
+    /**
+     * Writes bytes.
+     *
+     * @param values the bytes to write
+     */
+    public void writeBytes(byte[] values) {
+        ensureCapacity(values.length);
+        System.arraycopy(values, 0, bytes, size, values.length);
+        size += values.length;
+    }
+
+    /**
+     * Writes a long in decimal ASCII digits.
+     *
+     * @param value the value to write
+     */
+    public void writeDecimal(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+    }
+
+    /**
+     * Writes a long as an unsigned LEB128 variable length integer, 1 byte for values below 128.
+     *
+     * @param value the value to write, read as unsigned
+     */
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    /**
+     * Writes a long as 8 big-endian bytes.
+     *
+     * @param value the value to write
+     */
+    public void writeFixedLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            bytes[size++] = (byte) (value >>> shift);
+        }
+    }
+
+    /**
+     * Writes characters encoded in UTF-8, unpaired surrogates being written as '?'.
+     *
+     * @param value the characters to write
+     */
+    public void writeUtf8(CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            i = writeUtf8Char(value, i);
+        }
+    }
+
+    /**
+     * Returns the number of bytes a string takes in UTF-8, unpaired surrogates counting as '?'.
+     *
+     * @param value the characters to measure
+     * @return the UTF-8 length of the characters
+     */
+    public static int utf8Length(CharSequence value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the character at an index in UTF-8, with the low surrogate following it if any.
+     *
+     * @param value the characters
+     * @param index the index of the character to write
+     * @return the index of the last character written
+     */
+    int writeUtf8Char(CharSequence value, int index) {
+        char c = value.charAt(index);
+        if (c < 0x80) {
+            writeByte(c);
+            return index;
+        }
+        ensureCapacity(4);
+        if (c < 0x800) {
+            bytes[size++] = (byte) (0xC0 | (c >> 6));
+            bytes[size++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(++index));
+            bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+            bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            bytes[size++] = '?';
+        } else {
+            bytes[size++] = (byte) (0xE0 | (c >> 12));
+            bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[size++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return index;
+    }
+
+    /**
+     * Returns the number of bytes written since the last reset.
+     *
+     * @return the size of the content
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Discards the content, keeping the allocated bytes.
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * Writes the content to a stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    /**
+     * Wraps the content, without copying, until the next write or reset.
+     *
+     * @return a ByteBuffer over the content
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes, 0, size);
+    }
+
+    /**
+     * Copies the content.
+     *
+     * @return the written bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+}
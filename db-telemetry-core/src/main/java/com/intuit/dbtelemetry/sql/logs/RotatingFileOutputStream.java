@@ -0,0 +1,221 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * OutputStream writing to a directory of files through a FileChannel, rotated and purged by a FileRotationPolicy.
+ * Files are named prefix-yyyyMMdd-HHmmssSSS-sequence-instance.extension, with a .gz suffix when compressed, so their
+ * names sort in creation order. The instance is random per stream, so that processes sharing the directory don't
+ * pick the same name, and a name taken anyway is retried with the next sequence. Rotation is checked before every write, a caller writing whole records in every write never
+ * splits a record across files. Every compressed file is a complete gzip stream once rotated or closed.
+ */
+@Slf4j
+public class RotatingFileOutputStream extends OutputStream {
+
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmssSSS")
+            .withZone(ZoneOffset.UTC);
+    private static final String COMPRESSED_SUFFIX = ".gz";
+    private static final int MAX_NAME_ATTEMPTS = 16;
+
+    private final Path directory;
+    private final String prefix;
+    private final String suffix;
+    private final FileRotationPolicy policy;
+    private final LongSupplier clock;
+    private final String instance = String.format("%08x", ThreadLocalRandom.current().nextInt());
+    private final byte[] singleByte = new byte[1];
+    private FileChannel channel;
+    private OutputStream compressedStream;
+    private Path currentFile;
+    private long currentFileBytes;
+    private long currentFileOpenedAt;
+    private long sequence;
+    private boolean closed;
+
+    /**
+     * Constructs a RotatingFileOutputStream, the directory and the first file are created by the first write.
+     *
+     * @param directory the directory of the files
+     * @param prefix    the prefix of the file names
+     * @param extension the extension of the file names, without dot
+     * @param policy    the rotation, compression and retention policy
+     */
+    public RotatingFileOutputStream(Path directory, String prefix, String extension, FileRotationPolicy policy) {
+        this(directory, prefix, extension, policy, System::currentTimeMillis);
+    }
+
+    RotatingFileOutputStream(Path directory, String prefix, String extension, FileRotationPolicy policy,
+                             LongSupplier clock) {
+        this.directory = Objects.requireNonNull(directory, "directory");
+        this.prefix = Objects.requireNonNull(prefix, "prefix");
+        this.policy = Objects.requireNonNull(policy, "policy");
+        this.suffix = "." + extension + (policy.isCompressed() ? COMPRESSED_SUFFIX : "");
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("RotatingFileOutputStream is closed");
+        }
+        if (length == 0) {
+            return;
+        }
+        rotateIfNeeded();
+        if (Objects.nonNull(compressedStream)) {
+            compressedStream.write(bytes, offset, length);
+        } else {
+            ByteBuffer content = ByteBuffer.wrap(bytes, offset, length);
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+        currentFileBytes += length;
+    }
+
+    /**
+     * Flushes the compressed data written so far to the current file, the file is readable up to that point.
+     *
+     * @throws IOException if the file can't be written
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (Objects.nonNull(compressedStream)) {
+            compressedStream.flush();
+        }
+    }
+
+    /**
+     * Closes the current file and deletes the files out of the retention policy.
+     *
+     * @throws IOException if the file can't be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeCurrentFile();
+        purge();
+    }
+
+    /**
+     * Returns the file currently written.
+     *
+     * @return the path of the current file, null before the first write
+     */
+    public synchronized Path getCurrentFile() {
+        return currentFile;
+    }
+
+    private void rotateIfNeeded() throws IOException {
+        long now = clock.getAsLong();
+        if (Objects.nonNull(channel) && currentFileBytes < policy.getMaxFileBytes()
+                && now - currentFileOpenedAt < policy.getMaxFileAgeMillis()) {
+            return;
+        }
+        closeCurrentFile();
+        Files.createDirectories(directory);
+        openNewFile(now);
+        if (policy.isCompressed()) {
+            compressedStream = new GZIPOutputStream(Channels.newOutputStream(channel), StructuredLogFlush.CHUNK_SIZE, true);
+        }
+        currentFileBytes = 0;
+        currentFileOpenedAt = now;
+        purge();
+    }
+
+    private void openNewFile(long now) throws IOException {
+        String time = FILE_TIME_FORMAT.format(Instant.ofEpochMilli(now));
+        for (int attempt = 1; ; attempt++) {
+            currentFile = directory.resolve(prefix + "-" + time + "-" + String.format("%06d", sequence++ % 1_000_000)
+                    + "-" + instance + suffix);
+            try {
+                channel = FileChannel.open(currentFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                return;
+            } catch (FileAlreadyExistsException e) {
+                if (attempt == MAX_NAME_ATTEMPTS) {
+                    currentFile = null;
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void closeCurrentFile() throws IOException {
+        try {
+            if (Objects.nonNull(compressedStream)) {
+                compressedStream.close();
+            } else if (Objects.nonNull(channel)) {
+                channel.close();
+            }
+        } finally {
+            compressedStream = null;
+            channel = null;
+        }
+    }
+
+    /**
+     * Deletes the oldest files until the retained files are within the total size and age of the policy.
+     * The file currently written is never deleted.
+     */
+    private void purge() {
+        if (Files.notExists(directory)) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "-*" + suffix)) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            log.warn("Unable to list telemetry files in " + directory, e);
+            return;
+        }
+        Collections.sort(files);
+        long now = clock.getAsLong();
+        long retainedBytes = 0;
+        // Newest first, the files beyond the retained size or age are deleted
+        for (int i = files.size() - 1; i >= 0; i--) {
+            Path file = files.get(i);
+            try {
+                long size = Files.size(file);
+                long age = now - Files.getLastModifiedTime(file).toMillis();
+                retainedBytes += size;
+                if (!file.equals(currentFile)
+                        && (retainedBytes > policy.getMaxRetainedBytes() || age > policy.getMaxRetainedAgeMillis())) {
+                    Files.deleteIfExists(file);
+                    retainedBytes -= size;
+                }
+            } catch (IOException e) {
+                log.warn("Unable to purge telemetry file " + file, e);
+            }
+        }
+    }
+}
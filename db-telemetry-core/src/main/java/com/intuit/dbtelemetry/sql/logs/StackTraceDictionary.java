@@ -0,0 +1,116 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import com.intuit.dbtelemetry.sql.utils.LeastRecentlyUsed;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded dictionary of the stack traces already published by a LogFlush, kept across flush windows so that a stack
+ * trace is published once instead of in every window referencing it.
+ * Stack traces are keyed by fingerprint. A published stack trace is published again when it is seen after the
+ * refresh interval, so that logs kept for a limited time still contain the stack traces they reference. Stack traces
+ * not seen for the maximum idle time are evicted, and the least recently seen ones are evicted once the dictionary
+ * is above its maximum number of entries. An evicted stack trace is published again the next time it is seen.
+ */
+public class StackTraceDictionary {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_REFRESH_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final long DEFAULT_MAX_IDLE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final int maxEntries;
+    private final long refreshMillis;
+    private final long maxIdleMillis;
+    private final LongSupplier clock;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    public StackTraceDictionary() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_REFRESH_MILLIS, DEFAULT_MAX_IDLE_MILLIS);
+    }
+
+    /**
+     * Constructs a StackTraceDictionary.
+     *
+     * @param maxEntries    the maximum number of stack traces kept
+     * @param refreshMillis time in milliseconds after which a published stack trace is published again when seen
+     * @param maxIdleMillis time in milliseconds after which a stack trace not seen is evicted
+     */
+    public StackTraceDictionary(int maxEntries, long refreshMillis, long maxIdleMillis) {
+        this(maxEntries, refreshMillis, maxIdleMillis, System::currentTimeMillis);
+    }
+
+    StackTraceDictionary(int maxEntries, long refreshMillis, long maxIdleMillis, LongSupplier clock) {
+        if (maxEntries < 1 || refreshMillis < 1 || maxIdleMillis < 1) {
+            throw new IllegalArgumentException("size and times of a StackTraceDictionary must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.refreshMillis = refreshMillis;
+        this.maxIdleMillis = maxIdleMillis;
+        this.clock = Objects.requireNonNull(clock, "clock");
+    }
+
+    /**
+     * Records that a stack trace was seen, and tells if it has to be published. A stack trace has to be published
+     * when it is new, evicted since its last publication, or last published before the refresh interval. Once true is
+     * returned, the stack trace is considered published: the caller is expected to publish it with the next stack
+     * trace flush, and to keep it for the following one if publishing fails, and true is returned again only after
+     * the refresh interval.
+     *
+     * @param fingerprint the fingerprint of the stack trace
+     * @return true if the stack trace has to be published, false if it was already published
+     */
+    public boolean markSeen(long fingerprint) {
+        long now = clock.getAsLong();
+        Entry entry = entries.get(fingerprint);
+        if (Objects.isNull(entry)) {
+            if (Objects.isNull(entries.putIfAbsent(fingerprint, new Entry(now)))) {
+                if (entries.size() > maxEntries) {
+                    evict();
+                }
+                return true;
+            }
+            entry = entries.get(fingerprint);
+            if (Objects.isNull(entry)) {
+                // Evicted right after being added by another thread, published by that thread
+                return false;
+            }
+        }
+        entry.lastSeen = now;
+        long published = entry.published.get();
+        return now - published >= refreshMillis && entry.published.compareAndSet(published, now);
+    }
+
+    /**
+     * Evicts the stack traces not seen for the maximum idle time, then the least recently seen stack traces if the
+     * dictionary is still above its maximum number of entries.
+     */
+    public synchronized void evict() {
+        long idleLimit = clock.getAsLong() - maxIdleMillis;
+        entries.values().removeIf(entry -> entry.lastSeen < idleLimit);
+        LeastRecentlyUsed.evict(entries, maxEntries, entry -> entry.lastSeen);
+    }
+
+    /**
+     * Returns the number of stack traces kept.
+     *
+     * @return the size of the dictionary
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final AtomicLong published;
+        private volatile long lastSeen;
+
+        private Entry(long now) {
+            this.published = new AtomicLong(now);
+            this.lastSeen = now;
+        }
+    }
+}
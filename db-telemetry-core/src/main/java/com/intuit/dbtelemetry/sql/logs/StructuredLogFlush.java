@@ -0,0 +1,259 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.TelemetryOverhead;
+import com.intuit.dbtelemetry.sql.aggregator.Aggregator;
+import com.intuit.dbtelemetry.sql.finder.WorkflowFinder;
+import com.intuit.dbtelemetry.sql.slow.SlowStatement;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
+import com.intuit.dbtelemetry.sql.utils.EpochBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.CollectionUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LogFlush writing the telemetry data as structured records, JSON lines or binary, to an output stream.
+ * Records are encoded into a reused buffer and written in chunks of whole records, instead of one log line and one
+ * String per statement. Stack traces are collected by fingerprint and written by {@link #flushStackTrace(long)}, once
+ * until refreshed by a StackTraceDictionary. The slow statements of a SlowStatementCapture, if set, are written with
+ * the telemetry data.
+ */
+@Slf4j
+public class StructuredLogFlush implements LogFlush {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator;
+    private final WorkflowFinder workflowFinder;
+    private final boolean stackTraceEnabled;
+    private final TelemetryRecordEncoder encoder;
+    private final OutputStream out;
+    private final RecordBuffer buffer = new RecordBuffer(CHUNK_SIZE * 2);
+    private final EpochBuffer<Map<Long, String>> stackTraceMap = new EpochBuffer<>(ConcurrentHashMap::new);
+    private final StackTraceDictionary stackTraceDictionary;
+    private volatile SlowStatementCapture slowStatementCapture;
+
+    /**
+     * Constructor for creating a StructuredLogFlush writing JSON lines.
+     *
+     * @param aggregator Responsible for aggregating telemetry data.
+     * @param stackTraceEnabled If true, stack trace records are written.
+     * @param out The stream the records are written to.
+     */
+    public StructuredLogFlush(Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator, boolean stackTraceEnabled, OutputStream out) {
+        this(aggregator, null, stackTraceEnabled, new JsonLinesRecordEncoder(), out);
+    }
+
+    /**
+     * Constructor for creating a StructuredLogFlush.
+     *
+     * @param aggregator Responsible for aggregating telemetry data.
+     * @param workflowFinder Tool to find workflow from stacktrace.
+     * @param stackTraceEnabled If true, stack trace records are written.
+     * @param encoder Encoder of the records.
+     * @param out The stream the records are written to, flushed after every flush of the telemetry data.
+     */
+    public StructuredLogFlush(Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator, WorkflowFinder workflowFinder,
+                              boolean stackTraceEnabled, TelemetryRecordEncoder encoder, OutputStream out) {
+        this(aggregator, workflowFinder, stackTraceEnabled, encoder, out, new StackTraceDictionary());
+    }
+
+    /**
+     * Constructor for creating a StructuredLogFlush.
+     *
+     * @param aggregator Responsible for aggregating telemetry data.
+     * @param workflowFinder Tool to find workflow from stacktrace.
+     * @param stackTraceEnabled If true, stack trace records are written.
+     * @param encoder Encoder of the records.
+     * @param out The stream the records are written to, flushed after every flush of the telemetry data.
+     * @param stackTraceDictionary The stack traces already written, which are only written again once refreshed.
+     */
+    public StructuredLogFlush(Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator, WorkflowFinder workflowFinder,
+                              boolean stackTraceEnabled, TelemetryRecordEncoder encoder, OutputStream out,
+                              StackTraceDictionary stackTraceDictionary) {
+        this.aggregator = aggregator;
+        this.workflowFinder = workflowFinder;
+        this.stackTraceEnabled = stackTraceEnabled;
+        this.encoder = Objects.requireNonNull(encoder, "encoder");
+        this.out = Objects.requireNonNull(out, "out");
+        this.stackTraceDictionary = Objects.requireNonNull(stackTraceDictionary, "stackTraceDictionary");
+    }
+
+    /**
+     * Returns the SlowStatementCapture whose slow statements are written with the telemetry data.
+     *
+     * @return the SlowStatementCapture, or null if slow statements are not written
+     */
+    public SlowStatementCapture getSlowStatementCapture() {
+        return slowStatementCapture;
+    }
+
+    /**
+     * Sets the SlowStatementCapture whose slow statements are written with the telemetry data.
+     *
+     * @param slowStatementCapture the SlowStatementCapture, null to not write slow statements
+     */
+    public void setSlowStatementCapture(SlowStatementCapture slowStatementCapture) {
+        this.slowStatementCapture = slowStatementCapture;
+    }
+
+    /**
+     * Writes the records of the previous telemetry data and resets it, then the records of the slow statements
+     * captured since the previous flush.
+     *
+     * @param threadSleep maximum time in milliseconds to wait for in-flight aggregations
+     * @throws TelemetryFlushException if the records can't be written.
+     */
+    @Override
+    public void flushLogs(long threadSleep) throws TelemetryFlushException {
+        try {
+            Map<SqlTelemetry, SqlTelemetry> previousMap = aggregator.getAndResetDBTelemetryData(threadSleep);
+            if (Objects.nonNull(previousMap)) {
+                writeTelemetry(previousMap);
+            }
+            SlowStatementCapture capture = slowStatementCapture;
+            if (Objects.nonNull(capture)) {
+                Map<Long, List<SlowStatement>> slowStatements = capture.getAndResetSlowStatements(threadSleep);
+                if (Objects.nonNull(slowStatements)) {
+                    writeSlowStatements(slowStatements);
+                }
+            }
+        } catch (Exception e) {
+            throw new TelemetryFlushException("Exception in telemetry flush", e);
+        }
+    }
+
+    /**
+     * Writes the records of the stack traces referenced since the previous stack trace flush and not written yet, or
+     * written before the refresh interval of the stack trace dictionary.
+     *
+     * @param threadSleep maximum time in milliseconds to wait for a log flush still collecting stack traces
+     * @throws TelemetryFlushException if the records can't be written.
+     */
+    @Override
+    public void flushStackTrace(long threadSleep) throws TelemetryFlushException {
+        try {
+            if (!stackTraceEnabled || CollectionUtils.isEmpty(stackTraceMap.peek())) {
+                return;
+            }
+            Map<Long, String> stackTraces = stackTraceMap.swap(threadSleep);
+            try {
+                writeStackTraces(stackTraces);
+            } catch (IOException | RuntimeException e) {
+                // Marked as published by the dictionary, so kept for the next stack trace flush rather than lost
+                requeue(stackTraces);
+                throw e;
+            }
+        } catch (Exception e) {
+            throw new TelemetryFlushException("Exception in StackTrace flush", e);
+        }
+    }
+
+    private void writeTelemetry(Map<SqlTelemetry, SqlTelemetry> previousMap) throws IOException {
+        long beforeNanos = System.nanoTime();
+        long beforeTime = System.currentTimeMillis();
+        EpochBuffer.Epoch<Map<Long, String>> epoch = stackTraceMap.enter();
+        try {
+            synchronized (buffer) {
+                try {
+                    for (SqlTelemetry telemetry : previousMap.keySet()) {
+                        if (Objects.nonNull(workflowFinder)) {
+                            telemetry.setWorkflow(workflowFinder.getWorkflowName(telemetry.getStackTraceFingerprint(),
+                                    telemetry.getStackTrace()));
+                        }
+                        encoder.encodeTelemetry(telemetry, beforeTime, buffer);
+                        writeFullChunk();
+                        if (stackTraceEnabled && StringUtils.isNotEmpty(telemetry.getStackTrace())
+                                && stackTraceDictionary.markSeen(telemetry.getStackTraceFingerprint())) {
+                            epoch.get().putIfAbsent(telemetry.getStackTraceFingerprint(), telemetry.getStackTrace());
+                        }
+                    }
+                    writeRemaining();
+                } finally {
+                    buffer.reset();
+                }
+            }
+        } finally {
+            epoch.exit();
+        }
+        long callTime = System.currentTimeMillis() - beforeTime;
+        TelemetryOverhead.shared().recordFlush(previousMap.size(), System.nanoTime() - beforeNanos);
+        log.info("StructuredLogFlush{LogFlushCount=" + previousMap.size() + ", timeTakenLogFlush=" + callTime + "}");
+    }
+
+    private void writeSlowStatements(Map<Long, List<SlowStatement>> slowStatements) throws IOException {
+        long beforeTime = System.currentTimeMillis();
+        int count = 0;
+        EpochBuffer.Epoch<Map<Long, String>> epoch = stackTraceMap.enter();
+        try {
+            synchronized (buffer) {
+                try {
+                    for (List<SlowStatement> executions : slowStatements.values()) {
+                        for (SlowStatement slowStatement : executions) {
+                            encoder.encodeSlowStatement(slowStatement, beforeTime, buffer);
+                            writeFullChunk();
+                            if (stackTraceEnabled && StringUtils.isNotEmpty(slowStatement.getStackTrace())
+                                    && stackTraceDictionary.markSeen(slowStatement.getStackTraceFingerprint())) {
+                                epoch.get().putIfAbsent(slowStatement.getStackTraceFingerprint(), slowStatement.getStackTrace());
+                            }
+                            count++;
+                        }
+                    }
+                    writeRemaining();
+                } finally {
+                    buffer.reset();
+                }
+            }
+        } finally {
+            epoch.exit();
+        }
+        log.info("StructuredLogFlush{SlowStatementCount=" + count + "}");
+    }
+
+    private void requeue(Map<Long, String> stackTraces) {
+        EpochBuffer.Epoch<Map<Long, String>> epoch = stackTraceMap.enter();
+        try {
+            stackTraces.forEach(epoch.get()::putIfAbsent);
+        } finally {
+            epoch.exit();
+        }
+    }
+
+    private void writeStackTraces(Map<Long, String> stackTraces) throws IOException {
+        long beforeTime = System.currentTimeMillis();
+        synchronized (buffer) {
+            try {
+                for (Map.Entry<Long, String> stackTrace : stackTraces.entrySet()) {
+                    encoder.encodeStackTrace(stackTrace.getKey(), stackTrace.getValue(), beforeTime, buffer);
+                    writeFullChunk();
+                }
+                writeRemaining();
+            } finally {
+                buffer.reset();
+            }
+        }
+        long callTime = System.currentTimeMillis() - beforeTime;
+        log.info("StructuredLogFlush{StackTraceCount=" + stackTraces.size() + ", timeTakenStackTraceFlush=" + callTime + "}");
+    }
+
+    private void writeFullChunk() throws IOException {
+        if (buffer.size() >= CHUNK_SIZE) {
+            buffer.writeTo(out);
+            buffer.reset();
+        }
+    }
+
+    private void writeRemaining() throws IOException {
+        if (buffer.size() > 0) {
+            buffer.writeTo(out);
+        }
+        out.flush();
+    }
+}
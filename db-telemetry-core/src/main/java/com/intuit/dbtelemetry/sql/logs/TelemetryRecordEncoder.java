@@ -0,0 +1,49 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.slow.SlowStatement;
+
+/**
+ * Encoder of the flushed telemetry data into records, e.g. JSON lines or a compact binary format.
+ * Encoders write into a reused RecordBuffer and may keep scratch state, an instance is used by one flush at a time.
+ */
+public interface TelemetryRecordEncoder {
+    /**
+     * Encodes the telemetry data of a SQL statement.
+     *
+     * @param telemetry       the telemetry data of the statement
+     * @param timestampMillis the time of the flush, in milliseconds since the epoch
+     * @param buffer          the buffer the record is appended to
+     */
+    void encodeTelemetry(SqlTelemetry telemetry, long timestampMillis, RecordBuffer buffer);
+
+    /**
+     * Encodes a stack trace referenced by the fingerprint of telemetry records.
+     *
+     * @param fingerprint     the fingerprint of the stack trace
+     * @param stackTrace      the stack trace
+     * @param timestampMillis the time of the flush, in milliseconds since the epoch
+     * @param buffer          the buffer the record is appended to
+     */
+    void encodeStackTrace(long fingerprint, String stackTrace, long timestampMillis, RecordBuffer buffer);
+
+    /**
+     * Encodes a slow execution of a SQL statement captured by a SlowStatementCapture.
+     * Not encoded by default, for the encoders written before slow statements were captured.
+     *
+     * @param slowStatement   the slow execution
+     * @param timestampMillis the time of the flush, in milliseconds since the epoch
+     * @param buffer          the buffer the record is appended to
+     */
+    default void encodeSlowStatement(SlowStatement slowStatement, long timestampMillis, RecordBuffer buffer) {
+    }
+
+    /**
+     * Returns the extension of the files the records are written to.
+     *
+     * @return the file extension, without dot
+     */
+    default String fileExtension() {
+        return "rec";
+    }
+}
@@ -0,0 +1,242 @@
+package com.intuit.dbtelemetry.sql.prometheus;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.aggregator.Aggregator;
+import com.intuit.dbtelemetry.sql.aggregator.TelemetryAggregatorException;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.histogram.LatencyHistogram;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Aggregator keeping cumulative totals of the telemetry data flushed by its delegate, written in the Prometheus text
+ * exposition format.
+ * Durations are exposed in microseconds, the unit the aspects measure the calls in.
+ * Every flushed interval is added, per statement type and fingerprint of the normalized statement, to monotonic
+ * counters and latency buckets, so the exposed data is up to date as of the last flush. The number of series is
+ * capped: once reached, the statements without a series are added to a single "other" series.
+ * Closing the collector closes its delegate, when the delegate can be closed.
+ */
+public class PrometheusCollector implements Aggregator<Map<SqlTelemetry, SqlTelemetry>>, AutoCloseable {
+
+    public static final int DEFAULT_MAX_SERIES = 1000;
+    public static final long[] DEFAULT_BUCKET_BOUNDS = {100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+            100_000, 250_000, 500_000, 1_000_000, 2_500_000, 10_000_000};
+    public static final String OTHER_LABEL = "other";
+    static final String DURATION_METRIC = "db_telemetry_sql_duration_microseconds";
+    static final String INFO_METRIC = "db_telemetry_sql_info";
+    static final String OVERFLOW_METRIC = "db_telemetry_sql_overflow_total";
+
+    private final Aggregator<Map<SqlTelemetry, SqlTelemetry>> delegate;
+    private final int maxSeries;
+    private final int maxSqlLabelLength;
+    private final long[] bucketBounds;
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    private final Series otherSeries;
+    private final AtomicLong overflowCount = new AtomicLong();
+
+    /**
+     * Constructs a PrometheusCollector with the default series cap, without SQL labels.
+     *
+     * @param delegate the aggregator whose flushed telemetry data is collected
+     */
+    public PrometheusCollector(Aggregator<Map<SqlTelemetry, SqlTelemetry>> delegate) {
+        this(delegate, DEFAULT_MAX_SERIES, 0, DEFAULT_BUCKET_BOUNDS);
+    }
+
+    /**
+     * Constructs a PrometheusCollector.
+     *
+     * @param delegate          the aggregator whose flushed telemetry data is collected
+     * @param maxSeries         the maximum number of series, beyond which statements are collected as "other"
+     * @param maxSqlLabelLength the maximum length of the normalized statement in the sql label of the info metric,
+     *                          0 to leave the statements out of the exposed data
+     * @param bucketBounds      the upper bounds of the latency buckets in microseconds, in ascending order
+     */
+    public PrometheusCollector(Aggregator<Map<SqlTelemetry, SqlTelemetry>> delegate, int maxSeries,
+                               int maxSqlLabelLength, long[] bucketBounds) {
+        if (maxSeries < 1) {
+            throw new IllegalArgumentException("maxSeries " + maxSeries + " is below 1");
+        }
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.maxSeries = maxSeries;
+        this.maxSqlLabelLength = Math.max(maxSqlLabelLength, 0);
+        this.bucketBounds = bucketBounds.clone();
+        this.otherSeries = new Series(OTHER_LABEL, OTHER_LABEL, null);
+    }
+
+    @Override
+    public void aggregate(String producer, String sql, long executionTime) throws TelemetryAggregatorException {
+        delegate.aggregate(producer, sql, executionTime);
+    }
+
+    @Override
+    public void aggregate(String producer, String sql, long executionTime, String sqlWithParameters, CallSite callSite)
+            throws TelemetryAggregatorException {
+        delegate.aggregate(producer, sql, executionTime, sqlWithParameters, callSite);
+    }
+
+    @Override
+    public void aggregate(String producer, String sql, long executionTime, SlowStatementCapture slowStatementCapture,
+                          Supplier<String> parameters) throws TelemetryAggregatorException {
+        delegate.aggregate(producer, sql, executionTime, slowStatementCapture, parameters);
+    }
+
+    @Override
+    public CallSite captureCallSite() {
+        return delegate.captureCallSite();
+    }
+
+    /**
+     * Retrieves the telemetry data of the delegate and adds it to the cumulative totals.
+     *
+     * @param threadSleep the maximum time in milliseconds to wait for aggregations still writing to the data
+     * @return the telemetry data of the delegate, unchanged
+     */
+    @Override
+    public Map<SqlTelemetry, SqlTelemetry> getAndResetDBTelemetryData(long threadSleep) {
+        Map<SqlTelemetry, SqlTelemetry> telemetryData = delegate.getAndResetDBTelemetryData(threadSleep);
+        if (Objects.nonNull(telemetryData)) {
+            for (SqlTelemetry telemetry : telemetryData.keySet()) {
+                seriesOf(telemetry).add(telemetry);
+            }
+        }
+        return telemetryData;
+    }
+
+    /**
+     * Writes the cumulative totals in the Prometheus text exposition format, series by series, without copying them.
+     *
+     * @param writer the writer the metrics are written to
+     * @throws IOException if the writer fails
+     */
+    public void writeMetrics(Writer writer) throws IOException {
+        long[] cumulativeCounts = new long[bucketBounds.length];
+        writer.write("# HELP " + DURATION_METRIC + " Duration of the SQL statements by type and fingerprint.\n");
+        writer.write("# TYPE " + DURATION_METRIC + " histogram\n");
+        for (Series entry : series.values()) {
+            entry.writeDuration(writer, cumulativeCounts);
+        }
+        otherSeries.writeDuration(writer, cumulativeCounts);
+        if (maxSqlLabelLength > 0) {
+            writer.write("# HELP " + INFO_METRIC + " Normalized SQL statement of a fingerprint.\n");
+            writer.write("# TYPE " + INFO_METRIC + " gauge\n");
+            for (Series entry : series.values()) {
+                entry.writeInfo(writer);
+            }
+        }
+        writer.write("# HELP " + OVERFLOW_METRIC + " Statements collected as other once the series cap was reached.\n");
+        writer.write("# TYPE " + OVERFLOW_METRIC + " counter\n");
+        writer.write(OVERFLOW_METRIC + " " + overflowCount.get() + "\n");
+    }
+
+    /**
+     * Returns the number of series, not counting the "other" series.
+     *
+     * @return the number of series
+     */
+    public int getSeriesCount() {
+        return series.size();
+    }
+
+    /**
+     * Returns the delegate aggregator.
+     *
+     * @return the aggregator whose flushed telemetry data is collected
+     */
+    public Aggregator<Map<SqlTelemetry, SqlTelemetry>> getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Closes the delegate aggregator, e.g. to stop the workers of an AsyncAggregator.
+     *
+     * @throws Exception if the delegate fails to close
+     */
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable) {
+            ((AutoCloseable) delegate).close();
+        }
+    }
+
+    private Series seriesOf(SqlTelemetry telemetry) {
+        String type = StringUtils.defaultString(telemetry.getType());
+        String sql = StringUtils.defaultString(telemetry.getSql());
+        String key = type + '\u0000' + sql;
+        Series existing = series.get(key);
+        if (Objects.nonNull(existing)) {
+            return existing;
+        }
+        if (series.size() >= maxSeries) {
+            overflowCount.incrementAndGet();
+            return otherSeries;
+        }
+        String fingerprint = StringUtils.leftPad(Long.toHexString(CallSite.fingerprint(sql)), 16, '0');
+        return series.computeIfAbsent(key, k -> new Series(type, fingerprint, sql));
+    }
+
+    static String escapeLabelValue(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                escaped.append('\\').append(c);
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private final class Series {
+        private final String labels;
+        private final String sql;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private long count;
+        private long callTime;
+
+        private Series(String type, String fingerprint, String sql) {
+            this.labels = "type=\"" + escapeLabelValue(type) + "\",fingerprint=\"" + fingerprint + "\"";
+            this.sql = sql;
+        }
+
+        private synchronized void add(SqlTelemetry telemetry) {
+            count += telemetry.getCount();
+            callTime += telemetry.getCallTime();
+            if (Objects.nonNull(telemetry.getLatencyHistogram())) {
+                histogram.add(telemetry.getLatencyHistogram());
+            }
+        }
+
+        private synchronized void writeDuration(Writer writer, long[] cumulativeCounts) throws IOException {
+            if (count == 0) {
+                return;
+            }
+            histogram.getCumulativeCounts(bucketBounds, cumulativeCounts);
+            for (int i = 0; i < bucketBounds.length; i++) {
+                // Calls aggregated without histogram are only counted in the +Inf bucket
+                writer.write(DURATION_METRIC + "_bucket{" + labels + ",le=\"" + bucketBounds[i] + "\"} "
+                        + cumulativeCounts[i] + "\n");
+            }
+            writer.write(DURATION_METRIC + "_bucket{" + labels + ",le=\"+Inf\"} " + count + "\n");
+            writer.write(DURATION_METRIC + "_sum{" + labels + "} " + callTime + "\n");
+            writer.write(DURATION_METRIC + "_count{" + labels + "} " + count + "\n");
+        }
+
+        private void writeInfo(Writer writer) throws IOException {
+            writer.write(INFO_METRIC + "{" + labels + ",sql=\""
+                    + escapeLabelValue(StringUtils.truncate(sql, maxSqlLabelLength)) + "\"} 1\n");
+        }
+    }
+}
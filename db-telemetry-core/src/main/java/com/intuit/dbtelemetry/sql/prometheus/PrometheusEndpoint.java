@@ -0,0 +1,108 @@
+package com.intuit.dbtelemetry.sql.prometheus;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP endpoint, on the JDK built-in HTTP server, serving the metrics of a PrometheusCollector in the Prometheus text
+ * exposition format. The response is chunked and written while the series are iterated.
+ * Scrapes are served one at a time by a daemon thread.
+ */
+@Slf4j
+public class PrometheusEndpoint implements Closeable {
+
+    public static final String DEFAULT_PATH = "/metrics";
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int WRITER_BUFFER_SIZE = 16 * 1024;
+
+    private final PrometheusCollector collector;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Starts an endpoint serving the metrics on {@value #DEFAULT_PATH}.
+     *
+     * @param collector the collector of the metrics
+     * @param address   the address to listen on, port 0 for any free port
+     * @throws IOException if the server can't be bound
+     */
+    public PrometheusEndpoint(PrometheusCollector collector, InetSocketAddress address) throws IOException {
+        this(collector, address, DEFAULT_PATH);
+    }
+
+    /**
+     * Starts an endpoint serving the metrics.
+     *
+     * @param collector the collector of the metrics
+     * @param address   the address to listen on, port 0 for any free port
+     * @param path      the path the metrics are served on
+     * @throws IOException if the server can't be bound
+     */
+    public PrometheusEndpoint(PrometheusCollector collector, InetSocketAddress address, String path) throws IOException {
+        this.collector = Objects.requireNonNull(collector, "collector");
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "db-telemetry-prometheus");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext(path, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Returns the address the endpoint listens on.
+     *
+     * @return the bound address, with the actual port
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops the endpoint, letting the scrape in progress finish for up to a second.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            // Length 0 sends a chunked response, written as the series are iterated
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), WRITER_BUFFER_SIZE)) {
+                collector.writeMetrics(writer);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Exception serving the Prometheus metrics", e);
+            throw e;
+        } finally {
+            exchange.close();
+        }
+    }
+}
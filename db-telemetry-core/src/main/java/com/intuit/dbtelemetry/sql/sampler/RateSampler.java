@@ -0,0 +1,89 @@
+package com.intuit.dbtelemetry.sql.sampler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sampler keeping one call out of rate at random, and every call at least as slow as the always capture threshold.
+ * Kept calls stand for rate calls, so the flushed counts and call times remain unbiased estimates, while min, max and
+ * slow calls stay exact as long as they are above the threshold.
+ * The rate can be overridden per statement, identified by the hash of its normalized SQL, the sqlHash of the logs.
+ */
+public class RateSampler implements Sampler {
+
+    private final int rate;
+    private final long alwaysCaptureThreshold;
+    // Sorted by hash, looked up with a binary search so that sampling never boxes the hash
+    private final int[] statementHashes;
+    private final int[] statementRates;
+
+    /**
+     * Constructs a RateSampler with the given rate.
+     *
+     * @param rate keep one call out of rate, 1 or less to keep every call
+     */
+    public RateSampler(int rate) {
+        this(rate, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a RateSampler with the given rate and always capture threshold.
+     *
+     * @param rate                   keep one call out of rate, 1 or less to keep every call
+     * @param alwaysCaptureThreshold calls taking at least this time are always kept, in the unit of the execution time
+     *                               (microseconds for the aspects)
+     */
+    public RateSampler(int rate, long alwaysCaptureThreshold) {
+        this(rate, alwaysCaptureThreshold, null);
+    }
+
+    /**
+     * Constructs a RateSampler with the given rate, always capture threshold and per statement rates.
+     *
+     * @param rate                   keep one call out of rate, 1 or less to keep every call
+     * @param alwaysCaptureThreshold calls taking at least this time are always kept, in the unit of the execution time
+     *                               (microseconds for the aspects)
+     * @param statementRates         rates overriding the default rate, keyed by the hash of the normalized SQL
+     */
+    public RateSampler(int rate, long alwaysCaptureThreshold, Map<Integer, Integer> statementRates) {
+        this.rate = rate;
+        this.alwaysCaptureThreshold = alwaysCaptureThreshold;
+        Map<Integer, Integer> sortedRates = new TreeMap<>(Objects.isNull(statementRates) ? Collections.emptyMap() : statementRates);
+        this.statementHashes = sortedRates.keySet().stream().mapToInt(Integer::intValue).toArray();
+        this.statementRates = sortedRates.values().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Override
+    public long sample(String normalizedSql, long executionTime) {
+        if (executionTime >= alwaysCaptureThreshold) {
+            return 1L;
+        }
+        int statementRate = getRate(normalizedSql);
+        if (statementRate <= 1) {
+            return 1L;
+        }
+        return ThreadLocalRandom.current().nextInt(statementRate) == 0 ? statementRate : 0L;
+    }
+
+    /**
+     * Returns the rate applied to the given statement.
+     *
+     * @param normalizedSql the normalized SQL statement
+     * @return the rate of the statement if overridden, the default rate otherwise
+     */
+    public int getRate(String normalizedSql) {
+        if (statementHashes.length == 0 || Objects.isNull(normalizedSql)) {
+            return rate;
+        }
+        int index = Arrays.binarySearch(statementHashes, normalizedSql.hashCode());
+        return index >= 0 ? statementRates[index] : rate;
+    }
+
+    public long getAlwaysCaptureThreshold() {
+        return alwaysCaptureThreshold;
+    }
+}
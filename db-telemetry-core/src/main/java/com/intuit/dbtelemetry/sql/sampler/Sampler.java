@@ -0,0 +1,13 @@
+package com.intuit.dbtelemetry.sql.sampler;
+
+public interface Sampler {
+    /**
+     * Decides whether a call of a normalized statement is aggregated, and how many calls it stands for.
+     * Returning the inverse of the probability to keep the call keeps the aggregated counts and times unbiased.
+     *
+     * @param normalizedSql the normalized SQL statement
+     * @param executionTime the time taken by the SQL statement to execute
+     * @return the number of calls the aggregated call stands for, or 0 to skip the call
+     */
+    long sample(String normalizedSql, long executionTime);
+}
@@ -0,0 +1,87 @@
+package com.intuit.dbtelemetry.sql.slow;
+
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Objects;
+
+/**
+ * Execution of a SQL statement above the threshold of a SlowStatementCapture, an exemplar of the telemetry data of
+ * its statement.
+ */
+@Getter
+public final class SlowStatement {
+    /**
+     * Type of the statement, the aspect which captured it.
+     */
+    private final String type;
+    /**
+     * Normalized statement.
+     */
+    private final String sql;
+    /**
+     * Fingerprint of the normalized statement.
+     */
+    private final long sqlFingerprint;
+    /**
+     * Bound parameters as rendered by the driver, null when the driver doesn't expose them.
+     */
+    private final String parameters;
+    /**
+     * Duration of the execution, in the unit the aspects measure the calls in.
+     */
+    private final long executionTime;
+    /**
+     * Name of the thread which ran the statement.
+     */
+    private final String threadName;
+    /**
+     * End of the execution, in milliseconds since the epoch.
+     */
+    private final long timestampMillis;
+    /**
+     * Stack trace of the call site, empty when stack traces are disabled.
+     */
+    private final String stackTrace;
+    /**
+     * Fingerprint of the stack trace of the call site, 0 when stack traces are disabled.
+     */
+    private final long stackTraceFingerprint;
+
+    public SlowStatement(String type, String sql, long sqlFingerprint, String parameters, long executionTime,
+                         String threadName, long timestampMillis, String stackTrace, long stackTraceFingerprint) {
+        this.type = type;
+        this.sql = sql;
+        this.sqlFingerprint = sqlFingerprint;
+        this.parameters = parameters;
+        this.executionTime = executionTime;
+        this.threadName = threadName;
+        this.timestampMillis = timestampMillis;
+        this.stackTrace = StringUtils.defaultString(stackTrace);
+        this.stackTraceFingerprint = stackTraceFingerprint;
+    }
+
+    /**
+     * Returns a log line of the slow statement, referencing its stack trace like the telemetry lines do, as comma
+     * separated key="value" pairs.
+     *
+     * @return string representation of the slow statement
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("DbTelemetrySlowStatement {");
+        result.append(" type=\"").append(type).append("\",");
+        result.append(" executionTime=\"").append(executionTime).append("\",");
+        result.append(" timestamp=\"").append(timestampMillis).append("\",");
+        result.append(" thread=\"").append(threadName).append("\",");
+        result.append(" sql=\"").append(sql).append("\",");
+        result.append(" sqlHash=\"").append(Objects.hashCode(sql)).append("\",");
+        result.append(" stacktraceHash=\"").append(stackTrace.hashCode()).append("\"");
+        if (StringUtils.isNotEmpty(parameters)) {
+            result.append(", parameters=\"").append(parameters).append("\"");
+        }
+        result.append(" }");
+        return result.toString();
+    }
+}
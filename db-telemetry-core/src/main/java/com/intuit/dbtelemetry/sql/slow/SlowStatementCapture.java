@@ -0,0 +1,165 @@
+package com.intuit.dbtelemetry.sql.slow;
+
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.utils.EpochBuffer;
+import org.springframework.util.CollectionUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps, per fingerprint of the normalized statement and per flush window, the slowest executions above a threshold,
+ * with their bound parameters where the driver exposes them, thread, time and call site.
+ * Statements below the threshold only pay for the comparison with the threshold. The executions are captured by the
+ * aggregators, with the statement they normalized, once known not to be excluded, whether sampled or not.
+ * Once the window holds the maximum number of statements, the executions of new statements are dropped and counted.
+ */
+public class SlowStatementCapture {
+
+    public static final long DEFAULT_THRESHOLD = 1_000_000L;
+    public static final int DEFAULT_SLOWEST_PER_STATEMENT = 5;
+    public static final int DEFAULT_MAX_STATEMENTS = 1000;
+    private static final Comparator<SlowStatement> FASTEST_FIRST = Comparator.comparingLong(SlowStatement::getExecutionTime);
+
+    private final long threshold;
+    private final int slowestPerStatement;
+    private final int maxStatements;
+    private final EpochBuffer<Map<Long, Slowest>> window = new EpochBuffer<>(ConcurrentHashMap::new);
+    private final LongAdder droppedCount = new LongAdder();
+
+    /**
+     * Constructs a SlowStatementCapture of the executions from {@link #DEFAULT_THRESHOLD} microseconds (1 second),
+     * keeping the {@link #DEFAULT_SLOWEST_PER_STATEMENT} slowest executions of at most {@link #DEFAULT_MAX_STATEMENTS}
+     * statements.
+     */
+    public SlowStatementCapture() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructs a SlowStatementCapture keeping the {@link #DEFAULT_SLOWEST_PER_STATEMENT} slowest executions of at
+     * most {@link #DEFAULT_MAX_STATEMENTS} statements.
+     *
+     * @param threshold the execution time from which a statement is captured, in the unit the aspects measure the
+     *                  calls in (microseconds)
+     */
+    public SlowStatementCapture(long threshold) {
+        this(threshold, DEFAULT_SLOWEST_PER_STATEMENT, DEFAULT_MAX_STATEMENTS);
+    }
+
+    /**
+     * Constructs a SlowStatementCapture.
+     *
+     * @param threshold           the execution time from which a statement is captured, in the unit the aspects
+     *                            measure the calls in (microseconds)
+     * @param slowestPerStatement the number of slowest executions kept per statement and window
+     * @param maxStatements       the maximum number of statements per window
+     */
+    public SlowStatementCapture(long threshold, int slowestPerStatement, int maxStatements) {
+        if (slowestPerStatement < 1 || maxStatements < 1) {
+            throw new IllegalArgumentException("slowestPerStatement and maxStatements must be positive");
+        }
+        this.threshold = threshold;
+        this.slowestPerStatement = slowestPerStatement;
+        this.maxStatements = maxStatements;
+    }
+
+    /**
+     * Checks if an execution is above the threshold.
+     *
+     * @param executionTime the duration of the execution
+     * @return true if the execution is to be captured, false otherwise
+     */
+    public boolean isSlow(long executionTime) {
+        return executionTime >= threshold;
+    }
+
+    /**
+     * Captures an execution above the threshold, on the thread which ran the statement.
+     *
+     * @param type          the type of the statement, the aspect which captured it
+     * @param normalizedSql the normalized statement
+     * @param parameters    the bound parameters as rendered by the driver, or null
+     * @param executionTime the duration of the execution
+     * @param callSite      the call site of the statement, or null
+     */
+    public void capture(String type, String normalizedSql, String parameters, long executionTime, CallSite callSite) {
+        if (Objects.isNull(normalizedSql) || !isSlow(executionTime)) {
+            return;
+        }
+        long sqlFingerprint = CallSite.fingerprint(normalizedSql);
+        CallSite site = Objects.isNull(callSite) ? CallSite.NONE : callSite;
+        SlowStatement slowStatement = new SlowStatement(type, normalizedSql, sqlFingerprint, parameters, executionTime,
+                Thread.currentThread().getName(), System.currentTimeMillis(), site.getStackTrace(), site.getFingerprint());
+        EpochBuffer.Epoch<Map<Long, Slowest>> epoch = window.enter();
+        try {
+            Map<Long, Slowest> statements = epoch.get();
+            Slowest slowest = statements.get(sqlFingerprint);
+            if (Objects.isNull(slowest)) {
+                if (statements.size() >= maxStatements) {
+                    droppedCount.increment();
+                    return;
+                }
+                slowest = statements.computeIfAbsent(sqlFingerprint, fingerprint -> new Slowest());
+            }
+            slowest.add(slowStatement);
+        } finally {
+            epoch.exit();
+        }
+    }
+
+    /**
+     * Extract and reset the slow statements of the window.
+     *
+     * @param threadSleep maximum time in milliseconds to wait for captures still writing to the window
+     * @return the slowest executions, slowest first, by fingerprint of the normalized statement if any; null otherwise
+     */
+    public Map<Long, List<SlowStatement>> getAndResetSlowStatements(long threadSleep) {
+        if (CollectionUtils.isEmpty(window.peek())) {
+            return null;
+        }
+        Map<Long, Slowest> statements = window.swap(threadSleep);
+        Map<Long, List<SlowStatement>> result = new HashMap<>(statements.size() * 2);
+        statements.forEach((fingerprint, slowest) -> result.put(fingerprint, slowest.slowestFirst()));
+        return result;
+    }
+
+    /**
+     * Returns the number of executions dropped because the window held the maximum number of statements.
+     *
+     * @return the number of dropped executions
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    private final class Slowest {
+        private final PriorityQueue<SlowStatement> executions = new PriorityQueue<>(FASTEST_FIRST);
+
+        private synchronized void add(SlowStatement slowStatement) {
+            if (executions.size() < slowestPerStatement) {
+                executions.add(slowStatement);
+            } else if (executions.peek().getExecutionTime() < slowStatement.getExecutionTime()) {
+                executions.poll();
+                executions.add(slowStatement);
+            }
+        }
+
+        private synchronized List<SlowStatement> slowestFirst() {
+            List<SlowStatement> slowest = new ArrayList<>(executions);
+            slowest.sort(FASTEST_FIRST.reversed());
+            return slowest;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.intuit.dbtelemetry.sql.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Double buffer tracking the writers of each buffer, so that a swapped out buffer is handed over as soon as its last
+ * in-flight writer leaves, instead of after a fixed sleep.
+ * Writers call {@link #enter()}, update the buffer of the returned epoch and always call {@link Epoch#exit()}.
+ *
+ * @param <T> the type of the buffer, which must be safe for concurrent writers
+ */
+@Slf4j
+public class EpochBuffer<T> {
+
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Supplier<T> bufferFactory;
+    private volatile Epoch<T> current;
+
+    /**
+     * Constructs an EpochBuffer.
+     *
+     * @param bufferFactory creates the empty buffer of each epoch
+     */
+    public EpochBuffer(Supplier<T> bufferFactory) {
+        this.bufferFactory = bufferFactory;
+        this.current = new Epoch<>(bufferFactory.get());
+    }
+
+    /**
+     * Registers the caller as a writer of the current epoch.
+     *
+     * @return the entered epoch, whose {@link Epoch#exit()} must be called once the buffer is updated
+     */
+    public Epoch<T> enter() {
+        while (true) {
+            Epoch<T> epoch = current;
+            epoch.writers.incrementAndGet();
+            // A swap that happened before the increment may already be waiting on a zero count, retry on the new epoch
+            if (epoch == current) {
+                return epoch;
+            }
+            epoch.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the buffer of the current epoch, for read only checks.
+     *
+     * @return the buffer being written
+     */
+    public T peek() {
+        return current.buffer;
+    }
+
+    /**
+     * Starts a new epoch and waits for the writers of the previous one to leave.
+     *
+     * @param maxWaitMillis the maximum time to wait for in-flight writers, in milliseconds
+     * @return the buffer of the previous epoch
+     */
+    public T swap(long maxWaitMillis) {
+        return swapEpoch(maxWaitMillis).get();
+    }
+
+    /**
+     * Starts a new epoch and waits for the writers of the previous one to leave. Unlike {@link #swap(long)}, tells
+     * whether the wait timed out: the buffer of a previous epoch with writers left must not be cleared, reused or
+     * released, as they may still update it.
+     *
+     * @param maxWaitMillis the maximum time to wait for in-flight writers, in milliseconds
+     * @return the previous epoch, see {@link Epoch#isQuiescent()}
+     */
+    public synchronized Epoch<T> swapEpoch(long maxWaitMillis) {
+        Epoch<T> previous = current;
+        current = new Epoch<>(bufferFactory.get());
+        if (!awaitWriters(previous, maxWaitMillis)) {
+            log.warn("EPOCH_SWAP writers still in flight after {} ms, proceeding with flush", maxWaitMillis);
+        }
+        return previous;
+    }
+
+    /**
+     * Waits for the writers of the current epoch to leave, e.g. before releasing the buffers once the owner stops
+     * writers from updating them.
+     *
+     * @param maxWaitMillis the maximum time to wait for in-flight writers, in milliseconds
+     * @return true if no writer is left, false if the wait timed out
+     */
+    public synchronized boolean awaitQuiescence(long maxWaitMillis) {
+        return awaitWriters(current, maxWaitMillis);
+    }
+
+    private static boolean awaitWriters(Epoch<?> epoch, long maxWaitMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(maxWaitMillis, 0L));
+        int spins = 0;
+        while (epoch.writers.get() != 0) {
+            if (System.nanoTime() - deadline >= 0 || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            if (++spins < SPINS_BEFORE_PARK) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A buffer together with the count of its in-flight writers.
+     *
+     * @param <T> the type of the buffer
+     */
+    public static final class Epoch<T> {
+        private final T buffer;
+        // Not a LongAdder: its sum is not an atomic snapshot and could read zero while a writer is still inside
+        private final AtomicLong writers = new AtomicLong();
+
+        private Epoch(T buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Returns the buffer of this epoch.
+         *
+         * @return the buffer to update
+         */
+        public T get() {
+            return buffer;
+        }
+
+        /**
+         * Checks if no writer is left in this epoch. No writer updates the buffer of a swapped out epoch once found
+         * quiescent, a writer entering late leaves it without updating it.
+         *
+         * @return true if no writer updates the buffer, false otherwise
+         */
+        public boolean isQuiescent() {
+            return writers.get() == 0;
+        }
+
+        /**
+         * Unregisters the caller as a writer of this epoch.
+         */
+        public void exit() {
+            writers.decrementAndGet();
+        }
+    }
+}
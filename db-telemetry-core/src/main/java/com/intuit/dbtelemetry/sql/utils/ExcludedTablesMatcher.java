@@ -0,0 +1,201 @@
+package com.intuit.dbtelemetry.sql.utils;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Queue;
+
+/**
+ * Case-insensitive matcher of excluded table names in SQL statements, scanning a statement once whatever the number
+ * of tables (Aho-Corasick automaton over ASCII characters).
+ * Table names either match anywhere, like a substring, or only as whole table names, i.e. not preceded nor followed
+ * by a letter, a digit, '_' or '$', so that excluding AUDIT doesn't exclude AUDIT_LOG.
+ * Statements are matched as run, before their normalization. The decisions are not cached: statements as run differ
+ * by their literals, so a cache keyed by them would mostly miss and keep growing, while a scan costs about as much as
+ * hashing the statement to look it up.
+ */
+public class ExcludedTablesMatcher {
+
+    private static final int ALPHABET_SIZE = 128;
+    private static final int[] NO_MATCH = new int[0];
+
+    private final boolean wholeTableNames;
+    // transitions[state * ALPHABET_SIZE + c] is the next state, matchLengths[state] the tables ending in the state
+    private final int[] transitions;
+    private final int[][] matchLengths;
+    // Tables with non ASCII characters, searched one by one
+    private final List<String> nonAsciiTables = new ArrayList<>();
+    private final boolean empty;
+
+    /**
+     * Constructs an ExcludedTablesMatcher matching the table names anywhere in the statements.
+     *
+     * @param excludedTables the excluded table names, blank names are ignored
+     */
+    public ExcludedTablesMatcher(Collection<String> excludedTables) {
+        this(excludedTables, false);
+    }
+
+    /**
+     * Constructs an ExcludedTablesMatcher.
+     *
+     * @param excludedTables  the excluded table names, blank names are ignored
+     * @param wholeTableNames true to match whole table names only, false to match them anywhere
+     */
+    public ExcludedTablesMatcher(Collection<String> excludedTables, boolean wholeTableNames) {
+        this.wholeTableNames = wholeTableNames;
+        List<int[]> children = new ArrayList<>();
+        List<int[]> lengths = new ArrayList<>();
+        children.add(newNode());
+        lengths.add(NO_MATCH);
+        for (String excludedTable : Objects.isNull(excludedTables) ? Collections.<String>emptyList() : excludedTables) {
+            String table = StringUtils.trimToEmpty(excludedTable).toLowerCase(Locale.ROOT);
+            if (table.isEmpty()) {
+                continue;
+            }
+            if (!StringUtils.isAsciiPrintable(table)) {
+                nonAsciiTables.add(table);
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < table.length(); i++) {
+                int c = table.charAt(i);
+                if (children.get(state)[c] == -1) {
+                    children.get(state)[c] = children.size();
+                    children.add(newNode());
+                    lengths.add(NO_MATCH);
+                }
+                state = children.get(state)[c];
+            }
+            lengths.set(state, append(lengths.get(state), table.length()));
+        }
+        this.empty = children.size() == 1 && nonAsciiTables.isEmpty();
+        this.transitions = new int[children.size() * ALPHABET_SIZE];
+        this.matchLengths = lengths.toArray(new int[0][]);
+        buildAutomaton(children);
+    }
+
+    /**
+     * Checks if a statement uses an excluded table.
+     *
+     * @param sql the SQL statement as run
+     * @return true if the statement uses an excluded table, false otherwise
+     */
+    public boolean isExcluded(String sql) {
+        return matches(sql);
+    }
+
+    /**
+     * Checks if a statement uses an excluded table.
+     *
+     * @param sql the SQL statement
+     * @return true if the statement uses an excluded table, false otherwise
+     */
+    public boolean matches(CharSequence sql) {
+        if (empty || Objects.isNull(sql)) {
+            return false;
+        }
+        int state = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c >= ALPHABET_SIZE) {
+                // No ASCII table name goes through a non ASCII character
+                state = 0;
+                continue;
+            }
+            state = transitions[state * ALPHABET_SIZE + toLowerCase(c)];
+            for (int length : matchLengths[state]) {
+                if (!wholeTableNames || isWholeName(sql, i - length + 1, i + 1)) {
+                    return true;
+                }
+            }
+        }
+        return matchesNonAsciiTables(sql);
+    }
+
+    public boolean isWholeTableNames() {
+        return wholeTableNames;
+    }
+
+    private void buildAutomaton(List<int[]> children) {
+        // Breadth first, so that the transitions of the failure state are complete when a state is reached
+        int[] failures = new int[children.size()];
+        Queue<Integer> queue = new ArrayDeque<>();
+        int[] root = children.get(0);
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+            if (root[c] == -1) {
+                root[c] = 0;
+            } else {
+                queue.add(root[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int[] node = children.get(state);
+            int[] failureNode = children.get(failures[state]);
+            for (int c = 0; c < ALPHABET_SIZE; c++) {
+                int child = node[c];
+                if (child == -1) {
+                    node[c] = failureNode[c];
+                } else {
+                    failures[child] = failureNode[c];
+                    for (int length : matchLengths[failures[child]]) {
+                        matchLengths[child] = append(matchLengths[child], length);
+                    }
+                    queue.add(child);
+                }
+            }
+        }
+        for (int state = 0; state < children.size(); state++) {
+            System.arraycopy(children.get(state), 0, transitions, state * ALPHABET_SIZE, ALPHABET_SIZE);
+        }
+    }
+
+    private boolean matchesNonAsciiTables(CharSequence sql) {
+        if (nonAsciiTables.isEmpty()) {
+            return false;
+        }
+        for (String table : nonAsciiTables) {
+            int index = StringUtils.indexOfIgnoreCase(sql, table, 0);
+            while (index >= 0) {
+                if (!wholeTableNames || isWholeName(sql, index, index + table.length())) {
+                    return true;
+                }
+                index = StringUtils.indexOfIgnoreCase(sql, table, index + 1);
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWholeName(CharSequence sql, int start, int end) {
+        return (start == 0 || !isNameCharacter(sql.charAt(start - 1)))
+                && (end == sql.length() || !isNameCharacter(sql.charAt(end)));
+    }
+
+    private static boolean isNameCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static int toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private static int[] newNode() {
+        int[] node = new int[ALPHABET_SIZE];
+        Arrays.fill(node, -1);
+        return node;
+    }
+
+    private static int[] append(int[] values, int value) {
+        int[] result = Arrays.copyOf(values, values.length + 1);
+        result[values.length] = value;
+        return result;
+    }
+}
@@ -0,0 +1,485 @@
+package com.intuit.dbtelemetry.sql.utils;
+
+import com.intuit.dbtelemetry.sql.logs.LogFlush;
+import com.intuit.dbtelemetry.sql.logs.TelemetryFlushException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Single writer of a LogFlush: telemetry and stack trace flushes are run one at a time on one dedicated thread,
+ * a virtual thread where available, instead of on the threads requesting them.
+ * Requesting a flush doesn't block. A request made while the same flush is already pending is coalesced into it,
+ * and reported as such so that callers can tell the flushes don't keep up. Flushes can also be requested
+ * periodically by the coordinator itself, and on demand. Shutting down runs a final telemetry flush followed by a
+ * final stack trace flush, so that the last window is not lost, optionally from a JVM shutdown hook. A LogFlush
+ * which can be closed, e.g. a FileLogFlush, is closed after the final drain.
+ */
+@Slf4j
+public class FlushCoordinator implements Closeable {
+
+    public static final long DEFAULT_THREAD_SLEEP = 5000L;
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT = 10_000L;
+    static final String THREAD_NAME = "db-telemetry-flush";
+    private static final long NOT_REQUESTED = -1L;
+
+    private final LogFlush logFlush;
+    private final long threadSleep;
+    private final ThreadFactory threadFactory;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition requested = lock.newCondition();
+    private final AtomicLong coalescedRequests = new AtomicLong();
+    private final AtomicLong completedFlushes = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    // Guarded by the lock
+    private long telemetrySleep = NOT_REQUESTED;
+    private long stackTraceSleep = NOT_REQUESTED;
+    private List<CompletableFuture<Void>> waiters = new ArrayList<>();
+    private long telemetryIntervalNanos;
+    private long stackTraceIntervalNanos;
+    private long nextTelemetryNanos;
+    private long nextStackTraceNanos;
+    private Thread thread;
+    private Thread shutdownHook;
+    private boolean shutdown;
+    private volatile boolean flushing;
+
+    /**
+     * Constructs a FlushCoordinator waiting at most {@link #DEFAULT_THREAD_SLEEP} milliseconds for in-flight work.
+     *
+     * @param logFlush the LogFlush whose flushes are coordinated
+     */
+    public FlushCoordinator(LogFlush logFlush) {
+        this(logFlush, DEFAULT_THREAD_SLEEP);
+    }
+
+    /**
+     * Constructs a FlushCoordinator running its flushes on a virtual thread where available, on a daemon platform
+     * thread otherwise.
+     *
+     * @param logFlush    the LogFlush whose flushes are coordinated
+     * @param threadSleep the maximum time in milliseconds the flushes wait for in-flight aggregations or log flushes
+     */
+    public FlushCoordinator(LogFlush logFlush, long threadSleep) {
+        this(logFlush, threadSleep, defaultThreadFactory());
+    }
+
+    /**
+     * Constructs a FlushCoordinator.
+     *
+     * @param logFlush      the LogFlush whose flushes are coordinated
+     * @param threadSleep   the maximum time in milliseconds the flushes wait for in-flight aggregations or log flushes
+     * @param threadFactory the factory of the thread running the flushes
+     */
+    public FlushCoordinator(LogFlush logFlush, long threadSleep, ThreadFactory threadFactory) {
+        this.logFlush = Objects.requireNonNull(logFlush, "logFlush");
+        this.threadSleep = threadSleep;
+        this.threadFactory = Objects.requireNonNull(threadFactory, "threadFactory");
+    }
+
+    /**
+     * Starts the thread running the flushes, if not started yet. Requesting a flush also starts it.
+     *
+     * @return this FlushCoordinator
+     * @throws IllegalStateException if the coordinator is shut down
+     */
+    public FlushCoordinator start() {
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new IllegalStateException("FlushCoordinator is shut down");
+            }
+            startThread();
+            return this;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes the coordinator request the flushes itself at fixed intervals, replacing the previous intervals.
+     *
+     * @param telemetryIntervalMillis  the interval in milliseconds between telemetry flushes, 0 for none
+     * @param stackTraceIntervalMillis the interval in milliseconds between stack trace flushes, 0 for none
+     * @return this FlushCoordinator
+     */
+    public FlushCoordinator schedule(long telemetryIntervalMillis, long stackTraceIntervalMillis) {
+        start();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            telemetryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(telemetryIntervalMillis, 0));
+            stackTraceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(stackTraceIntervalMillis, 0));
+            nextTelemetryNanos = now + telemetryIntervalNanos;
+            nextStackTraceNanos = now + stackTraceIntervalNanos;
+            requested.signal();
+            return this;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Requests a telemetry flush waiting the default thread sleep for in-flight aggregations.
+     *
+     * @return true if a new flush was requested, false if coalesced into a pending one or shut down
+     */
+    public boolean requestFlushLogs() {
+        return requestFlushLogs(threadSleep);
+    }
+
+    /**
+     * Requests a telemetry flush. Coalesced requests wait for the longest of their thread sleeps.
+     *
+     * @param threadSleep the maximum time in milliseconds to wait for in-flight aggregations
+     * @return true if a new flush was requested, false if coalesced into a pending one or shut down
+     */
+    public boolean requestFlushLogs(long threadSleep) {
+        return request(true, false, Math.max(threadSleep, 0), null);
+    }
+
+    /**
+     * Requests a stack trace flush waiting the default thread sleep for in-flight log flushes.
+     *
+     * @return true if a new flush was requested, false if coalesced into a pending one or shut down
+     */
+    public boolean requestFlushStackTrace() {
+        return requestFlushStackTrace(threadSleep);
+    }
+
+    /**
+     * Requests a stack trace flush. Coalesced requests wait for the longest of their thread sleeps.
+     *
+     * @param threadSleep the maximum time in milliseconds to wait for in-flight log flushes
+     * @return true if a new flush was requested, false if coalesced into a pending one or shut down
+     */
+    public boolean requestFlushStackTrace(long threadSleep) {
+        return request(false, true, Math.max(threadSleep, 0), null);
+    }
+
+    /**
+     * Requests a telemetry flush followed by a stack trace flush, on demand.
+     *
+     * @return a future completed once both flushes ran, exceptionally if the coordinator is shut down
+     */
+    public CompletableFuture<Void> flush() {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        request(true, true, threadSleep, done);
+        return done;
+    }
+
+    /**
+     * Checks if a flush is running.
+     *
+     * @return true if the coordinator thread is flushing, false otherwise
+     */
+    public boolean isFlushing() {
+        return flushing;
+    }
+
+    /**
+     * Returns the number of flushes requested and not started yet, 0, 1 or 2.
+     *
+     * @return the number of pending flushes
+     */
+    public int getPendingFlushes() {
+        lock.lock();
+        try {
+            return (telemetrySleep == NOT_REQUESTED ? 0 : 1) + (stackTraceSleep == NOT_REQUESTED ? 0 : 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests coalesced into a pending flush, which grows when the flushes don't keep up.
+     *
+     * @return the number of coalesced requests
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    /**
+     * Returns the number of flushes that ran, successfully or not.
+     *
+     * @return the number of completed flushes
+     */
+    public long getCompletedFlushes() {
+        return completedFlushes.get();
+    }
+
+    /**
+     * Returns the number of flushes that failed.
+     *
+     * @return the number of failed flushes
+     */
+    public long getFailedFlushes() {
+        return failedFlushes.get();
+    }
+
+    /**
+     * Shuts the coordinator down with a final drain when the JVM shuts down, waiting at most
+     * {@link #DEFAULT_SHUTDOWN_TIMEOUT} milliseconds.
+     *
+     * @return this FlushCoordinator
+     */
+    public FlushCoordinator registerShutdownHook() {
+        lock.lock();
+        try {
+            if (Objects.isNull(shutdownHook) && !shutdown) {
+                shutdownHook = new Thread(() -> shutdown(DEFAULT_SHUTDOWN_TIMEOUT), THREAD_NAME + "-shutdown");
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+            }
+            return this;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the periodic flushes, rejects the new requests and runs the pending flushes followed by a final telemetry
+     * flush and a final stack trace flush, then closes the LogFlush if it can be closed. Runs the final drain on the
+     * calling thread if the coordinator thread was never started.
+     *
+     * @param timeoutMillis the maximum time in milliseconds to wait for the final drain
+     * @return true if the final drain completed, false if it is still running or the wait was interrupted
+     */
+    public boolean shutdown(long timeoutMillis) {
+        Thread running;
+        boolean first;
+        lock.lock();
+        try {
+            first = !shutdown;
+            shutdown = true;
+            running = thread;
+            removeShutdownHook();
+            if (first && Objects.isNull(running)) {
+                telemetrySleep = Math.max(telemetrySleep, threadSleep);
+                stackTraceSleep = Math.max(stackTraceSleep, threadSleep);
+            }
+            requested.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (Objects.isNull(running)) {
+            // Never started: nothing runs concurrently, the drain runs here
+            runPending();
+            if (first) {
+                closeLogFlush();
+            }
+            return true;
+        }
+        if (running == Thread.currentThread()) {
+            return false;
+        }
+        try {
+            running.join(Math.max(timeoutMillis, 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !running.isAlive();
+    }
+
+    /**
+     * Shuts the coordinator down waiting at most {@link #DEFAULT_SHUTDOWN_TIMEOUT} milliseconds for the final drain.
+     */
+    @Override
+    public void close() {
+        shutdown(DEFAULT_SHUTDOWN_TIMEOUT);
+    }
+
+    /**
+     * Returns the factory of the virtual threads where available (Java 21 and above), of daemon platform threads
+     * otherwise.
+     *
+     * @return the factory of the coordinator threads
+     */
+    public static ThreadFactory defaultThreadFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class).invoke(builder, THREAD_NAME);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Before Java 21, or virtual threads still in preview
+            return runnable -> {
+                Thread thread = new Thread(runnable, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    private boolean request(boolean telemetry, boolean stackTrace, long sleep, CompletableFuture<Void> waiter) {
+        boolean coalesced = false;
+        lock.lock();
+        try {
+            if (shutdown) {
+                if (Objects.nonNull(waiter)) {
+                    waiter.completeExceptionally(new IllegalStateException("FlushCoordinator is shut down"));
+                }
+                return false;
+            }
+            // Both requested under the lock, so that an on demand flush is never split across two cycles
+            if (telemetry) {
+                coalesced = telemetrySleep != NOT_REQUESTED;
+                telemetrySleep = Math.max(telemetrySleep, sleep);
+            }
+            if (stackTrace) {
+                coalesced |= stackTraceSleep != NOT_REQUESTED;
+                stackTraceSleep = Math.max(stackTraceSleep, sleep);
+            }
+            if (Objects.nonNull(waiter)) {
+                waiters.add(waiter);
+            }
+            startThread();
+            requested.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (coalesced) {
+            coalescedRequests.incrementAndGet();
+        }
+        return !coalesced;
+    }
+
+    private void startThread() {
+        if (Objects.isNull(thread)) {
+            thread = threadFactory.newThread(this::run);
+            thread.start();
+        }
+    }
+
+    private void run() {
+        boolean last = false;
+        while (!last) {
+            lock.lock();
+            try {
+                last = awaitRequest();
+            } catch (InterruptedException e) {
+                // Interrupted on JVM exit or by the thread factory owner: drain, then stop
+                last = true;
+                shutdown = true;
+            } finally {
+                lock.unlock();
+            }
+            if (last) {
+                lock.lock();
+                try {
+                    telemetrySleep = Math.max(telemetrySleep, threadSleep);
+                    stackTraceSleep = Math.max(stackTraceSleep, threadSleep);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            runPending();
+        }
+        closeLogFlush();
+    }
+
+    private boolean awaitRequest() throws InterruptedException {
+        while (telemetrySleep == NOT_REQUESTED && stackTraceSleep == NOT_REQUESTED && !shutdown) {
+            long now = System.nanoTime();
+            long waitNanos = Long.MAX_VALUE;
+            if (telemetryIntervalNanos > 0) {
+                if (now - nextTelemetryNanos >= 0) {
+                    telemetrySleep = threadSleep;
+                    nextTelemetryNanos = now + telemetryIntervalNanos;
+                }
+                waitNanos = Math.min(waitNanos, nextTelemetryNanos - now);
+            }
+            if (stackTraceIntervalNanos > 0) {
+                if (now - nextStackTraceNanos >= 0) {
+                    stackTraceSleep = threadSleep;
+                    nextStackTraceNanos = now + stackTraceIntervalNanos;
+                }
+                waitNanos = Math.min(waitNanos, nextStackTraceNanos - now);
+            }
+            if (telemetrySleep == NOT_REQUESTED && stackTraceSleep == NOT_REQUESTED) {
+                if (waitNanos == Long.MAX_VALUE) {
+                    requested.await();
+                } else {
+                    requested.awaitNanos(waitNanos);
+                }
+            }
+        }
+        return shutdown;
+    }
+
+    private void runPending() {
+        long logsSleep;
+        long stackSleep;
+        List<CompletableFuture<Void>> done;
+        lock.lock();
+        try {
+            logsSleep = telemetrySleep;
+            stackSleep = stackTraceSleep;
+            telemetrySleep = NOT_REQUESTED;
+            stackTraceSleep = NOT_REQUESTED;
+            done = waiters;
+            waiters = new ArrayList<>();
+            flushing = true;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            // Stack traces are collected by the telemetry flush, so it runs first
+            if (logsSleep != NOT_REQUESTED) {
+                runFlush(true, logsSleep);
+            }
+            if (stackSleep != NOT_REQUESTED) {
+                runFlush(false, stackSleep);
+            }
+        } finally {
+            flushing = false;
+            done.forEach(waiter -> waiter.complete(null));
+        }
+    }
+
+    private void runFlush(boolean telemetry, long sleep) {
+        try {
+            if (telemetry) {
+                logFlush.flushLogs(sleep);
+            } else {
+                logFlush.flushStackTrace(sleep);
+            }
+        } catch (TelemetryFlushException | RuntimeException e) {
+            failedFlushes.incrementAndGet();
+            log.error("Error in " + (telemetry ? "telemetry" : "stack trace") + " flush", e);
+        } finally {
+            completedFlushes.incrementAndGet();
+        }
+    }
+
+    private void closeLogFlush() {
+        if (logFlush instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) logFlush).close();
+            } catch (Exception e) {
+                log.error("Error closing the LogFlush", e);
+            }
+        }
+    }
+
+    private void removeShutdownHook() {
+        if (Objects.nonNull(shutdownHook) && shutdownHook != Thread.currentThread()) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // The JVM is already shutting down, the hook runs or ran
+            }
+        }
+        shutdownHook = null;
+    }
+}
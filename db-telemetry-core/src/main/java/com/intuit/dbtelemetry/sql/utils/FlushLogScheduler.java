@@ -1,8 +1,9 @@
 package com.intuit.dbtelemetry.sql.utils;
 
+import com.intuit.dbtelemetry.sql.TelemetryRegistry;
 import com.intuit.dbtelemetry.sql.logs.LogFlush;
-import com.intuit.dbtelemetry.sql.logs.TelemetryFlushException;
 
+import java.io.Closeable;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.Objects;
@@ -10,12 +11,23 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
-public class FlushLogScheduler {
+/**
+ * Schedules the flushes of a LogFlush on a ScheduledExecutorService. The scheduled tasks only request the flushes
+ * from a FlushCoordinator, which runs them one at a time on its own thread, so the executor threads never wait for
+ * in-flight aggregations and overlapping flushes are coalesced.
+ * Closing the scheduler, explicitly or when the JVM shuts down once a task was scheduled, cancels the scheduled tasks
+ * and runs a final drain of the FlushCoordinator, which closes the LogFlush if it can be closed, then closes the TelemetryRegistry it was
+ * created with, if any, which closes its aggregator.
+ */
+public class FlushLogScheduler implements Closeable {
 
     private final ScheduledExecutorService scheduler;
     private final Map<ScheduleType, ScheduledFuture<?>> scheduledTasks;
-    private final LogFlush logFlush;
+    private final FlushCoordinator flushCoordinator;
     private final Map<ScheduleType, ScheduleConfig> scheduleConfigMap;
+    private final TelemetryRegistry telemetryRegistry;
+    private Thread shutdownHook;
+    private boolean closed;
     /**
      * Constructor for creating a FlushLogScheduler object.
      *
@@ -25,7 +37,26 @@ public class FlushLogScheduler {
      */
     public FlushLogScheduler(LogFlush logFlush, ScheduledExecutorService scheduler,
                              Map<ScheduleType, ScheduleConfig> scheduleConfigMap) {
-        this.logFlush = logFlush;
+        this(logFlush, null, scheduler, scheduleConfigMap);
+    }
+
+    /**
+     * Constructor for creating a FlushLogScheduler object flushing the logs of a TelemetryRegistry, closed along the
+     * scheduler.
+     *
+     * @param telemetryRegistry Registry whose LogFlush flushes the logs.
+     * @param scheduler A scheduled executor service to run tasks.
+     * @param scheduleConfigMap A map defining config schedules for different types.
+     */
+    public FlushLogScheduler(TelemetryRegistry telemetryRegistry, ScheduledExecutorService scheduler,
+                             Map<ScheduleType, ScheduleConfig> scheduleConfigMap) {
+        this(telemetryRegistry.getLogFlush(), telemetryRegistry, scheduler, scheduleConfigMap);
+    }
+
+    private FlushLogScheduler(LogFlush logFlush, TelemetryRegistry telemetryRegistry,
+                              ScheduledExecutorService scheduler, Map<ScheduleType, ScheduleConfig> scheduleConfigMap) {
+        this.flushCoordinator = new FlushCoordinator(logFlush);
+        this.telemetryRegistry = telemetryRegistry;
         this.scheduler = scheduler;
         this.scheduleConfigMap = scheduleConfigMap;
         this.scheduledTasks = new EnumMap<>(ScheduleType.class);
@@ -36,8 +67,12 @@ public class FlushLogScheduler {
      *
      * @param scheduleType The type of scheduling to be performed.
      */
-    public void scheduleTask(ScheduleType scheduleType) {
+    public synchronized void scheduleTask(ScheduleType scheduleType) {
         validateSchedulerState("ScheduledExecutorService is null in DefaultDBTelemetryConfig schedule failed", scheduleType);
+        if (closed) {
+            throw new IllegalStateException("FlushLogScheduler is closed");
+        }
+        registerShutdownHook();
         ScheduleConfig scheduleConfig = scheduleConfigMap.get(scheduleType);
         Runnable task = getRunnableTask(scheduleType, scheduleConfig.getLoggerSleepTime());
 
@@ -55,27 +90,15 @@ public class FlushLogScheduler {
      * Returns a Runnable task depending on the schedule type.
      *
      * @param scheduleType The type of scheduling to be performed.
-     * @param sleepTime The time in milliseconds that the task thread should sleep for.
-     * @return a Runnable task
+     * @param sleepTime The maximum time in milliseconds the flush waits for in-flight aggregations or log flushes.
+     * @return a Runnable task requesting the flush from the FlushCoordinator
      */
     private Runnable getRunnableTask(ScheduleType scheduleType, long sleepTime) {
         switch (scheduleType) {
             case Telemetry:
-                return () -> {
-                    try {
-                        logFlush.flushLogs(sleepTime);
-                    } catch (TelemetryFlushException e) {
-                        // log.error(e);
-                    }
-                };
+                return () -> flushCoordinator.requestFlushLogs(sleepTime);
             case StackTrace:
-                return () -> {
-                    try {
-                        logFlush.flushStackTrace(sleepTime);
-                    } catch (TelemetryFlushException e) {
-                        // log.error(e);
-                    }
-                };
+                return () -> flushCoordinator.requestFlushStackTrace(sleepTime);
             default:
                 throw new IllegalArgumentException("Invalid ScheduleType");
         }
@@ -90,23 +113,72 @@ public class FlushLogScheduler {
         scheduleTask(scheduleType);
     }
     /**
-     * Un-schedules a task based on the type provided.
+     * Un-schedules a task based on the type provided. A flush already requested still runs on the FlushCoordinator.
      *
      * @param scheduleType The type of scheduling to be cancelled.
      */
-    public void unSchedule(ScheduleType scheduleType) {
+    public synchronized void unSchedule(ScheduleType scheduleType) {
         validateSchedulerState("ScheduledExecutorService is null in DefaultDBTelemetryConfig unSchedule failed", scheduleType);
-        ScheduledFuture<?> scheduledTask = scheduledTasks.get(scheduleType);
+        ScheduledFuture<?> scheduledTask = scheduledTasks.remove(scheduleType);
 
         if (Objects.nonNull(scheduledTask)) {
-            ScheduleConfig scheduleConfig = scheduleConfigMap.get(scheduleType);
+            // The task only requests the flush, there is no running flush to interrupt or to wait for
+            scheduledTask.cancel(false);
+        }
+    }
+
+    /**
+     * Cancels the scheduled tasks and runs the final drain, waiting at most
+     * {@link FlushCoordinator#DEFAULT_SHUTDOWN_TIMEOUT} milliseconds, then closes the TelemetryRegistry of the
+     * scheduler if any. Called by a JVM shutdown hook, registered when the first task is scheduled, if not called
+     * before.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        removeShutdownHook();
+        scheduledTasks.values().forEach(scheduledTask -> scheduledTask.cancel(false));
+        scheduledTasks.clear();
+        flushCoordinator.shutdown(FlushCoordinator.DEFAULT_SHUTDOWN_TIMEOUT);
+        if (Objects.nonNull(telemetryRegistry)) {
+            telemetryRegistry.close();
+        }
+    }
+
+    /**
+     * Returns the FlushCoordinator running the scheduled flushes, e.g. to flush on demand.
+     *
+     * @return the FlushCoordinator of this scheduler
+     */
+    public FlushCoordinator getFlushCoordinator() {
+        return flushCoordinator;
+    }
+    private void registerShutdownHook() {
+        // Schedulers which never schedule a task have nothing to drain and don't keep a hook registered
+        if (Objects.nonNull(shutdownHook)) {
+            return;
+        }
+        shutdownHook = new Thread(this::close, FlushCoordinator.THREAD_NAME + "-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
 
-            scheduler.schedule(
-                    () -> scheduledTask.cancel(true),
-                    scheduleConfig.getInterval(), TimeUnit.SECONDS
-            );
+    private void removeShutdownHook() {
+        if (Objects.isNull(shutdownHook)) {
+            return;
+        }
+        if (shutdownHook != Thread.currentThread()) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // The JVM is already shutting down, the hook runs or ran
+            }
         }
+        shutdownHook = null;
     }
+
     /**
      * Validates current state of scheduler and provided schedule type before scheduling or un-scheduling.
      *
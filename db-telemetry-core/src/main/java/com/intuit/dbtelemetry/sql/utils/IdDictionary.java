@@ -0,0 +1,82 @@
+package com.intuit.dbtelemetry.sql.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concurrent dictionary assigning dense integer ids, starting from 0, to values.
+ * Looking up a known value doesn't lock nor allocate, new values are registered under a lock.
+ * Ids are never reused, the dictionary is meant to be dropped as a whole.
+ *
+ * @param <T> the type of the values, with consistent equals and hashCode
+ */
+public class IdDictionary<T> {
+
+    public static final int NO_ID = -1;
+
+    private final int maxSize;
+    private final Map<T, Integer> ids = new ConcurrentHashMap<>();
+    // Written under the lock before the id is published through the map
+    private volatile Object[] values = new Object[16];
+    private int size;
+
+    /**
+     * Constructs an IdDictionary.
+     *
+     * @param maxSize the maximum number of values, beyond which new values get no id
+     */
+    public IdDictionary(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the id of a value, registering the value if it is new.
+     *
+     * @param value the value, not null
+     * @return the id of the value, or {@link #NO_ID} if the dictionary is full
+     */
+    public int idOf(T value) {
+        Integer id = ids.get(value);
+        return Objects.nonNull(id) ? id : register(value);
+    }
+
+    /**
+     * Returns the value of an id returned by {@link #idOf(Object)}.
+     *
+     * @param id the id of the value
+     * @return the value
+     */
+    @SuppressWarnings("unchecked")
+    public T valueOf(int id) {
+        return (T) values[id];
+    }
+
+    /**
+     * Returns the number of registered values.
+     *
+     * @return the size of the dictionary
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    private synchronized int register(T value) {
+        Integer id = ids.get(value);
+        if (Objects.nonNull(id)) {
+            return id;
+        }
+        if (size >= maxSize) {
+            return NO_ID;
+        }
+        Object[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, Math.min(maxSize, current.length * 2));
+            values = current;
+        }
+        current[size] = value;
+        ids.put(value, size);
+        return size++;
+    }
+}
@@ -0,0 +1,49 @@
+package com.intuit.dbtelemetry.sql.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.ToLongFunction;
+
+/**
+ * Eviction of the least recently used entries of the bounded concurrent maps keyed by fingerprint, e.g. the stack
+ * traces remembered across flushes. The maps are read and updated without locking, only the evictions are expected
+ * to be serialized by the callers.
+ */
+public final class LeastRecentlyUsed {
+
+    private LeastRecentlyUsed() {
+    }
+
+    /**
+     * Evicts the least recently used entries of a map above its maximum number of entries. The map is trimmed a tenth
+     * below the maximum, so that the next new entries don't sort it again.
+     *
+     * @param entries    the entries keyed by fingerprint
+     * @param maxEntries the maximum number of entries
+     * @param lastUse    the last use of an entry, greater for a more recent use
+     * @param <E>        the type of the entries
+     * @return the number of entries evicted
+     */
+    public static <E> int evict(Map<Long, E> entries, int maxEntries, ToLongFunction<E> lastUse) {
+        int excess = entries.size() - maxEntries;
+        if (excess <= 0) {
+            return 0;
+        }
+        excess += maxEntries / 10;
+        // Sorts a snapshot of the last uses, which keep changing while sorting
+        List<long[]> leastRecentlyUsed = new ArrayList<>(entries.size());
+        entries.forEach((fingerprint, entry) ->
+                leastRecentlyUsed.add(new long[]{lastUse.applyAsLong(entry), fingerprint}));
+        leastRecentlyUsed.sort(Comparator.comparingLong(used -> used[0]));
+        int evicted = 0;
+        for (int i = 0; i < excess && i < leastRecentlyUsed.size(); i++) {
+            if (Objects.nonNull(entries.remove(leastRecentlyUsed.get(i)[1]))) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+}
@@ -0,0 +1,207 @@
+package com.intuit.dbtelemetry.sql.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, concurrent cache of raw SQL to the normalized form produced by {@link SqlHelperUtils#sanitizeSQL(String)}.
+ * The cache is split into independently locked LRU segments, each holding an equal share of the entry and byte
+ * budget, so a repeated statement is normalized once and afterwards only looked up.
+ */
+public class SqlNormalizationCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+    private static final int SEGMENT_COUNT = 16;
+    // Approximate cost of the map node, the entry and the two String headers
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Segment[] segments;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Constructs a SqlNormalizationCache with {@link #DEFAULT_MAX_ENTRIES} entries and {@link #DEFAULT_MAX_BYTES} bytes.
+     */
+    public SqlNormalizationCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructs a SqlNormalizationCache with the given limits.
+     *
+     * @param maxEntries the maximum number of statements to keep
+     * @param maxBytes   the approximate maximum heap, in bytes, used by the cached statements
+     */
+    public SqlNormalizationCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("SqlNormalizationCache limits can not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(divideUp(maxEntries), divideUp(maxBytes));
+        }
+    }
+
+    /**
+     * Returns the normalized form of the given SQL, computing and caching it on the first call.
+     *
+     * @param sql the raw SQL statement
+     * @return the normalized SQL statement
+     */
+    public String normalize(String sql) {
+        if (Objects.isNull(sql)) {
+            return SqlHelperUtils.sanitizeSQL(null);
+        }
+        Segment segment = segmentFor(sql);
+        String normalized = segment.get(sql);
+        if (Objects.nonNull(normalized)) {
+            hitCount.increment();
+            return normalized;
+        }
+        missCount.increment();
+        normalized = SqlHelperUtils.sanitizeSQL(sql);
+        segment.put(sql, normalized, weigh(sql, normalized));
+        return normalized;
+    }
+
+    /**
+     * Removes all the cached statements. Hit, miss and eviction counters are kept.
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the number of statements currently cached.
+     *
+     * @return the number of cached statements
+     */
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the approximate heap, in bytes, used by the cached statements.
+     *
+     * @return the approximate size of the cache in bytes
+     */
+    public long getWeightedSize() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes();
+        }
+        return bytes;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private Segment segmentFor(String sql) {
+        int hash = sql.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)];
+    }
+
+    private static long weigh(String sql, String normalized) {
+        // Statements that need no normalization share the same String instance
+        long chars = sql == normalized ? sql.length() : (long) sql.length() + normalized.length();
+        return 2 * chars + ENTRY_OVERHEAD_BYTES;
+    }
+
+    private static int divideUp(int value) {
+        return (value + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+    }
+
+    private static long divideUp(long value) {
+        return (value + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+    }
+
+    private final class Segment {
+        private final int maxEntries;
+        private final long maxBytes;
+        // Access ordered, so iteration starts with the least recently used statement
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        private Segment(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        private synchronized String get(String sql) {
+            Entry entry = entries.get(sql);
+            return Objects.isNull(entry) ? null : entry.normalized;
+        }
+
+        private synchronized void put(String sql, String normalized, long weight) {
+            if (weight > maxBytes || maxEntries == 0) {
+                return;
+            }
+            Entry previous = entries.put(sql, new Entry(normalized, weight));
+            if (Objects.nonNull(previous)) {
+                bytes -= previous.weight;
+            }
+            bytes += weight;
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+                bytes -= eldest.next().getValue().weight;
+                eldest.remove();
+                evictionCount.increment();
+            }
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+            bytes = 0;
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+
+        private synchronized long bytes() {
+            return bytes;
+        }
+    }
+
+    private static final class Entry {
+        private final String normalized;
+        private final long weight;
+
+        private Entry(String normalized, long weight) {
+            this.normalized = normalized;
+            this.weight = weight;
+        }
+    }
+}
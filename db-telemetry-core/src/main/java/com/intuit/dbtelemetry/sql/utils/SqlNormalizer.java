@@ -0,0 +1,380 @@
+package com.intuit.dbtelemetry.sql.utils;
+
+/**
+ * Single pass SQL tokenizer writing the normalized form of a statement into a reused buffer.
+ * Spans that need no rewriting are copied in bulk, and when nothing had to be rewritten the original String is
+ * returned as it is. Instances keep per-statement state and are not thread safe, SqlHelperUtils keeps one per thread.
+ */
+final class SqlNormalizer {
+
+    private static final int INITIAL_CAPACITY = 256;
+    // Buffers grown by very large statements are dropped instead of being retained by the thread
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final char PLACEHOLDER = '?';
+    private static final String COLLAPSED_LIST = "(?)";
+    private static final int LITERAL_ONLY = 1;
+    private static final int HAS_LITERAL = 2;
+
+    private StringBuilder out = new StringBuilder(INITIAL_CAPACITY);
+    private int[] groupStarts = new int[16];
+    private int[] groupSources = new int[16];
+    private int[] groupFlags = new int[16];
+    private int depth;
+    private String sql;
+    private int length;
+    private int copyFrom;
+    private boolean changed;
+
+    /**
+     * Normalizes the given statement.
+     *
+     * @param sql the non-null SQL statement
+     * @return the normalized statement, or the given instance when it is already normalized
+     */
+    String normalize(String sql) {
+        this.sql = sql;
+        this.length = sql.length();
+        this.copyFrom = 0;
+        this.changed = false;
+        this.depth = 0;
+        out.setLength(0);
+        try {
+            int i = 0;
+            while (i < length) {
+                i = nextToken(i, sql.charAt(i));
+            }
+            if (!changed) {
+                return sql;
+            }
+            flush(length);
+            return out.toString();
+        } finally {
+            this.sql = null;
+            if (out.capacity() > MAX_RETAINED_CAPACITY) {
+                out = new StringBuilder(INITIAL_CAPACITY);
+            }
+        }
+    }
+
+    private int nextToken(int i, char c) {
+        switch (c) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\r':
+            case ',':
+                return i + 1;
+            case '?':
+                markLiteral();
+                return i + 1;
+            case '\'':
+                return replace(i, scanQuoted(i + 1, '\'', false));
+            case '"':
+            case '`':
+                markOther();
+                return scanQuoted(i + 1, c, false);
+            case '[':
+                int close = sql.indexOf(']', i + 1);
+                if (close < 0) {
+                    markOther();
+                    return i + 1;
+                }
+                return replace(i, close + 1);
+            case '(':
+                openGroup(i);
+                return i + 1;
+            case ')':
+                return closeGroup(i);
+            case '-':
+                if (charAt(i + 1) == '-') {
+                    int lineEnd = sql.indexOf('\n', i + 2);
+                    return comment(i, lineEnd < 0 ? length : lineEnd);
+                }
+                return sign(i);
+            case '+':
+                return sign(i);
+            case '/':
+                if (charAt(i + 1) == '*') {
+                    int commentEnd = sql.indexOf("*/", i + 2);
+                    return comment(i, commentEnd < 0 ? length : commentEnd + 2);
+                }
+                markOther();
+                return i + 1;
+            case '$':
+                return dollar(i);
+            case '.':
+                if (isDigit(charAt(i + 1)) && !isWordChar(charAt(i - 1))) {
+                    return replace(i, scanNumber(i));
+                }
+                markOther();
+                return i + 1;
+            default:
+                if (isDigit(c)) {
+                    return replace(i, scanNumber(i));
+                }
+                if (Character.isLetter(c) || c == '_') {
+                    return word(i, c);
+                }
+                if (Character.isWhitespace(c)) {
+                    return i + 1;
+                }
+                markOther();
+                return i + 1;
+        }
+    }
+
+    private int word(int start, char first) {
+        int end = start + 1;
+        while (end < length && isWordChar(sql.charAt(end))) {
+            end++;
+        }
+        // Prefixed string literals such as N'...', X'...' or E'...' (E allows backslash escapes)
+        if (end - start == 1 && charAt(end) == '\'' && isStringPrefix(first)) {
+            return replace(start, scanQuoted(end + 1, '\'', first == 'E' || first == 'e'));
+        }
+        markOther();
+        return end;
+    }
+
+    private int sign(int i) {
+        char next = charAt(i + 1);
+        if ((isDigit(next) || (next == '.' && isDigit(charAt(i + 2)))) && isListSeparatorBefore(i)) {
+            return replace(i, scanNumber(i + 1));
+        }
+        markOther();
+        return i + 1;
+    }
+
+    private int dollar(int start) {
+        int i = start + 1;
+        if (isDigit(charAt(i))) {
+            // Positional parameter such as $1
+            while (isDigit(charAt(i))) {
+                i++;
+            }
+            return replace(start, i);
+        }
+        while (i < length && sql.charAt(i) != '$' && isWordChar(sql.charAt(i))) {
+            i++;
+        }
+        if (charAt(i) != '$') {
+            markOther();
+            return start + 1;
+        }
+        // Dollar quoted string, $$...$$ or $tag$...$tag$
+        int tagLength = i + 1 - start;
+        int close = i + 1;
+        while ((close = sql.indexOf('$', close)) >= 0) {
+            if (sql.regionMatches(close, sql, start, tagLength)) {
+                return replace(start, close + tagLength);
+            }
+            close++;
+        }
+        return replace(start, length);
+    }
+
+    private int comment(int start, int end) {
+        markOther();
+        // Comments are kept, but numbers in them are still masked so they do not split statements
+        for (int i = start + 2; i < end; i++) {
+            if (isDigit(sql.charAt(i)) && !isWordChar(sql.charAt(i - 1))) {
+                int numberEnd = i;
+                while (numberEnd < end && isDigit(sql.charAt(numberEnd))) {
+                    numberEnd++;
+                }
+                emitPlaceholder(i, numberEnd);
+                i = numberEnd;
+            }
+        }
+        return end;
+    }
+
+    private void openGroup(int i) {
+        markOther();
+        if (depth == groupStarts.length) {
+            groupStarts = grow(groupStarts);
+            groupSources = grow(groupSources);
+            groupFlags = grow(groupFlags);
+        }
+        flush(i);
+        groupStarts[depth] = out.length();
+        groupSources[depth] = i;
+        groupFlags[depth] = LITERAL_ONLY;
+        depth++;
+    }
+
+    private int closeGroup(int i) {
+        if (depth == 0) {
+            markOther();
+            return i + 1;
+        }
+        depth--;
+        if (groupFlags[depth] != (LITERAL_ONLY | HAS_LITERAL)) {
+            return i + 1;
+        }
+        // A list made only of literals, e.g. IN (?, ?, ?) or VALUES (1, 'a'), collapses to (?)
+        flush(i);
+        out.setLength(groupStarts[depth]);
+        if (!dropRepeatedList()) {
+            out.append(COLLAPSED_LIST);
+            changed |= i - groupSources[depth] != COLLAPSED_LIST.length() - 1;
+        }
+        copyFrom = i + 1;
+        return i + 1;
+    }
+
+    // Multi row VALUES (?), (?), (?) collapses to a single (?)
+    private boolean dropRepeatedList() {
+        int i = skipWhitespaceBackwards(out.length() - 1);
+        if (i < 0 || out.charAt(i) != ',') {
+            return false;
+        }
+        i = skipWhitespaceBackwards(i - 1);
+        int listStart = i - COLLAPSED_LIST.length() + 1;
+        if (listStart < 0 || out.indexOf(COLLAPSED_LIST, listStart) != listStart) {
+            return false;
+        }
+        out.setLength(i + 1);
+        changed = true;
+        return true;
+    }
+
+    private int skipWhitespaceBackwards(int i) {
+        while (i >= 0 && Character.isWhitespace(out.charAt(i))) {
+            i--;
+        }
+        return i;
+    }
+
+    private boolean isListSeparatorBefore(int i) {
+        int previous = i - 1;
+        while (previous >= 0 && Character.isWhitespace(sql.charAt(previous))) {
+            previous--;
+        }
+        return previous >= 0 && (sql.charAt(previous) == '(' || sql.charAt(previous) == ',');
+    }
+
+    private int scanQuoted(int from, char quote, boolean backslashEscapes) {
+        int i = from;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (backslashEscapes && c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                if (charAt(i + 1) != quote) {
+                    return i + 1;
+                }
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        return length;
+    }
+
+    private int scanNumber(int start) {
+        int i = start;
+        if (sql.charAt(i) == '0' && (charAt(i + 1) == 'x' || charAt(i + 1) == 'X') && isHexDigit(charAt(i + 2))) {
+            i += 2;
+            while (isHexDigit(charAt(i))) {
+                i++;
+            }
+            return i;
+        }
+        while (isDigit(charAt(i))) {
+            i++;
+        }
+        if (charAt(i) == '.' && isDigit(charAt(i + 1))) {
+            i++;
+            while (isDigit(charAt(i))) {
+                i++;
+            }
+        }
+        if (charAt(i) == 'e' || charAt(i) == 'E') {
+            int exponent = i + 1;
+            if (charAt(exponent) == '+' || charAt(exponent) == '-') {
+                exponent++;
+            }
+            if (isDigit(charAt(exponent))) {
+                i = exponent;
+                while (isDigit(charAt(i))) {
+                    i++;
+                }
+            }
+        }
+        return i;
+    }
+
+    private int replace(int start, int end) {
+        emitPlaceholder(start, end);
+        markLiteral();
+        return end;
+    }
+
+    private void emitPlaceholder(int start, int end) {
+        flush(start);
+        out.append(PLACEHOLDER);
+        copyFrom = end;
+        changed = true;
+    }
+
+    private void flush(int upTo) {
+        if (upTo > copyFrom) {
+            out.append(sql, copyFrom, upTo);
+            copyFrom = upTo;
+        }
+    }
+
+    private void markLiteral() {
+        if (depth > 0) {
+            groupFlags[depth - 1] |= HAS_LITERAL;
+        }
+    }
+
+    private void markOther() {
+        if (depth > 0) {
+            groupFlags[depth - 1] &= ~LITERAL_ONLY;
+        }
+    }
+
+    private char charAt(int i) {
+        return i >= 0 && i < length ? sql.charAt(i) : 0;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    private static boolean isStringPrefix(char c) {
+        switch (c) {
+            case 'N':
+            case 'n':
+            case 'E':
+            case 'e':
+            case 'X':
+            case 'x':
+            case 'B':
+            case 'b':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isWordChar(char c) {
+        if (c < 128) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_' || c == '$';
+        }
+        return Character.isLetterOrDigit(c);
+    }
+}
@@ -0,0 +1,79 @@
+package com.intuit.dbtelemetry.sql;
+
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SqlTelemetryTest {
+
+    @Test
+    public void setInstanceValueIsExactUnderConcurrency() throws InterruptedException {
+        SqlTelemetry telemetry = new SqlTelemetry("test", "select ?", null, null);
+        int threads = 8;
+        int calls = 20_000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 1; i <= calls; i++) {
+                    telemetry.setInstanceValue(i);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Assert.assertEquals((long) threads * calls, telemetry.getCount());
+        Assert.assertEquals((long) threads * calls * (calls + 1) / 2, telemetry.getCallTime());
+        Assert.assertEquals(1, telemetry.getMin());
+        Assert.assertEquals(calls, telemetry.getMax());
+    }
+
+    @Test
+    public void minIsZeroWhenNeverCalled() {
+        SqlTelemetry telemetry = new SqlTelemetry("test", "select ?", null, null);
+        Assert.assertEquals(0, telemetry.getMin());
+        Assert.assertEquals(0, telemetry.getMax());
+        Assert.assertEquals(0D, telemetry.getAverageCallTime(), 0D);
+        telemetry.setInstanceValue(7);
+        telemetry.setInstanceValue(3);
+        Assert.assertEquals(3, telemetry.getMin());
+        Assert.assertEquals(7, telemetry.getMax());
+        Assert.assertEquals(5D, telemetry.getAverageCallTime(), 0D);
+    }
+
+    @Test
+    public void addAndReset() {
+        SqlTelemetry total = new SqlTelemetry("test", "select ?", null, null);
+        SqlTelemetry local = new SqlTelemetry("test", "select ?", null, null);
+        total.add(local);
+        Assert.assertEquals(0, total.getCount());
+        local.setInstanceValue(4);
+        local.setInstanceValue(12);
+        total.setInstanceValue(8);
+        total.add(local);
+        Assert.assertEquals(3, total.getCount());
+        Assert.assertEquals(24, total.getCallTime());
+        Assert.assertEquals(4, total.getMin());
+        Assert.assertEquals(12, total.getMax());
+        Assert.assertEquals(12, total.getCallTimeAtPercentile(100));
+        local.reset();
+        Assert.assertEquals(0, local.getCount());
+        Assert.assertEquals(0, local.getCallTime());
+        Assert.assertEquals(0, local.getMin());
+        Assert.assertEquals(0, local.getMax());
+        Assert.assertEquals(0, local.getCallTimeAtPercentile(50));
+    }
+
+    @Test
+    public void equalsComparesTheStackTraceOfEqualFingerprints() {
+        SqlTelemetry telemetry = SqlTelemetry.of("test", "select ?", new CallSite(1L, "stack"), null);
+        Assert.assertEquals(telemetry, SqlTelemetry.of("test", "select ?", new CallSite(1L, new String("stack")), null));
+        Assert.assertNotEquals(telemetry, SqlTelemetry.of("test", "select ?", new CallSite(1L, "other stack"), null));
+        Assert.assertEquals(new SqlTelemetry("test", "select ?", null, null), SqlTelemetry.of("test", "select ?", null, null));
+    }
+}
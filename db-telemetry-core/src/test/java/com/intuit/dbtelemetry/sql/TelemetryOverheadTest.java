@@ -0,0 +1,81 @@
+package com.intuit.dbtelemetry.sql;
+
+import com.intuit.dbtelemetry.sql.aggregator.TelemetryAggregatorException;
+import com.intuit.dbtelemetry.sql.aggregator.TopKAggregator;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TelemetryOverheadTest {
+
+    @Test
+    public void stagesAreOnlyTimedWhenEnabled() {
+        TelemetryOverhead overhead = new TelemetryOverhead();
+        overhead.stop(TelemetryOverhead.Stage.NORMALIZATION, overhead.start());
+        Assert.assertEquals(0, overhead.getCount(TelemetryOverhead.Stage.NORMALIZATION));
+
+        overhead.setEnabled(true);
+        overhead.stop(TelemetryOverhead.Stage.NORMALIZATION, overhead.start());
+        overhead.record(TelemetryOverhead.Stage.RECORD, 1_000);
+        overhead.record(TelemetryOverhead.Stage.RECORD, 3_000);
+        Assert.assertEquals(1, overhead.getCount(TelemetryOverhead.Stage.NORMALIZATION));
+        Assert.assertEquals(2, overhead.getCount(TelemetryOverhead.Stage.RECORD));
+        Assert.assertEquals(4_000, overhead.getTotalNanos(TelemetryOverhead.Stage.RECORD));
+        Assert.assertTrue(overhead.getNanosAtPercentile(TelemetryOverhead.Stage.RECORD, 100) >= 3_000);
+    }
+
+    @Test
+    public void failuresAndWindowsAreAlwaysCounted() {
+        TelemetryOverhead overhead = new TelemetryOverhead();
+        overhead.recordAggregationFailure();
+        overhead.recordFlush(10, 5_000);
+        overhead.recordFlush(4, 2_000);
+        Assert.assertEquals(1, overhead.getAggregationFailures());
+        Assert.assertEquals(4, overhead.getLastWindowSize());
+        Assert.assertEquals(10, overhead.getMaxWindowSize());
+        Assert.assertEquals(2, overhead.getCount(TelemetryOverhead.Stage.FLUSH));
+        Assert.assertTrue(overhead.toString().contains("aggregationFailures=1, lastWindowSize=4, maxWindowSize=10}"));
+
+        overhead.reset();
+        Assert.assertEquals(0, overhead.getAggregationFailures());
+        Assert.assertEquals(0, overhead.getMaxWindowSize());
+        Assert.assertEquals(0, overhead.getCount(TelemetryOverhead.Stage.FLUSH));
+    }
+
+    @Test
+    public void aggregatorsRecordTheirStages() throws TelemetryAggregatorException {
+        TelemetryOverhead overhead = TelemetryOverhead.shared();
+        // The tests switching the shared timing run one at a time
+        synchronized (overhead) {
+            boolean enabled = overhead.isEnabled();
+            overhead.setEnabled(true);
+            try {
+                long normalizations = overhead.getCount(TelemetryOverhead.Stage.NORMALIZATION);
+                long records = overhead.getCount(TelemetryOverhead.Stage.RECORD);
+                new TopKAggregator(10, TopKAggregator.Ranking.COUNT).aggregate("test", "select * from T", 10);
+                Assert.assertTrue(overhead.getCount(TelemetryOverhead.Stage.NORMALIZATION) > normalizations);
+                Assert.assertTrue(overhead.getCount(TelemetryOverhead.Stage.RECORD) > records);
+            } finally {
+                overhead.setEnabled(enabled);
+            }
+        }
+    }
+
+    @Test
+    public void builderEnablesAndDisablesTheTiming() {
+        TelemetryOverhead overhead = TelemetryOverhead.shared();
+        synchronized (overhead) {
+            boolean enabled = overhead.isEnabled();
+            try {
+                TelemetryRegistryBuilder.builder().withOverheadMetrics(true).build();
+                Assert.assertTrue(overhead.isEnabled());
+                TelemetryRegistryBuilder.builder().build();
+                Assert.assertTrue(overhead.isEnabled());
+                TelemetryRegistryBuilder.builder().withOverheadMetrics(false).build();
+                Assert.assertFalse(overhead.isEnabled());
+                Assert.assertSame(overhead, TelemetryRegistry.getOverhead());
+            } finally {
+                overhead.setEnabled(enabled);
+            }
+        }
+    }
+}
@@ -1,14 +1,26 @@
 package com.intuit.dbtelemetry.sql;
 
+import com.intuit.dbtelemetry.sql.aggregator.AbstractAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.DictionaryAggregator;
 import com.intuit.dbtelemetry.sql.aggregator.MapBasedAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.ThreadLocalAggregator;
 import com.intuit.dbtelemetry.sql.extractor.stacktrace.DepthFilterStackTraceExtractor;
+import com.intuit.dbtelemetry.sql.finder.CachingWorkflowFinder;
 import com.intuit.dbtelemetry.sql.logs.DefaultLogFlush;
+import com.intuit.dbtelemetry.sql.logs.FileLogFlush;
+import com.intuit.dbtelemetry.sql.logs.StructuredLogFlush;
+import com.intuit.dbtelemetry.sql.prometheus.PrometheusCollector;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
+import com.intuit.dbtelemetry.sql.utils.ExcludedTablesMatcher;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 
 @RunWith(MockitoJUnitRunner.class)
 public class TelemetryRegistryBuilderTest {
@@ -48,4 +60,92 @@ public class TelemetryRegistryBuilderTest {
         result.aspectState("test", "true");
     }
 
+    @Test
+    public void testBuilderThreadLocalAggregation() {
+        TelemetryRegistry result = TelemetryRegistryBuilder.builder()
+                .withThreadLocalAggregation(true)
+                .build();
+        Assert.assertTrue(result.getAggregator() instanceof ThreadLocalAggregator);
+    }
+
+    @Test
+    public void testBuilderDictionaryAggregation() {
+        TelemetryRegistry result = TelemetryRegistryBuilder.builder()
+                .withDictionaryAggregation(true)
+                .build();
+        Assert.assertTrue(result.getAggregator() instanceof DictionaryAggregator);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBuilderConflictingAggregations() {
+        TelemetryRegistryBuilder.builder()
+                .withThreadLocalAggregation(true)
+                .withTopK(10)
+                .build();
+    }
+
+    @Test
+    public void testBuilderExcludedTablesWholeNames() {
+        TelemetryRegistry result = TelemetryRegistryBuilder.builder()
+                .withExcludedTables(Collections.singletonList("AUDIT"))
+                .withExcludedTablesWholeNames(true)
+                .build();
+        ExcludedTablesMatcher matcher = ((AbstractAggregator) result.getAggregator()).getExcludedTablesMatcher();
+        Assert.assertTrue(matcher.isWholeTableNames());
+        Assert.assertTrue(matcher.isExcluded("select * from AUDIT"));
+        Assert.assertFalse(matcher.isExcluded("select * from AUDIT_LOG"));
+    }
+
+    @Test
+    public void testBuilderStructuredOutput() {
+        TelemetryRegistry result = TelemetryRegistryBuilder.builder()
+                .withStructuredOutput(new ByteArrayOutputStream())
+                .build();
+        Assert.assertTrue(result.getLogFlush() instanceof StructuredLogFlush);
+    }
+
+    @Test
+    public void testBuilderFileOutput() {
+        TelemetryRegistry result = TelemetryRegistryBuilder.builder()
+                .withFileOutput(Paths.get("target", "telemetry"))
+                .build();
+        Assert.assertTrue(result.getLogFlush() instanceof FileLogFlush);
+    }
+
+    @Test
+    public void testBuilderWorkflowResolutionAtAggregation() {
+        TelemetryRegistry result = TelemetryRegistryBuilder.builder()
+                .withWorkflowFinder(stackTrace -> "workflow")
+                .withWorkflowResolutionAtAggregation(true)
+                .build();
+        Assert.assertTrue(((AbstractAggregator) result.getAggregator()).getWorkflowFinder() instanceof CachingWorkflowFinder);
+    }
+
+    @Test
+    public void testBuilderPrometheusMaxSeries() {
+        TelemetryRegistry result = TelemetryRegistryBuilder.builder()
+                .withPrometheusMaxSeries(100)
+                .build();
+        Assert.assertTrue(result.getAggregator() instanceof PrometheusCollector);
+        Assert.assertTrue(((PrometheusCollector) result.getAggregator()).getDelegate() instanceof MapBasedAggregator);
+    }
+
+    @Test
+    public void testBuilderSlowStatementCapture() {
+        SlowStatementCapture capture = new SlowStatementCapture(1000);
+        TelemetryRegistry result = TelemetryRegistryBuilder.builder()
+                .withSlowStatementCapture(capture)
+                .build();
+        Assert.assertSame(capture, result.getSlowStatementCapture());
+        Assert.assertSame(capture, ((DefaultLogFlush) result.getLogFlush()).getSlowStatementCapture());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBuilderSlowStatementCaptureNotFlushedByLogFlush() {
+        TelemetryRegistryBuilder.builder()
+                .withLogFlush(new DefaultLogFlush(new MapBasedAggregator(), false))
+                .withSlowStatementCapture(new SlowStatementCapture(1000))
+                .build();
+    }
+
 }
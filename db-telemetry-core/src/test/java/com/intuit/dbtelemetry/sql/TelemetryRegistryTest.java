@@ -0,0 +1,140 @@
+package com.intuit.dbtelemetry.sql;
+
+import com.intuit.dbtelemetry.sql.aggregator.AsyncAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.MapBasedAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.TelemetryAggregatorException;
+import com.intuit.dbtelemetry.sql.prometheus.PrometheusCollector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class TelemetryRegistryTest {
+
+    @Test
+    public void aspectSwitchStartsFromSystemProperty() {
+        System.setProperty("SwitchFromPropertyAspect", "true");
+        Assert.assertTrue(TelemetryRegistry.getAspectSwitch("SwitchFromPropertyAspect").isEnabled());
+        Assert.assertFalse(TelemetryRegistry.getAspectSwitch("SwitchWithoutPropertyAspect").isEnabled());
+    }
+
+    @Test
+    public void toggleIsSeenBySwitch() {
+        AspectSwitch aspectSwitch = TelemetryRegistry.getAspectSwitch("ToggledAspect");
+        TelemetryRegistry registry = TelemetryRegistry.getTelemetryRegistry();
+        registry.setAspectEnabled("ToggledAspect", true);
+        Assert.assertTrue(aspectSwitch.isEnabled());
+        Assert.assertTrue(registry.isAspectEnabled("ToggledAspect"));
+        registry.aspectState(" ToggledAspect", "false");
+        Assert.assertFalse(aspectSwitch.isEnabled());
+        Assert.assertEquals("false", System.getProperty("ToggledAspect"));
+    }
+
+    @Test
+    public void listenersAreNotifiedOfChanges() {
+        List<String> changes = new ArrayList<>();
+        AspectStateListener listener = (aspectName, enabled) -> {
+            if (aspectName.equals("ListenedAspect")) {
+                changes.add(aspectName + "=" + enabled);
+            }
+        };
+        AspectStateListener failingListener = (aspectName, enabled) -> {
+            throw new IllegalStateException("listener failure");
+        };
+        TelemetryRegistry registry = TelemetryRegistry.getTelemetryRegistry();
+        registry.addAspectStateListener(failingListener);
+        registry.addAspectStateListener(listener);
+        try {
+            registry.setAspectEnabled("ListenedAspect", true);
+            registry.setAspectEnabled("ListenedAspect", true);
+            registry.setAspectEnabled("ListenedAspect", false);
+        } finally {
+            registry.removeAspectStateListener(listener);
+            registry.removeAspectStateListener(failingListener);
+        }
+        registry.setAspectEnabled("ListenedAspect", true);
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals("ListenedAspect=true", changes.get(0));
+        Assert.assertEquals("ListenedAspect=false", changes.get(1));
+    }
+
+    @Test
+    public void concurrentChangesAreNotifiedInOrder() throws Exception {
+        List<Boolean> changes = Collections.synchronizedList(new ArrayList<>());
+        AspectStateListener listener = (aspectName, enabled) -> {
+            if (aspectName.equals("ConcurrentlyListenedAspect")) {
+                changes.add(enabled);
+            }
+        };
+        TelemetryRegistry registry = TelemetryRegistry.getTelemetryRegistry();
+        registry.addAspectStateListener(listener);
+        try {
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                boolean enabled = i % 2 == 0;
+                Thread thread = new Thread(() -> {
+                    for (int j = 0; j < 1_000; j++) {
+                        registry.setAspectEnabled("ConcurrentlyListenedAspect", enabled);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            registry.removeAspectStateListener(listener);
+        }
+        // Every notification is a change from the previous one, the last one being the state of the switch
+        for (int i = 1; i < changes.size(); i++) {
+            Assert.assertNotEquals(changes.get(i - 1), changes.get(i));
+        }
+        if (!changes.isEmpty()) {
+            Assert.assertEquals(registry.isAspectEnabled("ConcurrentlyListenedAspect"), changes.get(changes.size() - 1));
+        }
+    }
+
+    @Test
+    public void closeStopsTheAsyncAggregator() throws TelemetryAggregatorException {
+        AsyncAggregator asyncAggregator = new AsyncAggregator(new MapBasedAggregator());
+        PrometheusCollector collector = new PrometheusCollector(asyncAggregator);
+        TelemetryRegistry registry = new TelemetryRegistry(collector, null);
+        registry.close();
+        asyncAggregator.aggregate("test", "SQL TEST", 10);
+        Assert.assertEquals(1, asyncAggregator.getDroppedCount());
+    }
+
+    @Test
+    public void defaultRegistryAggregatesOnFirstUse() throws Exception {
+        // Fresh copies of the classes, so that TelemetryRegistry is initialized by this test whatever ran before
+        URL[] classPath = classPathOf(System.getProperty("java.class.path"));
+        try (URLClassLoader loader = new URLClassLoader(classPath, ClassLoader.getSystemClassLoader().getParent())) {
+            Class<?> registryClass = Class.forName(TelemetryRegistry.class.getName(), true, loader);
+            Object registry = registryClass.getMethod("getTelemetryRegistry").invoke(null);
+            Object aggregator = registryClass.getMethod("getAggregator").invoke(registry);
+            Class<?> aggregatorClass = Class.forName("com.intuit.dbtelemetry.sql.aggregator.Aggregator", true, loader);
+            aggregatorClass.getMethod("aggregate", String.class, String.class, long.class)
+                    .invoke(aggregator, "test", "select * from T where id = 1", 10L);
+            Map<?, ?> data = (Map<?, ?>) aggregatorClass.getMethod("getAndResetDBTelemetryData", long.class)
+                    .invoke(aggregator, 0L);
+            Assert.assertNotNull(data);
+            Assert.assertEquals(1, data.size());
+        }
+    }
+
+    private static URL[] classPathOf(String classPath) throws MalformedURLException {
+        List<URL> urls = new ArrayList<>();
+        for (String entry : classPath.split(File.pathSeparator)) {
+            urls.add(new File(entry).toURI().toURL());
+        }
+        return urls.toArray(new URL[0]);
+    }
+}
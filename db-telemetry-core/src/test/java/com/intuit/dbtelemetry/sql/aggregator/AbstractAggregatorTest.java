@@ -0,0 +1,75 @@
+package com.intuit.dbtelemetry.sql.aggregator;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackTraceExtractor;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackWalkerStackTraceExtractor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests every AbstractAggregator implementation runs, each implementation test providing its aggregator.
+ */
+public abstract class AbstractAggregatorTest {
+
+    /**
+     * Creates the aggregator under test.
+     *
+     * @param excludedTablesList  tables for which no telemetry data is collected, or null for none
+     * @param stackTraceExtractor extractor of the calling stack trace, or null to disable stack traces
+     * @return the aggregator under test
+     */
+    protected abstract AbstractAggregator newAggregator(List<String> excludedTablesList,
+                                                        StackTraceExtractor stackTraceExtractor);
+
+    @Test
+    public void aggregateSameSqlTest() throws TelemetryAggregatorException {
+        AbstractAggregator aggregator = newAggregator(null, null);
+        aggregator.aggregate("test", "select * from T where id = 1", 10, "select * from T where id = 1");
+        aggregator.aggregate("test", "select * from T where id = 2", 30);
+        aggregator.aggregate("other", "select * from T where id = 3", 5);
+        Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+        Assert.assertNotNull(result);
+        Assert.assertEquals(2, result.size());
+        SqlTelemetry telemetry = result.get(new SqlTelemetry("test", "select * from T where id = ?", null, null));
+        Assert.assertEquals(2, telemetry.getCount());
+        Assert.assertEquals(40, telemetry.getCallTime());
+        Assert.assertEquals(10, telemetry.getMin());
+        Assert.assertEquals(30, telemetry.getMax());
+        Assert.assertEquals(30, telemetry.getCallTimeAtPercentile(100));
+        Assert.assertEquals("select * from T where id = 1", telemetry.getSqlWithParameters());
+    }
+
+    @Test
+    public void getAndResetWithoutDataTest() throws TelemetryAggregatorException {
+        AbstractAggregator aggregator = newAggregator(null, null);
+        Assert.assertNull(aggregator.getAndResetDBTelemetryData(0));
+        aggregator.aggregate("test", "SQL TEST", 10);
+        Assert.assertNotNull(aggregator.getAndResetDBTelemetryData(0));
+        Assert.assertNull(aggregator.getAndResetDBTelemetryData(0));
+    }
+
+    @Test
+    public void aggregateExcludedTablesTest() throws TelemetryAggregatorException {
+        AbstractAggregator aggregator = newAggregator(Arrays.asList("SQL"), null);
+        aggregator.aggregate("test", "sql TEST", 10);
+        aggregator.aggregate("test", null, 10);
+        Assert.assertNull(aggregator.getAndResetDBTelemetryData(0));
+    }
+
+    @Test
+    public void aggregateStackWalkerTest() throws TelemetryAggregatorException {
+        AbstractAggregator aggregator = newAggregator(null, new StackWalkerStackTraceExtractor(-1, "com.intuit"));
+        for (int i = 0; i < 2; i++) {
+            aggregator.aggregate("test", "SQL TEST", 10);
+        }
+        aggregator.aggregate("test", "SQL TEST", 10);
+        Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(3, result.keySet().stream().mapToLong(SqlTelemetry::getCount).sum());
+        result.keySet().forEach(telemetry -> Assert.assertTrue(telemetry.getStackTrace().contains("AbstractAggregatorTest")));
+    }
+}
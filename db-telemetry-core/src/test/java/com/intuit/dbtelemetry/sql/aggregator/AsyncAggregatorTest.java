@@ -0,0 +1,184 @@
+package com.intuit.dbtelemetry.sql.aggregator;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackWalkerStackTraceExtractor;
+import com.intuit.dbtelemetry.sql.sampler.Sampler;
+import com.intuit.dbtelemetry.sql.utils.SqlNormalizationCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+public class AsyncAggregatorTest {
+
+    @Test
+    public void aggregateInBackgroundTest() throws TelemetryAggregatorException {
+        try (AsyncAggregator aggregator = new AsyncAggregator(new ThreadLocalAggregator())) {
+            aggregator.aggregate("test", "select * from T where id = 1", 10);
+            aggregator.aggregate("test", "select * from T where id = 2", 30);
+            aggregator.aggregate("test", null, 30);
+            Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(5000);
+            Assert.assertNotNull(result);
+            Assert.assertEquals(1, result.size());
+            SqlTelemetry telemetry = result.keySet().iterator().next();
+            Assert.assertEquals(2, telemetry.getCount());
+            Assert.assertEquals(40, telemetry.getCallTime());
+            Assert.assertEquals("select * from T where id = ?", telemetry.getSql());
+            Assert.assertEquals(0, aggregator.getDroppedCount());
+            Assert.assertEquals(0, aggregator.getPendingCount());
+        }
+    }
+
+    @Test
+    public void callSiteIsCapturedOnCallerThreadTest() throws TelemetryAggregatorException {
+        ThreadLocalAggregator delegate = new ThreadLocalAggregator(null, new StackWalkerStackTraceExtractor(-1, "com.intuit"));
+        try (AsyncAggregator aggregator = new AsyncAggregator(delegate)) {
+            aggregator.aggregate("test", "SQL TEST", 10);
+            Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(5000);
+            SqlTelemetry telemetry = result.keySet().iterator().next();
+            Assert.assertTrue(telemetry.getStackTrace().contains("callSiteIsCapturedOnCallerThreadTest"));
+        }
+    }
+
+    @Test
+    public void capacityIsRoundedToPowerOfTwoTest() {
+        try (AsyncAggregator aggregator = new AsyncAggregator(new ThreadLocalAggregator(), 1000, null)) {
+            Assert.assertEquals(1024, aggregator.getCapacity());
+        }
+        try (AsyncAggregator aggregator = new AsyncAggregator(new ThreadLocalAggregator(), 1024, null)) {
+            Assert.assertEquals(1024, aggregator.getCapacity());
+        }
+    }
+
+    @Test
+    public void dropWhenFullTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingAggregator delegate = new BlockingAggregator(release);
+        try (AsyncAggregator aggregator = new AsyncAggregator(delegate, 4, AsyncAggregator.OverflowPolicy.DROP)) {
+            for (int i = 0; i < 100; i++) {
+                aggregator.aggregate("test", "SQL TEST", 10);
+            }
+            // One call held by the worker and four queued, at most
+            Assert.assertTrue(aggregator.getDroppedCount() >= 95);
+            release.countDown();
+            Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(5000);
+            Assert.assertEquals(100 - aggregator.getDroppedCount(), result.keySet().iterator().next().getCount());
+        }
+    }
+
+    @Test
+    public void blockWhenFullTest() throws Exception {
+        try (AsyncAggregator aggregator = new AsyncAggregator(new ThreadLocalAggregator(), 4,
+                AsyncAggregator.OverflowPolicy.BLOCK, 2)) {
+            int threadCount = 4;
+            int calls = 5_000;
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                Thread thread = new Thread(() -> {
+                    for (int j = 0; j < calls; j++) {
+                        try {
+                            aggregator.aggregate("test", "SQL TEST", 10);
+                        } catch (TelemetryAggregatorException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(5000);
+            Assert.assertEquals(0, aggregator.getDroppedCount());
+            Assert.assertEquals((long) threadCount * calls, result.keySet().iterator().next().getCount());
+        }
+    }
+
+    @Test
+    public void blockedCallerIsReleasedOnCloseTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingAggregator delegate = new BlockingAggregator(release);
+        AsyncAggregator aggregator = new AsyncAggregator(delegate, 2, AsyncAggregator.OverflowPolicy.BLOCK);
+        Thread caller = new Thread(() -> {
+            for (int i = 0; i < 10; i++) {
+                try {
+                    aggregator.aggregate("test", "SQL TEST", 10);
+                } catch (TelemetryAggregatorException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        caller.start();
+        // The worker is held by the delegate, so the caller waits for a free slot until the aggregator is closed
+        Thread closer = new Thread(aggregator::close);
+        closer.start();
+        caller.join(5000);
+        Assert.assertFalse(caller.isAlive());
+        Assert.assertTrue(aggregator.getDroppedCount() > 0);
+        release.countDown();
+        closer.join();
+    }
+
+    @Test
+    public void excludedAndSampledOutCallsAreNotQueuedTest() throws TelemetryAggregatorException {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingAggregator delegate = new BlockingAggregator(release, Arrays.asList("EXCLUDED"),
+                (normalizedSql, executionTime) -> executionTime < 100 ? 0L : 1L);
+        try (AsyncAggregator aggregator = new AsyncAggregator(delegate, 4, AsyncAggregator.OverflowPolicy.DROP)) {
+            for (int i = 0; i < 100; i++) {
+                aggregator.aggregate("test", "select * from EXCLUDED", 500);
+                aggregator.aggregate("test", "SQL TEST", 10);
+            }
+            Assert.assertEquals(0, aggregator.getDroppedCount());
+            Assert.assertEquals(0, aggregator.getPendingCount());
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void dropAfterCloseTest() throws TelemetryAggregatorException {
+        AsyncAggregator aggregator = new AsyncAggregator(new ThreadLocalAggregator());
+        aggregator.close();
+        aggregator.aggregate("test", "SQL TEST", 10);
+        Assert.assertEquals(1, aggregator.getDroppedCount());
+    }
+
+    @Test
+    public void closeClosesTheDelegateTest() throws TelemetryAggregatorException {
+        OffHeapAggregator delegate = new OffHeapAggregator(64 * 1024);
+        AsyncAggregator aggregator = new AsyncAggregator(delegate);
+        aggregator.close();
+        delegate.aggregate("test", "SQL TEST", 10);
+        Assert.assertEquals(1, delegate.getDroppedCount());
+    }
+
+    private static class BlockingAggregator extends ThreadLocalAggregator {
+        private final CountDownLatch release;
+
+        private BlockingAggregator(CountDownLatch release) {
+            this(release, null, null);
+        }
+
+        private BlockingAggregator(CountDownLatch release, List<String> excludedTablesList, Sampler sampler) {
+            super(excludedTablesList, null, new SqlNormalizationCache(), sampler);
+            this.release = release;
+        }
+
+        @Override
+        protected void record(String producer, String normalizedSql, CallSite callSite,
+                              String sqlWithParameters, long executionTime, long weight) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.record(producer, normalizedSql, callSite, sqlWithParameters, executionTime, weight);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.intuit.dbtelemetry.sql.aggregator;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackTraceExtractor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class DictionaryAggregatorTest extends AbstractAggregatorTest {
+
+    @Override
+    protected AbstractAggregator newAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor) {
+        return new DictionaryAggregator(excludedTablesList, stackTraceExtractor);
+    }
+
+    @Test
+    public void concurrentAggregationTest() throws Exception {
+        DictionaryAggregator aggregator = new DictionaryAggregator();
+        int threadCount = 8;
+        int calls = 10_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < calls; j++) {
+                    try {
+                        aggregator.aggregate("test", "SQL TEST " + (j % 10) + " ", j % 100);
+                    } catch (TelemetryAggregatorException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+        Assert.assertEquals(1, result.size());
+        SqlTelemetry telemetry = result.keySet().iterator().next();
+        Assert.assertEquals((long) threadCount * calls, telemetry.getCount());
+        Assert.assertEquals(0, telemetry.getMin());
+        Assert.assertEquals(99, telemetry.getMax());
+        Assert.assertEquals(0, aggregator.getDroppedCount());
+    }
+
+    @Test
+    public void fullTableDropsAndGrowsTest() throws TelemetryAggregatorException {
+        DictionaryAggregator aggregator = new DictionaryAggregator();
+        int statements = DictionaryAggregator.DEFAULT_INITIAL_CAPACITY;
+        for (int i = 0; i < statements; i++) {
+            aggregator.aggregate("test", "select * from T" + i, 10);
+        }
+        int stored = aggregator.getAndResetDBTelemetryData(0).size();
+        Assert.assertEquals(statements, stored + aggregator.getDroppedCount());
+        Assert.assertTrue(aggregator.getDroppedCount() > 0);
+        Assert.assertEquals(DictionaryAggregator.DEFAULT_INITIAL_CAPACITY * 2, aggregator.getCapacity());
+        for (int i = 0; i < statements; i++) {
+            aggregator.aggregate("test", "select * from T" + i, 10);
+        }
+        Assert.assertEquals(statements, aggregator.getAndResetDBTelemetryData(0).size());
+    }
+
+    @Test
+    public void flushedTableIsClearedForReuseTest() throws TelemetryAggregatorException {
+        DictionaryAggregator aggregator = new DictionaryAggregator();
+        aggregator.aggregate("test", "select * from A", 10);
+        aggregator.aggregate("test", "select * from A where id = ?", 10);
+        Assert.assertEquals(2, aggregator.getAndResetDBTelemetryData(0).size());
+        aggregator.aggregate("test", "select * from B", 20);
+        Assert.assertEquals(1, aggregator.getAndResetDBTelemetryData(0).size());
+        // Recorded in the table flushed first, cleared in between
+        aggregator.aggregate("other", "select * from C", 30);
+        Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+        Assert.assertEquals(1, result.size());
+        SqlTelemetry telemetry = result.keySet().iterator().next();
+        Assert.assertEquals("other", telemetry.getType());
+        Assert.assertEquals("select * from C", telemetry.getSql());
+        Assert.assertEquals(1, telemetry.getCount());
+        Assert.assertEquals(30, telemetry.getMin());
+        Assert.assertEquals(30, telemetry.getMax());
+        Assert.assertEquals(1, telemetry.getLatencyHistogram().getTotalCount());
+    }
+}
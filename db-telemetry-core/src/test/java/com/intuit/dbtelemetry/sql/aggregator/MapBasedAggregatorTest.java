@@ -6,6 +6,8 @@ import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackTraceExtractor;
 import com.intuit.dbtelemetry.sql.logs.TelemetryFlushException;
 import com.intuit.dbtelemetry.sql.logs.LogFlush;
 import com.intuit.dbtelemetry.sql.logs.DefaultLogFlush;
+import com.intuit.dbtelemetry.sql.slow.SlowStatement;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -15,14 +17,20 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 @RunWith(MockitoJUnitRunner.class)
-public class MapBasedAggregatorTest {
+public class MapBasedAggregatorTest extends AbstractAggregatorTest {
 
     @Mock
     StackTraceExtractor stackTraceExtractor;
 
+    @Override
+    protected AbstractAggregator newAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor) {
+        return new MapBasedAggregator(excludedTablesList, stackTraceExtractor);
+    }
+
     @Test
     public void aggregateDefaultTest() throws TelemetryAggregatorException {
         MapBasedAggregator aggregator = new MapBasedAggregator();
@@ -36,7 +44,7 @@ public class MapBasedAggregatorTest {
         Assert.assertEquals(sql, telemetry.getSql());
         telemetry.setWorkflow("test");
         Assert.assertEquals("test", telemetry.getWorkflow());
-        Assert.assertEquals("DbTelemetry {  telemetryHash=\"-1411642067\", type=test\", count=1\", min=0\", max=10\", callTime=10\", avg=10.0\", sql=\"SQL TEST\", sqlHash='-294336572\", stacktraceHash=0\", workflow=\"test\" }", telemetry.toString());
+        Assert.assertEquals("DbTelemetry {  telemetryHash=\"-1411642067\", type=test\", count=1\", min=10\", max=10\", callTime=10\", avg=10.0\", p50=10\", p90=10\", p99=10\", p999=10\", sql=\"SQL TEST\", sqlHash='-294336572\", stacktraceHash=0\", workflow=\"test\" }", telemetry.toString());
 
     }
 
@@ -84,6 +92,17 @@ public class MapBasedAggregatorTest {
         Assert.assertNull(result);
     }
 
+    @Test
+    public void aggregateExcludedTablesInQuotedNamesTest() throws TelemetryAggregatorException {
+        MapBasedAggregator aggregator = new MapBasedAggregator(Arrays.asList("audit"));
+        // Both normalized to "select * from ? where id = ?", the table is matched before the normalization
+        aggregator.aggregate("test", "select * from [audit] where id = 1", 10);
+        aggregator.aggregate("test", "select * from [orders] where id = 1", 10);
+        Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(1, result.keySet().iterator().next().getCount());
+    }
+
     @Test
     public void aggregateStackTraceFinderTest() throws TelemetryAggregatorException {
         MapBasedAggregator aggregator = new MapBasedAggregator(null,new DepthFilterStackTraceExtractor(-1, "com.intuit"));
@@ -97,6 +116,17 @@ public class MapBasedAggregatorTest {
         Assert.assertEquals(sql, telemetry.getSql());
     }
 
+    @Test
+    public void slowStatementSkippedBySamplerIsCapturedTest() throws TelemetryAggregatorException {
+        MapBasedAggregator aggregator = new MapBasedAggregator((List<String>) null, null, null,
+                (normalizedSql, executionTime) -> 0L);
+        SlowStatementCapture capture = new SlowStatementCapture(100);
+        aggregator.aggregate("test", "select * from T where id = 1", 200, capture, () -> "<[1]>");
+        Assert.assertNull(aggregator.getAndResetDBTelemetryData(0));
+        SlowStatement slowStatement = capture.getAndResetSlowStatements(0).values().iterator().next().get(0);
+        Assert.assertEquals("<[1]>", slowStatement.getParameters());
+    }
+
     @Test(expected = TelemetryAggregatorException.class)
     public void aggregateStackTraceFinderExceptionTest() throws TelemetryAggregatorException {
         MapBasedAggregator aggregator = new MapBasedAggregator(null,stackTraceExtractor);
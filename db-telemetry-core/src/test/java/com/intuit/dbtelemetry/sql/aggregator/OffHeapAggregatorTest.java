@@ -0,0 +1,133 @@
+package com.intuit.dbtelemetry.sql.aggregator;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackTraceExtractor;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class OffHeapAggregatorTest extends AbstractAggregatorTest {
+
+    private static final long SMALL_MEMORY = 2L * 64 * OffHeapAggregator.OffHeapTable.SLOT_SIZE;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Override
+    protected AbstractAggregator newAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor) {
+        return new OffHeapAggregator(excludedTablesList, stackTraceExtractor, SMALL_MEMORY);
+    }
+
+    @Test
+    public void usedSlotsTest() throws TelemetryAggregatorException {
+        OffHeapAggregator aggregator = new OffHeapAggregator(SMALL_MEMORY);
+        aggregator.aggregate("test", "select * from T where id = 1", 10);
+        aggregator.aggregate("test", "select * from T where id = 2", 30);
+        aggregator.aggregate("other", "select * from T where id = 3", 5);
+        Assert.assertEquals(2, aggregator.getUsedSlots());
+        Assert.assertEquals(2, aggregator.getAndResetDBTelemetryData(0).size());
+    }
+
+    @Test
+    public void getAndResetReusesClearedTablesTest() throws TelemetryAggregatorException {
+        OffHeapAggregator aggregator = new OffHeapAggregator(SMALL_MEMORY);
+        Assert.assertNull(aggregator.getAndResetDBTelemetryData(0));
+        for (int i = 0; i < 3; i++) {
+            aggregator.aggregate("test", "SQL TEST", 10);
+            Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+            Assert.assertEquals(1, result.keySet().iterator().next().getCount());
+            Assert.assertNull(aggregator.getAndResetDBTelemetryData(0));
+        }
+    }
+
+    @Test
+    public void memoryCapAndFootprintTest() throws TelemetryAggregatorException {
+        OffHeapAggregator aggregator = new OffHeapAggregator(SMALL_MEMORY + 100);
+        Assert.assertEquals(64, aggregator.getCapacity());
+        Assert.assertEquals(SMALL_MEMORY, aggregator.getOffHeapBytes());
+        for (int i = 0; i < 64; i++) {
+            aggregator.aggregate("test", "select * from T" + i, 10);
+        }
+        Assert.assertEquals(48, aggregator.getUsedSlots());
+        Assert.assertEquals(16, aggregator.getDroppedCount());
+        Assert.assertEquals(48, aggregator.getAndResetDBTelemetryData(0).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void memoryCapBelowTwoSlotsTest() {
+        new OffHeapAggregator(OffHeapAggregator.OffHeapTable.SLOT_SIZE);
+    }
+
+    @Test
+    public void mappedTablesTest() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        OffHeapAggregator aggregator = new OffHeapAggregator(null, null, null, null, SMALL_MEMORY, directory.toPath());
+        int threadCount = 4;
+        int calls = 5_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < calls; j++) {
+                    try {
+                        aggregator.aggregate("test", "SQL TEST", j % 100);
+                    } catch (TelemetryAggregatorException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+        SqlTelemetry telemetry = result.keySet().iterator().next();
+        Assert.assertEquals((long) threadCount * calls, telemetry.getCount());
+        Assert.assertEquals(0, telemetry.getMin());
+        Assert.assertEquals(99, telemetry.getMax());
+        // One file per table, deleted once unmapped by close
+        Assert.assertEquals(2, directory.list().length);
+        aggregator.close();
+        Assert.assertEquals(0, directory.list().length);
+        aggregator.aggregate("test", "SQL TEST", 10);
+        Assert.assertEquals(1, aggregator.getDroppedCount());
+        Assert.assertNull(aggregator.getAndResetDBTelemetryData(0));
+    }
+
+    @Test
+    public void concurrentNewStatementsStayWithinCapacityTest() throws Exception {
+        try (OffHeapAggregator aggregator = new OffHeapAggregator(SMALL_MEMORY)) {
+            int threadCount = 8;
+            int statements = aggregator.getCapacity();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                int first = i * statements;
+                Thread thread = new Thread(() -> {
+                    for (int j = 0; j < statements; j++) {
+                        try {
+                            aggregator.aggregate("test", "select * from T" + (first + j), 10);
+                        } catch (TelemetryAggregatorException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            int maxEntries = statements - (statements >>> 2);
+            Assert.assertEquals(maxEntries, aggregator.getUsedSlots());
+            Assert.assertEquals(maxEntries, aggregator.getAndResetDBTelemetryData(0).size());
+            Assert.assertEquals((long) threadCount * statements - maxEntries, aggregator.getDroppedCount());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.intuit.dbtelemetry.sql.aggregator;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackTraceExtractor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class ThreadLocalAggregatorTest extends AbstractAggregatorTest {
+
+    @Override
+    protected AbstractAggregator newAggregator(List<String> excludedTablesList, StackTraceExtractor stackTraceExtractor) {
+        return new ThreadLocalAggregator(excludedTablesList, stackTraceExtractor);
+    }
+
+    @Test
+    public void mergesThreadsAndDropsDeadThreadsTest() throws Exception {
+        ThreadLocalAggregator aggregator = new ThreadLocalAggregator();
+        int threadCount = 8;
+        int calls = 10_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < calls; j++) {
+                    try {
+                        aggregator.aggregate("test", "SQL TEST", j % 100);
+                    } catch (TelemetryAggregatorException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(threadCount, aggregator.getThreadBufferCount());
+        Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+        Assert.assertEquals(1, result.size());
+        SqlTelemetry telemetry = result.keySet().iterator().next();
+        Assert.assertEquals((long) threadCount * calls, telemetry.getCount());
+        Assert.assertEquals(0, telemetry.getMin());
+        Assert.assertEquals(99, telemetry.getMax());
+        Assert.assertEquals(0, aggregator.getThreadBufferCount());
+        Assert.assertNull(aggregator.getAndResetDBTelemetryData(0));
+    }
+
+    @Test
+    public void dropsIdleStatementsTest() throws TelemetryAggregatorException {
+        ThreadLocalAggregator aggregator = new ThreadLocalAggregator();
+        aggregator.aggregate("test", "SQL ONE", 10);
+        aggregator.aggregate("test", "SQL TWO", 10);
+        Assert.assertEquals(2, aggregator.getAndResetDBTelemetryData(0).size());
+        aggregator.aggregate("test", "SQL ONE", 20);
+        Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+        Assert.assertEquals(1, result.size());
+        SqlTelemetry telemetry = result.keySet().iterator().next();
+        Assert.assertEquals("SQL ONE", telemetry.getSql());
+        Assert.assertEquals(1, telemetry.getCount());
+        Assert.assertEquals(20, telemetry.getMin());
+    }
+
+    @Test
+    public void fullThreadBufferRecordsInSharedMapTest() throws TelemetryAggregatorException {
+        ThreadLocalAggregator aggregator = new ThreadLocalAggregator(null, null, null, null, 1);
+        aggregator.aggregate("test", "SQL ONE", 10);
+        aggregator.aggregate("test", "SQL TWO", 20);
+        aggregator.aggregate("test", "SQL TWO", 30);
+        aggregator.aggregate("test", "SQL ONE", 40);
+        Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+        Assert.assertEquals(2, result.size());
+        for (SqlTelemetry telemetry : result.keySet()) {
+            Assert.assertEquals(2, telemetry.getCount());
+            Assert.assertEquals(50, telemetry.getCallTime());
+        }
+        aggregator.aggregate("test", "SQL TWO", 20);
+        Assert.assertEquals(20, aggregator.getAndResetDBTelemetryData(0).keySet().iterator().next().getCallTime());
+    }
+}
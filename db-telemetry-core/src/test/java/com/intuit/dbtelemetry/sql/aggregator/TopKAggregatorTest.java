@@ -0,0 +1,75 @@
+package com.intuit.dbtelemetry.sql.aggregator;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+public class TopKAggregatorTest {
+
+    @Test
+    public void tracksAllStatementsBelowCapacityTest() throws TelemetryAggregatorException {
+        TopKAggregator aggregator = new TopKAggregator(10, TopKAggregator.Ranking.COUNT);
+        aggregator.aggregate("test", "select * from T where id = 1", 10);
+        aggregator.aggregate("test", "select * from T where id = 2", 30);
+        aggregator.aggregate("test", "select * from U", 5);
+        Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+        Assert.assertEquals(2, result.size());
+        SqlTelemetry telemetry = result.get(new SqlTelemetry("test", "select * from T where id = ?", null, null));
+        Assert.assertEquals(2, telemetry.getCount());
+        Assert.assertEquals(40, telemetry.getCallTime());
+        Assert.assertEquals(0, telemetry.getRankError());
+        Assert.assertNull(aggregator.getAndResetDBTelemetryData(0));
+    }
+
+    @Test
+    public void heavyHittersSurviveHighCardinalityTest() throws TelemetryAggregatorException {
+        TopKAggregator aggregator = new TopKAggregator(10, TopKAggregator.Ranking.COUNT);
+        long total = 0;
+        for (int i = 0; i < 10_000; i++) {
+            aggregator.aggregate("test", "select * from HOT", 1);
+            aggregator.aggregate("test", "select * from COLD" + i, 1);
+            total += 2;
+        }
+        Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+        Assert.assertEquals(11, result.size());
+        SqlTelemetry hot = result.get(new SqlTelemetry("test", "select * from HOT", null, null));
+        Assert.assertEquals(10_000, hot.getCount());
+        Assert.assertEquals(0, hot.getRankError());
+        SqlTelemetry other = result.get(new SqlTelemetry(TopKAggregator.OTHER_TYPE, TopKAggregator.OTHER_SQL, null, null));
+        Assert.assertTrue(other.getCount() > 0);
+        Assert.assertEquals(total, result.keySet().stream().mapToLong(SqlTelemetry::getCount).sum());
+        // The real count of a tracked statement is within its rank error
+        result.keySet().stream()
+                .filter(telemetry -> telemetry.getSql().startsWith("select * from COLD"))
+                .forEach(telemetry -> Assert.assertTrue(telemetry.getCount() + telemetry.getRankError() >= 1));
+    }
+
+    @Test
+    public void ranksByCallTimeTest() throws TelemetryAggregatorException {
+        TopKAggregator aggregator = new TopKAggregator(1, TopKAggregator.Ranking.CALL_TIME);
+        aggregator.aggregate("test", "select * from SLOW", 1_000);
+        aggregator.aggregate("test", "select * from FAST", 1);
+        aggregator.aggregate("test", "select * from FAST", 1);
+        Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+        Assert.assertEquals(2, result.size());
+        SqlTelemetry fast = result.get(new SqlTelemetry("test", "select * from FAST", null, null));
+        Assert.assertEquals(2, fast.getCount());
+        Assert.assertEquals(1_000, fast.getRankError());
+        Assert.assertTrue(fast.toString().contains("rankError=1000"));
+    }
+
+    @Test
+    public void aggregateExcludedTablesTest() throws TelemetryAggregatorException {
+        TopKAggregator aggregator = new TopKAggregator(Arrays.asList("SQL"), null, 10, TopKAggregator.Ranking.COUNT);
+        aggregator.aggregate("test", "sql TEST", 10);
+        Assert.assertNull(aggregator.getAndResetDBTelemetryData(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityBelowOneTest() {
+        new TopKAggregator(0, TopKAggregator.Ranking.COUNT);
+    }
+}
@@ -1,5 +1,6 @@
 package com.intuit.dbtelemetry.sql.aspect;
 
+import com.intuit.dbtelemetry.sql.TelemetryRegistry;
 import com.intuit.dbtelemetry.sql.aspect.aspectj.OracleAspect;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.junit.Test;
@@ -22,10 +23,10 @@ public class OracleAspectTest {
 
     @Test
     public void logSQLTestNoSqlArg() throws Throwable {
-        System.setProperty(OracleAspect.class.getSimpleName(), "true");
+        TelemetryRegistry.getTelemetryRegistry().setAspectEnabled(OracleAspect.class.getSimpleName(), true);
         OracleAspect aspect = new OracleAspect();
         aspect.telemetryPointcut(joinPoint);
-        System.setProperty(OracleAspect.class.getSimpleName(), "false");
+        TelemetryRegistry.getTelemetryRegistry().setAspectEnabled(OracleAspect.class.getSimpleName(), false);
     }
 
 }
@@ -1,6 +1,12 @@
 package com.intuit.dbtelemetry.sql.aspect;
 
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.TelemetryRegistry;
+import com.intuit.dbtelemetry.sql.aggregator.Aggregator;
+import com.intuit.dbtelemetry.sql.aggregator.MapBasedAggregator;
 import com.intuit.dbtelemetry.sql.aspect.aspectj.PostgresAspect;
+import com.intuit.dbtelemetry.sql.slow.SlowStatement;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
 import com.intuit.dbtelemetry.sql.utils.SqlHelperUtilsTests;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.junit.Assert;
@@ -9,6 +15,11 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -25,33 +36,114 @@ public class PostgresAspectTest {
 
     @Test
     public void logSQLTestNoSqlArg() throws Throwable {
-        System.setProperty(PostgresAspect.class.getSimpleName(), "true");
+        TelemetryRegistry.getTelemetryRegistry().setAspectEnabled(PostgresAspect.class.getSimpleName(), true);
         PostgresAspect aspect = new PostgresAspect();
         aspect.telemetryPointcut(joinPoint);
-        System.setProperty(PostgresAspect.class.getSimpleName(), "false");
+        TelemetryRegistry.getTelemetryRegistry().setAspectEnabled(PostgresAspect.class.getSimpleName(), false);
     }
 
     @Test
     public void logSQLTestSqlArg() throws Throwable {
-        System.setProperty(PostgresAspect.class.getSimpleName(), "true");
+        TelemetryRegistry.getTelemetryRegistry().setAspectEnabled(PostgresAspect.class.getSimpleName(), true);
         PostgresAspect aspect = new PostgresAspect();
         Object[] args = new Object[2];
         args[0] = SqlHelperUtilsTests.insertQuery;
         when(joinPoint.getArgs()).thenReturn(args);
         aspect.telemetryPointcut(joinPoint);
-        System.setProperty(PostgresAspect.class.getSimpleName(), "false");
+        TelemetryRegistry.getTelemetryRegistry().setAspectEnabled(PostgresAspect.class.getSimpleName(), false);
     }
 
     @Test
     public void logSQLTestSqlArgObject() throws Throwable {
-        System.setProperty(PostgresAspect.class.getSimpleName(), "true");
+        TelemetryRegistry.getTelemetryRegistry().setAspectEnabled(PostgresAspect.class.getSimpleName(), true);
         PostgresAspect aspect = new PostgresAspect();
         Object[] args = new Object[2];
         args[0] = new TestObject();
         Assert.assertNotNull(((TestObject) args[0]).query);
         when(joinPoint.getArgs()).thenReturn(args);
         aspect.telemetryPointcut(joinPoint);
-        System.setProperty(PostgresAspect.class.getSimpleName(), "false");
+        TelemetryRegistry.getTelemetryRegistry().setAspectEnabled(PostgresAspect.class.getSimpleName(), false);
+    }
+
+    @Test
+    public void slowCallCapturesTheParameters() throws Throwable {
+        MapBasedAggregator aggregator = new MapBasedAggregator();
+        SlowStatementCapture capture = new SlowStatementCapture(0);
+        Parameters parameters = new Parameters();
+        when(joinPoint.getArgs()).thenReturn(new Object[]{new TestObject(), parameters});
+        new IsolatedAspect(aggregator, capture).extractAndAggregate(joinPoint);
+
+        Assert.assertEquals(1, parameters.renderings.get());
+        SqlTelemetry telemetry = aggregator.getAndResetDBTelemetryData(0).keySet().iterator().next();
+        // The parameters are only kept by the capture, not by the aggregated statement
+        Assert.assertNull(telemetry.getSqlWithParameters());
+        List<SlowStatement> slowStatements = capture.getAndResetSlowStatements(0).values().iterator().next();
+        Assert.assertEquals(telemetry.getSql(), slowStatements.get(0).getSql());
+        Assert.assertEquals("<[1]>", slowStatements.get(0).getParameters());
+    }
+
+    @Test
+    public void fastCallDoesNotTouchTheCapture() throws Throwable {
+        MapBasedAggregator aggregator = new MapBasedAggregator();
+        SlowStatementCapture capture = new SlowStatementCapture(Long.MAX_VALUE);
+        Parameters parameters = new Parameters();
+        when(joinPoint.getArgs()).thenReturn(new Object[]{new TestObject(), parameters});
+        new IsolatedAspect(aggregator, capture).extractAndAggregate(joinPoint);
+
+        Assert.assertEquals(0, parameters.renderings.get());
+        Assert.assertNull(capture.getAndResetSlowStatements(0));
+        Map<SqlTelemetry, SqlTelemetry> telemetry = aggregator.getAndResetDBTelemetryData(0);
+        Assert.assertNull(telemetry.keySet().iterator().next().getSqlWithParameters());
+    }
+
+    @Test
+    public void slowCallOfExcludedTableIsNotCaptured() throws Throwable {
+        MapBasedAggregator aggregator = new MapBasedAggregator(Collections.singletonList("PSP_FINANCIAL_TRANS_STATE"));
+        SlowStatementCapture capture = new SlowStatementCapture(0);
+        Parameters parameters = new Parameters();
+        when(joinPoint.getArgs()).thenReturn(new Object[]{new TestObject(), parameters});
+        new IsolatedAspect(aggregator, capture).extractAndAggregate(joinPoint);
+
+        Assert.assertEquals(0, parameters.renderings.get());
+        Assert.assertNull(capture.getAndResetSlowStatements(0));
+        Assert.assertNull(aggregator.getAndResetDBTelemetryData(0));
+    }
+
+    // Aggregates in its own aggregator and capture, instead of the shared TelemetryRegistry
+    private static final class IsolatedAspect extends PostgresAspect {
+        private final Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator;
+        private final SlowStatementCapture capture;
+
+        private IsolatedAspect(Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator, SlowStatementCapture capture) {
+            this.aggregator = aggregator;
+            this.capture = capture;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public Aggregator<Map<SqlTelemetry, SqlTelemetry>> getAggregator() {
+            return aggregator;
+        }
+
+        @Override
+        public SlowStatementCapture getSlowStatementCapture() {
+            return capture;
+        }
+    }
+
+    // Stands for the ParameterList of pgjdbc, counting how often it is rendered
+    private static final class Parameters {
+        private final AtomicInteger renderings = new AtomicInteger();
+
+        @Override
+        public String toString() {
+            renderings.incrementAndGet();
+            return "<[1]>";
+        }
     }
 
     public static class TestObject {
@@ -0,0 +1,126 @@
+package com.intuit.dbtelemetry.sql.extractor.sql.aspectj;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AspectJSqlExtractorTests {
+
+    private static final String SQL = "select * from T where id = ?";
+
+    @Mock
+    private ProceedingJoinPoint joinPoint;
+
+    @Test
+    public void postgresExtractsQueryArgument() {
+        when(joinPoint.getArgs()).thenReturn(new Object[]{new CachedQuery(SQL)});
+        PostgresAspectJSqlExtractor extractor = new PostgresAspectJSqlExtractor();
+        Assert.assertEquals(SQL, extractor.extractSql(joinPoint));
+        // Served from the cached accessor
+        Assert.assertEquals(SQL, extractor.extractSql(joinPoint));
+    }
+
+    @Test
+    public void postgresWithoutArgument() {
+        when(joinPoint.getArgs()).thenReturn(new Object[0]);
+        Assert.assertNull(new PostgresAspectJSqlExtractor().extractSql(joinPoint));
+    }
+
+    @Test
+    public void postgresExtractsParameterList() {
+        when(joinPoint.getArgs()).thenReturn(new Object[]{new CachedQuery(SQL), new ParameterList("<[42]>")});
+        Assert.assertEquals("<[42]>", new PostgresAspectJSqlExtractor().extractParameters(joinPoint));
+        when(joinPoint.getArgs()).thenReturn(new Object[]{new CachedQuery(SQL), null});
+        Assert.assertNull(new PostgresAspectJSqlExtractor().extractParameters(joinPoint));
+        Assert.assertNull(new OracleAspectJSqlExtractor().extractParameters(joinPoint));
+    }
+
+    @Test
+    public void missingFieldReturnsNull() {
+        when(joinPoint.getArgs()).thenReturn(new Object[]{new Object()});
+        PostgresAspectJSqlExtractor extractor = new PostgresAspectJSqlExtractor();
+        Assert.assertNull(extractor.extractSql(joinPoint));
+        Assert.assertNull(extractor.extractSql(joinPoint));
+    }
+
+    @Test
+    public void oracleReadsNestedFieldsOfTarget() {
+        when(joinPoint.getTarget()).thenReturn(new OraclePreparedStatement(new OracleSql(SQL)));
+        Assert.assertEquals(SQL, new OracleAspectJSqlExtractor().extractSql(joinPoint));
+    }
+
+    @Test
+    public void oracleReadsNestedFieldsOfWrapper() {
+        OracleStatementWrapper wrapper = new OracleStatementWrapper(new OraclePreparedStatement(new OracleSql(SQL)));
+        when(joinPoint.getTarget()).thenReturn(wrapper);
+        Assert.assertEquals(SQL, new OracleAspectJSqlExtractor().extractSql(joinPoint));
+    }
+
+    @Test
+    public void oracleNullIntermediateField() {
+        when(joinPoint.getTarget()).thenReturn(new OraclePreparedStatement(null));
+        Assert.assertNull(new OracleAspectJSqlExtractor().extractSql(joinPoint));
+    }
+
+    @Test
+    public void oracleNullTarget() {
+        Assert.assertNull(new OracleAspectJSqlExtractor().extractSql(joinPoint));
+    }
+
+    private static class CachedQuery {
+        private final String query;
+
+        private CachedQuery(String query) {
+            this.query = query;
+        }
+    }
+
+    private static class ParameterList {
+        private final String values;
+
+        private ParameterList(String values) {
+            this.values = values;
+        }
+
+        @Override
+        public String toString() {
+            return values;
+        }
+    }
+
+    private static class OracleSql {
+        private final String originalSql;
+
+        private OracleSql(String originalSql) {
+            this.originalSql = originalSql;
+        }
+    }
+
+    private static class AbstractOracleStatement {
+        private final OracleSql sqlObject;
+
+        private AbstractOracleStatement(OracleSql sqlObject) {
+            this.sqlObject = sqlObject;
+        }
+    }
+
+    private static class OraclePreparedStatement extends AbstractOracleStatement {
+        private OraclePreparedStatement(OracleSql sqlObject) {
+            super(sqlObject);
+        }
+    }
+
+    private static class OracleStatementWrapper {
+        private final Object statement;
+
+        private OracleStatementWrapper(Object statement) {
+            this.statement = statement;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.intuit.dbtelemetry.sql.extractor.stacktrace;
 
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.aggregator.MapBasedAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.TelemetryAggregatorException;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -24,4 +27,27 @@ public class DepthFilterStackTraceExtractorTests {
         Assert.assertNotNull(s);
         Assert.assertTrue(s.contains("java.lang"));
     }
+
+    @Test
+    public void getStackTraceDepthIsNotShared() {
+        DepthFilterStackTraceExtractor extractor = new DepthFilterStackTraceExtractor(1, "java.lang");
+        extractor.extractStackTrace(new Exception());
+        Assert.assertTrue(extractor.extractStackTrace(new Exception()).contains("java.lang"));
+    }
+
+    @Test
+    public void getStackTraceKeepsFramesClosestToCall() {
+        String s = new DepthFilterStackTraceExtractor(1, "").extractStackTrace(new Exception());
+        Assert.assertEquals(2, s.split(DepthFilterStackTraceExtractor.LINE_SEPARATOR).length);
+        Assert.assertTrue(s.contains(DepthFilterStackTraceExtractorTests.class.getName() + ".getStackTraceKeepsFramesClosestToCall"));
+    }
+
+    @Test
+    public void libraryFramesAreLeftOut() throws TelemetryAggregatorException {
+        MapBasedAggregator aggregator = new MapBasedAggregator(null, new DepthFilterStackTraceExtractor(-1, "com.intuit"));
+        aggregator.aggregate("test", "select * from T", 10);
+        SqlTelemetry telemetry = aggregator.getAndResetDBTelemetryData(0).keySet().iterator().next();
+        Assert.assertTrue(telemetry.getStackTrace().contains(DepthFilterStackTraceExtractorTests.class.getName() + ".libraryFramesAreLeftOut"));
+        Assert.assertFalse(telemetry.getStackTrace().contains("com.intuit.dbtelemetry.sql.aggregator."));
+    }
 }
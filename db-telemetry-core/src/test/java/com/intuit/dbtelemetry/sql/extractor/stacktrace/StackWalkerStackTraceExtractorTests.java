@@ -0,0 +1,92 @@
+package com.intuit.dbtelemetry.sql.extractor.stacktrace;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.aggregator.MapBasedAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.TelemetryAggregatorException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StackWalkerStackTraceExtractorTests {
+
+    @Test
+    public void getStackTrace() {
+        String s = new StackWalkerStackTraceExtractor(-1, "org.junit").extractStackTrace();
+        Assert.assertNotNull(s);
+        Assert.assertTrue(s.contains("org.junit"));
+        Assert.assertFalse(s.contains("java.lang.reflect"));
+    }
+
+    @Test
+    public void getStackTraceNoDepth() {
+        String s = new StackWalkerStackTraceExtractor(0, "org.junit").extractStackTrace();
+        Assert.assertEquals(DepthFilterStackTraceExtractor.LINE_SEPARATOR, s);
+    }
+
+    @Test
+    public void getStackTraceDepthIsNotShared() {
+        StackWalkerStackTraceExtractor extractor = new StackWalkerStackTraceExtractor(2, "");
+        String first = extractor.extractStackTrace();
+        Assert.assertEquals(3, first.split(DepthFilterStackTraceExtractor.LINE_SEPARATOR).length);
+        Assert.assertTrue(first.contains(StackWalkerStackTraceExtractorTests.class.getName() + ".getStackTraceDepthIsNotShared"));
+        Assert.assertEquals(first.split(DepthFilterStackTraceExtractor.LINE_SEPARATOR).length,
+                extractor.extractStackTrace().split(DepthFilterStackTraceExtractor.LINE_SEPARATOR).length);
+    }
+
+    @Test
+    public void getStackTraceFromThrowable() {
+        StackWalkerStackTraceExtractor extractor = new StackWalkerStackTraceExtractor(1, "org.junit");
+        Assert.assertNull(extractor.extractStackTrace(null));
+        String s = extractor.extractStackTrace(new Exception());
+        Assert.assertEquals(2, s.split(DepthFilterStackTraceExtractor.LINE_SEPARATOR).length);
+        Assert.assertTrue(s.contains("org.junit"));
+    }
+
+    @Test
+    public void extractCallSiteIsInterned() {
+        StackWalkerStackTraceExtractor extractor = new StackWalkerStackTraceExtractor(-1, "");
+        CallSite first = null;
+        for (int i = 0; i < 3; i++) {
+            CallSite callSite = extractor.extractCallSite();
+            if (first == null) {
+                first = callSite;
+            }
+            Assert.assertSame(first, callSite);
+        }
+        CallSite other = extractor.extractCallSite();
+        Assert.assertNotEquals(first.getFingerprint(), other.getFingerprint());
+        Assert.assertNotEquals(first.getStackTrace(), other.getStackTrace());
+        Assert.assertNotEquals(0L, first.getFingerprint());
+    }
+
+    @Test
+    public void extractCallSiteWithoutInterning() {
+        StackWalkerStackTraceExtractor extractor = new StackWalkerStackTraceExtractor(-1, "", 0);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(extractor.extractCallSite().getStackTrace().contains("extractCallSiteWithoutInterning"));
+        }
+    }
+
+    @Test
+    public void libraryFramesAreLeftOut() throws TelemetryAggregatorException {
+        MapBasedAggregator aggregator = new MapBasedAggregator(null, new StackWalkerStackTraceExtractor(-1, "com.intuit"));
+        aggregator.aggregate("test", "select * from T", 10);
+        SqlTelemetry telemetry = aggregator.getAndResetDBTelemetryData(0).keySet().iterator().next();
+        Assert.assertTrue(telemetry.getStackTrace().contains(StackWalkerStackTraceExtractorTests.class.getName() + ".libraryFramesAreLeftOut"));
+        Assert.assertFalse(telemetry.getStackTrace().contains("com.intuit.dbtelemetry.sql.aggregator."));
+        Assert.assertFalse(telemetry.getStackTrace().contains("com.intuit.dbtelemetry.sql.extractor.stacktrace.StackWalkerStackTraceExtractor."));
+    }
+
+    @Test
+    public void stackWalkerIsCreatedOnJava9AndLater() {
+        Assert.assertTrue(StackTraceExtractors.isStackWalkerAvailable());
+        Assert.assertTrue(StackTraceExtractors.stackWalkerOrDepthFilter(-1, "") instanceof StackWalkerStackTraceExtractor);
+    }
+
+    @Test
+    public void callSiteOfStackTrace() {
+        Assert.assertSame(CallSite.NONE, CallSite.of(null));
+        Assert.assertSame(CallSite.NONE, CallSite.of(""));
+        Assert.assertEquals(CallSite.of("a"), CallSite.of("a"));
+        Assert.assertNotEquals(CallSite.of("a"), CallSite.of("b"));
+    }
+}
@@ -0,0 +1,56 @@
+package com.intuit.dbtelemetry.sql.finder;
+
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CachingWorkflowFinderTest {
+
+    @Test
+    public void parsesEachStackTraceOnce() {
+        AtomicInteger parsed = new AtomicInteger();
+        CachingWorkflowFinder finder = new CachingWorkflowFinder(stackTrace -> {
+            parsed.incrementAndGet();
+            return stackTrace.contains("Checkout") ? "checkout" : null;
+        });
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("checkout", finder.getWorkflowName(1, "at CheckoutService"));
+            Assert.assertNull(finder.getWorkflowName(2, "at OtherService"));
+        }
+        Assert.assertEquals("checkout", finder.getWorkflowName("at CheckoutService"));
+        Assert.assertEquals(3, parsed.get());
+        Assert.assertEquals(3, finder.getMissCount());
+        Assert.assertEquals(4, finder.getHitCount());
+
+        finder.resolve(new CallSite(1, "at CheckoutService"));
+        Assert.assertEquals(3, parsed.get());
+        finder.resolve(new CallSite(3, "at CheckoutService"));
+        Assert.assertEquals(4, parsed.get());
+        Assert.assertEquals("checkout", finder.getWorkflowName(3, "not parsed again"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        CachingWorkflowFinder finder = new CachingWorkflowFinder(stackTrace -> stackTrace, 10);
+        for (int i = 0; i < 10; i++) {
+            finder.getWorkflowName(i, "stack" + i);
+        }
+        finder.getWorkflowName(0, "stack0");
+        finder.getWorkflowName(10, "stack10");
+        // Above 10 entries: trimmed to 9, the least recently used first
+        Assert.assertEquals(9, finder.size());
+        Assert.assertEquals(2, finder.getEvictionCount());
+        long misses = finder.getMissCount();
+        finder.getWorkflowName(0, "stack0");
+        Assert.assertEquals(misses, finder.getMissCount());
+        finder.getWorkflowName(1, "stack1");
+        Assert.assertEquals(misses + 1, finder.getMissCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxEntriesBelowOne() {
+        new CachingWorkflowFinder(stackTrace -> null, 0);
+    }
+}
@@ -0,0 +1,121 @@
+package com.intuit.dbtelemetry.sql.histogram;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketBoundsContainValue() {
+        for (long value = 0; value < 1_000_000; value += 7) {
+            int index = LatencyHistogram.indexOf(value);
+            Assert.assertTrue(LatencyHistogram.lowestEquivalentValue(index) <= value);
+            Assert.assertTrue(LatencyHistogram.highestEquivalentValue(index) >= value);
+        }
+        Assert.assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+        Assert.assertEquals(0, LatencyHistogram.indexOf(-5));
+    }
+
+    @Test
+    public void percentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.recordValue(value);
+        }
+        Assert.assertEquals(10_000, histogram.getTotalCount());
+        assertWithinPrecision(5_000, histogram.getValueAtPercentile(50));
+        assertWithinPrecision(9_000, histogram.getValueAtPercentile(90));
+        assertWithinPrecision(9_900, histogram.getValueAtPercentile(99));
+        assertWithinPrecision(9_990, histogram.getValueAtPercentile(99.9));
+        Assert.assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void weightedRecording() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValue(3, 99);
+        histogram.recordValue(1_000);
+        Assert.assertEquals(100, histogram.getTotalCount());
+        Assert.assertEquals(3, histogram.getValueAtPercentile(99));
+        assertWithinPrecision(1_000, histogram.getValueAtPercentile(99.9));
+    }
+
+    @Test
+    public void emptyHistogram() {
+        Assert.assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+    }
+
+    @Test
+    public void addAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram other = new LatencyHistogram();
+        histogram.recordValue(1);
+        other.recordValue(1_000, 3);
+        histogram.add(other);
+        Assert.assertEquals(4, histogram.getTotalCount());
+        assertWithinPrecision(1_000, histogram.getValueAtPercentile(50));
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getTotalCount());
+        Assert.assertEquals(3, other.getTotalCount());
+    }
+
+    @Test
+    public void valuesAtSeveralPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.recordValue(i);
+        }
+        double[] percentiles = {0, 50, 90, 99, 99.9, 100};
+        long[] values = new long[percentiles.length];
+        histogram.getValuesAtPercentiles(percentiles, values);
+        for (int i = 0; i < percentiles.length; i++) {
+            Assert.assertEquals(histogram.getValueAtPercentile(percentiles[i]), values[i]);
+        }
+        new LatencyHistogram().getValuesAtPercentiles(percentiles, values);
+        Assert.assertEquals(0, values[5]);
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        Assert.assertTrue("expected " + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / LatencyHistogram.SUB_BUCKETS);
+    }
+
+    @Test
+    public void cumulativeCountsAtBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValue(1);
+        histogram.recordValue(5, 2);
+        histogram.recordValue(100);
+        histogram.recordValue(5_000);
+        long[] counts = new long[4];
+        histogram.getCumulativeCounts(new long[]{0, 5, 1_000, Long.MAX_VALUE}, counts);
+        Assert.assertArrayEquals(new long[]{0, 3, 4, 5}, counts);
+    }
+
+    @Test
+    public void concurrentRecordingLosesNoValue() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threadCount = 8;
+        int values = 100_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                for (int value = 0; value < values; value++) {
+                    histogram.recordValue(value % 100);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals((long) threadCount * values, histogram.getTotalCount());
+        assertWithinPrecision(99, histogram.getValueAtPercentile(100));
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getTotalCount());
+    }
+}
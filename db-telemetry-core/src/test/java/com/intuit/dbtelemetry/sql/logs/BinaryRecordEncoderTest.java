@@ -0,0 +1,67 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class BinaryRecordEncoderTest {
+
+    @Test
+    public void encodesTelemetryRecord() {
+        SqlTelemetry telemetry = SqlTelemetry.of("PostgresAspect", "select * from \u00E9t\u00E9 where id = ?",
+                new CallSite(42L, "stack"), null);
+        telemetry.setInstanceValue(300);
+        RecordBuffer buffer = new RecordBuffer();
+        new BinaryRecordEncoder().encodeTelemetry(telemetry, 1700000000000L, buffer);
+        ByteBuffer in = buffer.asByteBuffer();
+        Assert.assertEquals(BinaryRecordEncoder.TELEMETRY_RECORD, in.get());
+        Assert.assertEquals(1700000000000L, readVarLong(in));
+        Assert.assertEquals("PostgresAspect", readString(in));
+        Assert.assertEquals("select * from \u00E9t\u00E9 where id = ?", readString(in));
+        Assert.assertEquals(42L, in.getLong());
+        Assert.assertEquals(1, readVarLong(in));
+        Assert.assertEquals(300, readVarLong(in));
+        Assert.assertEquals(300, readVarLong(in));
+        Assert.assertEquals(300, readVarLong(in));
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(300, readVarLong(in));
+        }
+        Assert.assertEquals(0, readVarLong(in));
+        Assert.assertEquals("", readString(in));
+        Assert.assertEquals("", readString(in));
+        Assert.assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    public void encodesStackTraceRecord() {
+        RecordBuffer buffer = new RecordBuffer();
+        new BinaryRecordEncoder().encodeStackTrace(-7L, "at A.b(A.java:1)", 5L, buffer);
+        ByteBuffer in = buffer.asByteBuffer();
+        Assert.assertEquals(BinaryRecordEncoder.STACK_TRACE_RECORD, in.get());
+        Assert.assertEquals(5L, readVarLong(in));
+        Assert.assertEquals(-7L, in.getLong());
+        Assert.assertEquals("at A.b(A.java:1)", readString(in));
+        Assert.assertFalse(in.hasRemaining());
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,72 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.aggregator.Aggregator;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FileLogFlushTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator;
+
+    @Test
+    public void writesFlushedWindowsToFile() throws TelemetryFlushException, IOException {
+        Map<SqlTelemetry, SqlTelemetry> telemetryData = new HashMap<>();
+        SqlTelemetry telemetry = SqlTelemetry.of("test", "select * from T", new CallSite(1, "stack"), null);
+        telemetry.setInstanceValue(10);
+        telemetryData.put(telemetry, telemetry);
+        when(aggregator.getAndResetDBTelemetryData(anyLong())).thenReturn(telemetryData);
+        Path directory = temporaryFolder.getRoot().toPath().resolve("telemetry");
+
+        Path file;
+        try (FileLogFlush logFlush = new FileLogFlush(aggregator, true, directory)) {
+            Assert.assertNull(logFlush.getCurrentFile());
+            logFlush.flushLogs(0);
+            logFlush.flushLogs(0);
+            logFlush.flushStackTrace(0);
+            file = logFlush.getCurrentFile();
+        }
+        Assert.assertEquals(directory, file.getParent());
+        Assert.assertTrue(file.getFileName().toString().endsWith(".jsonl"));
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Assert.assertEquals(3, lines.size());
+        Assert.assertTrue(lines.get(0).startsWith("{\"record\":\"sql\""));
+        Assert.assertTrue(lines.get(2).startsWith("{\"record\":\"stackTrace\""));
+    }
+
+    @Test
+    public void binaryFilesTakeTheEncoderExtension() throws TelemetryFlushException, IOException {
+        Map<SqlTelemetry, SqlTelemetry> telemetryData = new HashMap<>();
+        SqlTelemetry telemetry = new SqlTelemetry("test", "select * from T", null, null);
+        telemetryData.put(telemetry, telemetry);
+        when(aggregator.getAndResetDBTelemetryData(anyLong())).thenReturn(telemetryData);
+
+        try (FileLogFlush logFlush = new FileLogFlush(aggregator, null, false, new BinaryRecordEncoder(),
+                temporaryFolder.getRoot().toPath(), new FileRotationPolicy(true))) {
+            logFlush.flushLogs(0);
+            Assert.assertTrue(logFlush.getCurrentFile().getFileName().toString().endsWith(".bin.gz"));
+        }
+    }
+}
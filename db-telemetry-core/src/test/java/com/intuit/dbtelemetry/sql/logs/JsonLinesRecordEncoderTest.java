@@ -0,0 +1,77 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.slow.SlowStatement;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class JsonLinesRecordEncoderTest {
+
+    @Test
+    public void encodesTelemetryRecord() {
+        SqlTelemetry telemetry = SqlTelemetry.of("PostgresAspect", "select * from T where name = ?",
+                new CallSite(0x1AL, "stack"), null);
+        telemetry.setInstanceValue(90);
+        telemetry.setInstanceValue(200);
+        RecordBuffer buffer = new RecordBuffer();
+        new JsonLinesRecordEncoder().encodeTelemetry(telemetry, 1700000000000L, buffer);
+        Assert.assertEquals("{\"record\":\"sql\",\"time\":1700000000000,\"type\":\"PostgresAspect\","
+                + "\"sql\":\"select * from T where name = ?\",\"stackTraceFingerprint\":\"000000000000001a\","
+                + "\"count\":2,\"callTime\":290,\"min\":90,\"max\":200,\"avg\":145,\"p50\":95,\"p90\":200,"
+                + "\"p99\":200,\"p999\":200,\"rankError\":0,\"workflow\":\"\"}\n",
+                new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void escapesStrings() {
+        RecordBuffer buffer = new RecordBuffer();
+        JsonLinesRecordEncoder.writeString("a\"b\\c\nd\te\u0001f\u00E9g\uD83D\uDE00h\uD800", buffer);
+        Assert.assertEquals("\"a\\\"b\\\\c\\nd\\te\\u0001f\u00E9g\uD83D\uDE00h?\"",
+                new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void encodesStackTraceRecord() {
+        RecordBuffer buffer = new RecordBuffer();
+        new JsonLinesRecordEncoder().encodeStackTrace(-1L, "at A.b(A.java:1)\n", 5L, buffer);
+        Assert.assertEquals("{\"record\":\"stackTrace\",\"time\":5,\"stackTraceFingerprint\":\"ffffffffffffffff\","
+                        + "\"stackTrace\":\"at A.b(A.java:1)\\n\"}\n",
+                new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void encodesSlowStatementRecord() {
+        RecordBuffer buffer = new RecordBuffer();
+        JsonLinesRecordEncoder encoder = new JsonLinesRecordEncoder();
+        encoder.encodeSlowStatement(new SlowStatement("PostgresAspect", "select * from T where id = ?", 0x2BL,
+                "<[42]>", 1250000, "worker-1", 4L, "stack", 0x1AL), 5L, buffer);
+        encoder.encodeSlowStatement(new SlowStatement("PostgresAspect", "select * from T", 0x2CL,
+                null, 1000000, "worker-2", 4L, null, 0L), 5L, buffer);
+        Assert.assertEquals("{\"record\":\"slowStatement\",\"time\":5,\"type\":\"PostgresAspect\","
+                        + "\"sql\":\"select * from T where id = ?\",\"sqlFingerprint\":\"000000000000002b\","
+                        + "\"stackTraceFingerprint\":\"000000000000001a\",\"executionTime\":1250000,\"executedAt\":4,"
+                        + "\"thread\":\"worker-1\",\"parameters\":\"<[42]>\"}\n"
+                        + "{\"record\":\"slowStatement\",\"time\":5,\"type\":\"PostgresAspect\","
+                        + "\"sql\":\"select * from T\",\"sqlFingerprint\":\"000000000000002c\","
+                        + "\"stackTraceFingerprint\":\"0000000000000000\",\"executionTime\":1000000,\"executedAt\":4,"
+                        + "\"thread\":\"worker-2\"}\n",
+                new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void writesDecimals() {
+        RecordBuffer buffer = new RecordBuffer(1);
+        buffer.writeDecimal(0);
+        buffer.writeByte(' ');
+        buffer.writeDecimal(-42);
+        buffer.writeByte(' ');
+        buffer.writeDecimal(Long.MIN_VALUE);
+        buffer.writeByte(' ');
+        buffer.writeDecimal(Long.MAX_VALUE);
+        Assert.assertEquals("0 -42 " + Long.MIN_VALUE + " " + Long.MAX_VALUE,
+                new String(buffer.toByteArray(), StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,160 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+public class RotatingFileOutputStreamTest {
+
+    private static final byte[] RECORD = "0123456789\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void rotatesOnSizeBetweenRecords() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        FileRotationPolicy policy = new FileRotationPolicy(3 * RECORD.length, 60_000, 1_000_000, 60_000, false);
+        try (RotatingFileOutputStream out = new RotatingFileOutputStream(directory, "test", "jsonl", policy)) {
+            for (int i = 0; i < 7; i++) {
+                out.write(RECORD);
+            }
+        }
+        File[] files = sortedFiles(directory);
+        Assert.assertEquals(3, files.length);
+        Assert.assertEquals(3 * RECORD.length, files[0].length());
+        Assert.assertEquals(3 * RECORD.length, files[1].length());
+        Assert.assertEquals(RECORD.length, files[2].length());
+        Assert.assertTrue(files[0].getName().startsWith("test-"));
+        Assert.assertTrue(files[0].getName().endsWith(".jsonl"));
+    }
+
+    @Test
+    public void streamsSharingDirectoryDontCollide() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        FileRotationPolicy policy = new FileRotationPolicy(1_000_000, 60_000, 1_000_000, 60_000, false);
+        long now = System.currentTimeMillis();
+        // Same prefix, time and sequence, as for two processes started together
+        try (RotatingFileOutputStream first = new RotatingFileOutputStream(directory, "test", "jsonl", policy, () -> now);
+             RotatingFileOutputStream second = new RotatingFileOutputStream(directory, "test", "jsonl", policy, () -> now)) {
+            first.write(RECORD);
+            second.write(RECORD);
+            Assert.assertNotEquals(first.getCurrentFile(), second.getCurrentFile());
+        }
+        Assert.assertEquals(2, sortedFiles(directory).length);
+    }
+
+    @Test
+    public void writesSingleBytes() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        FileRotationPolicy policy = new FileRotationPolicy(1_000_000, 60_000, 1_000_000, 60_000, false);
+        try (RotatingFileOutputStream out = new RotatingFileOutputStream(directory, "test", "jsonl", policy)) {
+            for (byte b : RECORD) {
+                out.write(b);
+            }
+        }
+        Assert.assertArrayEquals(RECORD, Files.readAllBytes(sortedFiles(directory)[0].toPath()));
+    }
+
+    @Test
+    public void rotatesOnAge() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        FileRotationPolicy policy = new FileRotationPolicy(1_000_000, 1_000, 1_000_000, 3_600_000, false);
+        try (RotatingFileOutputStream out = new RotatingFileOutputStream(directory, "test", "jsonl", policy, clock::get)) {
+            out.write(RECORD);
+            clock.addAndGet(999);
+            out.write(RECORD);
+            clock.addAndGet(1);
+            out.write(RECORD);
+        }
+        File[] files = sortedFiles(directory);
+        Assert.assertEquals(2, files.length);
+        Assert.assertEquals(2 * RECORD.length, files[0].length());
+    }
+
+    @Test
+    public void purgesOldestFilesAboveRetainedSize() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        FileRotationPolicy policy = new FileRotationPolicy(RECORD.length, 60_000, 2 * RECORD.length, 60_000, false);
+        Path lastFile;
+        try (RotatingFileOutputStream out = new RotatingFileOutputStream(directory, "test", "jsonl", policy)) {
+            for (int i = 0; i < 5; i++) {
+                out.write(RECORD);
+            }
+            lastFile = out.getCurrentFile();
+        }
+        File[] files = sortedFiles(directory);
+        Assert.assertEquals(2, files.length);
+        Assert.assertEquals(lastFile.toFile(), files[1]);
+    }
+
+    @Test
+    public void purgesFilesAboveRetainedAge() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        FileRotationPolicy policy = new FileRotationPolicy(RECORD.length, 60_000, 1_000_000, 60_000, false);
+        try (RotatingFileOutputStream out = new RotatingFileOutputStream(directory, "test", "jsonl", policy, clock::get)) {
+            out.write(RECORD);
+            out.write(RECORD);
+            // Only the file opened by this write is younger than the retained age
+            clock.addAndGet(120_000);
+            out.write(RECORD);
+        }
+        Assert.assertEquals(1, sortedFiles(directory).length);
+    }
+
+    @Test
+    public void compressedFilesAreCompleteGzipStreams() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        FileRotationPolicy policy = new FileRotationPolicy(2 * RECORD.length, 60_000, 1_000_000, 60_000, true);
+        try (RotatingFileOutputStream out = new RotatingFileOutputStream(directory, "test", "jsonl", policy)) {
+            for (int i = 0; i < 3; i++) {
+                out.write(RECORD);
+            }
+            out.flush();
+        }
+        File[] files = sortedFiles(directory);
+        Assert.assertEquals(2, files.length);
+        Assert.assertTrue(files[0].getName().endsWith(".jsonl.gz"));
+        Assert.assertEquals("0123456789\n0123456789\n", gunzip(files[0]));
+        Assert.assertEquals("0123456789\n", gunzip(files[1]));
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterCloseFails() throws IOException {
+        RotatingFileOutputStream out = new RotatingFileOutputStream(temporaryFolder.getRoot().toPath(), "test", "jsonl",
+                new FileRotationPolicy());
+        out.close();
+        out.write(RECORD);
+    }
+
+    private static File[] sortedFiles(Path directory) {
+        File[] files = directory.toFile().listFiles();
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static String gunzip(File file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file.toPath()))) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] bytes = new byte[1024];
+            for (int read; (read = in.read(bytes)) > 0; ) {
+                content.write(bytes, 0, read);
+            }
+            return new String(content.toByteArray(), StandardCharsets.US_ASCII);
+        }
+    }
+}
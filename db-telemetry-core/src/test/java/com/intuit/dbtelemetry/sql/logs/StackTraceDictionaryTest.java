@@ -0,0 +1,50 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class StackTraceDictionaryTest {
+
+    @Test
+    public void publishesOnceUntilRefreshed() {
+        AtomicLong now = new AtomicLong(1_000);
+        StackTraceDictionary dictionary = new StackTraceDictionary(10, 100, 1_000, now::get);
+        Assert.assertTrue(dictionary.markSeen(1));
+        Assert.assertFalse(dictionary.markSeen(1));
+        Assert.assertTrue(dictionary.markSeen(2));
+
+        now.addAndGet(99);
+        Assert.assertFalse(dictionary.markSeen(1));
+        now.addAndGet(1);
+        Assert.assertTrue(dictionary.markSeen(1));
+        Assert.assertFalse(dictionary.markSeen(1));
+    }
+
+    @Test
+    public void evictsIdleAndLeastRecentlySeen() {
+        AtomicLong now = new AtomicLong(1_000);
+        StackTraceDictionary dictionary = new StackTraceDictionary(10, 10_000, 500, now::get);
+        dictionary.markSeen(1);
+        now.addAndGet(501);
+        dictionary.markSeen(2);
+        dictionary.evict();
+        Assert.assertEquals(1, dictionary.size());
+        Assert.assertTrue(dictionary.markSeen(1));
+
+        for (int i = 3; i <= 11; i++) {
+            now.incrementAndGet();
+            dictionary.markSeen(i);
+        }
+        // Above 10 entries: trimmed to 9, the least recently seen first
+        Assert.assertEquals(9, dictionary.size());
+        Assert.assertTrue(dictionary.markSeen(2));
+        Assert.assertFalse(dictionary.markSeen(11));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxEntriesBelowOne() {
+        new StackTraceDictionary(0, 1, 1);
+    }
+}
@@ -0,0 +1,132 @@
+package com.intuit.dbtelemetry.sql.logs;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.aggregator.Aggregator;
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StructuredLogFlushTest {
+
+    @Mock
+    private Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator;
+
+    @Test
+    public void writesOneLinePerStatementAndStackTrace() throws TelemetryFlushException {
+        int statements = 20_000;
+        Map<SqlTelemetry, SqlTelemetry> telemetryData = new HashMap<>();
+        for (int i = 0; i < statements; i++) {
+            SqlTelemetry telemetry = SqlTelemetry.of("test", "select * from T" + i, new CallSite(i % 2 + 1, "stack" + i % 2), null);
+            telemetry.setInstanceValue(i);
+            telemetryData.put(telemetry, telemetry);
+        }
+        when(aggregator.getAndResetDBTelemetryData(anyLong())).thenReturn(telemetryData);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StructuredLogFlush logFlush = new StructuredLogFlush(aggregator, true, out);
+
+        logFlush.flushLogs(0);
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(statements, lines.length);
+        for (String line : lines) {
+            Assert.assertTrue(line.startsWith("{\"record\":\"sql\""));
+            Assert.assertTrue(line.endsWith("}"));
+        }
+
+        out.reset();
+        logFlush.flushStackTrace(0);
+        lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(2, lines.length);
+        for (String line : lines) {
+            Assert.assertTrue(line.startsWith("{\"record\":\"stackTrace\""));
+        }
+
+        out.reset();
+        logFlush.flushStackTrace(0);
+        Assert.assertEquals(0, out.size());
+
+        logFlush.flushLogs(0);
+        out.reset();
+        logFlush.flushStackTrace(0);
+        Assert.assertEquals(0, out.size());
+    }
+
+    @Test
+    public void stackTracesOfFailedFlushAreWrittenByNextFlush() throws TelemetryFlushException {
+        SqlTelemetry telemetry = SqlTelemetry.of("test", "select * from T", new CallSite(1, "stack"), null);
+        Map<SqlTelemetry, SqlTelemetry> telemetryData = new HashMap<>();
+        telemetryData.put(telemetry, telemetry);
+        when(aggregator.getAndResetDBTelemetryData(anyLong())).thenReturn(telemetryData);
+        AtomicBoolean failing = new AtomicBoolean();
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] bytes, int offset, int length) {
+                if (failing.get()) {
+                    throw new UncheckedIOException(new IOException("disk full"));
+                }
+                super.write(bytes, offset, length);
+            }
+        };
+        StructuredLogFlush logFlush = new StructuredLogFlush(aggregator, true, out);
+        logFlush.flushLogs(0);
+        out.reset();
+
+        failing.set(true);
+        try {
+            logFlush.flushStackTrace(0);
+            Assert.fail("The stack trace flush should fail");
+        } catch (TelemetryFlushException e) {
+            Assert.assertEquals(0, out.size());
+        }
+        failing.set(false);
+        logFlush.flushStackTrace(0);
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(1, lines.length);
+        Assert.assertTrue(lines[0].startsWith("{\"record\":\"stackTrace\""));
+    }
+
+    @Test
+    public void nothingWrittenWithoutData() throws TelemetryFlushException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new StructuredLogFlush(aggregator, null, false, new BinaryRecordEncoder(), out).flushLogs(0);
+        Assert.assertEquals(0, out.size());
+    }
+
+    @Test
+    public void writesSlowStatementsAndTheirStackTraces() throws TelemetryFlushException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StructuredLogFlush logFlush = new StructuredLogFlush(aggregator, true, out);
+        SlowStatementCapture capture = new SlowStatementCapture(100);
+        logFlush.setSlowStatementCapture(capture);
+        capture.capture("test", "select * from T where id = 1", "<[1]>", 200, new CallSite(7, "stack"));
+
+        logFlush.flushLogs(0);
+        String line = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        Assert.assertTrue(line.startsWith("{\"record\":\"slowStatement\""));
+        Assert.assertTrue(line.endsWith(",\"parameters\":\"<[1]>\"}\n"));
+
+        out.reset();
+        logFlush.flushStackTrace(0);
+        Assert.assertTrue(new String(out.toByteArray(), StandardCharsets.UTF_8)
+                .startsWith("{\"record\":\"stackTrace\",\"time\":"));
+
+        out.reset();
+        logFlush.flushLogs(0);
+        Assert.assertEquals(0, out.size());
+    }
+}
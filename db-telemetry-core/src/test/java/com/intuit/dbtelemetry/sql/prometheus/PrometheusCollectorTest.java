@@ -0,0 +1,72 @@
+package com.intuit.dbtelemetry.sql.prometheus;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.aggregator.MapBasedAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.TelemetryAggregatorException;
+import com.intuit.dbtelemetry.sql.aggregator.TopKAggregator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+
+public class PrometheusCollectorTest {
+
+    @Test
+    public void accumulatesFlushedIntervals() throws TelemetryAggregatorException, IOException {
+        PrometheusCollector collector = new PrometheusCollector(new TopKAggregator(10, TopKAggregator.Ranking.COUNT),
+                10, 100, new long[]{10, 100});
+        collector.aggregate("test", "select * from T where id = 1", 5);
+        collector.aggregate("test", "select * from T where id = 2", 50);
+        Map<SqlTelemetry, SqlTelemetry> result = collector.getAndResetDBTelemetryData(0);
+        Assert.assertEquals(1, result.size());
+        collector.aggregate("test", "select * from T where id = 3", 500);
+        collector.getAndResetDBTelemetryData(0);
+
+        String metrics = metricsOf(collector);
+        Assert.assertTrue(metrics.contains("# TYPE db_telemetry_sql_duration_microseconds histogram\n"));
+        String labels = "{type=\"test\",fingerprint=\"";
+        Assert.assertTrue(metrics.contains("db_telemetry_sql_duration_microseconds_bucket" + labels));
+        Assert.assertTrue(metrics.contains(",le=\"10\"} 1\n"));
+        Assert.assertTrue(metrics.contains(",le=\"100\"} 2\n"));
+        Assert.assertTrue(metrics.contains(",le=\"+Inf\"} 3\n"));
+        Assert.assertTrue(metrics.matches("(?s).*db_telemetry_sql_duration_microseconds_sum\\{[^}]*} 555\n.*"));
+        Assert.assertTrue(metrics.matches("(?s).*db_telemetry_sql_duration_microseconds_count\\{[^}]*} 3\n.*"));
+        Assert.assertTrue(metrics.contains("db_telemetry_sql_info" + labels));
+        Assert.assertTrue(metrics.contains(",sql=\"select * from T where id = ?\"} 1\n"));
+        Assert.assertTrue(metrics.contains("db_telemetry_sql_overflow_total 0\n"));
+    }
+
+    @Test
+    public void capsSeriesIntoOther() throws TelemetryAggregatorException, IOException {
+        PrometheusCollector capped = new PrometheusCollector(new TopKAggregator(100, TopKAggregator.Ranking.COUNT),
+                2, 0, PrometheusCollector.DEFAULT_BUCKET_BOUNDS);
+        for (int i = 0; i < 5; i++) {
+            capped.aggregate("test", "select * from T" + i, 1);
+        }
+        capped.getAndResetDBTelemetryData(0);
+        Assert.assertEquals(2, capped.getSeriesCount());
+        String metrics = metricsOf(capped);
+        Assert.assertTrue(metrics.contains(
+                "db_telemetry_sql_duration_microseconds_count{type=\"other\",fingerprint=\"other\"} 3\n"));
+        Assert.assertTrue(metrics.contains("db_telemetry_sql_overflow_total 3\n"));
+        Assert.assertFalse(metrics.contains("db_telemetry_sql_info"));
+    }
+
+    @Test
+    public void escapesLabelValues() {
+        Assert.assertEquals("a\\\"b\\\\c\\nd", PrometheusCollector.escapeLabelValue("a\"b\\c\nd"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxSeriesBelowOne() {
+        new PrometheusCollector(new MapBasedAggregator(), 0, 0, PrometheusCollector.DEFAULT_BUCKET_BOUNDS);
+    }
+
+    private static String metricsOf(PrometheusCollector collector) throws IOException {
+        StringWriter writer = new StringWriter();
+        collector.writeMetrics(writer);
+        return writer.toString();
+    }
+}
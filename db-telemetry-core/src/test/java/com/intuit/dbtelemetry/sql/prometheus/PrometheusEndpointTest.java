@@ -0,0 +1,50 @@
+package com.intuit.dbtelemetry.sql.prometheus;
+
+import com.intuit.dbtelemetry.sql.aggregator.TelemetryAggregatorException;
+import com.intuit.dbtelemetry.sql.aggregator.TopKAggregator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+public class PrometheusEndpointTest {
+
+    @Test
+    public void servesMetrics() throws IOException, TelemetryAggregatorException {
+        PrometheusCollector collector = new PrometheusCollector(new TopKAggregator(10, TopKAggregator.Ranking.COUNT));
+        collector.aggregate("test", "select * from T", 5);
+        collector.getAndResetDBTelemetryData(0);
+        try (PrometheusEndpoint endpoint = new PrometheusEndpoint(collector,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            URL url = new URL("http", endpoint.getAddress().getHostString(), endpoint.getAddress().getPort(),
+                    PrometheusEndpoint.DEFAULT_PATH);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            Assert.assertEquals(200, connection.getResponseCode());
+            Assert.assertEquals(PrometheusEndpoint.CONTENT_TYPE, connection.getContentType());
+            String body = read(connection.getInputStream());
+            Assert.assertTrue(body.contains("db_telemetry_sql_duration_microseconds_count{type=\"test\""));
+
+            HttpURLConnection post = (HttpURLConnection) url.openConnection();
+            post.setRequestMethod("POST");
+            Assert.assertEquals(405, post.getResponseCode());
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] bytes = new byte[4096];
+            for (int read; (read = stream.read(bytes)) > 0; ) {
+                content.write(bytes, 0, read);
+            }
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.intuit.dbtelemetry.sql.sampler;
+
+import com.intuit.dbtelemetry.sql.SqlTelemetry;
+import com.intuit.dbtelemetry.sql.aggregator.TelemetryAggregatorException;
+import com.intuit.dbtelemetry.sql.aggregator.ThreadLocalAggregator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class RateSamplerTest {
+
+    private static final String SQL = "select * from T where id = ?";
+
+    @Test
+    public void keepsEveryCallWithRateOne() {
+        RateSampler sampler = new RateSampler(1);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(1, sampler.sample(SQL, 10));
+        }
+    }
+
+    @Test
+    public void keptCallsStandForTheRate() {
+        RateSampler sampler = new RateSampler(10);
+        long total = 0;
+        int kept = 0;
+        for (int i = 0; i < 100_000; i++) {
+            long weight = sampler.sample(SQL, 10);
+            Assert.assertTrue(weight == 0 || weight == 10);
+            total += weight;
+            kept += weight > 0 ? 1 : 0;
+        }
+        Assert.assertTrue(kept > 8_000 && kept < 12_000);
+        Assert.assertTrue(total > 80_000 && total < 120_000);
+    }
+
+    @Test
+    public void alwaysCapturesSlowCalls() {
+        RateSampler sampler = new RateSampler(Integer.MAX_VALUE, 1_000);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(1, sampler.sample(SQL, 1_000));
+        }
+    }
+
+    @Test
+    public void statementRateOverridesDefaultRate() {
+        RateSampler sampler = new RateSampler(100, Long.MAX_VALUE, Collections.singletonMap(SQL.hashCode(), 1));
+        Assert.assertEquals(1, sampler.getRate(SQL));
+        Assert.assertEquals(100, sampler.getRate("select 1"));
+        Assert.assertEquals(100, sampler.getRate(null));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(1, sampler.sample(SQL, 10));
+        }
+    }
+
+    @Test
+    public void aggregatedCountsAreScaled() throws TelemetryAggregatorException {
+        ThreadLocalAggregator aggregator = new ThreadLocalAggregator((List<String>) null, null, null, new RateSampler(4));
+        for (int i = 0; i < 40_000; i++) {
+            aggregator.aggregate("test", SQL, 10);
+        }
+        Map<SqlTelemetry, SqlTelemetry> result = aggregator.getAndResetDBTelemetryData(0);
+        SqlTelemetry telemetry = result.keySet().iterator().next();
+        Assert.assertEquals(0, telemetry.getCount() % 4);
+        Assert.assertTrue(telemetry.getCount() > 36_000 && telemetry.getCount() < 44_000);
+        Assert.assertEquals(telemetry.getCount() * 10, telemetry.getCallTime());
+        Assert.assertEquals(10, telemetry.getCallTimeAtPercentile(50));
+    }
+}
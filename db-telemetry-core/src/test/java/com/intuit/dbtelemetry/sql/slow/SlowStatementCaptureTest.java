@@ -0,0 +1,79 @@
+package com.intuit.dbtelemetry.sql.slow;
+
+import com.intuit.dbtelemetry.sql.extractor.stacktrace.CallSite;
+import com.intuit.dbtelemetry.sql.utils.SqlHelperUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+public class SlowStatementCaptureTest {
+
+    // Normalized by the aggregators before being captured
+    private static final String SQL = SqlHelperUtils.sanitizeSQL("select * from T where id = 1");
+
+    @Test
+    public void keepsTheSlowestExecutionsPerStatement() {
+        SlowStatementCapture capture = new SlowStatementCapture(100, 2, 10);
+        CallSite callSite = CallSite.of("at A.b(A.java:1)");
+        capture.capture("PostgresAspect", SQL, "<[1]>", 300, callSite);
+        capture.capture("PostgresAspect", SQL, "<[2]>", 200, callSite);
+        capture.capture("PostgresAspect", SQL, "<[3]>", 500, callSite);
+        capture.capture("PostgresAspect", SQL, "<[4]>", 100, null);
+
+        Map<Long, List<SlowStatement>> slowStatements = capture.getAndResetSlowStatements(100);
+        Assert.assertEquals(1, slowStatements.size());
+        List<SlowStatement> executions = slowStatements.get(CallSite.fingerprint(SQL));
+        Assert.assertEquals(2, executions.size());
+        SlowStatement slowest = executions.get(0);
+        Assert.assertEquals(500, slowest.getExecutionTime());
+        Assert.assertEquals("<[3]>", slowest.getParameters());
+        Assert.assertEquals(SQL, slowest.getSql());
+        Assert.assertEquals(callSite.getFingerprint(), slowest.getStackTraceFingerprint());
+        Assert.assertEquals(Thread.currentThread().getName(), slowest.getThreadName());
+        Assert.assertTrue(slowest.getTimestampMillis() > 0);
+        Assert.assertEquals(300, executions.get(1).getExecutionTime());
+
+        Assert.assertNull(capture.getAndResetSlowStatements(100));
+    }
+
+    @Test
+    public void ignoresStatementsBelowTheThreshold() {
+        Assert.assertEquals(SlowStatementCapture.DEFAULT_THRESHOLD, new SlowStatementCapture().getThreshold());
+        SlowStatementCapture capture = new SlowStatementCapture(100);
+        Assert.assertFalse(capture.isSlow(99));
+        Assert.assertTrue(capture.isSlow(100));
+        capture.capture("PostgresAspect", SQL, null, 99, CallSite.NONE);
+        capture.capture("PostgresAspect", null, null, 1000, CallSite.NONE);
+        Assert.assertNull(capture.getAndResetSlowStatements(100));
+    }
+
+    @Test
+    public void dropsNewStatementsAboveTheMaximum() {
+        SlowStatementCapture capture = new SlowStatementCapture(0, 1, 2);
+        capture.capture("PostgresAspect", "select * from A", null, 10, CallSite.NONE);
+        capture.capture("PostgresAspect", "select * from B", null, 10, CallSite.NONE);
+        capture.capture("PostgresAspect", "select * from C", null, 10, CallSite.NONE);
+        capture.capture("PostgresAspect", "select * from A", null, 20, CallSite.NONE);
+        Assert.assertEquals(1, capture.getDroppedCount());
+
+        Map<Long, List<SlowStatement>> slowStatements = capture.getAndResetSlowStatements(100);
+        Assert.assertEquals(2, slowStatements.size());
+        Assert.assertEquals(20, slowStatements.get(CallSite.fingerprint("select * from A")).get(0).getExecutionTime());
+        Assert.assertTrue(slowStatements.get(CallSite.fingerprint("select * from A")).get(0).toString()
+                .startsWith("DbTelemetrySlowStatement { "));
+    }
+
+    @Test
+    public void formatsBalancedKeyValuePairs() {
+        SlowStatement slowStatement = new SlowStatement("PostgresAspect", SQL, CallSite.fingerprint(SQL), "<[1]>", 300,
+                "main", 1700000000000L, "at A.b(A.java:1)", 7);
+        Assert.assertEquals("DbTelemetrySlowStatement { type=\"PostgresAspect\", executionTime=\"300\","
+                + " timestamp=\"1700000000000\", thread=\"main\", sql=\"" + SQL + "\", sqlHash=\"" + SQL.hashCode()
+                + "\", stacktraceHash=\"" + "at A.b(A.java:1)".hashCode() + "\", parameters=\"<[1]>\" }",
+                slowStatement.toString());
+        Assert.assertTrue(new SlowStatement("PostgresAspect", SQL, 0, null, 300, "main", 0, null, 0).toString()
+                .endsWith(" stacktraceHash=\"0\" }"));
+    }
+}
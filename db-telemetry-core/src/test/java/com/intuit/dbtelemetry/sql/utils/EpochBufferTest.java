@@ -0,0 +1,101 @@
+package com.intuit.dbtelemetry.sql.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class EpochBufferTest {
+
+    @Test
+    public void swapReturnsPreviousBuffer() {
+        EpochBuffer<LongAdder> buffer = new EpochBuffer<>(LongAdder::new);
+        EpochBuffer.Epoch<LongAdder> epoch = buffer.enter();
+        epoch.get().increment();
+        epoch.exit();
+        LongAdder previous = buffer.swap(0);
+        Assert.assertSame(epoch.get(), previous);
+        Assert.assertEquals(1, previous.sum());
+        Assert.assertEquals(0, buffer.peek().sum());
+    }
+
+    @Test
+    public void swapDoesNotSleepWithoutWriters() {
+        EpochBuffer<LongAdder> buffer = new EpochBuffer<>(LongAdder::new);
+        long start = System.nanoTime();
+        buffer.swap(5000L);
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void swapWaitsForInFlightWriter() throws Exception {
+        EpochBuffer<LongAdder> buffer = new EpochBuffer<>(LongAdder::new);
+        EpochBuffer.Epoch<LongAdder> epoch = buffer.enter();
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            epoch.get().increment();
+            epoch.exit();
+        });
+        writer.start();
+        LongAdder previous = buffer.swap(5000L);
+        Assert.assertEquals(1, previous.sum());
+        writer.join();
+    }
+
+    @Test
+    public void swapGivesUpAfterMaxWait() {
+        EpochBuffer<LongAdder> buffer = new EpochBuffer<>(LongAdder::new);
+        EpochBuffer.Epoch<LongAdder> epoch = buffer.enter();
+        Assert.assertSame(epoch.get(), buffer.swap(10L));
+        epoch.exit();
+    }
+
+    @Test
+    public void swapEpochReportsTimedOutWriters() {
+        EpochBuffer<LongAdder> buffer = new EpochBuffer<>(LongAdder::new);
+        EpochBuffer.Epoch<LongAdder> epoch = buffer.enter();
+        EpochBuffer.Epoch<LongAdder> previous = buffer.swapEpoch(10L);
+        Assert.assertSame(epoch, previous);
+        Assert.assertFalse(previous.isQuiescent());
+        epoch.exit();
+        Assert.assertTrue(previous.isQuiescent());
+        Assert.assertTrue(buffer.swapEpoch(10L).isQuiescent());
+    }
+
+    @Test
+    public void noUpdateIsLost() throws Exception {
+        EpochBuffer<LongAdder> buffer = new EpochBuffer<>(LongAdder::new);
+        int writers = 4;
+        int updates = 200_000;
+        CountDownLatch done = new CountDownLatch(writers);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < updates; j++) {
+                    EpochBuffer.Epoch<LongAdder> epoch = buffer.enter();
+                    epoch.get().increment();
+                    epoch.exit();
+                }
+                done.countDown();
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        long total = 0;
+        while (done.getCount() > 0) {
+            total += buffer.swap(5000L).sum();
+        }
+        total += buffer.swap(5000L).sum();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals((long) writers * updates, total);
+    }
+}
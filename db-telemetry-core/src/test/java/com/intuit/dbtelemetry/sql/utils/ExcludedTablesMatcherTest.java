@@ -0,0 +1,46 @@
+package com.intuit.dbtelemetry.sql.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ExcludedTablesMatcherTest {
+
+    @Test
+    public void matchesAnywhereIgnoringCase() {
+        ExcludedTablesMatcher matcher = new ExcludedTablesMatcher(Arrays.asList("audit", " Session_Log ", "he", "she", "hers"));
+        Assert.assertTrue(matcher.matches("select * from AUDIT_LOG"));
+        Assert.assertTrue(matcher.matches("delete from app.session_log where id = ?"));
+        Assert.assertTrue(matcher.matches("select USHERS from T"));
+        Assert.assertFalse(matcher.matches("select * from AUDI"));
+        Assert.assertFalse(matcher.matches(null));
+    }
+
+    @Test
+    public void matchesWholeTableNames() {
+        ExcludedTablesMatcher matcher = new ExcludedTablesMatcher(Arrays.asList("AUDIT", "LOG"), true);
+        Assert.assertTrue(matcher.matches("select * from audit where id = ?"));
+        Assert.assertTrue(matcher.matches("select * from app.AUDIT a"));
+        Assert.assertTrue(matcher.matches("insert into \"audit\"(id) values (?)"));
+        Assert.assertTrue(matcher.matches("select * from AUDIT_LOG, LOG"));
+        Assert.assertFalse(matcher.matches("select * from AUDIT_LOG"));
+        Assert.assertFalse(matcher.matches("select * from PRE_AUDIT"));
+        Assert.assertFalse(matcher.matches("select * from AUDIT2 join LOG$1 on 1 = 1"));
+    }
+
+    @Test
+    public void matchesNonAsciiTableNames() {
+        ExcludedTablesMatcher matcher = new ExcludedTablesMatcher(Collections.singletonList("\u00DCgyf\u00E9l"), true);
+        Assert.assertTrue(matcher.matches("select * from \u00FCgyf\u00E9l where id = ?"));
+        Assert.assertFalse(matcher.matches("select * from \u00FCgyf\u00E9l_c\u00EDm"));
+    }
+
+    @Test
+    public void emptyMatcherMatchesNothing() {
+        ExcludedTablesMatcher matcher = new ExcludedTablesMatcher(Arrays.asList("", "  "));
+        Assert.assertFalse(matcher.matches("select * from T"));
+        Assert.assertFalse(new ExcludedTablesMatcher(null).isExcluded("select * from T"));
+    }
+}
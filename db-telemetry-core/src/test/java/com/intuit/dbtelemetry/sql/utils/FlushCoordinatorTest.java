@@ -0,0 +1,89 @@
+package com.intuit.dbtelemetry.sql.utils;
+
+import com.intuit.dbtelemetry.sql.logs.LogFlush;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class FlushCoordinatorTest {
+
+    @Test
+    public void coalescesRequestsWhileFlushing() throws Exception {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingLogFlush logFlush = new RecordingLogFlush(flushing, release);
+        FlushCoordinator coordinator = new FlushCoordinator(logFlush, 0);
+
+        Assert.assertTrue(coordinator.requestFlushLogs());
+        Assert.assertTrue(flushing.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(coordinator.isFlushing());
+        Assert.assertTrue(coordinator.requestFlushLogs());
+        Assert.assertFalse(coordinator.requestFlushLogs(10));
+        Assert.assertEquals(1, coordinator.getPendingFlushes());
+        Assert.assertEquals(1, coordinator.getCoalescedRequests());
+
+        release.countDown();
+        coordinator.flush().get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(0, coordinator.getPendingFlushes());
+        Assert.assertTrue(logFlush.flushes.contains("logs:10"));
+        Assert.assertEquals("stackTrace:0", logFlush.flushes.get(logFlush.flushes.size() - 1));
+        Assert.assertTrue(coordinator.shutdown(5000));
+    }
+
+    @Test
+    public void drainsOnShutdown() throws Exception {
+        RecordingLogFlush logFlush = new RecordingLogFlush(null, null);
+        FlushCoordinator coordinator = new FlushCoordinator(logFlush, 1).schedule(60_000, 60_000);
+        Assert.assertTrue(coordinator.shutdown(5000));
+        Assert.assertEquals("[logs:1, stackTrace:1, close]", logFlush.flushes.toString());
+        Assert.assertEquals(2, coordinator.getCompletedFlushes());
+
+        Assert.assertFalse(coordinator.requestFlushLogs());
+        Assert.assertTrue(coordinator.flush().isCompletedExceptionally());
+    }
+
+    @Test
+    public void drainsOnCallerWhenNeverStarted() {
+        RecordingLogFlush logFlush = new RecordingLogFlush(null, null);
+        Assert.assertTrue(new FlushCoordinator(logFlush, 2).shutdown(5000));
+        Assert.assertEquals("[logs:2, stackTrace:2, close]", logFlush.flushes.toString());
+    }
+
+    private static final class RecordingLogFlush implements LogFlush, AutoCloseable {
+        private final List<String> flushes = new CopyOnWriteArrayList<>();
+        private final CountDownLatch flushing;
+        private final CountDownLatch release;
+
+        private RecordingLogFlush(CountDownLatch flushing, CountDownLatch release) {
+            this.flushing = flushing;
+            this.release = release;
+        }
+
+        @Override
+        public void flushLogs(long threadSleep) {
+            if (flushes.isEmpty() && release != null) {
+                flushing.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            flushes.add("logs:" + threadSleep);
+        }
+
+        @Override
+        public void flushStackTrace(long threadSleep) {
+            flushes.add("stackTrace:" + threadSleep);
+        }
+
+        @Override
+        public void close() {
+            flushes.add("close");
+        }
+    }
+}
@@ -1,12 +1,23 @@
 package com.intuit.dbtelemetry.sql.utils;
 
+import com.intuit.dbtelemetry.sql.TelemetryRegistry;
+import com.intuit.dbtelemetry.sql.TelemetryRegistryBuilder;
+import com.intuit.dbtelemetry.sql.aggregator.AsyncAggregator;
+import com.intuit.dbtelemetry.sql.aggregator.TelemetryAggregatorException;
 import com.intuit.dbtelemetry.sql.logs.DefaultLogFlush;
+import com.intuit.dbtelemetry.sql.logs.FileLogFlush;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Executors;
@@ -14,6 +25,9 @@ import java.util.concurrent.Executors;
 @RunWith(MockitoJUnitRunner.class)
 public class FlushLogSchedulerTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Mock
     DefaultLogFlush logFlush;
 
@@ -67,5 +81,41 @@ public class FlushLogSchedulerTest {
         fls.reSchedule(FlushLogScheduler.ScheduleType.StackTrace);
     }
 
+    @Test
+    public void closeDrainsAndClosesTheLogFlush() throws IOException, TelemetryAggregatorException {
+        TelemetryRegistry registry = TelemetryRegistryBuilder.builder()
+                .withFileOutput(temporaryFolder.getRoot().toPath())
+                .build();
+        Map<FlushLogScheduler.ScheduleType, FlushLogScheduler.ScheduleConfig> cmap = new HashMap<>();
+        cmap.put(FlushLogScheduler.ScheduleType.Telemetry, new FlushLogScheduler.ScheduleConfig(3600, 0));
+        FlushLogScheduler fls = new FlushLogScheduler(registry, Executors.newScheduledThreadPool(1), cmap);
+        fls.scheduleTask(FlushLogScheduler.ScheduleType.Telemetry);
+        registry.getAggregator().aggregate("test", "SELECT name FROM users", 10);
+
+        fls.close();
+        Path file = ((FileLogFlush) registry.getLogFlush()).getCurrentFile();
+        Assert.assertNotNull(file);
+        Assert.assertTrue(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).contains("users"));
+        try {
+            fls.scheduleTask(FlushLogScheduler.ScheduleType.Telemetry);
+            Assert.fail("Scheduled after close");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("FlushLogScheduler is closed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void closeClosesTheAggregatorOfTheRegistry() throws TelemetryAggregatorException {
+        TelemetryRegistry registry = TelemetryRegistryBuilder.builder()
+                .withLogFlush(logFlush)
+                .withAsyncAggregation(true)
+                .build();
+        new FlushLogScheduler(registry, Executors.newScheduledThreadPool(1), new HashMap<>()).close();
+
+        AsyncAggregator aggregator = (AsyncAggregator) registry.getAggregator();
+        aggregator.aggregate("test", "SELECT name FROM users", 10);
+        Assert.assertEquals(1, aggregator.getDroppedCount());
+    }
+
 
 }
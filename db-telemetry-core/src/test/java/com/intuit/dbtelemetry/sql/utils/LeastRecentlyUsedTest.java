@@ -0,0 +1,34 @@
+package com.intuit.dbtelemetry.sql.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class LeastRecentlyUsedTest {
+
+    @Test
+    public void nothingIsEvictedUpToTheMaximum() {
+        Map<Long, Long> entries = new ConcurrentHashMap<>();
+        for (long i = 0; i < 20; i++) {
+            entries.put(i, i);
+        }
+        Assert.assertEquals(0, LeastRecentlyUsed.evict(entries, 20, Long::longValue));
+        Assert.assertEquals(20, entries.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedAreEvictedBelowTheMaximum() {
+        Map<Long, Long> entries = new ConcurrentHashMap<>();
+        // Fingerprint i last used at 100 - i, the highest fingerprints are the least recently used
+        for (long i = 0; i < 21; i++) {
+            entries.put(i, 100 - i);
+        }
+        Assert.assertEquals(3, LeastRecentlyUsed.evict(entries, 20, Long::longValue));
+        Assert.assertEquals(18, entries.size());
+        Assert.assertTrue(entries.containsKey(17L));
+        Assert.assertFalse(entries.containsKey(18L));
+        Assert.assertFalse(entries.containsKey(20L));
+    }
+}
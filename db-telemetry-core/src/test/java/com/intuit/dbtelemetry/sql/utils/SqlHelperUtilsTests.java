@@ -55,4 +55,70 @@ public class SqlHelperUtilsTests {
     }
 
 
+    @Test
+    public void sanitizeSQLNullAndEmpty() {
+        Assert.assertEquals("", SqlHelperUtils.sanitizeSQL(null));
+        Assert.assertEquals("", SqlHelperUtils.sanitizeSQL(""));
+    }
+
+    @Test
+    public void sanitizeSQLUnchangedReturnsSameInstance() {
+        Assert.assertSame(noChange, SqlHelperUtils.sanitizeSQL(noChange));
+        Assert.assertSame(deleteQuery, SqlHelperUtils.sanitizeSQL(deleteQuery));
+    }
+
+    @Test
+    public void sanitizeSQLEscapedQuotes() {
+        Assert.assertEquals("UPDATE foo SET bar=? WHERE id=?", SqlHelperUtils.sanitizeSQL("UPDATE foo SET bar='O''Mally' WHERE id=10"));
+        Assert.assertEquals("SELECT ? FROM dual", SqlHelperUtils.sanitizeSQL("SELECT E'it\\'s' FROM dual"));
+        Assert.assertEquals("SELECT ? FROM dual", SqlHelperUtils.sanitizeSQL("SELECT N'unicode' FROM dual"));
+        Assert.assertEquals("SELECT ?", SqlHelperUtils.sanitizeSQL("SELECT 'unterminated"));
+    }
+
+    @Test
+    public void sanitizeSQLNumbers() {
+        Assert.assertEquals("SELECT col1, t2.c_3 FROM t1 WHERE a = ? AND b > ? AND c < ? AND d = ?",
+                SqlHelperUtils.sanitizeSQL("SELECT col1, t2.c_3 FROM t1 WHERE a = 3.14 AND b > 1e-5 AND c < 0xFF AND d = .5"));
+        Assert.assertEquals("SELECT a FROM t WHERE x = y-?", SqlHelperUtils.sanitizeSQL("SELECT a FROM t WHERE x = y-1"));
+    }
+
+    @Test
+    public void sanitizeSQLQuotedIdentifiers() {
+        String sql = "SELECT \"T1\".\"C'2\", `x9` FROM \"T1\"";
+        Assert.assertSame(sql, SqlHelperUtils.sanitizeSQL(sql));
+    }
+
+    @Test
+    public void sanitizeSQLComments() {
+        Assert.assertEquals("SELECT a /* it's batch ? */ FROM t -- don't ?\nWHERE b = ?",
+                SqlHelperUtils.sanitizeSQL("SELECT a /* it's batch 7 */ FROM t -- don't 42\nWHERE b = 'x'"));
+    }
+
+    @Test
+    public void sanitizeSQLDollarQuoted() {
+        Assert.assertEquals("SELECT ?, ? FROM t WHERE a = ?", SqlHelperUtils.sanitizeSQL("SELECT $$it's$$, $fn$ body $$ $fn$ FROM t WHERE a = $1"));
+    }
+
+    @Test
+    public void sanitizeSQLInAndValuesLists() {
+        Assert.assertEquals("SELECT * FROM t WHERE a IN (?) AND b IN (?)",
+                SqlHelperUtils.sanitizeSQL("SELECT * FROM t WHERE a IN ('x','y', 'z') AND b IN (-1, 2,\n 3)"));
+        Assert.assertEquals("INSERT INTO t (a, b) VALUES (?)",
+                SqlHelperUtils.sanitizeSQL("INSERT INTO t (a, b) VALUES (?, ?), (?, ?),(1, 'a')"));
+        Assert.assertEquals("SELECT count(*), substr(a, ?, ?), max(?) FROM t WHERE (a, b) IN ((?))",
+                SqlHelperUtils.sanitizeSQL("SELECT count(*), substr(a, 1, 2), max(1) FROM t WHERE (a, b) IN ((1, 2), (3, 4))"));
+        Assert.assertEquals("SELECT * FROM t WHERE a = ANY(ARRAY?)", SqlHelperUtils.sanitizeSQL("SELECT * FROM t WHERE a = ANY(ARRAY[1, 2])"));
+    }
+
+    @Test
+    public void sanitizeSQLLargeStatement() {
+        StringBuilder sql = new StringBuilder("SELECT * FROM t WHERE id IN (");
+        for (int i = 0; i < 10_000; i++) {
+            sql.append(i).append(", ");
+        }
+        sql.append("'last')");
+        Assert.assertEquals("SELECT * FROM t WHERE id IN (?)", SqlHelperUtils.sanitizeSQL(sql.toString()));
+        Assert.assertEquals(updateQueryResult, SqlHelperUtils.sanitizeSQL(updateQuery));
+    }
+
 }
@@ -0,0 +1,55 @@
+package com.intuit.dbtelemetry.sql.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SqlNormalizationCacheTest {
+
+    @Test
+    public void normalizeHitAndMiss() {
+        SqlNormalizationCache cache = new SqlNormalizationCache();
+        String sql = "UPDATE PSP_PMT_TEMPLATE_BANKACCOUNT set status_cd = 'Active' where id = 10";
+        String expected = SqlHelperUtils.sanitizeSQL(sql);
+        Assert.assertEquals(expected, cache.normalize(sql));
+        Assert.assertSame(cache.normalize(sql), cache.normalize(sql));
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(1, cache.getSize());
+        Assert.assertTrue(cache.getWeightedSize() > 0);
+    }
+
+    @Test
+    public void normalizeNull() {
+        Assert.assertEquals("", new SqlNormalizationCache().normalize(null));
+    }
+
+    @Test
+    public void evictsOnEntryLimit() {
+        SqlNormalizationCache cache = new SqlNormalizationCache(16, SqlNormalizationCache.DEFAULT_MAX_BYTES);
+        for (int i = 0; i < 1000; i++) {
+            cache.normalize("select * from T" + i);
+        }
+        Assert.assertTrue(cache.getSize() <= 16);
+        Assert.assertEquals(1000, cache.getMissCount());
+        Assert.assertEquals(1000 - cache.getSize(), cache.getEvictionCount());
+    }
+
+    @Test
+    public void evictsOnByteLimit() {
+        SqlNormalizationCache cache = new SqlNormalizationCache(1000, 16 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            cache.normalize("select * from T" + i);
+        }
+        Assert.assertTrue(cache.getWeightedSize() <= 16 * 1024);
+        cache.invalidateAll();
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertEquals(0, cache.getWeightedSize());
+    }
+
+    @Test
+    public void zeroSizedCacheOnlyNormalizes() {
+        SqlNormalizationCache cache = new SqlNormalizationCache(0, 0);
+        Assert.assertEquals("select ?", cache.normalize("select 1"));
+        Assert.assertEquals(0, cache.getSize());
+    }
+}
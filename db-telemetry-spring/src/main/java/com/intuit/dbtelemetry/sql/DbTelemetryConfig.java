@@ -5,8 +5,10 @@ import com.intuit.dbtelemetry.sql.aggregator.MapBasedAggregator;
 import com.intuit.dbtelemetry.sql.extractor.stacktrace.DepthFilterStackTraceExtractor;
 import com.intuit.dbtelemetry.sql.extractor.stacktrace.StackTraceExtractor;
 import com.intuit.dbtelemetry.sql.finder.WorkflowFinder;
+import com.intuit.dbtelemetry.sql.logs.DefaultLogFlush;
 import com.intuit.dbtelemetry.sql.logs.LogFlush;
 import com.intuit.dbtelemetry.sql.flushlogs.DefaultLogFlushSpringScheduler;
+import com.intuit.dbtelemetry.sql.slow.SlowStatementCapture;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -45,9 +47,18 @@ public class DbTelemetryConfig {
                                                     LogFlush logFlush,
                                                     StackTraceExtractor stackTraceExtractor,
                                                     @Value("${db-telemetry.enable-aspect:#{null}}") String enableAspect,
-                                                    @Value("${db-telemetry.disabled-aspect:#{null}}") String disabledAspect){
+                                                    @Value("${db-telemetry.disabled-aspect:#{null}}") String disabledAspect,
+                                                    @Value("${db-telemetry.slow-statement.threshold:-1}") long slowStatementThreshold){
+        // Microseconds from which statements are captured as slow, disabled when negative
+        SlowStatementCapture slowStatementCapture = slowStatementThreshold < 0 ? null : new SlowStatementCapture(slowStatementThreshold);
+        if (logFlush instanceof DefaultLogFlush) {
+            // Flushed by the LogFlush of this configuration, any other LogFlush must flush it itself
+            ((DefaultLogFlush) logFlush).setSlowStatementCapture(slowStatementCapture);
+        }
         TelemetryRegistry telemetryRegistry = TelemetryRegistryBuilder.builder().withAggregator(aggregator)
-                .withLogFlush(logFlush).withStackTraceExtractor(stackTraceExtractor).build();
+                .withLogFlush(logFlush).withStackTraceExtractor(stackTraceExtractor)
+                .withSlowStatementCapture(slowStatementCapture)
+                .build();
         TelemetryRegistry.setTelemetryRegistry(telemetryRegistry);
         if(Objects.nonNull(enableAspect)) {
             for (String aspect: enableAspect.split(",")) {
@@ -5,29 +5,78 @@ import com.intuit.dbtelemetry.sql.aggregator.Aggregator;
 import com.intuit.dbtelemetry.sql.finder.WorkflowFinder;
 import com.intuit.dbtelemetry.sql.logs.DefaultLogFlush;
 import com.intuit.dbtelemetry.sql.logs.TelemetryFlushException;
-import org.springframework.scheduling.annotation.Async;
+import com.intuit.dbtelemetry.sql.utils.FlushCoordinator;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.scheduling.annotation.Scheduled;
 
 import java.util.Map;
 
-public class DefaultLogFlushSpringScheduler extends DefaultLogFlush {
+/**
+ * DefaultLogFlush whose scheduled flushes are run one at a time by a FlushCoordinator, so the scheduler threads
+ * don't wait for in-flight aggregations. The last window is flushed when the application context stops.
+ */
+public class DefaultLogFlushSpringScheduler extends DefaultLogFlush implements SmartLifecycle {
+    // Stopped after the beans of the default phase, e.g. the web server, so the statements they run are flushed
+    static final int PHASE = Integer.MIN_VALUE + 1000;
+
     private final long threadSleep;
+    private volatile FlushCoordinator flushCoordinator;
+    private volatile boolean running;
 
     public DefaultLogFlushSpringScheduler(Aggregator<Map<SqlTelemetry, SqlTelemetry>> aggregator, WorkflowFinder workflowFinder, boolean stackTrace, long threadSleep) {
         super(aggregator, workflowFinder, stackTrace);
         this.threadSleep= threadSleep;
+        this.flushCoordinator = new FlushCoordinator(this, threadSleep);
     }
 
     @Override
-    @Async
     @Scheduled(fixedDelayString = "${db-telemetry.stack-trace.flush.interval}")
     public void flushStackTrace() throws TelemetryFlushException {
-        super.flushStackTrace(threadSleep);
+        flushCoordinator.requestFlushStackTrace(threadSleep);
     }
     @Override
-    @Async
     @Scheduled(fixedDelayString = "${db-telemetry.flush.interval}")
     public void flushLogs() throws TelemetryFlushException {
-        super.flushLogs(threadSleep);
+        flushCoordinator.requestFlushLogs(threadSleep);
+    }
+
+    /**
+     * Returns the FlushCoordinator running the flushes, e.g. to flush on demand.
+     *
+     * @return the current FlushCoordinator
+     */
+    public FlushCoordinator getFlushCoordinator() {
+        return flushCoordinator;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!running) {
+            // A stopped context can be started again, with a new coordinator
+            try {
+                flushCoordinator.start();
+            } catch (IllegalStateException e) {
+                flushCoordinator = new FlushCoordinator(this, threadSleep).start();
+            }
+            running = true;
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (running) {
+            running = false;
+            flushCoordinator.shutdown(FlushCoordinator.DEFAULT_SHUTDOWN_TIMEOUT);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
     }
 }
@@ -12,8 +12,10 @@ public class SqlTelemetryConfigTest {
         Assert.assertNotNull(c.getAggregator(null,null));
         Assert.assertNotNull(c.getAggregator("a,b",null));
         Assert.assertNotNull(c.getLogFlush(null,null,false,1));
-        Assert.assertNotNull(c.getDbTelemetryRegistry(null,null,null,null,null));
-        Assert.assertNotNull(c.getDbTelemetryRegistry(null,null,null,"test1,test2","test2"));
+        Assert.assertNotNull(c.getDbTelemetryRegistry(null,null,null,null,null,-1));
+        Assert.assertNotNull(c.getDbTelemetryRegistry(null,null,null,"test1,test2","test2",-1));
+        Assert.assertNotNull(c.getDbTelemetryRegistry(null,c.getLogFlush(null,null,false,1),null,null,null,1000)
+                .getSlowStatementCapture());
     }
 
 }
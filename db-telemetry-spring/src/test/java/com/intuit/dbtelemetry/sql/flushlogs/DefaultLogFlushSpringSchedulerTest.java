@@ -5,6 +5,7 @@ import com.intuit.dbtelemetry.sql.aggregator.MapBasedAggregator;
 import com.intuit.dbtelemetry.sql.extractor.stacktrace.DepthFilterStackTraceExtractor;
 import com.intuit.dbtelemetry.sql.logs.LogFlush;
 import com.intuit.dbtelemetry.sql.logs.TelemetryFlushException;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class DefaultLogFlushSpringSchedulerTest {
@@ -19,5 +20,22 @@ public class DefaultLogFlushSpringSchedulerTest {
         mlf.flushStackTrace();
     }
 
+    @Test
+    public void drainsWhenStopped() throws TelemetryAggregatorException {
+        MapBasedAggregator aggregator = new MapBasedAggregator(null, null);
+        DefaultLogFlushSpringScheduler mlf = new DefaultLogFlushSpringScheduler(aggregator, null, true, 1);
+        mlf.start();
+        Assert.assertTrue(mlf.isRunning());
+        aggregator.aggregate("test", "SQL TEST", 10);
+        mlf.stop();
+        Assert.assertFalse(mlf.isRunning());
+        Assert.assertEquals(2, mlf.getFlushCoordinator().getCompletedFlushes());
+        Assert.assertFalse(mlf.getFlushCoordinator().requestFlushLogs());
+
+        mlf.start();
+        Assert.assertTrue(mlf.getFlushCoordinator().requestFlushLogs());
+        mlf.stop();
+    }
+
 
 }